@@ -0,0 +1,280 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.change;
+
+import org.commonjava.indy.service.tracking.config.IndyTrackingConfiguration;
+import org.commonjava.indy.service.tracking.data.cassandra.CassandraTrackingQuery;
+import org.commonjava.indy.service.tracking.data.spool.WriteAheadSpool;
+import org.commonjava.indy.service.tracking.model.TrackedContentEntry;
+import org.commonjava.indy.service.tracking.model.TrackingKey;
+import org.eclipse.microprofile.reactive.messaging.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Holds download entries for a short window and merges repeated downloads of the same
+ * (trackingKey, storeKey, path, DOWNLOAD) row with {@link TrackedContentEntry#merge(TrackedContentEntry)}, so a
+ * chatty build costs one row write per unique path instead of one per fetch. A tracking key's window is written when
+ * it gets older than the window time, when too many entries are pending or the heap runs low, and when the tracking
+ * record is sealed. Messages are acked only after their window is written.
+ * <p>
+ * The heap is checked on the flush tick from the heap pools' usage after the last collection, since the used heap at
+ * any given moment includes garbage and is over the limit most of the time with collectors like G1.
+ * <p>
+ * A seal only flushes the windows held by the instance handling the seal request, so entries which are still held by
+ * another instance when the record is sealed are dropped by the sealed check at write time.
+ */
+@ApplicationScoped
+public class DownloadCoalescer
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    IndyTrackingConfiguration config;
+
+    @Inject
+    CassandraTrackingQuery recordManager;
+
+    @Inject
+    WriteAheadSpool spool;
+
+    private final Map<TrackingKey, Window> windows = new LinkedHashMap<>();
+
+    private int pending;
+
+    private volatile boolean lowOnMemory;
+
+    private ScheduledExecutorService scheduler;
+
+    protected DownloadCoalescer()
+    {
+    }
+
+    public DownloadCoalescer( IndyTrackingConfiguration config, CassandraTrackingQuery recordManager,
+                              WriteAheadSpool spool )
+    {
+        this.config = config;
+        this.recordManager = recordManager;
+        this.spool = spool;
+        init();
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        if ( !isEnabled() )
+        {
+            return;
+        }
+        long tick = Math.max( 10, config.ingestCoalesceWindowMillis() / 4 );
+        scheduler = Executors.newSingleThreadScheduledExecutor( r -> {
+            Thread t = new Thread( r, "download-coalescer" );
+            t.setDaemon( true );
+            return t;
+        } );
+        scheduler.scheduleWithFixedDelay( this::tick, tick, tick, MILLISECONDS );
+    }
+
+    public boolean isEnabled()
+    {
+        return config.ingestCoalesceEnabled();
+    }
+
+    /**
+     * Merge the entry into the window of its tracking key. Everything held is written on the calling thread if this
+     * entry pushes the coalescer over its entry limit or the last heap check found it running low.
+     */
+    public void add( TrackedContentEntry entry, Message<?> message )
+    {
+        boolean overLimit;
+        synchronized ( this )
+        {
+            Window window = windows.computeIfAbsent( entry.getTrackingKey(), k -> new Window() );
+            List<Object> rowKey = Arrays.asList( entry.getStoreKey(), entry.getPath(), entry.getEffect() );
+            TrackedContentEntry prev = window.entries.putIfAbsent( rowKey, entry );
+            if ( prev == null )
+            {
+                pending++;
+            }
+            else
+            {
+                prev.merge( entry );
+            }
+            window.messages.add( message );
+            overLimit = pending >= config.ingestCoalesceMaxEntries();
+        }
+        if ( overLimit || lowOnMemory )
+        {
+            logger.debug( "Flushing all coalescing windows, pending entries: {}", pending );
+            flushAll();
+        }
+    }
+
+    /**
+     * Write and ack the window of the tracking key, if any. Called before the tracking record is sealed.
+     */
+    public void flush( TrackingKey trackingKey )
+    {
+        Window window;
+        synchronized ( this )
+        {
+            window = windows.remove( trackingKey );
+            if ( window != null )
+            {
+                pending -= window.entries.size();
+            }
+        }
+        write( window );
+    }
+
+    public void flushAll()
+    {
+        List<Window> toWrite;
+        synchronized ( this )
+        {
+            toWrite = new ArrayList<>( windows.values() );
+            windows.clear();
+            pending = 0;
+        }
+        toWrite.forEach( this::write );
+    }
+
+    private void tick()
+    {
+        lowOnMemory = isLowOnMemory();
+        if ( lowOnMemory )
+        {
+            logger.debug( "Heap is low after collection, flushing all coalescing windows, pending entries: {}",
+                          pending );
+            flushAll();
+        }
+        else
+        {
+            flushExpired();
+        }
+    }
+
+    private void flushExpired()
+    {
+        long expiry = System.currentTimeMillis() - config.ingestCoalesceWindowMillis();
+        List<Window> toWrite = new ArrayList<>();
+        synchronized ( this )
+        {
+            Iterator<Window> it = windows.values().iterator();
+            while ( it.hasNext() )
+            {
+                Window window = it.next();
+                // windows are kept in the order they were opened
+                if ( window.opened > expiry )
+                {
+                    break;
+                }
+                it.remove();
+                pending -= window.entries.size();
+                toWrite.add( window );
+            }
+        }
+        toWrite.forEach( this::write );
+    }
+
+    private void write( Window window )
+    {
+        if ( window == null )
+        {
+            return;
+        }
+        try
+        {
+            recordManager.recordArtifacts( window.entries.values() );
+        }
+        catch ( Throwable e )
+        {
+            if ( spool.offer( window.entries.values() ) )
+            {
+                logger.warn( "Failed to record {} coalesced entries, spooled for replay. Reason: {}",
+                             window.entries.size(), e.getMessage() );
+            }
+            else
+            {
+                logger.error( String.format( "Failed to record %s coalesced entries. Reason: %s",
+                                             window.entries.size(), e.getMessage() ), e );
+            }
+        }
+        finally
+        {
+            window.messages.forEach( Message::ack );
+        }
+    }
+
+    /**
+     * @return true if a heap pool is still fuller than the max heap ratio after its last collection
+     */
+    private boolean isLowOnMemory()
+    {
+        double ratio = config.ingestCoalesceMaxHeapRatio();
+        for ( MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() )
+        {
+            if ( pool.getType() != MemoryType.HEAP || !pool.isCollectionUsageThresholdSupported() )
+            {
+                continue;
+            }
+            MemoryUsage usage = pool.getCollectionUsage();
+            if ( usage != null && usage.getMax() > 0 && usage.getUsed() > usage.getMax() * ratio )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        if ( scheduler != null )
+        {
+            scheduler.shutdown();
+        }
+        flushAll();
+    }
+
+    private static final class Window
+    {
+        private final long opened = System.currentTimeMillis();
+
+        private final Map<List<Object>, TrackedContentEntry> entries = new LinkedHashMap<>();
+
+        private final List<Message<?>> messages = new ArrayList<>();
+    }
+}
@@ -15,7 +15,8 @@
  */
 package org.commonjava.indy.service.tracking.change;
 
-import io.smallrye.common.annotation.Blocking;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
 import org.apache.commons.lang3.StringUtils;
 import org.commonjava.event.common.EventMetadata;
 import org.commonjava.event.file.FileEvent;
@@ -23,7 +24,9 @@ import org.commonjava.event.file.FileEventType;
 import org.commonjava.event.file.TransferOperation;
 import org.commonjava.indy.service.tracking.Constants;
 import org.commonjava.indy.service.tracking.config.IndyTrackingConfiguration;
+import org.commonjava.indy.service.tracking.config.IndyTrackingConfiguration.IngestMode;
 import org.commonjava.indy.service.tracking.data.cassandra.CassandraTrackingQuery;
+import org.commonjava.indy.service.tracking.data.spool.WriteAheadSpool;
 import org.commonjava.indy.service.tracking.exception.ContentException;
 import org.commonjava.indy.service.tracking.exception.IndyWorkflowException;
 import org.commonjava.indy.service.tracking.model.AccessChannel;
@@ -39,6 +42,9 @@ import org.slf4j.LoggerFactory;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import java.net.MalformedURLException;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
 
 import static org.commonjava.indy.service.tracking.Constants.ORIGIN_PATH;
@@ -58,10 +64,67 @@ public class FoloTrackingListener
     @Inject
     private CassandraTrackingQuery recordManager;
 
+    @Inject
+    private TrackingRecordBatcher batcher;
+
+    @Inject
+    private KeyOrderedExecutor laneExecutor;
+
+    @Inject
+    private DownloadCoalescer coalescer;
+
+    @Inject
+    private WriteAheadSpool spool;
+
     public void handleFileAccessEvent( final FileEvent event ) throws IndyWorkflowException
     {
         logger.info( "FILE ACCESS: {}", event );
+        recordEntry( event, createFileAccessEntry( event ) );
+    }
+
+    public void handleFileStorageEvent( final FileEvent event ) throws IndyWorkflowException
+    {
+        logger.info( "FILE STORAGE: {}", event );
+        recordEntry( event, createFileStorageEntry( event ) );
+    }
+
+    private void recordEntry( final FileEvent event, final TrackedContentEntry entry )
+    {
+        if ( entry == null )
+        {
+            return;
+        }
+        // keep off a failing Cassandra while earlier entries are still waiting for replay
+        if ( spool.isBacklogged() && spool.offer( Collections.singletonList( entry ) ) )
+        {
+            return;
+        }
+        try
+        {
+            recordManager.recordArtifact( entry );
+        }
+        catch ( final ContentException | IndyWorkflowException e )
+        {
+            logger.error( String.format( "Failed to record download: %s. Reason: %s", event.getSourcePath(),
+                                         e.getMessage() ), e );
+        }
+        catch ( final RuntimeException e )
+        {
+            if ( !spool.offer( Collections.singletonList( entry ) ) )
+            {
+                throw e;
+            }
+            logger.warn( "Failed to record: {}, spooled for replay. Reason: {}", event.getSourcePath(),
+                         e.getMessage() );
+        }
+    }
 
+    /**
+     * Build the tracked entry for a file access event.
+     * @return the entry, or null if this access should not be tracked
+     */
+    TrackedContentEntry createFileAccessEntry( final FileEvent event ) throws IndyWorkflowException
+    {
         EventMetadata metadata = event.getEventMetadata();
 
         final String originPath = (String) metadata.get( ORIGIN_PATH );
@@ -74,7 +137,7 @@ public class FoloTrackingListener
         if ( originPath != null && originPath.contains( "api/folo/track" ) )
         {
             logger.trace( "NOT tracking content requests from indy itself, path: {}", originPath );
-            return;
+            return null;
         }
 
         String trackingId = event.getSessionId();
@@ -83,65 +146,46 @@ public class FoloTrackingListener
         if ( trackingKey == null )
         {
             logger.trace( "No tracking key for access to: {}", event.getTargetPath() );
-            return;
+            return null;
         }
         final AccessChannel accessChannel = AccessChannel.valueOf( (String) metadata.get( Constants.ACCESS_CHANNEL ) );
 
-        try
+        String keyString = event.getStoreKey();
+        if (StringUtils.isBlank( keyString )) {
+            logger.trace( "NOT tracking content without StoreKey" );
+            return null;
+        }
+        StoreKey storeKey = StoreKey.fromString( event.getStoreKey() );
+        if ( !trackingConfig.trackGroupContent() && storeKey.getType() == group )
         {
-            String keyString = event.getStoreKey();
-            if (StringUtils.isBlank( keyString )) {
-                logger.trace( "NOT tracking content without StoreKey" );
-                return;
-            }
-            StoreKey storeKey = StoreKey.fromString( event.getStoreKey() );
-            if ( !trackingConfig.trackGroupContent() && storeKey.getType() == group )
-            {
-                logger.trace( "NOT tracking content stored directly in group: {}. This content is generally aggregated metadata, and can be recalculated. Groups may not be stable in some build environments",
-                              storeKey );
-                return;
-            }
+            logger.trace( "NOT tracking content stored directly in group: {}. This content is generally aggregated metadata, and can be recalculated. Groups may not be stable in some build environments",
+                          storeKey );
+            return null;
+        }
 
-            final String trackingPath = originPath == null ? event.getTargetPath() : originPath;
+        final String trackingPath = originPath == null ? event.getTargetPath() : originPath;
 
-            logger.trace( "Tracking report: {} += {} in {} (DOWNLOAD)", trackingKey, trackingPath, storeKey );
+        logger.trace( "Tracking report: {} += {} in {} (DOWNLOAD)", trackingKey, trackingPath, storeKey );
 
-            //Here we need to think about npm metadata retrieving case. As almost all npm metadata retrieving is through
-            // /$pkg from remote, but we use STORAGE_PATH in EventMetadata with /$pkg/package.json to store this metadata,
-            //so the real path for this transfer should be /$pkg but its current path is /$pkg/package.json. We need to
-            //think about if need to do the replacement here, especially for the originalUrl.
-            String remoteUrl = null;
-            String sourceLocation = event.getSourceLocation();
-            String path = event.getSourcePath();
-            if (sourceLocation != null && path != null)
-            {
-                remoteUrl = UrlUtils.buildUrl( sourceLocation, path );
-            }
-            TrackedContentEntry entry =
-                            new TrackedContentEntry( trackingKey, storeKey, accessChannel, remoteUrl,
-                                                     trackingPath, DOWNLOAD, event.getSize(), event.getMd5(),
-                                                     event.getSha1(), event.getChecksum() );
-            recordManager.recordArtifact( entry );
-        }
-        catch ( final ContentException | IndyWorkflowException e )
-        {
-            logger.error( String.format( "Failed to record download: %s. Reason: %s", event.getSourcePath(),
-                                         e.getMessage() ), e );
-        }
-        catch ( final MalformedURLException e )
-        {
-            throw new IndyWorkflowException( "Cannot format URL. Reason: %s", e, e.getMessage() );
-        }
+        //Here we need to think about npm metadata retrieving case. As almost all npm metadata retrieving is through
+        // /$pkg from remote, but we use STORAGE_PATH in EventMetadata with /$pkg/package.json to store this metadata,
+        //so the real path for this transfer should be /$pkg but its current path is /$pkg/package.json. We need to
+        //think about if need to do the replacement here, especially for the originalUrl.
+        return new TrackedContentEntry( trackingKey, storeKey, accessChannel, buildRemoteUrl( event ), trackingPath,
+                                        DOWNLOAD, event.getSize(), event.getMd5(), event.getSha1(),
+                                        event.getChecksum() );
     }
 
-    public void handleFileStorageEvent( final FileEvent event ) throws IndyWorkflowException
+    /**
+     * Build the tracked entry for a file storage event.
+     * @return the entry, or null if this storage should not be tracked
+     */
+    TrackedContentEntry createFileStorageEntry( final FileEvent event ) throws IndyWorkflowException
     {
-        logger.info( "FILE STORAGE: {}", event );
-
         if ( TransferOperation.UPLOAD != event.getOperation() )
         {
             logger.trace( "Not a file upload from client; skipping tracking of storage" );
-            return;
+            return null;
         }
 
         EventMetadata metadata = event.getEventMetadata();
@@ -152,13 +196,13 @@ public class FoloTrackingListener
         if ( trackingKey == null )
         {
             logger.trace( "No tracking key. Not recording." );
-            return;
+            return null;
         }
         final AccessChannel accessChannel = AccessChannel.valueOf( (String) metadata.get( Constants.ACCESS_CHANNEL ) );
         String keyString = event.getStoreKey();
         if (StringUtils.isBlank( keyString )) {
             logger.trace( "NOT tracking content without StoreKey" );
-            return;
+            return null;
         }
         StoreKey storeKey = StoreKey.fromString( event.getStoreKey() );
 
@@ -166,32 +210,27 @@ public class FoloTrackingListener
         {
             logger.trace( "NOT tracking content stored directly in group: {}. This content is generally aggregated metadata, and can be recalculated. Groups may not be stable in some build environments",
                           storeKey );
-            return;
+            return null;
         }
 
-        try
-        {
+        logger.trace( "Tracking report: {} += {} in {} ({})", trackingKey, event.getTargetPath(), storeKey, UPLOAD );
 
-            logger.trace( "Tracking report: {} += {} in {} ({})", trackingKey, event.getTargetPath(), storeKey,
-                          UPLOAD );
-			String remoteUrl = null;
-            String sourceLocation = event.getSourceLocation();
-            String path = event.getSourcePath();
-            if (sourceLocation != null && path != null)
-            {
-                remoteUrl = UrlUtils.buildUrl( sourceLocation, path );
-            }
-            TrackedContentEntry entry =
-                            new TrackedContentEntry( trackingKey, storeKey, accessChannel, remoteUrl,
-                                                     event.getTargetPath(), UPLOAD, event.getSize(), event.getMd5(),
-                                                     event.getSha1(), event.getChecksum() );
+        return new TrackedContentEntry( trackingKey, storeKey, accessChannel, buildRemoteUrl( event ),
+                                        event.getTargetPath(), UPLOAD, event.getSize(), event.getMd5(),
+                                        event.getSha1(), event.getChecksum() );
+    }
 
-            recordManager.recordArtifact( entry );
+    private String buildRemoteUrl( final FileEvent event ) throws IndyWorkflowException
+    {
+        String sourceLocation = event.getSourceLocation();
+        String path = event.getSourcePath();
+        if ( sourceLocation == null || path == null )
+        {
+            return null;
         }
-        catch ( final ContentException | IndyWorkflowException e )
+        try
         {
-            logger.error( String.format( "Failed to record download: %s. Reason: %s", event.getSourcePath(),
-                                         e.getMessage() ), e );
+            return UrlUtils.buildUrl( sourceLocation, path );
         }
         catch ( final MalformedURLException e )
         {
@@ -199,9 +238,48 @@ public class FoloTrackingListener
         }
     }
 
-    @Blocking
+    /**
+     * The handler itself runs on the event loop. The SYNC and BATCH modes write with the blocking storage API, so they
+     * are moved to a worker thread; the ASYNC mode never blocks.
+     */
     @Incoming( "file-event-in" )
-    public CompletionStage<Void> handleFileEvent( Message<FileEvent> message )
+    public Uni<Void> handleFileEvent( Message<FileEvent> message )
+    {
+        if ( message.getPayload() == null )
+        {
+            // dropped by the deserializer
+            return Uni.createFrom().completionStage( message::ack );
+        }
+        IngestMode mode = trackingConfig.ingestMode();
+        if ( mode != IngestMode.BATCH && trackingConfig.ingestCoalesceEnabled()
+                        && FileEventType.ACCESS.equals( message.getPayload().getEventType() ) )
+        {
+            return Uni.createFrom()
+                      .completionStage( () -> coalesceFileEvent( message ) )
+                      .runSubscriptionOn( Infrastructure.getDefaultWorkerPool() );
+        }
+        if ( mode == IngestMode.ASYNC )
+        {
+            return asyncFileEvent( message );
+        }
+        if ( mode == IngestMode.PARALLEL )
+        {
+            return Uni.createFrom()
+                      .completionStage( () -> parallelFileEvent( message ) )
+                      .runSubscriptionOn( Infrastructure.getDefaultWorkerPool() );
+        }
+        if ( mode == IngestMode.BATCH )
+        {
+            return Uni.createFrom()
+                      .completionStage( () -> batchFileEvent( message ) )
+                      .runSubscriptionOn( Infrastructure.getDefaultWorkerPool() );
+        }
+        return Uni.createFrom()
+                  .completionStage( () -> syncFileEvent( message ) )
+                  .runSubscriptionOn( Infrastructure.getDefaultWorkerPool() );
+    }
+
+    private CompletionStage<Void> syncFileEvent( Message<FileEvent> message )
     {
         FileEvent event = message.getPayload();
         if ( event.getEventType().equals( FileEventType.ACCESS ) )
@@ -229,4 +307,112 @@ public class FoloTrackingListener
         return message.ack();
     }
 
+    /**
+     * Hand the entry over to the batcher, which acks the message once the batch holding it is written. Messages which
+     * are not tracked are acked right away; the Kafka connector still won't commit past an earlier un-acked message.
+     */
+    private CompletionStage<Void> batchFileEvent( Message<FileEvent> message )
+    {
+        TrackedContentEntry entry = createEntry( message.getPayload() );
+        if ( entry == null )
+        {
+            return message.ack();
+        }
+        batcher.add( entry, message );
+        return CompletableFuture.completedFuture( null );
+    }
+
+    /**
+     * Hand the download entry over to the coalescer, which acks the message once the window holding it is written.
+     */
+    private CompletionStage<Void> coalesceFileEvent( Message<FileEvent> message )
+    {
+        TrackedContentEntry entry = createEntry( message.getPayload() );
+        if ( entry == null )
+        {
+            return message.ack();
+        }
+        coalescer.add( entry, message );
+        return CompletableFuture.completedFuture( null );
+    }
+
+    /**
+     * Queue the event on the lane of its tracking key. The lane acks the message after processing it, so the
+     * throttled commit strategy never commits past an event still waiting in a lane. Blocks while the lane is full.
+     */
+    private CompletionStage<Void> parallelFileEvent( Message<FileEvent> message )
+    {
+        String sessionId = message.getPayload().getSessionId();
+        if ( StringUtils.isBlank( sessionId ) )
+        {
+            return message.ack();
+        }
+        try
+        {
+            laneExecutor.execute( sessionId, () -> syncFileEvent( message ) );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            return message.nack( e );
+        }
+        return CompletableFuture.completedFuture( null );
+    }
+
+    /**
+     * Start an async write and ack the message when it completes. The returned Uni completes as soon as the write is
+     * started, so several writes are in flight at once; it waits while the storage in-flight cap is reached, which
+     * holds back the Kafka consumer.
+     */
+    private Uni<Void> asyncFileEvent( Message<FileEvent> message )
+    {
+        FileEvent event = message.getPayload();
+        TrackedContentEntry entry = createEntry( event );
+        if ( entry == null )
+        {
+            return Uni.createFrom().completionStage( message::ack );
+        }
+        return Uni.createFrom().completionStage( recordManager::whenWriteCapacityAvailable ).invoke( () -> {
+            recordManager.recordArtifactAsync( entry ).whenComplete( ( written, error ) -> {
+                if ( error != null )
+                {
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    if ( !( cause instanceof ContentException ) && spool.offer( Collections.singletonList( entry ) ) )
+                    {
+                        logger.warn( "Failed to record: {}, spooled for replay. Reason: {}", event.getSourcePath(),
+                                     cause.getMessage() );
+                    }
+                    else
+                    {
+                        logger.error( String.format( "Failed to record file event: %s. Reason: %s",
+                                                     event.getSourcePath(), cause.getMessage() ), cause );
+                    }
+                }
+                message.ack();
+            } );
+        } );
+    }
+
+    private TrackedContentEntry createEntry( FileEvent event )
+    {
+        try
+        {
+            if ( event.getEventType().equals( FileEventType.ACCESS ) )
+            {
+                logger.debug( "FILE ACCESS: {}", event );
+                return createFileAccessEntry( event );
+            }
+            else if ( event.getEventType().equals( FileEventType.STORAGE ) )
+            {
+                logger.debug( "FILE STORAGE: {}", event );
+                return createFileStorageEntry( event );
+            }
+        }
+        catch ( Throwable e )
+        {
+            logger.error( "Failed to handle the file event", e );
+        }
+        return null;
+    }
+
 }
@@ -0,0 +1,219 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.change;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.metrics.ObservableLongGauge;
+import org.commonjava.indy.service.tracking.config.IndyTrackingConfiguration;
+import org.commonjava.indy.service.tracking.data.metrics.MetricsManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.commonjava.indy.service.tracking.data.metrics.MetricsManager.metricName;
+import static org.commonjava.indy.service.tracking.data.metrics.TraceConstant.NANOS_PER_MILLISECOND;
+
+/**
+ * Runs tasks on a fixed set of lanes, each with its own thread and bounded queue. Tasks with the same key always go
+ * to the same lane, so they run in submission order, while tasks for different keys run in parallel.
+ * <p>
+ * Per-lane queue depth, processed count and task duration are exposed as metrics, with a "lane" attribute.
+ */
+@ApplicationScoped
+public class KeyOrderedExecutor
+{
+    private static final AttributeKey<Long> LANE = AttributeKey.longKey( "lane" );
+
+    private static final long POLL_MILLIS = 100;
+
+    private static final long STOP_TIMEOUT_MILLIS = 30000;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    IndyTrackingConfiguration config;
+
+    @Inject
+    MetricsManager metricsManager;
+
+    private Lane[] lanes;
+
+    private LongCounter processed;
+
+    private DoubleHistogram duration;
+
+    private ObservableLongGauge depth;
+
+    protected KeyOrderedExecutor()
+    {
+    }
+
+    public KeyOrderedExecutor( IndyTrackingConfiguration config, MetricsManager metricsManager )
+    {
+        this.config = config;
+        this.metricsManager = metricsManager;
+        init();
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        int laneCount = config.ingestParallelLanes();
+        if ( laneCount <= 0 )
+        {
+            laneCount = Runtime.getRuntime().availableProcessors();
+        }
+        int queueDepth = config.ingestParallelQueueDepth();
+
+        Meter meter = metricsManager.getMeter();
+        processed = meter.counterBuilder( metricName( "ingest", "lane", "processed" ) )
+                         .setDescription( "Events processed per ingest lane" )
+                         .build();
+        duration = meter.histogramBuilder( metricName( "ingest", "lane", "duration" ) )
+                        .setDescription( "Event processing time per ingest lane" )
+                        .setUnit( "ms" )
+                        .build();
+
+        lanes = new Lane[laneCount];
+        for ( int i = 0; i < laneCount; i++ )
+        {
+            lanes[i] = new Lane( i, queueDepth );
+            lanes[i].start();
+        }
+
+        depth = meter.gaugeBuilder( metricName( "ingest", "lane", "depth" ) )
+                     .setDescription( "Events waiting per ingest lane" )
+                     .ofLongs()
+                     .buildWithCallback( measurement -> {
+                         for ( Lane lane : lanes )
+                         {
+                             measurement.record( lane.queue.size(), lane.attributes );
+                         }
+                     } );
+        logger.info( "Started {} ingest lanes with queue depth {}", laneCount, queueDepth );
+    }
+
+    /**
+     * Queue the task on the lane of the key. Blocks while that lane's queue is full.
+     */
+    public void execute( String key, Runnable task ) throws InterruptedException
+    {
+        lanes[Math.floorMod( key.hashCode(), lanes.length )].queue.put( task );
+    }
+
+    public int getLaneCount()
+    {
+        return lanes.length;
+    }
+
+    /**
+     * Stop taking new work and wait for the queued tasks to finish.
+     */
+    @PreDestroy
+    public void shutdown()
+    {
+        for ( Lane lane : lanes )
+        {
+            lane.running = false;
+        }
+        for ( Lane lane : lanes )
+        {
+            try
+            {
+                lane.thread.join( STOP_TIMEOUT_MILLIS );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        depth.close();
+    }
+
+    private final class Lane
+                    implements Runnable
+    {
+        private final BlockingQueue<Runnable> queue;
+
+        private final Attributes attributes;
+
+        private final Thread thread;
+
+        private volatile boolean running = true;
+
+        private Lane( int index, int queueDepth )
+        {
+            this.queue = new ArrayBlockingQueue<>( queueDepth );
+            this.attributes = Attributes.of( LANE, (long) index );
+            this.thread = new Thread( this, "ingest-lane-" + index );
+            this.thread.setDaemon( true );
+        }
+
+        private void start()
+        {
+            thread.start();
+        }
+
+        @Override
+        public void run()
+        {
+            while ( running || !queue.isEmpty() )
+            {
+                Runnable task;
+                try
+                {
+                    task = queue.poll( POLL_MILLIS, MILLISECONDS );
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if ( task == null )
+                {
+                    continue;
+                }
+
+                long start = System.nanoTime();
+                try
+                {
+                    task.run();
+                }
+                catch ( Throwable e )
+                {
+                    logger.error( "Ingest lane task failed", e );
+                }
+                finally
+                {
+                    duration.record( ( System.nanoTime() - start ) / NANOS_PER_MILLISECOND, attributes );
+                    processed.add( 1, attributes );
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.change;
+
+import org.commonjava.indy.service.tracking.config.IndyTrackingConfiguration;
+import org.commonjava.indy.service.tracking.data.cassandra.CassandraTrackingQuery;
+import org.commonjava.indy.service.tracking.data.spool.WriteAheadSpool;
+import org.commonjava.indy.service.tracking.model.TrackedContentEntry;
+import org.eclipse.microprofile.reactive.messaging.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Gathers tracked entries from the file-event-in channel and writes them with
+ * {@link CassandraTrackingQuery#recordArtifacts(java.util.Collection)} once the batch is full or the linger time is
+ * up. The messages of a batch are acked only after the batch is written, so the Kafka connector never commits an
+ * offset past an entry which is still in memory.
+ */
+@ApplicationScoped
+public class TrackingRecordBatcher
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    IndyTrackingConfiguration config;
+
+    @Inject
+    CassandraTrackingQuery recordManager;
+
+    @Inject
+    WriteAheadSpool spool;
+
+    private final Object flushLock = new Object();
+
+    private List<TrackedContentEntry> entries = new ArrayList<>();
+
+    private List<Message<?>> messages = new ArrayList<>();
+
+    private ScheduledExecutorService scheduler;
+
+    private ScheduledFuture<?> lingerTask;
+
+    protected TrackingRecordBatcher()
+    {
+    }
+
+    public TrackingRecordBatcher( IndyTrackingConfiguration config, CassandraTrackingQuery recordManager,
+                                  WriteAheadSpool spool )
+    {
+        this.config = config;
+        this.recordManager = recordManager;
+        this.spool = spool;
+        init();
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        scheduler = Executors.newSingleThreadScheduledExecutor( r -> {
+            Thread t = new Thread( r, "tracking-batch-flusher" );
+            t.setDaemon( true );
+            return t;
+        } );
+    }
+
+    /**
+     * Add an entry to the current batch. If the batch is full it is flushed on the calling thread, which holds back
+     * the consumer until the batch is written.
+     */
+    public void add( TrackedContentEntry entry, Message<?> message )
+    {
+        boolean full;
+        synchronized ( this )
+        {
+            entries.add( entry );
+            messages.add( message );
+            full = entries.size() >= config.ingestBatchSize();
+            if ( !full && lingerTask == null )
+            {
+                lingerTask = scheduler.schedule( this::flush, config.ingestBatchLingerMillis(), MILLISECONDS );
+            }
+        }
+        if ( full )
+        {
+            flush();
+        }
+    }
+
+    public void flush()
+    {
+        synchronized ( flushLock )
+        {
+            List<TrackedContentEntry> toWrite;
+            List<Message<?>> toAck;
+            synchronized ( this )
+            {
+                toWrite = entries;
+                toAck = messages;
+                entries = new ArrayList<>();
+                messages = new ArrayList<>();
+                if ( lingerTask != null )
+                {
+                    lingerTask.cancel( false );
+                    lingerTask = null;
+                }
+            }
+
+            if ( toWrite.isEmpty() )
+            {
+                return;
+            }
+
+            try
+            {
+                recordManager.recordArtifacts( toWrite );
+            }
+            catch ( Throwable e )
+            {
+                if ( spool.offer( toWrite ) )
+                {
+                    logger.warn( "Failed to record batch of {} entries, spooled for replay. Reason: {}",
+                                 toWrite.size(), e.getMessage() );
+                }
+                else
+                {
+                    logger.error( String.format( "Failed to record batch of %s entries. Reason: %s", toWrite.size(),
+                                                 e.getMessage() ), e );
+                }
+            }
+            finally
+            {
+                toAck.forEach( Message::ack );
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        scheduler.shutdown();
+        flush();
+    }
+}
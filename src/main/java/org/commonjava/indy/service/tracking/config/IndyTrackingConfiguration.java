@@ -42,4 +42,158 @@ public interface IndyTrackingConfiguration
     @WithDefault( "false" )
     Boolean deletionAdditionalGuardCheck();
 
+    /**
+     * How file events from the file-event-in channel are written to storage. See {@link IngestMode}.
+     */
+    @WithName( "ingest.mode" )
+    @WithDefault( "sync" )
+    IngestMode ingestMode();
+
+    /**
+     * Max entries gathered before a batch is flushed in {@link IngestMode#BATCH} mode.
+     */
+    @WithName( "ingest.batch.size" )
+    @WithDefault( "200" )
+    Integer ingestBatchSize();
+
+    /**
+     * Max time (millis) an entry waits for its batch to fill up in {@link IngestMode#BATCH} mode.
+     */
+    @WithName( "ingest.batch.linger-ms" )
+    @WithDefault( "50" )
+    Long ingestBatchLingerMillis();
+
+    /**
+     * Number of lanes in {@link IngestMode#PARALLEL} mode. 0 means one lane per available processor.
+     */
+    @WithName( "ingest.parallel.lanes" )
+    @WithDefault( "0" )
+    Integer ingestParallelLanes();
+
+    /**
+     * Max events queued on each lane in {@link IngestMode#PARALLEL} mode before the consumer is held back.
+     */
+    @WithName( "ingest.parallel.queue-depth" )
+    @WithDefault( "256" )
+    Integer ingestParallelQueueDepth();
+
+    /**
+     * Hold download entries for a short window and merge repeated downloads of the same path before writing them.
+     * Applies to all ingest modes except {@link IngestMode#BATCH}, which merges within a batch already.
+     */
+    @WithName( "ingest.coalesce.enabled" )
+    @WithDefault( "false" )
+    Boolean ingestCoalesceEnabled();
+
+    /**
+     * Max time (millis) download entries of a tracking key are held before they are written.
+     */
+    @WithName( "ingest.coalesce.window-ms" )
+    @WithDefault( "1000" )
+    Long ingestCoalesceWindowMillis();
+
+    /**
+     * Max unique download entries held over all tracking keys before everything is written.
+     */
+    @WithName( "ingest.coalesce.max-entries" )
+    @WithDefault( "10000" )
+    Integer ingestCoalesceMaxEntries();
+
+    /**
+     * Ratio of a heap pool still used after its last collection above which everything held is written right away.
+     */
+    @WithName( "ingest.coalesce.max-heap-ratio" )
+    @WithDefault( "0.8" )
+    Double ingestCoalesceMaxHeapRatio();
+
+    /**
+     * Keep entries which fail to be written to Cassandra in a local write-ahead spool under ${baseDir}/spool and
+     * replay them in the background.
+     */
+    @WithName( "spool.enabled" )
+    @WithDefault( "false" )
+    Boolean spoolEnabled();
+
+    /**
+     * Size of each memory-mapped spool segment file.
+     */
+    @WithName( "spool.segment-bytes" )
+    @WithDefault( "67108864" )
+    Integer spoolSegmentBytes();
+
+    /**
+     * Max spooled entries written to Cassandra at once during replay.
+     */
+    @WithName( "spool.replay.batch-size" )
+    @WithDefault( "100" )
+    Integer spoolReplayBatchSize();
+
+    /**
+     * Max time (millis) between replay attempts while Cassandra keeps failing.
+     */
+    @WithName( "spool.replay.max-backoff-ms" )
+    @WithDefault( "30000" )
+    Long spoolReplayMaxBackoffMillis();
+
+    /**
+     * Keep the rendered JSON report of sealed records gzip-compressed under ${baseDir}/reports, and send it as is to
+     * clients accepting gzip.
+     */
+    @WithName( "report-cache.enabled" )
+    @WithDefault( "true" )
+    Boolean reportCacheEnabled();
+
+    /**
+     * Max disk space of the report cache; least recently used reports are deleted above it.
+     */
+    @WithName( "report-cache.max-bytes" )
+    @WithDefault( "1073741824" )
+    Long reportCacheMaxBytes();
+
+    /**
+     * Max age of a cached report. Only this instance drops the reports of records deleted or recalculated through it,
+     * other instances see the change once the report expires.
+     */
+    @WithName( "report-cache.ttl-millis" )
+    @WithDefault( "300000" )
+    Long reportCacheTtlMillis();
+
+    /**
+     * Threads decoding the records of an import zip, between the thread reading the zip and the one writing them.
+     */
+    @WithName( "import.decoders" )
+    @WithDefault( "4" )
+    Integer importDecoders();
+
+    /**
+     * Max records waiting in each queue of the import pipeline before the stage feeding it is held back.
+     */
+    @WithName( "import.queue-depth" )
+    @WithDefault( "64" )
+    Integer importQueueDepth();
+
+    enum IngestMode
+    {
+        /**
+         * Each event is recorded on its own before the message is acked.
+         */
+        SYNC,
+        /**
+         * Events are gathered and written as single-partition batches, grouped by tracking key. Messages are acked
+         * once their batch is written.
+         */
+        BATCH,
+        /**
+         * Each event is written with the non-blocking storage API and its message is acked when the write completes.
+         * Writes in flight are capped by cassandra.async.maxInFlight.
+         */
+        ASYNC,
+        /**
+         * Events are spread over parallel lanes by tracking key, so events of one tracking key stay in order. Each
+         * message is acked once its lane has processed it; the Kafka connector commits the lowest offset below which
+         * every message is acked.
+         */
+        PARALLEL
+    }
+
 }
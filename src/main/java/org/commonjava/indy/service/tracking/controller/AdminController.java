@@ -17,12 +17,17 @@ package org.commonjava.indy.service.tracking.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.commonjava.indy.service.tracking.Constants;
+import org.commonjava.indy.service.tracking.change.DownloadCoalescer;
 import org.commonjava.indy.service.tracking.client.content.BatchDeleteRequest;
 import org.commonjava.indy.service.tracking.client.content.ContentService;
 import org.commonjava.indy.service.tracking.client.promote.PathsPromoteTrackingRecords;
 import org.commonjava.indy.service.tracking.client.promote.PromoteService;
 import org.commonjava.indy.service.tracking.config.IndyTrackingConfiguration;
 import org.commonjava.indy.service.tracking.data.cassandra.CassandraTrackingQuery;
+import org.commonjava.indy.service.tracking.data.cassandra.LegacyRecordMigrator;
+import org.commonjava.indy.service.tracking.data.cassandra.TrackingCatalog;
+import org.commonjava.indy.service.tracking.data.report.RecordImporter;
+import org.commonjava.indy.service.tracking.data.report.RenderedReportCache;
 import org.commonjava.indy.service.tracking.exception.ContentException;
 import org.commonjava.indy.service.tracking.exception.IndyWorkflowException;
 import org.commonjava.indy.service.tracking.jaxrs.DTOStreamingOutput;
@@ -33,9 +38,14 @@ import org.commonjava.indy.service.tracking.model.TrackingKey;
 import org.commonjava.indy.service.tracking.model.dto.ContentDTO;
 import org.commonjava.indy.service.tracking.model.dto.ContentEntryDTO;
 import org.commonjava.indy.service.tracking.model.dto.ContentTransferDTO;
+import org.commonjava.indy.service.tracking.model.dto.ImportResultDTO;
+import org.commonjava.indy.service.tracking.model.dto.LegacyMigrationStatusDTO;
 import org.commonjava.indy.service.tracking.model.dto.TrackedContentDTO;
 import org.commonjava.indy.service.tracking.model.dto.TrackedContentEntryDTO;
 import org.commonjava.indy.service.tracking.model.dto.TrackingIdsDTO;
+import org.commonjava.indy.service.tracking.model.dto.TrackingIdsPageDTO;
+import org.commonjava.indy.service.tracking.util.BinaryRecordCodec;
+import org.commonjava.indy.service.tracking.util.TrackingUtils;
 import org.commonjava.indy.service.tracking.util.UrlUtils;
 import org.eclipse.microprofile.rest.client.inject.RestClient;
 import org.slf4j.Logger;
@@ -44,28 +54,30 @@ import org.slf4j.LoggerFactory;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
-import java.nio.file.Paths;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
-import static org.commonjava.indy.service.tracking.util.TrackingUtils.readZipInputStreamAnd;
-import static org.commonjava.indy.service.tracking.util.TrackingUtils.zipTrackedContent;
 
 @ApplicationScoped
 public class AdminController
 {
-    public static final String FOLO_DIR = "folo";
-
     public static final String FOLO_SEALED_ZIP = "folo-sealed.zip";
 
+    public static final String FOLO_SEALED_BINARY = "folo-sealed.folb";
+
+    private static final int EXPORT_PAGE_SIZE = 1000;
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     @Inject
@@ -82,6 +94,15 @@ public class AdminController
     @Inject
     private CassandraTrackingQuery recordManager;
 
+    @Inject
+    private DownloadCoalescer coalescer;
+
+    @Inject
+    private RenderedReportCache reportCache;
+
+    @Inject
+    private LegacyRecordMigrator legacyMigrator;
+
     protected AdminController()
     {
     }
@@ -94,15 +115,36 @@ public class AdminController
     public TrackedContentDTO seal( final String id, final String baseUrl )
     {
         TrackingKey tk = new TrackingKey( id );
-        return constructContentDTO( recordManager.seal( tk ), baseUrl );
+        if ( coalescer != null && coalescer.isEnabled() )
+        {
+            // write the downloads still held in the coalescing window, they would be dropped after the seal
+            coalescer.flush( tk );
+        }
+        // sealing is a single header write, the entries are not loaded just to be dropped by the caller
+        recordManager.sealRecord( tk );
+        return new TrackedContentDTO( tk, new HashSet<>(), new HashSet<>() );
+    }
+
+    public int migrateRecordHeaders()
+    {
+        return recordManager.migrateRecordHeaders();
     }
 
-    public void importRecordZip( InputStream stream ) throws IndyWorkflowException
+    /**
+     * Import the records of an export zip through a {@link RecordImporter} pipeline.
+     *
+     * @param skipIdentical don't rewrite records which are stored sealed with the same entries already
+     */
+    public ImportResultDTO importRecordZip( InputStream stream, boolean skipIdentical ) throws IndyWorkflowException
     {
+        // the importer falls back to a single decoder and queue slot when not configured
+        int decoders = config != null ? config.importDecoders() : 0;
+        int queueDepth = config != null ? config.importQueueDepth() : 0;
+        RecordImporter importer = new RecordImporter( recordManager, decoders, queueDepth, skipIdentical,
+                                                      record -> invalidateReport( record.getKey().getId() ) );
         try
         {
-            int count = readZipInputStreamAnd( stream, ( record ) -> recordManager.addSealedRecord( record ) );
-            logger.debug( "Import records done, size: {}", count );
+            return importer.importRecords( stream );
         }
         catch ( Exception e )
         {
@@ -110,26 +152,75 @@ public class AdminController
         }
     }
 
-    public File renderReportZip() throws IndyWorkflowException
+    /**
+     * @return the seal time up to which an export started now is complete, to be passed as the {@code since} of the
+     *         next incremental export
+     */
+    public long getExportWatermark()
     {
-        Set<TrackedContent> sealed = recordManager.getSealed(); // only care about sealed records
-        try
-        {
-            File file = Paths.get( config.baseDir().getAbsolutePath(), FOLO_DIR, FOLO_SEALED_ZIP ).toFile();
-            if ( file.exists() )
-            {
-                file.delete();
-            }
-            file.getParentFile().mkdirs(); // make dirs if not exist
+        return recordManager.getSealWatermark();
+    }
+
+    /**
+     * Zip the sealed records straight into the response, reading one page of keys and one record at a time. The first
+     * page of keys is read before this returns, so a storage failure still fails the request.
+     *
+     * @param since only export the records sealed after this time and up to {@code until}, or all records if null
+     * @param until the watermark of this export, see {@link #getExportWatermark()}
+     */
+    public StreamingOutput exportReportZip( final Long since, final long until ) throws IndyWorkflowException
+    {
+        return exportSealed( TrackingUtils::zipTrackedContent, since, until );
+    }
 
-            zipTrackedContent( file, sealed );
+    /**
+     * Same as {@link #exportReportZip(Long, long)}, in the compact {@link BinaryRecordCodec} format.
+     */
+    public StreamingOutput exportReportBinary( final Long since, final long until ) throws IndyWorkflowException
+    {
+        return exportSealed( BinaryRecordCodec::write, since, until );
+    }
 
-            return file;
+    private StreamingOutput exportSealed( final RecordWriter writer, final Long since, final long until )
+                    throws IndyWorkflowException
+    {
+        final Iterator<TrackingKey> keys;
+        try
+        {
+            keys = since == null ?
+                            recordManager.iterateSealedTrackingKeys( EXPORT_PAGE_SIZE ) :
+                            recordManager.iterateSealedTrackingKeys( since, until, EXPORT_PAGE_SIZE );
         }
-        catch ( IOException e )
+        catch ( RuntimeException e )
         {
-            throw new IndyWorkflowException( "Failed to create zip file", e );
+            throw new IndyWorkflowException( "Failed to list sealed records", e );
         }
+        return out -> {
+            long start = System.currentTimeMillis();
+            int count = writer.write( out, new Iterator<TrackedContent>()
+            {
+                @Override
+                public boolean hasNext()
+                {
+                    return keys.hasNext();
+                }
+
+                @Override
+                public TrackedContent next()
+                {
+                    // bypass the record cache, an export would only evict what is in it
+                    return recordManager.getUncached( keys.next() );
+                }
+            } );
+            logger.info( "Exported {} sealed records{} in {} ms", count,
+                         since == null ? "" : " sealed since " + since + " up to " + until,
+                         System.currentTimeMillis() - start );
+        };
+    }
+
+    private interface RecordWriter
+    {
+        int write( OutputStream out, Iterator<TrackedContent> records ) throws IOException;
     }
 
     public TrackedContentDTO getRecord( final String id, String baseUrl ) throws IndyWorkflowException
@@ -138,16 +229,95 @@ public class AdminController
         return constructContentDTO( recordManager.get( tk ), baseUrl );
     }
 
+    /**
+     * Entries of the tracking record as DTOs, built one at a time while the caller iterates so a huge record is never
+     * held in memory. Each entry carries its effect since uploads and downloads are not separated.
+     */
+    public Iterator<TrackedContentEntryDTO> streamRecord( final String id, final String baseUrl )
+    {
+        final Iterator<TrackedContentEntry> entries = recordManager.iterate( new TrackingKey( id ) );
+        return new Iterator<TrackedContentEntryDTO>()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                return entries.hasNext();
+            }
+
+            @Override
+            public TrackedContentEntryDTO next()
+            {
+                TrackedContentEntry entry = entries.next();
+                TrackedContentEntryDTO entryDTO = constructContentEntryDTO( entry, baseUrl );
+                entryDTO.setEffect( entry.getEffect() );
+                return entryDTO;
+            }
+        };
+    }
+
+    /**
+     * @return the gzip-compressed JSON report of a sealed record, rendered on first use, which the caller must close;
+     *         or null if the record is not known to be sealed or the report cache is disabled
+     */
+    public InputStream getSealedReport( final String id, final String baseUrl )
+    {
+        if ( reportCache == null || !reportCache.isEnabled() )
+        {
+            return null;
+        }
+        InputStream report = reportCache.open( id );
+        if ( report != null )
+        {
+            return report;
+        }
+        final TrackingKey tk = new TrackingKey( id );
+        long version = reportCache.version();
+        if ( !recordManager.isSealedRecord( tk ) )
+        {
+            return null;
+        }
+        TrackedContentDTO record = constructContentDTO( recordManager.get( tk ), baseUrl );
+        if ( record == null || reportCache.put( id, record, version ) == null )
+        {
+            return null;
+        }
+        return reportCache.open( id );
+    }
+
     public TrackedContentDTO getLegacyRecord( final String id, String baseUrl ) throws IndyWorkflowException
     {
+        if ( recordManager.isLegacyMigrated() )
+        {
+            // all legacy records are in the records table now, so there is nothing more to find
+            return null;
+        }
         final TrackingKey tk = new TrackingKey( id );
         return constructContentDTO( recordManager.getLegacy( tk ), baseUrl );
     }
 
+    public LegacyMigrationStatusDTO getLegacyMigrationStatus()
+    {
+        return legacyMigrator == null ? null : legacyMigrator.getStatus();
+    }
+
+    public boolean startLegacyMigration()
+    {
+        return legacyMigrator != null && legacyMigrator.start();
+    }
+
     public void clearRecord( final String id ) throws ContentException
     {
         final TrackingKey tk = new TrackingKey( id );
         recordManager.delete( tk );
+        invalidateReport( id );
+    }
+
+    private void invalidateReport( final String id )
+    {
+        if ( reportCache != null )
+        {
+            reportCache.invalidate( id );
+        }
     }
 
     private TrackedContentDTO constructContentDTO( final TrackedContent content, final String baseUrl )
@@ -291,6 +461,26 @@ public class AdminController
         return null;
     }
 
+    public TrackingIdsPageDTO getTrackingIdsPage( final Set<Constants.TRACKING_TYPE> types, final String after,
+                                                  final int limit ) throws IndyWorkflowException
+    {
+        TrackingCatalog.Page page;
+        try
+        {
+            page = recordManager.getTrackingKeys( types, after, limit );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            throw new IndyWorkflowException( Response.Status.BAD_REQUEST.getStatusCode(), e.getMessage() );
+        }
+        if ( page == null )
+        {
+            throw new IndyWorkflowException( Response.Status.SERVICE_UNAVAILABLE.getStatusCode(),
+                                             "Tracking id catalog is not migrated yet" );
+        }
+        return new TrackingIdsPageDTO( page.getIds(), page.getNext() );
+    }
+
     public TrackedContentDTO recalculateRecord( final String id, final String baseUrl ) throws IndyWorkflowException
     {
         TrackingKey trackingKey = new TrackingKey( id );
@@ -318,6 +508,7 @@ public class AdminController
 
         TrackedContent recalculated = new TrackedContent( record.getKey(), recalculatedUploads, recalculatedDownloads );
         recordManager.replaceTrackingRecord( recalculated );
+        invalidateReport( id );
 
         return constructContentDTO( recalculated, baseUrl );
     }
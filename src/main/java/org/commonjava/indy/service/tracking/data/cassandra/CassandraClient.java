@@ -16,14 +16,24 @@
 package org.commonjava.indy.service.tracking.data.cassandra;
 
 import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.HostDistance;
+import com.datastax.driver.core.PoolingOptions;
+import com.datastax.driver.core.ProtocolOptions;
 import com.datastax.driver.core.Session;
 import com.datastax.driver.core.SocketOptions;
+import com.datastax.driver.core.policies.ConstantSpeculativeExecutionPolicy;
+import com.datastax.driver.core.policies.DCAwareRoundRobinPolicy;
+import com.datastax.driver.core.policies.LatencyAwarePolicy;
+import com.datastax.driver.core.policies.LoadBalancingPolicy;
+import com.datastax.driver.core.policies.TokenAwarePolicy;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -77,9 +87,20 @@ public class CassandraClient
                                          .withoutJMXReporting()
                                          .withRetryPolicy( new ConfigurableRetryPolicy( config.getReadRetries(),
                                                                                         config.getWriteRetries() ) )
-                                         .addContactPoint( host )
+                                         .addContactPoints( getContactPoints( host ) )
                                          .withPort( port )
+                                         .withLoadBalancingPolicy( getLoadBalancingPolicy( config ) )
+                                         .withPoolingOptions( getPoolingOptions( config ) )
                                          .withSocketOptions( socketOptions );
+        builder.withCompression( getCompression( config ) );
+        long speculativeDelay = config.getSpeculativeDelayMillis();
+        if ( speculativeDelay > 0 )
+        {
+            // only statements marked idempotent are ever executed speculatively, i.e. the record reads
+            int executions = Math.max( 1, config.getSpeculativeMaxExecutions() );
+            builder.withSpeculativeExecutionPolicy(
+                            new ConstantSpeculativeExecutionPolicy( speculativeDelay, executions ) );
+        }
         username = config.getCassandraUser();
         String password = config.getCassandraPass();
         if ( isNotBlank( username ) && isNotBlank( password ) )
@@ -90,6 +111,78 @@ public class CassandraClient
         cluster = builder.build();
     }
 
+    /**
+     * @param hosts one host, or several separated by commas, so the client can still connect when one of them is down
+     */
+    static String[] getContactPoints( String hosts )
+    {
+        return Arrays.stream( hosts.split( "," ) )
+                     .map( String::trim )
+                     .filter( StringUtils::isNotBlank )
+                     .toArray( String[]::new );
+    }
+
+    /**
+     * Requests go to the replicas of their partition first, and only to the nodes of the local datacenter. Without a
+     * configured local datacenter, the driver takes the datacenter of the first contact point it reaches. With latency
+     * awareness, hosts much slower than the fastest one are tried last, so the replicas are kept in that order rather
+     * than the topological one.
+     */
+    static LoadBalancingPolicy getLoadBalancingPolicy( CassandraConfiguration config )
+    {
+        DCAwareRoundRobinPolicy.Builder dcAware = DCAwareRoundRobinPolicy.builder();
+        if ( isNotBlank( config.getLocalDc() ) )
+        {
+            dcAware.withLocalDc( config.getLocalDc() );
+        }
+        if ( !config.isLatencyAwareEnabled() )
+        {
+            return new TokenAwarePolicy( dcAware.build() );
+        }
+        LatencyAwarePolicy latencyAware = LatencyAwarePolicy.builder( dcAware.build() )
+                                                            .withExclusionThreshold(
+                                                                            config.getLatencyAwareExclusionThreshold() )
+                                                            .build();
+        return new TokenAwarePolicy( latencyAware, TokenAwarePolicy.ReplicaOrdering.NEUTRAL );
+    }
+
+    /**
+     * Connections and in-flight requests per host of the local datacenter, the driver defaults where not configured.
+     */
+    static PoolingOptions getPoolingOptions( CassandraConfiguration config )
+    {
+        PoolingOptions pooling = new PoolingOptions();
+        int connections = config.getPoolConnectionsPerHost();
+        if ( connections > 0 )
+        {
+            pooling.setConnectionsPerHost( HostDistance.LOCAL, connections, connections );
+        }
+        if ( config.getPoolMaxRequestsPerConnection() > 0 )
+        {
+            pooling.setMaxRequestsPerConnection( HostDistance.LOCAL, config.getPoolMaxRequestsPerConnection() );
+        }
+        return pooling;
+    }
+
+    /**
+     * Only LZ4 ships with the service, the driver would fail on the first connection for SNAPPY without snappy-java.
+     *
+     * @throws IllegalArgumentException if SNAPPY is configured
+     */
+    static ProtocolOptions.Compression getCompression( CassandraConfiguration config )
+    {
+        ProtocolOptions.Compression compression = config.getCompression();
+        if ( compression == null )
+        {
+            return ProtocolOptions.Compression.NONE;
+        }
+        if ( compression == ProtocolOptions.Compression.SNAPPY )
+        {
+            throw new IllegalArgumentException( "Unsupported cassandra.compression: SNAPPY, use LZ4 or NONE" );
+        }
+        return compression;
+    }
+
     public Session getSession( String keyspace )
     {
         if ( !config.isEnabled() )
@@ -99,8 +192,8 @@ public class CassandraClient
         }
 
         return sessions.computeIfAbsent( keyspace, key -> {
-            logger.info( "Connect to Cassandra, host: {}, port: {}, user: {}, keyspace: {}", host, port, username,
-                         key );
+            logger.info( "Connect to Cassandra, host: {}, port: {}, local DC: {}, user: {}, keyspace: {}", host, port,
+                         config.getLocalDc(), username, key );
             try
             {
                 return cluster.connect();
@@ -15,6 +15,8 @@
  */
 package org.commonjava.indy.service.tracking.data.cassandra;
 
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.ProtocolOptions;
 import io.quarkus.runtime.Startup;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 
@@ -73,6 +75,142 @@ public class CassandraConfiguration
     @ConfigProperty( name = "cassandra.keyspaceReplicas", defaultValue = "0" )
     int keyspaceReplicas;
 
+    @Inject
+    @ConfigProperty( name = "cassandra.sealedGate.maxKeys", defaultValue = "100000" )
+    int sealedGateMaxKeys;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.sealedGate.inProgressTtlMillis", defaultValue = "5000" )
+    long sealedGateInProgressTtlMillis;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.sealedGate.warmup", defaultValue = "true" )
+    boolean sealedGateWarmup;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.async.maxInFlight", defaultValue = "1024" )
+    int asyncMaxInFlight;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.scan.parallelism", defaultValue = "4" )
+    int scanParallelism;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.scan.splits", defaultValue = "64" )
+    int scanSplits;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.scan.maxAttempts", defaultValue = "3" )
+    int scanMaxAttempts;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.legacyMigration.enabled", defaultValue = "false" )
+    boolean legacyMigrationEnabled;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.legacyMigration.ratePerSecond", defaultValue = "50" )
+    double legacyMigrationRatePerSecond;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.legacyMigration.parallelism", defaultValue = "4" )
+    int legacyMigrationParallelism;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.legacyMigration.ranges", defaultValue = "256" )
+    int legacyMigrationRanges;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.recordCache.maxBytes", defaultValue = "268435456" )
+    long recordCacheMaxBytes;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.recordCache.maxEntries", defaultValue = "10000" )
+    int recordCacheMaxEntries;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.recordCache.warmupKeys", defaultValue = "100" )
+    int recordCacheWarmupKeys;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.recordCache.ttlMillis", defaultValue = "300000" )
+    long recordCacheTtlMillis;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.sealedGate.sealedTtlMillis", defaultValue = "600000" )
+    long sealedGateSealedTtlMillis;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.sealLog.watermarkLagMillis", defaultValue = "60000" )
+    long sealLogWatermarkLagMillis;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.partialUpdates.maxRows", defaultValue = "100000" )
+    int partialUpdatesMaxRows;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.partialUpdates.ttlMillis", defaultValue = "5000" )
+    long partialUpdatesTtlMillis;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.recordBuckets", defaultValue = "0" )
+    int recordBuckets;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.consistency.ingestWrite", defaultValue = "QUORUM" )
+    ConsistencyLevel consistencyIngestWrite;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.consistency.inProgressRead", defaultValue = "QUORUM" )
+    ConsistencyLevel consistencyInProgressRead;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.consistency.sealedRead", defaultValue = "QUORUM" )
+    ConsistencyLevel consistencySealedRead;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.consistency.seal", defaultValue = "QUORUM" )
+    ConsistencyLevel consistencySeal;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.consistency.localDc", defaultValue = "false" )
+    boolean consistencyLocalDc;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.localDc" )
+    Optional<String> localDc;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.keyspaceReplicasPerDc" )
+    Optional<String> keyspaceReplicasPerDc;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.pool.connectionsPerHost", defaultValue = "0" )
+    int poolConnectionsPerHost;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.pool.maxRequestsPerConnection", defaultValue = "0" )
+    int poolMaxRequestsPerConnection;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.compression", defaultValue = "NONE" )
+    ProtocolOptions.Compression compression;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.speculative.delayMillis", defaultValue = "0" )
+    long speculativeDelayMillis;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.speculative.maxExecutions", defaultValue = "1" )
+    int speculativeMaxExecutions;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.latencyAware.enabled", defaultValue = "false" )
+    boolean latencyAwareEnabled;
+
+    @Inject
+    @ConfigProperty( name = "cassandra.latencyAware.exclusionThreshold", defaultValue = "2.0" )
+    double latencyAwareExclusionThreshold;
+
     public CassandraConfiguration()
     {
     }
@@ -186,4 +324,344 @@ public class CassandraConfiguration
     {
         this.keyspaceReplicas = keyspaceReplicas;
     }
+
+    public int getSealedGateMaxKeys()
+    {
+        return sealedGateMaxKeys;
+    }
+
+    public void setSealedGateMaxKeys( int sealedGateMaxKeys )
+    {
+        this.sealedGateMaxKeys = sealedGateMaxKeys;
+    }
+
+    public long getSealedGateInProgressTtlMillis()
+    {
+        return sealedGateInProgressTtlMillis;
+    }
+
+    public void setSealedGateInProgressTtlMillis( long sealedGateInProgressTtlMillis )
+    {
+        this.sealedGateInProgressTtlMillis = sealedGateInProgressTtlMillis;
+    }
+
+    public boolean isSealedGateWarmup()
+    {
+        return sealedGateWarmup;
+    }
+
+    public void setSealedGateWarmup( boolean sealedGateWarmup )
+    {
+        this.sealedGateWarmup = sealedGateWarmup;
+    }
+
+    public int getAsyncMaxInFlight()
+    {
+        return asyncMaxInFlight;
+    }
+
+    public void setAsyncMaxInFlight( int asyncMaxInFlight )
+    {
+        this.asyncMaxInFlight = asyncMaxInFlight;
+    }
+
+    public long getRecordCacheMaxBytes()
+    {
+        return recordCacheMaxBytes;
+    }
+
+    public void setRecordCacheMaxBytes( long recordCacheMaxBytes )
+    {
+        this.recordCacheMaxBytes = recordCacheMaxBytes;
+    }
+
+    public int getRecordCacheMaxEntries()
+    {
+        return recordCacheMaxEntries;
+    }
+
+    public void setRecordCacheMaxEntries( int recordCacheMaxEntries )
+    {
+        this.recordCacheMaxEntries = recordCacheMaxEntries;
+    }
+
+    public int getRecordCacheWarmupKeys()
+    {
+        return recordCacheWarmupKeys;
+    }
+
+    public void setRecordCacheWarmupKeys( int recordCacheWarmupKeys )
+    {
+        this.recordCacheWarmupKeys = recordCacheWarmupKeys;
+    }
+
+    public int getScanParallelism()
+    {
+        return scanParallelism;
+    }
+
+    public void setScanParallelism( int scanParallelism )
+    {
+        this.scanParallelism = scanParallelism;
+    }
+
+    public int getScanSplits()
+    {
+        return scanSplits;
+    }
+
+    public void setScanSplits( int scanSplits )
+    {
+        this.scanSplits = scanSplits;
+    }
+
+    public int getScanMaxAttempts()
+    {
+        return scanMaxAttempts;
+    }
+
+    public void setScanMaxAttempts( int scanMaxAttempts )
+    {
+        this.scanMaxAttempts = scanMaxAttempts;
+    }
+
+    public boolean isLegacyMigrationEnabled()
+    {
+        return legacyMigrationEnabled;
+    }
+
+    public void setLegacyMigrationEnabled( boolean legacyMigrationEnabled )
+    {
+        this.legacyMigrationEnabled = legacyMigrationEnabled;
+    }
+
+    public double getLegacyMigrationRatePerSecond()
+    {
+        return legacyMigrationRatePerSecond;
+    }
+
+    public void setLegacyMigrationRatePerSecond( double legacyMigrationRatePerSecond )
+    {
+        this.legacyMigrationRatePerSecond = legacyMigrationRatePerSecond;
+    }
+
+    public int getLegacyMigrationParallelism()
+    {
+        return legacyMigrationParallelism;
+    }
+
+    public void setLegacyMigrationParallelism( int legacyMigrationParallelism )
+    {
+        this.legacyMigrationParallelism = legacyMigrationParallelism;
+    }
+
+    public int getLegacyMigrationRanges()
+    {
+        return legacyMigrationRanges;
+    }
+
+    public void setLegacyMigrationRanges( int legacyMigrationRanges )
+    {
+        this.legacyMigrationRanges = legacyMigrationRanges;
+    }
+
+    public long getSealLogWatermarkLagMillis()
+    {
+        return sealLogWatermarkLagMillis;
+    }
+
+    public void setSealLogWatermarkLagMillis( long sealLogWatermarkLagMillis )
+    {
+        this.sealLogWatermarkLagMillis = sealLogWatermarkLagMillis;
+    }
+
+    public int getPartialUpdatesMaxRows()
+    {
+        return partialUpdatesMaxRows;
+    }
+
+    public void setPartialUpdatesMaxRows( int partialUpdatesMaxRows )
+    {
+        this.partialUpdatesMaxRows = partialUpdatesMaxRows;
+    }
+
+    public long getPartialUpdatesTtlMillis()
+    {
+        return partialUpdatesTtlMillis;
+    }
+
+    public void setPartialUpdatesTtlMillis( long partialUpdatesTtlMillis )
+    {
+        this.partialUpdatesTtlMillis = partialUpdatesTtlMillis;
+    }
+
+    public int getRecordBuckets()
+    {
+        return recordBuckets;
+    }
+
+    public void setRecordBuckets( int recordBuckets )
+    {
+        this.recordBuckets = recordBuckets;
+    }
+
+    public ConsistencyLevel getConsistencyIngestWrite()
+    {
+        return consistencyIngestWrite;
+    }
+
+    public void setConsistencyIngestWrite( ConsistencyLevel consistencyIngestWrite )
+    {
+        this.consistencyIngestWrite = consistencyIngestWrite;
+    }
+
+    public ConsistencyLevel getConsistencyInProgressRead()
+    {
+        return consistencyInProgressRead;
+    }
+
+    public void setConsistencyInProgressRead( ConsistencyLevel consistencyInProgressRead )
+    {
+        this.consistencyInProgressRead = consistencyInProgressRead;
+    }
+
+    public ConsistencyLevel getConsistencySealedRead()
+    {
+        return consistencySealedRead;
+    }
+
+    public void setConsistencySealedRead( ConsistencyLevel consistencySealedRead )
+    {
+        this.consistencySealedRead = consistencySealedRead;
+    }
+
+    public ConsistencyLevel getConsistencySeal()
+    {
+        return consistencySeal;
+    }
+
+    public void setConsistencySeal( ConsistencyLevel consistencySeal )
+    {
+        this.consistencySeal = consistencySeal;
+    }
+
+    public boolean isConsistencyLocalDc()
+    {
+        return consistencyLocalDc;
+    }
+
+    public void setConsistencyLocalDc( boolean consistencyLocalDc )
+    {
+        this.consistencyLocalDc = consistencyLocalDc;
+    }
+
+    public String getLocalDc()
+    {
+        return localDc == null ? "" : localDc.orElse( "" );
+    }
+
+    public void setLocalDc( String localDc )
+    {
+        this.localDc = of( localDc );
+    }
+
+    public String getKeyspaceReplicasPerDc()
+    {
+        return keyspaceReplicasPerDc == null ? "" : keyspaceReplicasPerDc.orElse( "" );
+    }
+
+    public void setKeyspaceReplicasPerDc( String keyspaceReplicasPerDc )
+    {
+        this.keyspaceReplicasPerDc = of( keyspaceReplicasPerDc );
+    }
+
+    public int getPoolConnectionsPerHost()
+    {
+        return poolConnectionsPerHost;
+    }
+
+    public void setPoolConnectionsPerHost( int poolConnectionsPerHost )
+    {
+        this.poolConnectionsPerHost = poolConnectionsPerHost;
+    }
+
+    public int getPoolMaxRequestsPerConnection()
+    {
+        return poolMaxRequestsPerConnection;
+    }
+
+    public void setPoolMaxRequestsPerConnection( int poolMaxRequestsPerConnection )
+    {
+        this.poolMaxRequestsPerConnection = poolMaxRequestsPerConnection;
+    }
+
+    public ProtocolOptions.Compression getCompression()
+    {
+        return compression;
+    }
+
+    public void setCompression( ProtocolOptions.Compression compression )
+    {
+        this.compression = compression;
+    }
+
+    public long getSpeculativeDelayMillis()
+    {
+        return speculativeDelayMillis;
+    }
+
+    public void setSpeculativeDelayMillis( long speculativeDelayMillis )
+    {
+        this.speculativeDelayMillis = speculativeDelayMillis;
+    }
+
+    public int getSpeculativeMaxExecutions()
+    {
+        return speculativeMaxExecutions;
+    }
+
+    public void setSpeculativeMaxExecutions( int speculativeMaxExecutions )
+    {
+        this.speculativeMaxExecutions = speculativeMaxExecutions;
+    }
+
+    public boolean isLatencyAwareEnabled()
+    {
+        return latencyAwareEnabled;
+    }
+
+    public void setLatencyAwareEnabled( boolean latencyAwareEnabled )
+    {
+        this.latencyAwareEnabled = latencyAwareEnabled;
+    }
+
+    public double getLatencyAwareExclusionThreshold()
+    {
+        return latencyAwareExclusionThreshold;
+    }
+
+    public void setLatencyAwareExclusionThreshold( double latencyAwareExclusionThreshold )
+    {
+        this.latencyAwareExclusionThreshold = latencyAwareExclusionThreshold;
+    }
+
+    public long getRecordCacheTtlMillis()
+    {
+        return recordCacheTtlMillis;
+    }
+
+    public void setRecordCacheTtlMillis( long recordCacheTtlMillis )
+    {
+        this.recordCacheTtlMillis = recordCacheTtlMillis;
+    }
+
+    public long getSealedGateSealedTtlMillis()
+    {
+        return sealedGateSealedTtlMillis;
+    }
+
+    public void setSealedGateSealedTtlMillis( long sealedGateSealedTtlMillis )
+    {
+        this.sealedGateSealedTtlMillis = sealedGateSealedTtlMillis;
+    }
 }
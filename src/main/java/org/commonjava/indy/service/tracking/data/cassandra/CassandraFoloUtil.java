@@ -22,6 +22,49 @@ public class CassandraFoloUtil
 
     public static final String TABLE_FOLO_LEGACY = "records";
 
+    /**
+     * Records table of the bucketed layout, used instead of {@link #TABLE_FOLO} when cassandra.recordBuckets is set.
+     * The rows of a tracking record are spread over that many partitions, so a huge build is not one huge partition.
+     */
+    public static final String TABLE_FOLO_BUCKETED = "records2_bucketed";
+
+    /**
+     * Partition-level state of the records in {@link #TABLE_FOLO}, one row per tracking key. Records written before
+     * this table existed have no header until their state is first read, see CassandraTrackingQuery.
+     */
+    public static final String TABLE_FOLO_HEADER = "records2_header";
+
+    /**
+     * Tracking ids of {@link #TABLE_FOLO} by state and creation day, for listing ids without scanning the records.
+     */
+    public static final String TABLE_FOLO_CATALOG = "records2_catalog";
+
+    /**
+     * The (state, day) buckets of {@link #TABLE_FOLO_CATALOG} which hold any tracking id, newest day first.
+     */
+    public static final String TABLE_FOLO_CATALOG_DAYS = "records2_catalog_days";
+
+    /**
+     * Tracking ids of sealed records by the day and time they were sealed, for finding the records sealed since a
+     * given time.
+     */
+    public static final String TABLE_FOLO_SEAL_LOG = "records2_seal_log";
+
+    /**
+     * The days of {@link #TABLE_FOLO_SEAL_LOG} which hold any tracking id.
+     */
+    public static final String TABLE_FOLO_SEAL_LOG_DAYS = "records2_seal_log_days";
+
+    /**
+     * Completion marks of the one-off data migrations.
+     */
+    public static final String TABLE_FOLO_MIGRATION = "records2_migration";
+
+    /**
+     * Progress of the token-range scans of a migration, one row per completed range.
+     */
+    public static final String TABLE_FOLO_MIGRATION_RANGES = "records2_migration_ranges";
+
     public static String getSchemaCreateTableFolo( String keySpace )
     {
         return "CREATE TABLE IF NOT EXISTS " + keySpace + "." + TABLE_FOLO + " (" + "tracking_key text,"
@@ -31,6 +74,16 @@ public class CassandraFoloUtil
                         + "timestamps set<bigint>," + "PRIMARY KEY ((tracking_key),store_key,path,store_effect)" + ");";
     }
 
+    public static String getSchemaCreateTableFoloBucketed( String keySpace )
+    {
+        return "CREATE TABLE IF NOT EXISTS " + keySpace + "." + TABLE_FOLO_BUCKETED + " (" + "tracking_key text,"
+                        + "bucket int," + "sealed boolean," + "store_key text," + "access_channel text,"
+                        + "path text," + "origin_url text," + "store_effect text," + "md5 text," + "sha256 text,"
+                        + "sha1 text," + "size bigint," + "started bigint," // started timestamp *
+                        + "timestamps set<bigint>,"
+                        + "PRIMARY KEY ((tracking_key, bucket),store_key,path,store_effect)" + ");";
+    }
+
     public static String getSchemaCreateTableFoloLegacy( String keySpace )
     {
         return "CREATE TABLE IF NOT EXISTS " + keySpace + "." + TABLE_FOLO_LEGACY + " (" + "tracking_key text,"
@@ -40,4 +93,49 @@ public class CassandraFoloUtil
                         + "timestamps set<bigint>," + "PRIMARY KEY ((tracking_key),store_key,path,store_effect)" + ");";
     }
 
+    public static String getSchemaCreateTableFoloHeader( String keySpace )
+    {
+        return "CREATE TABLE IF NOT EXISTS " + keySpace + "." + TABLE_FOLO_HEADER + " (" + "tracking_key text,"
+                        + "sealed boolean," + "created bigint," + "sealed_at bigint," + "PRIMARY KEY (tracking_key)"
+                        + ");";
+    }
+
+    public static String getSchemaCreateTableFoloCatalog( String keySpace )
+    {
+        return "CREATE TABLE IF NOT EXISTS " + keySpace + "." + TABLE_FOLO_CATALOG + " (" + "state text," + "day int,"
+                        + "tracking_key text," + "created bigint," + "PRIMARY KEY ((state, day), tracking_key)" + ");";
+    }
+
+    public static String getSchemaCreateTableFoloCatalogDays( String keySpace )
+    {
+        return "CREATE TABLE IF NOT EXISTS " + keySpace + "." + TABLE_FOLO_CATALOG_DAYS + " (" + "state text,"
+                        + "day int," + "PRIMARY KEY ((state), day)" + ") WITH CLUSTERING ORDER BY (day DESC);";
+    }
+
+    public static String getSchemaCreateTableFoloSealLog( String keySpace )
+    {
+        return "CREATE TABLE IF NOT EXISTS " + keySpace + "." + TABLE_FOLO_SEAL_LOG + " (" + "day int,"
+                        + "sealed_at bigint," + "tracking_key text," + "PRIMARY KEY ((day), sealed_at, tracking_key)"
+                        + ");";
+    }
+
+    public static String getSchemaCreateTableFoloSealLogDays( String keySpace )
+    {
+        return "CREATE TABLE IF NOT EXISTS " + keySpace + "." + TABLE_FOLO_SEAL_LOG_DAYS + " (" + "name text,"
+                        + "day int," + "PRIMARY KEY ((name), day)" + ");";
+    }
+
+    public static String getSchemaCreateTableFoloMigration( String keySpace )
+    {
+        return "CREATE TABLE IF NOT EXISTS " + keySpace + "." + TABLE_FOLO_MIGRATION + " (" + "name text,"
+                        + "completed bigint," + "PRIMARY KEY (name)" + ");";
+    }
+
+    public static String getSchemaCreateTableFoloMigrationRanges( String keySpace )
+    {
+        return "CREATE TABLE IF NOT EXISTS " + keySpace + "." + TABLE_FOLO_MIGRATION_RANGES + " (" + "name text,"
+                        + "range_start bigint," + "range_end bigint," + "records bigint," + "completed bigint,"
+                        + "PRIMARY KEY ((name), range_start)" + ");";
+    }
+
 }
@@ -16,8 +16,11 @@
 package org.commonjava.indy.service.tracking.data.cassandra;
 
 import com.datastax.driver.core.*;
-import com.datastax.driver.mapping.Mapper;
-import com.datastax.driver.mapping.MappingManager;
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.opentelemetry.api.metrics.LongHistogram;
+import org.commonjava.indy.service.tracking.Constants.TRACKING_TYPE;
+import org.commonjava.indy.service.tracking.data.metrics.MetricsManager;
 import org.commonjava.indy.service.tracking.exception.ContentException;
 import org.commonjava.indy.service.tracking.exception.IndyLifecycleException;
 import org.commonjava.indy.service.tracking.exception.IndyWorkflowException;
@@ -31,16 +34,33 @@ import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
-import static com.datastax.driver.core.ConsistencyLevel.QUORUM;
-import static org.commonjava.indy.service.tracking.data.cassandra.CassandraFoloUtil.TABLE_FOLO;
+import static org.commonjava.indy.service.tracking.data.cassandra.CassandraFoloUtil.TABLE_FOLO_HEADER;
 import static org.commonjava.indy.service.tracking.data.cassandra.CassandraFoloUtil.TABLE_FOLO_LEGACY;
-import static org.commonjava.indy.service.tracking.data.cassandra.DtxTrackingRecord.fromCassandraRow;
+import static org.commonjava.indy.service.tracking.data.cassandra.ConsistencyPolicy.Operation.INGEST_WRITE;
+import static org.commonjava.indy.service.tracking.data.cassandra.ConsistencyPolicy.Operation.IN_PROGRESS_READ;
+import static org.commonjava.indy.service.tracking.data.cassandra.ConsistencyPolicy.Operation.SEAL;
+import static org.commonjava.indy.service.tracking.data.metrics.MetricsManager.metricName;
 
 @ApplicationScoped
 public class CassandraTrackingQuery
@@ -49,6 +69,30 @@ public class CassandraTrackingQuery
 
     private final static String UPLOADS = "UPLOAD";
 
+    /**
+     * Max statements in one UNLOGGED batch. Cassandra rejects batches over batch_size_fail_threshold_in_kb (50KB by
+     * default), so a big partition group is split into several batches.
+     */
+    private final static int MAX_BATCH_STATEMENTS = 16;
+
+    private final static int WARMUP_FETCH_SIZE = 1000;
+
+    private final static int DEFAULT_MAX_IN_FLIGHT = 1024;
+
+    private final static int STREAM_FETCH_SIZE = 500;
+
+    private final static int SCAN_FETCH_SIZE = 1000;
+
+    /**
+     * Restriction of the full-table scans to the token range they are given by the {@link TokenRangeScanner}.
+     */
+    public final static String TOKEN_RANGE = " WHERE token(tracking_key) > ? AND token(tracking_key) <= ?";
+
+    /**
+     * Name of the migration mark set once all records of the legacy table are copied into the records table.
+     */
+    public final static String LEGACY_MIGRATION = "legacy";
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     @Inject
@@ -57,23 +101,48 @@ public class CassandraTrackingQuery
     @Inject
     CassandraConfiguration config;
 
+    @Inject
+    MetricsManager metricsManager;
+
     private Session session;
 
-    private Mapper<DtxTrackingRecord> trackingMapper;
+    private RecordStatements recordStatements;
+
+    private SealedKeyGate sealedGate;
+
+    private MigrationMarks migrationMarks;
+
+    private TokenRangeScanner scanner;
 
-    private PreparedStatement getTrackingRecord;
+    private TrackingCatalog catalog;
+
+    private SealedRecordCache recordCache;
+
+    private InFlightLimiter writeLimiter;
+
+    private WrittenRows writtenRows;
+
+    private PreparedStatement getTrackingRecordStates;
+
+    private PreparedStatement getTrackingHeader;
+
+    private PreparedStatement getTrackingHeaderStates;
+
+    private PreparedStatement sealTrackingHeader;
+
+    private PreparedStatement touchTrackingHeader;
+
+    private PreparedStatement deleteTrackingHeader;
 
     private PreparedStatement getTrackingKeys;
 
     private PreparedStatement getLegacyTrackingKeys;
 
-    private PreparedStatement getTrackingRecordsByTrackingKey;
-
     private PreparedStatement getLegacyTrackingRecordsByTrackingKey;
 
-    private PreparedStatement isTrackingRecordExist;
+    private LongHistogram partitionRows;
 
-    private PreparedStatement deleteTrackingRecordsByTrackingKey;
+    private ConsistencyPolicy consistency;
 
     public CassandraTrackingQuery()
     {
@@ -93,75 +162,628 @@ public class CassandraTrackingQuery
         String keySpace = config.getKeyspace();
 
         session = client.getSession( keySpace );
-        logger.info( "Cassandra keyspace replicas configured: {}", config.getKeyspaceReplicas() );
-        session.execute( SchemaUtils.getSchemaCreateKeyspace( keySpace, config.getKeyspaceReplicas() ) );
+        createKeyspace( keySpace );
         session.execute( CassandraFoloUtil.getSchemaCreateTableFolo( keySpace ) );
         session.execute( CassandraFoloUtil.getSchemaCreateTableFoloLegacy( keySpace ) );
+        session.execute( CassandraFoloUtil.getSchemaCreateTableFoloHeader( keySpace ) );
+        if ( config.getRecordBuckets() > 0 )
+        {
+            session.execute( CassandraFoloUtil.getSchemaCreateTableFoloBucketed( keySpace ) );
+            logger.info( "Tracking records are stored in {} buckets per record", config.getRecordBuckets() );
+        }
 
-        MappingManager manager = new MappingManager( session );
+        consistency = new ConsistencyPolicy( config );
+        recordStatements = new RecordStatements( session, keySpace, config.getRecordBuckets(), consistency );
+        String records = recordStatements.getTable();
 
-        trackingMapper = manager.mapper( DtxTrackingRecord.class, keySpace );
+        // in the bucketed layout this lists a tracking key once per bucket which holds any of its rows
+        getTrackingRecordStates = session.prepare(
+                        "SELECT tracking_key, sealed, started FROM " + records + recordStatements.getTokenRange()
+                                        + " PER PARTITION LIMIT 1;" );
 
-        getTrackingRecord = session.prepare( "SELECT * FROM " + keySpace + "." + TABLE_FOLO
-                                                             + " WHERE tracking_key=? AND store_key=? AND path=? AND store_effect=?;" );
-        getTrackingRecord.setConsistencyLevel( QUORUM );
+        getTrackingHeader = session.prepare( "SELECT sealed, created, sealed_at FROM " + keySpace + "."
+                                                             + TABLE_FOLO_HEADER + " WHERE tracking_key=?;" );
+        getTrackingHeader.setConsistencyLevel( consistency.get( IN_PROGRESS_READ ) );
+        getTrackingHeader.setIdempotent( true );
 
-        getTrackingKeys = session.prepare( "SELECT distinct tracking_key FROM " + keySpace + "." + TABLE_FOLO + ";" );
-        getTrackingKeys.setConsistencyLevel( QUORUM );
+        getTrackingHeaderStates = session.prepare(
+                        "SELECT tracking_key, sealed FROM " + keySpace + "." + TABLE_FOLO_HEADER + ";" );
 
-        getLegacyTrackingKeys = session.prepare(
-                        "SELECT distinct tracking_key FROM " + keySpace + "." + TABLE_FOLO_LEGACY + ";" );
+        sealTrackingHeader = session.prepare( "UPDATE " + keySpace + "." + TABLE_FOLO_HEADER
+                                                              + " SET sealed=true, sealed_at=?, created=?"
+                                                              + " WHERE tracking_key=?;" );
+        sealTrackingHeader.setConsistencyLevel( consistency.get( SEAL ) );
 
-        getTrackingRecordsByTrackingKey =
-                        session.prepare( "SELECT * FROM " + keySpace + "." + TABLE_FOLO + " WHERE tracking_key=?;" );
-        getTrackingRecordsByTrackingKey.setConsistencyLevel( QUORUM );
+        touchTrackingHeader = session.prepare(
+                        "UPDATE " + keySpace + "." + TABLE_FOLO_HEADER + " SET created=? WHERE tracking_key=?;" );
 
-        getLegacyTrackingRecordsByTrackingKey = session.prepare(
-                        "SELECT * FROM " + keySpace + "." + TABLE_FOLO_LEGACY + " WHERE tracking_key=?;" );
-        getLegacyTrackingRecordsByTrackingKey.setConsistencyLevel( QUORUM );
+        deleteTrackingHeader = session.prepare(
+                        "DELETE FROM " + keySpace + "." + TABLE_FOLO_HEADER + " WHERE tracking_key=?;" );
+        deleteTrackingHeader.setConsistencyLevel( consistency.get( SEAL ) );
+
+        getTrackingKeys = session.prepare( "SELECT distinct " + recordStatements.getPartitionKey() + " FROM " + records
+                                                           + recordStatements.getTokenRange() + ";" );
+        getTrackingKeys.setConsistencyLevel( consistency.get( IN_PROGRESS_READ ) );
 
-        isTrackingRecordExist = session.prepare(
-                        "SELECT count(*) FROM " + keySpace + "." + TABLE_FOLO + " WHERE tracking_key=?;" );
+        getLegacyTrackingKeys = session.prepare(
+                        "SELECT distinct tracking_key FROM " + keySpace + "." + TABLE_FOLO_LEGACY + TOKEN_RANGE + ";" );
+
+        getLegacyTrackingRecordsByTrackingKey = session.prepare(
+                        RecordStatements.select( keySpace + "." + TABLE_FOLO_LEGACY ) + " WHERE tracking_key=?;" );
+        getLegacyTrackingRecordsByTrackingKey.setConsistencyLevel( consistency.get( IN_PROGRESS_READ ) );
+        getLegacyTrackingRecordsByTrackingKey.setIdempotent( true );
 
-        deleteTrackingRecordsByTrackingKey =
-                        session.prepare( "DELETE FROM " + keySpace + "." + TABLE_FOLO + " WHERE tracking_key=?;" );
-        deleteTrackingRecordsByTrackingKey.setConsistencyLevel( QUORUM );
+        scanner = new TokenRangeScanner( session, config.getScanParallelism(), config.getScanSplits(),
+                                         config.getScanMaxAttempts() );
+        migrationMarks = new MigrationMarks( session, keySpace, consistency );
+        catalog = new TrackingCatalog( session, keySpace, migrationMarks, consistency );
 
         logger.info( "-- Cassandra Folo Records Keyspace and Tables created" );
+
+        sealedGate = new SealedKeyGate( config.getSealedGateMaxKeys(), config.getSealedGateInProgressTtlMillis(),
+                                        config.getSealedGateSealedTtlMillis() );
+        int maxInFlight = config.getAsyncMaxInFlight();
+        writeLimiter = new InFlightLimiter( maxInFlight > 0 ? maxInFlight : DEFAULT_MAX_IN_FLIGHT );
+        if ( config.getPartialUpdatesMaxRows() > 0 && config.getPartialUpdatesTtlMillis() > 0 )
+        {
+            writtenRows = new WrittenRows( config.getPartialUpdatesMaxRows(), config.getPartialUpdatesTtlMillis() );
+        }
+        if ( config.getRecordCacheMaxBytes() > 0 && config.getRecordCacheMaxEntries() > 0 )
+        {
+            recordCache = new SealedRecordCache( config.getRecordCacheMaxBytes(), config.getRecordCacheMaxEntries(),
+                                                 config.getRecordCacheTtlMillis() );
+            if ( metricsManager != null )
+            {
+                recordCache.registerMetrics( metricsManager.getMeter() );
+            }
+        }
+        if ( metricsManager != null )
+        {
+            partitionRows = metricsManager.getMeter()
+                                          .histogramBuilder( metricName( "record", "partition", "rows" ) )
+                                          .setDescription( "Rows per records table partition, as read in full" )
+                                          .ofLongs()
+                                          .build();
+        }
+        boolean warmUpGate = config.isSealedGateWarmup();
+        boolean warmUpCache = recordCache != null && config.getRecordCacheWarmupKeys() > 0;
+        if ( warmUpGate || warmUpCache )
+        {
+            Thread warmup = new Thread( () -> {
+                if ( warmUpGate )
+                {
+                    warmUpSealedGate();
+                }
+                if ( warmUpCache )
+                {
+                    warmUpRecordCache( config.getRecordCacheWarmupKeys() );
+                }
+            }, "tracking-warmup" );
+            warmup.setDaemon( true );
+            warmup.start();
+        }
     }
 
-    public boolean recordArtifact( TrackedContentEntry entry ) throws ContentException, IndyWorkflowException
+    /**
+     * Create the keyspace with per-datacenter replication factors if configured, else with one factor for the whole
+     * cluster. An existing keyspace is not altered, changing its replication takes an ALTER KEYSPACE and a repair.
+     */
+    private void createKeyspace( String keySpace )
     {
+        Map<String, Integer> replicasPerDc = SchemaUtils.parseReplicasPerDc( config.getKeyspaceReplicasPerDc() );
+        if ( replicasPerDc.isEmpty() )
+        {
+            logger.info( "Cassandra keyspace replicas configured: {}", config.getKeyspaceReplicas() );
+            session.execute( SchemaUtils.getSchemaCreateKeyspace( keySpace, config.getKeyspaceReplicas() ) );
+            return;
+        }
+        logger.info( "Cassandra keyspace replicas configured per datacenter: {}", replicasPerDc );
+        session.execute( SchemaUtils.getSchemaCreateKeyspace( keySpace, replicasPerDc ) );
+        KeyspaceMetadata metadata = session.getCluster().getMetadata().getKeyspace( keySpace );
+        if ( metadata != null && !metadata.getReplication().get( "class" ).endsWith( "NetworkTopologyStrategy" ) )
+        {
+            logger.warn( "Keyspace {} already exists with replication {}, per-datacenter replicas are not applied",
+                         keySpace, metadata.getReplication() );
+        }
+    }
 
-        String buildId = entry.getTrackingKey().getId();
-        String storeKey = entry.getStoreKey().toString();
-        String path = entry.getPath();
-        String effect = entry.getEffect().toString();
-
-        BoundStatement bind = getTrackingRecord.bind( buildId, storeKey, path, effect );
-        ResultSet trackingRecord = session.execute( bind );
-        Row one = trackingRecord.one();
+    /**
+     * Load sealed tracking keys into the sealed-key gate, one row per partition, until the gate is full. Keys which are
+     * not loaded are still answered correctly, but they cost a storage read the first time they are seen.
+     */
+    private void warmUpSealedGate()
+    {
+        long start = System.currentTimeMillis();
+        try
+        {
+            Statement statement = getTrackingHeaderStates.bind().setFetchSize( WARMUP_FETCH_SIZE );
+            for ( Row row : session.execute( statement ) )
+            {
+                if ( row.getBool( "sealed" ) )
+                {
+                    sealedGate.markSealed( row.getString( "tracking_key" ) );
+                    if ( sealedGate.isSealedFull() )
+                    {
+                        break;
+                    }
+                }
+            }
+            logger.info( "Sealed-key gate warmed up with {} keys in {} ms", sealedGate.sealedSize(),
+                         System.currentTimeMillis() - start );
+        }
+        catch ( Exception e )
+        {
+            logger.warn( "Failed to warm up sealed-key gate, keys will be checked in storage on first use", e );
+        }
+    }
 
-        if ( one != null )
+    /**
+     * Load the most recently created sealed records into the record cache. This needs the tracking id catalog, so it is
+     * skipped until the catalog is migrated.
+     */
+    private void warmUpRecordCache( int keys )
+    {
+        long start = System.currentTimeMillis();
+        try
         {
-            DtxTrackingRecord dtxTrackingRecord = fromCassandraRow( one );
-            Boolean state = dtxTrackingRecord.getState();
-            if ( state )
+            if ( !catalog.isReady() )
             {
-                throw new ContentException( "Tracking record: {} is already sealed!", entry.getTrackingKey() );
+                logger.info( "Tracking id catalog is not migrated yet, skip warming up the record cache" );
+                return;
             }
+            for ( String id : catalog.list( EnumSet.of( TRACKING_TYPE.SEALED ), null, keys ).getIds() )
+            {
+                get( new TrackingKey( id ) );
+            }
+            logger.info( "Record cache warmed up with {} records ({} bytes) in {} ms", recordCache.size(),
+                         recordCache.getBytes(), System.currentTimeMillis() - start );
+        }
+        catch ( Exception e )
+        {
+            logger.warn( "Failed to warm up record cache", e );
+        }
+    }
+
+    public boolean recordArtifact( TrackedContentEntry entry ) throws ContentException, IndyWorkflowException
+    {
+        if ( isSealed( entry.getTrackingKey() ) )
+        {
+            throw new ContentException( "Tracking record: {} is already sealed!", entry.getTrackingKey() );
         }
-        // Always override prev one since some builds may upload artifact more than once
+        // Override prev checksums since some builds may upload artifact more than once; unchanged ones are left out
+        // of the write, see WrittenRows for how long another instance's values may win over them
         DtxTrackingRecord dtxTrackingRecord = new DtxTrackingRecord( entry );
-        trackingMapper.save( dtxTrackingRecord ); //  optional Options with TTL, timestamp...
+        session.execute( recordStatement( dtxTrackingRecord ) );
+        markWritten( dtxTrackingRecord );
         return true;
     }
 
+    /**
+     * Write of one accessed entry. The timestamps are added to the set already stored for the row rather than
+     * replacing it. A row this instance wrote recently is only updated with the timestamps and the checksum and size
+     * columns which changed.
+     */
+    private BoundStatement recordStatement( DtxTrackingRecord record )
+    {
+        WrittenRows.Columns previous = writtenRows != null ? writtenRows.lastWritten( record ) : null;
+        return previous == null ? recordStatements.upsert( record ) : recordStatements.update( record, previous );
+    }
+
+    private void markWritten( DtxTrackingRecord record )
+    {
+        if ( writtenRows != null )
+        {
+            writtenRows.markWritten( record );
+        }
+    }
+
+    /**
+     * Non-blocking variant of {@link #recordArtifact(TrackedContentEntry)}, built on the driver's async API. At most
+     * cassandra.async.maxInFlight writes are in flight at once; further calls are queued until a write completes.
+     *
+     * @return a stage which completes when the entry is written, or completes exceptionally with a
+     *         {@link ContentException} if the tracking record is already sealed.
+     */
+    public CompletionStage<Boolean> recordArtifactAsync( TrackedContentEntry entry )
+    {
+        TrackingKey trackingKey = entry.getTrackingKey();
+        return writeLimiter.acquire().thenCompose( v -> isSealedAsync( trackingKey ) ).thenCompose( sealed -> {
+            if ( sealed )
+            {
+                CompletableFuture<Boolean> failed = new CompletableFuture<>();
+                failed.completeExceptionally(
+                                new ContentException( "Tracking record: {} is already sealed!", trackingKey ) );
+                return failed;
+            }
+            DtxTrackingRecord record = new DtxTrackingRecord( entry );
+            return toCompletionStage( session.executeAsync( recordStatement( record ) ) ).thenApply( saved -> {
+                markWritten( record );
+                return true;
+            } );
+        } ).whenComplete( ( result, error ) -> writeLimiter.release() );
+    }
+
+    /**
+     * @return a stage which completes once {@link #recordArtifactAsync(TrackedContentEntry)} can start a write right
+     *         away. Consumers wait on it to get back-pressure instead of queueing without bound.
+     */
+    public CompletionStage<Void> whenWriteCapacityAvailable()
+    {
+        return writeLimiter.whenAvailable();
+    }
+
+    /**
+     * Record a batch of entries. Entries are grouped by tracking key, which is the partition key of the records table,
+     * and each group is written as single-partition UNLOGGED batches. Entries for the same row are merged first since
+     * all statements in one batch share the same write timestamp. Groups whose tracking record is already sealed are
+     * skipped.
+     *
+     * @return count of rows written
+     */
+    public int recordArtifacts( Collection<TrackedContentEntry> entries )
+    {
+        Map<TrackingKey, Map<List<Object>, TrackedContentEntry>> partitions = groupByRow( entries );
+
+        int written = 0;
+        for ( Map.Entry<TrackingKey, Map<List<Object>, TrackedContentEntry>> partition : partitions.entrySet() )
+        {
+            TrackingKey trackingKey = partition.getKey();
+            if ( isSealed( trackingKey ) )
+            {
+                logger.error( "Tracking record: {} is already sealed! Dropping {} entries.", trackingKey,
+                              partition.getValue().size() );
+                continue;
+            }
+            written += writeRows( partition.getValue().values() );
+        }
+        logger.debug( "Recorded {} rows in {} partitions", written, partitions.size() );
+        return written;
+    }
+
+    /**
+     * Replay of entries from the write-ahead spool. Entries spooled before their tracking record was sealed were
+     * accepted before the seal and only held back by a failing Cassandra, so they are still written into the sealed
+     * record, which is then logged as sealed again for incremental exports to pick them up. Entries spooled after the
+     * seal are dropped, like {@link #recordArtifacts(Collection)} does.
+     *
+     * @param appended spool append time of each entry, in the same order as the entries
+     * @return count of rows written
+     */
+    public int replayArtifacts( List<TrackedContentEntry> entries, List<Long> appended )
+    {
+        Map<TrackingKey, Boolean> sealed = new HashMap<>();
+        Map<TrackingKey, Row> headers = new HashMap<>();
+        List<TrackedContentEntry> open = new ArrayList<>();
+        List<TrackedContentEntry> late = new ArrayList<>();
+        for ( int i = 0; i < entries.size(); i++ )
+        {
+            TrackedContentEntry entry = entries.get( i );
+            TrackingKey trackingKey = entry.getTrackingKey();
+            if ( !sealed.computeIfAbsent( trackingKey, this::isSealed ) )
+            {
+                open.add( entry );
+                continue;
+            }
+            Row header = headers.computeIfAbsent( trackingKey, k -> session.execute(
+                            getTrackingHeader.bind( k.getId() ) ).one() );
+            Long sealedAt = getSealedAt( header );
+            if ( sealedAt != null && appended.get( i ) < sealedAt )
+            {
+                late.add( entry );
+            }
+            else
+            {
+                logger.error( "Tracking record: {} was sealed before the entry was spooled! Dropping: {}",
+                              trackingKey, entry.getPath() );
+            }
+        }
+
+        int written = recordArtifacts( open );
+        for ( Map.Entry<TrackingKey, Map<List<Object>, TrackedContentEntry>> partition : groupByRow( late ).entrySet() )
+        {
+            String id = partition.getKey().getId();
+            written += writeRows( partition.getValue().values() );
+            session.execute( resealedState( id, headers.get( partition.getKey() ) ) );
+            sealedGate.markSealed( id );
+            if ( recordCache != null )
+            {
+                recordCache.invalidate( id );
+            }
+            logger.info( "Replayed {} entries spooled before tracking record: {} was sealed",
+                         partition.getValue().size(), id );
+        }
+        return written;
+    }
+
+    /**
+     * Group entries by tracking key, merging the entries for the same row since all statements in one batch share
+     * the same write timestamp.
+     */
+    private static Map<TrackingKey, Map<List<Object>, TrackedContentEntry>> groupByRow(
+                    Collection<TrackedContentEntry> entries )
+    {
+        Map<TrackingKey, Map<List<Object>, TrackedContentEntry>> partitions = new LinkedHashMap<>();
+        for ( TrackedContentEntry entry : entries )
+        {
+            partitions.computeIfAbsent( entry.getTrackingKey(), k -> new LinkedHashMap<>() )
+                      .merge( Arrays.asList( entry.getStoreKey(), entry.getPath(), entry.getEffect() ), entry,
+                              ( prev, next ) -> {
+                                  prev.merge( next );
+                                  return prev;
+                              } );
+        }
+        return partitions;
+    }
+
+    /**
+     * Write the rows of one tracking key as single-partition UNLOGGED batches.
+     *
+     * @return count of rows written
+     */
+    private int writeRows( Collection<TrackedContentEntry> entries )
+    {
+        // in the bucketed layout the rows of one tracking key span several partitions, batch each one apart
+        Map<Integer, List<DtxTrackingRecord>> buckets = new TreeMap<>();
+        for ( TrackedContentEntry entry : entries )
+        {
+            DtxTrackingRecord record = new DtxTrackingRecord( entry );
+            buckets.computeIfAbsent( recordStatements.bucket( record.getStoreKey(), record.getPath() ),
+                                     b -> new ArrayList<>() ).add( record );
+        }
+        int written = 0;
+        for ( List<DtxTrackingRecord> bucket : buckets.values() )
+        {
+            BatchStatement batch = new BatchStatement( BatchStatement.Type.UNLOGGED );
+            List<DtxTrackingRecord> records = new ArrayList<>( MAX_BATCH_STATEMENTS );
+            for ( DtxTrackingRecord record : bucket )
+            {
+                batch.add( recordStatement( record ) );
+                records.add( record );
+                if ( batch.size() >= MAX_BATCH_STATEMENTS )
+                {
+                    written += executeBatch( batch, records );
+                    batch = new BatchStatement( BatchStatement.Type.UNLOGGED );
+                }
+            }
+            written += executeBatch( batch, records );
+        }
+        return written;
+    }
+
+    private int executeBatch( BatchStatement batch, List<DtxTrackingRecord> records )
+    {
+        int size = batch.size();
+        if ( size > 0 )
+        {
+            batch.setConsistencyLevel( consistency.get( INGEST_WRITE ) );
+            session.execute( batch );
+        }
+        records.forEach( this::markWritten );
+        records.clear();
+        return size;
+    }
+
+    /**
+     * Ask the sealed-key gate first and only read the partition state from storage if the gate can't tell. A sealed
+     * answer from the gate is checked against the header before a write is rejected, since the record may have been
+     * deleted on another instance and its id used again.
+     */
+    private boolean isSealed( TrackingKey trackingKey )
+    {
+        String id = trackingKey.getId();
+        Boolean sealed = sealedGate.isSealed( id );
+        if ( !Boolean.FALSE.equals( sealed ) )
+        {
+            if ( sealed != null )
+            {
+                sealedGate.invalidate( id );
+            }
+            Row header = session.execute( getTrackingHeader.bind( id ) ).one();
+            if ( header != null )
+            {
+                sealed = updateSealedGate( id, header );
+            }
+            else
+            {
+                sealed = repairHeader( id, getRecordState( id ) );
+            }
+        }
+        return sealed;
+    }
+
+    /**
+     * Like the sealed check on the write path, but without falling back to the record rows or repairing a missing
+     * header, so it is cheap to call for keys which may not exist.
+     *
+     * @return true only if the record is known to be sealed
+     */
+    public boolean isSealedRecord( TrackingKey trackingKey )
+    {
+        String id = trackingKey.getId();
+        Boolean sealed = sealedGate.isSealed( id );
+        if ( sealed == null )
+        {
+            Row header = session.execute( getTrackingHeader.bind( id ) ).one();
+            if ( header == null )
+            {
+                return false;
+            }
+            sealed = updateSealedGate( id, header );
+        }
+        return sealed;
+    }
+
+    private CompletionStage<Boolean> isSealedAsync( TrackingKey trackingKey )
+    {
+        String id = trackingKey.getId();
+        Boolean sealed = sealedGate.isSealed( id );
+        if ( Boolean.FALSE.equals( sealed ) )
+        {
+            return CompletableFuture.completedFuture( false );
+        }
+        if ( sealed != null )
+        {
+            sealedGate.invalidate( id );
+        }
+        return toCompletionStage( session.executeAsync( getTrackingHeader.bind( id ) ) ).thenCompose( headerSet -> {
+            Row header = headerSet.one();
+            if ( header != null )
+            {
+                return CompletableFuture.completedFuture( updateSealedGate( id, header ) );
+            }
+            return getRecordStateAsync( id ).thenApply( stateRow -> repairHeader( id, stateRow ) );
+        } );
+    }
+
+    /**
+     * Write the missing header of a tracking record from the state of its rows, for records written before the header
+     * table existed and for records seen for the first time. The header is never written with sealed=false, so this
+     * can't undo a seal done in between.
+     */
+    private boolean repairHeader( String id, Row stateRow )
+    {
+        boolean sealed = updateSealedGate( id, stateRow );
+        long created = getCreated( null, stateRow );
+        // the seal time of records sealed before the header existed is unknown, they are logged as sealed now
+        BatchStatement batch = sealed ?
+                        sealedState( id, created, System.currentTimeMillis() ) :
+                        inProgressState( id, created );
+        toCompletionStage( session.executeAsync( batch ) ).whenComplete( ( result, error ) -> {
+            if ( error != null )
+            {
+                logger.warn( "Failed to write header of tracking record: {}", id, error );
+            }
+        } );
+        return sealed;
+    }
+
+    /**
+     * Header and catalog writes of a sealed record, as one logged batch so the catalog can't disagree with the header.
+     */
+    private BatchStatement sealedState( String id, long created, long sealedAt )
+    {
+        BatchStatement batch = new BatchStatement( BatchStatement.Type.LOGGED );
+        batch.add( sealTrackingHeader.bind( sealedAt, created, id ) );
+        catalog.addSealed( batch, id, created, sealedAt );
+        batch.setConsistencyLevel( consistency.get( SEAL ) );
+        return batch;
+    }
+
+    /**
+     * Sealed state of a record whose entries were just written again, logged as sealed now so incremental exports
+     * pick up the new entries. The seal log entry of the previous seal is dropped.
+     */
+    private BatchStatement resealedState( String id, Row header )
+    {
+        long sealedAt = System.currentTimeMillis();
+        BatchStatement batch = sealedState( id, getCreated( header, null ), sealedAt );
+        Long previous = getSealedAt( header );
+        if ( previous != null && previous != sealedAt )
+        {
+            catalog.addUnsealed( batch, id, previous );
+        }
+        return batch;
+    }
+
+    private BatchStatement inProgressState( String id, long created )
+    {
+        BatchStatement batch = new BatchStatement( BatchStatement.Type.LOGGED );
+        batch.add( touchTrackingHeader.bind( created, id ) );
+        catalog.addInProgress( batch, id, created );
+        batch.setConsistencyLevel( consistency.get( SEAL ) );
+        return batch;
+    }
+
+    /**
+     * @return creation time from the header, or else the start time of the record rows, or else now
+     */
+    private static long getCreated( Row header, Row stateRow )
+    {
+        if ( header != null && !header.isNull( "created" ) )
+        {
+            return header.getLong( "created" );
+        }
+        if ( stateRow != null && !stateRow.isNull( "started" ) )
+        {
+            return stateRow.getLong( "started" );
+        }
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * @return seal time from the header, or null if there is none
+     */
+    private static Long getSealedAt( Row header )
+    {
+        return header == null || header.isNull( "sealed_at" ) ? null : header.getLong( "sealed_at" );
+    }
+
+    private static boolean isSealed( Row stateRow )
+    {
+        return stateRow != null && !stateRow.isNull( "sealed" ) && stateRow.getBool( "sealed" );
+    }
+
+    private boolean updateSealedGate( String id, Row stateRow )
+    {
+        boolean sealed = isSealed( stateRow );
+        if ( sealed )
+        {
+            sealedGate.markSealed( id );
+        }
+        else
+        {
+            sealedGate.markInProgress( id );
+        }
+        return sealed;
+    }
+
+    private static <T> CompletionStage<T> toCompletionStage( ListenableFuture<T> future )
+    {
+        CompletableFuture<T> stage = new CompletableFuture<>();
+        future.addListener( () -> {
+            try
+            {
+                stage.complete( future.get() );
+            }
+            catch ( ExecutionException e )
+            {
+                stage.completeExceptionally( e.getCause() );
+            }
+            catch ( Exception e )
+            {
+                stage.completeExceptionally( e );
+            }
+        }, Runnable::run );
+        return stage;
+    }
+
     public void delete( TrackingKey key )
     {
         logger.info( "Delete tracking records, tracking_id: {}", key.getId() );
-        BoundStatement bind = deleteTrackingRecordsByTrackingKey.bind( key.getId() );
-        session.execute( bind );
+        Row header = session.execute( getTrackingHeader.bind( key.getId() ) ).one();
+        executeAll( recordStatements.deleteRecord( key.getId() ) );
+        BatchStatement batch = new BatchStatement( BatchStatement.Type.LOGGED );
+        batch.add( deleteTrackingHeader.bind( key.getId() ) );
+        if ( header != null && !header.isNull( "created" ) )
+        {
+            catalog.addRemoved( batch, key.getId(), header.getLong( "created" ) );
+        }
+        Long sealedAt = getSealedAt( header );
+        if ( sealedAt != null )
+        {
+            catalog.addUnsealed( batch, key.getId(), sealedAt );
+        }
+        batch.setConsistencyLevel( consistency.get( SEAL ) );
+        session.execute( batch );
+        sealedGate.invalidate( key.getId() );
+        if ( writtenRows != null )
+        {
+            writtenRows.invalidate( key.getId() );
+        }
+        if ( recordCache != null )
+        {
+            recordCache.invalidate( key.getId() );
+        }
     }
 
     public void replaceTrackingRecord( TrackedContent record )
@@ -171,20 +793,41 @@ public class CassandraTrackingQuery
 
     public boolean hasRecord( TrackingKey key )
     {
-        BoundStatement bind = isTrackingRecordExist.bind( key );
-        ResultSet result = session.execute( bind );
-        Row row = result.one();
-        boolean exists = false;
-        if ( row != null )
-        {
-            long count = row.get( 0, Long.class );
-            exists = count > 0;
-        }
+        boolean exists = getRecordState( key.getId() ) != null;
         logger.trace( "{} {}", key, ( exists ? "exists" : "not exists" ) );
         return exists;
     }
 
+    /**
+     * Sealed records are served from the record cache when enabled, and cached on the first read. Records in progress
+     * are always read from storage. The sealed state is established before the rows are read, so a seal landing in
+     * between can't get the rows from before it cached.
+     */
     public TrackedContent get( TrackingKey key )
+    {
+        if ( recordCache == null )
+        {
+            return getUncached( key );
+        }
+        TrackedContent cached = recordCache.get( key.getId() );
+        if ( cached != null )
+        {
+            return cached;
+        }
+        long readVersion = recordCache.version();
+        boolean sealed = isSealedRecord( key );
+        TrackedContent record = getUncached( key );
+        if ( record != null && sealed )
+        {
+            recordCache.put( record, readVersion );
+        }
+        return record;
+    }
+
+    /**
+     * Read a tracking record without going through the record cache, for bulk reads which would only churn it.
+     */
+    public TrackedContent getUncached( TrackingKey key )
     {
         List<DtxTrackingRecord> trackingRecords = getDtxTrackingRecordsFromDb( key );
         if ( trackingRecords == null || trackingRecords.isEmpty() )
@@ -194,60 +837,296 @@ public class CassandraTrackingQuery
         return transformDtxTrackingRecordToTrackingContent( key, trackingRecords );
     }
 
-    public TrackedContent seal( TrackingKey trackingKey )
+    /**
+     * Iterate the entries of a tracking record, falling back to the legacy table if the record has no entries in the
+     * records table. Rows are fetched from the driver page by page while iterating, so only one page is held in memory
+     * whatever the record size, per bucket in the bucketed layout. Entries come in clustering order, merged across
+     * buckets, not sorted like {@link #get(TrackingKey)}.
+     */
+    public Iterator<TrackedContentEntry> iterate( TrackingKey key )
     {
-        List<DtxTrackingRecord> trackingRecords = getDtxTrackingRecordsFromDb( trackingKey );
+        List<Statement> statements = selectRecord( key.getId() );
+        statements.forEach( statement -> statement.setFetchSize( STREAM_FETCH_SIZE ) );
+        List<ResultSet> partitions = executeAll( statements );
+        Iterator<Row> iterator;
+        if ( partitions.stream().allMatch( ResultSet::isExhausted ) && !isLegacyMigrated() )
+        {
+            iterator = session.execute( getLegacyTrackingRecordsByTrackingKey.bind( key.getId() )
+                                                                             .setFetchSize( STREAM_FETCH_SIZE ) )
+                              .iterator();
+        }
+        else if ( partitions.size() == 1 )
+        {
+            iterator = partitions.get( 0 ).iterator();
+        }
+        else
+        {
+            List<Iterator<Row>> iterators = new ArrayList<>( partitions.size() );
+            partitions.forEach( rows -> iterators.add( rows.iterator() ) );
+            iterator = Iterators.mergeSorted( iterators, RecordStatements.CLUSTERING_ORDER );
+        }
+        return new Iterator<TrackedContentEntry>()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                return iterator.hasNext();
+            }
 
-        if ( trackingRecords == null || trackingRecords.isEmpty() )
+            @Override
+            public TrackedContentEntry next()
+            {
+                return DtxTrackingRecord.toTrackingContentEntry( RecordStatements.toRecord( iterator.next() ) );
+            }
+        };
+    }
+
+    public TrackedContent seal( TrackingKey trackingKey )
+    {
+        if ( !sealRecord( trackingKey ) )
         {
             logger.debug( "Tracking record: {} doesn't exist! Returning empty record.", trackingKey );
             return new TrackedContent( trackingKey, new HashSet<>(), new HashSet<>() );
         }
+        return get( trackingKey );
+    }
 
-        DtxTrackingRecord recordCheck = trackingRecords.get( 0 );
-        if ( recordCheck.getState() )
+    /**
+     * Seal the tracking record by flipping the sealed state in its header, so the cost does not depend on how many
+     * entries the record holds. The rows themselves keep their sealed column as written.
+     *
+     * @return false if there is no such tracking record
+     */
+    public boolean sealRecord( TrackingKey trackingKey )
+    {
+        String id = trackingKey.getId();
+        Row header = session.execute( getTrackingHeader.bind( id ) ).one();
+        Row stateRow = null;
+        if ( header == null )
         {
-            logger.debug( "Tracking record: {} already sealed! Returning sealed record.", trackingKey );
-            return transformDtxTrackingRecordToTrackingContent( trackingKey, trackingRecords );
+            stateRow = getRecordState( id );
+            if ( stateRow == null )
+            {
+                return false;
+            }
         }
-        logger.debug( "Sealing record for: {}", trackingKey );
-        for ( DtxTrackingRecord record : trackingRecords )
+        if ( isSealed( header ) )
+        {
+            logger.debug( "Tracking record: {} already sealed!", trackingKey );
+        }
+        else
         {
-            record.setState( true );
-            trackingMapper.save( record );
+            logger.debug( "Sealing record for: {}", trackingKey );
+            session.execute( sealedState( id, getCreated( header, stateRow ), System.currentTimeMillis() ) );
         }
-        return transformDtxTrackingRecordToTrackingContent( trackingKey, trackingRecords );
+        sealedGate.markSealed( id );
+        return true;
+    }
+
+    /**
+     * Write the header and the catalog entry of every tracking record in the records table, taking the state from the
+     * header if there is one and from the record rows otherwise. Records without a header are also repaired when their
+     * state is first read, this is for moving all records over at once. Once done, id listings are served from the
+     * catalog. It is safe to run more than once, the seal time of a sealed header is kept; sealed records without one
+     * are logged as sealed now.
+     *
+     * @return count of records migrated
+     */
+    public int migrateRecordHeaders()
+    {
+        long start = System.currentTimeMillis();
+        TokenRangeScanner.Scan scan = scan( "record-headers", getTrackingRecordStates, row -> {
+            String id = row.getString( "tracking_key" );
+            Row header = session.execute( getTrackingHeader.bind( id ) ).one();
+            boolean sealed = header != null ? isSealed( header ) : isSealed( row );
+            long created = getCreated( header, row );
+            if ( sealed )
+            {
+                Long sealedAt = getSealedAt( header );
+                long at = sealedAt != null ? sealedAt : System.currentTimeMillis();
+                session.execute( sealedState( id, created, at ) );
+                sealedGate.markSealed( id );
+            }
+            else
+            {
+                session.execute( inProgressState( id, created ) );
+            }
+        } );
+        catalog.markReady();
+        catalog.markSealLogReady();
+        logger.info( "Migrated {} tracking record headers in {} ms", scan.getRows(),
+                     System.currentTimeMillis() - start );
+        return (int) scan.getRows();
     }
 
+    /**
+     * Until the catalog is backfilled, in-progress keys are found by scanning the records table. The state of a key is
+     * taken from its header, read in one pass over the header table beforehand, and from the scanned row for keys
+     * without a header. Nothing is written, so missing headers are left to the header migration.
+     */
     public Set<TrackingKey> getInProgressTrackingKey()
     {
-        throw new UnsupportedOperationException(
-                        "Getting in-progress tracking keys are not supported by Cassandra Folo" );
+        if ( catalog.isReady() )
+        {
+            return getCatalogKeys( TRACKING_TYPE.IN_PROGRESS );
+        }
+        Map<String, Boolean> headerStates = new HashMap<>();
+        Statement headers = getTrackingHeaderStates.bind().setFetchSize( SCAN_FETCH_SIZE );
+        for ( Row header : session.execute( headers ) )
+        {
+            headerStates.put( header.getString( "tracking_key" ), isSealed( header ) );
+        }
+        Set<TrackingKey> trackingKeys = ConcurrentHashMap.newKeySet();
+        scan( "in-progress-keys", getTrackingRecordStates, row -> {
+            String id = row.getString( "tracking_key" );
+            Boolean sealed = headerStates.get( id );
+            if ( sealed == null ? !isSealed( row ) : !sealed )
+            {
+                trackingKeys.add( new TrackingKey( id ) );
+            }
+        } );
+        return trackingKeys;
     }
 
     public Set<TrackingKey> getSealedTrackingKey()
     {
+        if ( catalog.isReady() )
+        {
+            return getCatalogKeys( TRACKING_TYPE.SEALED );
+        }
         return getTrackingKeys();
     }
 
-    // This may fail given a huge dataset (oom). Only used for test purpose !
-    public Set<TrackedContent> getSealed()
+    /**
+     * List one page of tracking ids from the catalog.
+     *
+     * @return the page, or null if the catalog is not backfilled yet and would miss older records
+     */
+    public TrackingCatalog.Page getTrackingKeys( Set<TRACKING_TYPE> types, String after, int limit )
     {
+        if ( !catalog.isReady() )
+        {
+            return null;
+        }
+        return catalog.list( types, after, limit );
+    }
 
-        Set<TrackedContent> trackedContents = new HashSet<>();
-        Set<TrackingKey> sealedTrackingKeys = getSealedTrackingKey();
-
-        for ( TrackingKey trackingKey : sealedTrackingKeys )
+    /**
+     * Iterate the sealed tracking keys. With the catalog ready, keys are read one page at a time while iterating and
+     * the first page is read before this returns; until then the keys are all listed by a scan of the records table.
+     */
+    public Iterator<TrackingKey> iterateSealedTrackingKeys( int pageSize )
+    {
+        if ( !catalog.isReady() )
+        {
+            return getSealedTrackingKey().iterator();
+        }
+        Set<TRACKING_TYPE> sealed = EnumSet.of( TRACKING_TYPE.SEALED );
+        TrackingCatalog.Page first = catalog.list( sealed, null, pageSize );
+        return new Iterator<TrackingKey>()
         {
+            private TrackingCatalog.Page page = first;
+
+            private Iterator<String> ids = first.getIds().iterator();
+
+            @Override
+            public boolean hasNext()
+            {
+                while ( !ids.hasNext() && page.getNext() != null )
+                {
+                    page = catalog.list( sealed, page.getNext(), pageSize );
+                    ids = page.getIds().iterator();
+                }
+                return ids.hasNext();
+            }
+
+            @Override
+            public TrackingKey next()
+            {
+                if ( !hasNext() )
+                {
+                    throw new NoSuchElementException();
+                }
+                return new TrackingKey( ids.next() );
+            }
+        };
+    }
 
-            List<DtxTrackingRecord> dtxTrackingRecordsFromDb = getDtxTrackingRecordsFromDb( trackingKey );
-            TrackedContent trackedContent =
-                            transformDtxTrackingRecordToTrackingContent( trackingKey, dtxTrackingRecordsFromDb );
+    /**
+     * @return the latest seal time which is safe to use as the upper bound of an incremental export. It lags behind
+     *         the clock so seals still in flight, or stamped by an instance with a slightly late clock, fall after it
+     *         and are picked up by the next export instead of being missed.
+     */
+    public long getSealWatermark()
+    {
+        return System.currentTimeMillis() - Math.max( 0, config.getSealLogWatermarkLagMillis() );
+    }
 
-            trackedContents.add( trackedContent );
+    /**
+     * Iterate the keys of the records sealed after {@code since} and up to {@code until}, as logged when sealing. Until
+     * the seal log is backfilled, every sealed key is listed and filtered by the seal time in its header; keys with no
+     * seal time are kept, an incremental export rather copies a record twice than misses it.
+     */
+    public Iterator<TrackingKey> iterateSealedTrackingKeys( long since, long until, int pageSize )
+    {
+        if ( !catalog.isSealLogReady() )
+        {
+            logger.warn( "Seal log is not migrated yet, filter all sealed records by the seal time in their header" );
+            Iterator<TrackingKey> sealed = iterateSealedTrackingKeys( pageSize );
+            return new Iterator<TrackingKey>()
+            {
+                private TrackingKey next;
+
+                @Override
+                public boolean hasNext()
+                {
+                    while ( next == null && sealed.hasNext() )
+                    {
+                        TrackingKey key = sealed.next();
+                        Long sealedAt = getSealedAt( session.execute( getTrackingHeader.bind( key.getId() ) ).one() );
+                        if ( sealedAt == null || ( sealedAt > since && sealedAt <= until ) )
+                        {
+                            next = key;
+                        }
+                    }
+                    return next != null;
+                }
+
+                @Override
+                public TrackingKey next()
+                {
+                    if ( !hasNext() )
+                    {
+                        throw new NoSuchElementException();
+                    }
+                    TrackingKey key = next;
+                    next = null;
+                    return key;
+                }
+            };
         }
+        Iterator<String> ids = catalog.sealedBetween( since, until, pageSize );
+        return new Iterator<TrackingKey>()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                return ids.hasNext();
+            }
+
+            @Override
+            public TrackingKey next()
+            {
+                return new TrackingKey( ids.next() );
+            }
+        };
+    }
 
-        return trackedContents;
+    private Set<TrackingKey> getCatalogKeys( TRACKING_TYPE type )
+    {
+        Set<TrackingKey> trackingKeys = new HashSet<>();
+        catalog.forEach( type, id -> trackingKeys.add( new TrackingKey( id ) ) );
+        return trackingKeys;
     }
 
     public void addSealedRecord( TrackedContent record )
@@ -255,6 +1134,115 @@ public class CassandraTrackingQuery
         saveTrackedContentRecords( record );
     }
 
+    /**
+     * Non-blocking variant of {@link #addSealedRecord(TrackedContent)} for bulk imports. The entries are written as
+     * single-partition UNLOGGED batches, grouped by bucket like {@link #recordArtifacts(Collection)} does, each
+     * holding a write permit while in flight, and the sealed header is written once they are all done.
+     */
+    public CompletionStage<Void> addSealedRecordAsync( TrackedContent record )
+    {
+        String id = record.getKey().getId();
+        Map<Integer, List<DtxTrackingRecord>> buckets = new TreeMap<>();
+        for ( Set<TrackedContentEntry> entries : Arrays.asList( record.getDownloads(), record.getUploads() ) )
+        {
+            if ( entries == null )
+            {
+                continue;
+            }
+            for ( TrackedContentEntry entry : entries )
+            {
+                DtxTrackingRecord row = DtxTrackingRecord.fromTrackedContentEntry( entry, true );
+                buckets.computeIfAbsent( recordStatements.bucket( row.getStoreKey(), row.getPath() ),
+                                         b -> new ArrayList<>() ).add( row );
+            }
+        }
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for ( List<DtxTrackingRecord> bucket : buckets.values() )
+        {
+            BatchStatement batch = new BatchStatement( BatchStatement.Type.UNLOGGED );
+            for ( DtxTrackingRecord row : bucket )
+            {
+                batch.add( recordStatements.insert( row ) );
+                if ( batch.size() >= MAX_BATCH_STATEMENTS )
+                {
+                    writes.add( executeBatchAsync( batch ) );
+                    batch = new BatchStatement( BatchStatement.Type.UNLOGGED );
+                }
+            }
+            if ( batch.size() > 0 )
+            {
+                writes.add( executeBatchAsync( batch ) );
+            }
+        }
+        return CompletableFuture.allOf( writes.toArray( new CompletableFuture[0] ) )
+                                .thenCompose( v -> toCompletionStage(
+                                                session.executeAsync( getTrackingHeader.bind( id ) ) ) )
+                                .thenCompose( header -> toCompletionStage(
+                                                session.executeAsync( resealedState( id, header.one() ) ) ) )
+                                .thenAccept( v -> {
+                                    sealedGate.markSealed( id );
+                                    if ( writtenRows != null )
+                                    {
+                                        writtenRows.invalidate( id );
+                                    }
+                                    if ( recordCache != null )
+                                    {
+                                        recordCache.invalidate( id );
+                                    }
+                                } );
+    }
+
+    private CompletableFuture<Void> executeBatchAsync( BatchStatement batch )
+    {
+        batch.setConsistencyLevel( consistency.get( INGEST_WRITE ) );
+        return writeLimiter.acquire()
+                           .thenCompose( v -> toCompletionStage( session.executeAsync( batch ) ) )
+                           .whenComplete( ( result, error ) -> writeLimiter.release() )
+                           .<Void>thenApply( result -> null )
+                           .toCompletableFuture();
+    }
+
+    /**
+     * Entries are compared column by column, not with {@link TrackedContentEntry#equals(Object)} which ignores the
+     * checksums, size, origin and timestamps an import may be meant to correct. A record not stored yet is not
+     * checked through the repairing sealed check, so no header is written for it.
+     *
+     * @return true if the record is stored sealed with the same uploads and downloads, so importing it again would
+     *         change nothing
+     */
+    public boolean isSameSealedRecord( TrackedContent record )
+    {
+        if ( !isSealedRecord( record.getKey() ) )
+        {
+            return false;
+        }
+        TrackedContent stored = getUncached( record.getKey() );
+        return stored != null && persistedColumns( stored ).equals( persistedColumns( record ) );
+    }
+
+    /**
+     * @return the columns each entry is stored with, by row key
+     */
+    private static Map<List<String>, List<Object>> persistedColumns( TrackedContent record )
+    {
+        Map<List<String>, List<Object>> columns = new HashMap<>();
+        for ( Set<TrackedContentEntry> entries : Arrays.asList( record.getDownloads(), record.getUploads() ) )
+        {
+            if ( entries == null )
+            {
+                continue;
+            }
+            for ( TrackedContentEntry entry : entries )
+            {
+                DtxTrackingRecord row = DtxTrackingRecord.fromTrackedContentEntry( entry, true );
+                columns.put( Arrays.asList( row.getStoreKey(), row.getPath(), row.getStoreEffect() ),
+                             Arrays.asList( row.getAccessChannel(), row.getOriginUrl(), row.getMd5(),
+                                            row.getSha256(), row.getSha1(), row.getSize(), row.getTimestamps() ) );
+            }
+        }
+        return columns;
+    }
+
     public void start() throws IndyLifecycleException
     {
         logger.info( "--- FoloRecordsCassandra starting up" );
@@ -310,34 +1298,89 @@ public class CassandraTrackingQuery
 
     private List<DtxTrackingRecord> getDtxTrackingRecordsFromDb( TrackingKey trackingKey )
     {
-        BoundStatement bind = getTrackingRecordsByTrackingKey.bind( trackingKey.getId() );
-        ResultSet execute = session.execute( bind );
-        List<Row> rows = execute.all();
+        List<Row> rows = new ArrayList<>();
+        for ( ResultSet partition : executeAll( selectRecord( trackingKey.getId() ) ) )
+        {
+            List<Row> all = partition.all();
+            if ( partitionRows != null && !all.isEmpty() )
+            {
+                partitionRows.record( all.size() );
+            }
+            rows.addAll( all );
+        }
         return fetchRecordsFromRows( rows );
     }
 
+    /**
+     * Reads of the rows of a record, at the sealed-read level if the sealed-key gate already knows it is sealed. The
+     * gate is not asked to resolve unknown keys, that would cost an extra read.
+     */
+    private List<Statement> selectRecord( String id )
+    {
+        ConsistencyLevel level = consistency.read( Boolean.TRUE.equals( sealedGate.isSealed( id ) ) );
+        List<Statement> statements = recordStatements.selectRecord( id );
+        statements.forEach( statement -> statement.setConsistencyLevel( level ) );
+        return statements;
+    }
+
+    /**
+     * @return the sealed state and start time of any one row of a tracking record, or null if it has no rows
+     */
+    private Row getRecordState( String id )
+    {
+        for ( ResultSet partition : executeAll( recordStatements.selectState( id ) ) )
+        {
+            Row row = partition.one();
+            if ( row != null )
+            {
+                return row;
+            }
+        }
+        return null;
+    }
+
+    private CompletionStage<Row> getRecordStateAsync( String id )
+    {
+        List<Statement> statements = recordStatements.selectState( id );
+        if ( statements.size() == 1 )
+        {
+            return toCompletionStage( session.executeAsync( statements.get( 0 ) ) ).thenApply( ResultSet::one );
+        }
+        List<CompletableFuture<Row>> rows = new ArrayList<>( statements.size() );
+        statements.forEach( statement -> rows.add(
+                        toCompletionStage( session.executeAsync( statement ) ).thenApply( ResultSet::one )
+                                                                              .toCompletableFuture() ) );
+        return CompletableFuture.allOf( rows.toArray( new CompletableFuture[0] ) )
+                                .thenApply( done -> rows.stream()
+                                                        .map( CompletableFuture::join )
+                                                        .filter( Objects::nonNull )
+                                                        .findFirst()
+                                                        .orElse( null ) );
+    }
+
+    /**
+     * Execute the statements of a per-partition operation in parallel, and wait for all of them.
+     */
+    private List<ResultSet> executeAll( List<Statement> statements )
+    {
+        if ( statements.size() == 1 )
+        {
+            return Collections.singletonList( session.execute( statements.get( 0 ) ) );
+        }
+        List<ResultSetFuture> futures = new ArrayList<>( statements.size() );
+        statements.forEach( statement -> futures.add( session.executeAsync( statement ) ) );
+        List<ResultSet> results = new ArrayList<>( futures.size() );
+        futures.forEach( future -> results.add( future.getUninterruptibly() ) );
+        return results;
+    }
+
     private List<DtxTrackingRecord> fetchRecordsFromRows( List<Row> rows )
     {
         List<DtxTrackingRecord> trackingRecords = new ArrayList<>();
         Iterator<Row> iteratorDtxTrackingRecords = rows.iterator();
         while ( iteratorDtxTrackingRecords.hasNext() )
         {
-            Row next = iteratorDtxTrackingRecords.next();
-            DtxTrackingRecord dtxTrackingRecord = new DtxTrackingRecord();
-            dtxTrackingRecord.setTrackingKey( next.getString( "tracking_key" ) );
-            dtxTrackingRecord.setState( next.getBool( "sealed" ) );
-            dtxTrackingRecord.setLocalUrl( next.getString( "local_url" ) );
-            dtxTrackingRecord.setOriginUrl( next.getString( "origin_url" ) );
-            dtxTrackingRecord.setTimestamps( next.getSet( "timestamps", Long.class ) );
-            dtxTrackingRecord.setPath( next.getString( "path" ) );
-            dtxTrackingRecord.setStoreEffect( next.getString( "store_effect" ) );
-            dtxTrackingRecord.setSha256( next.getString( "sha256" ) );
-            dtxTrackingRecord.setSha1( next.getString( "sha1" ) );
-            dtxTrackingRecord.setMd5( next.getString( "md5" ) );
-            dtxTrackingRecord.setSize( next.getLong( "size" ) );
-            dtxTrackingRecord.setStoreKey( next.getString( "store_key" ) );
-            dtxTrackingRecord.setAccessChannel( next.getString( "access_channel" ) );
-            trackingRecords.add( dtxTrackingRecord );
+            trackingRecords.add( RecordStatements.toRecord( iteratorDtxTrackingRecords.next() ) );
         }
         return trackingRecords;
     }
@@ -351,14 +1394,105 @@ public class CassandraTrackingQuery
         for ( TrackedContentEntry downloadEntry : downloads )
         {
             DtxTrackingRecord downloadRecord = DtxTrackingRecord.fromTrackedContentEntry( downloadEntry, true );
-            trackingMapper.save( downloadRecord );
+            session.execute( recordStatements.insert( downloadRecord ) );
         }
 
         for ( TrackedContentEntry uploadEntry : uploads )
         {
             DtxTrackingRecord uploadRecord = DtxTrackingRecord.fromTrackedContentEntry( uploadEntry, true );
-            trackingMapper.save( uploadRecord );
+            session.execute( recordStatements.insert( uploadRecord ) );
+        }
+        Row header = session.execute( getTrackingHeader.bind( key.getId() ) ).one();
+        session.execute( resealedState( key.getId(), header ) );
+        sealedGate.markSealed( key.getId() );
+        if ( writtenRows != null )
+        {
+            writtenRows.invalidate( key.getId() );
+        }
+        if ( recordCache != null )
+        {
+            recordCache.invalidate( key.getId() );
+        }
+    }
+
+    /**
+     * @return true once the legacy table is fully copied into the records table, so reads don't need to fall back to
+     *         it any more
+     */
+    public boolean isLegacyMigrated()
+    {
+        return migrationMarks.isCompleted( LEGACY_MIGRATION );
+    }
+
+    public void markLegacyMigrated()
+    {
+        migrationMarks.markCompleted( LEGACY_MIGRATION );
+    }
+
+    /**
+     * Copy a legacy record into the records table, keeping its sealed state. Rows are merged into the ones already
+     * copied, so copying again after an interrupted copy is harmless, and the header is written last: only a sealed
+     * header tells the copy of a sealed record is complete. Records in progress are copied again every time. Sealed
+     * records get their last access as seal time and no seal log entry, so incremental exports don't see the legacy
+     * history as newly sealed.
+     *
+     * @return false if the record was already copied completely, or has no legacy rows
+     */
+    public boolean migrateLegacyRecord( TrackingKey key )
+    {
+        String id = key.getId();
+        if ( isSealed( session.execute( getTrackingHeader.bind( id ) ).one() ) )
+        {
+            return false;
         }
+        List<DtxTrackingRecord> rows = getLegacyDtxTrackingRecordsFromDb( key );
+        if ( rows.isEmpty() )
+        {
+            return false;
+        }
+        boolean sealed = false;
+        long created = Long.MAX_VALUE;
+        long lastAccess = 0;
+        for ( DtxTrackingRecord row : rows )
+        {
+            session.execute( recordStatements.upsert( row ) );
+            sealed |= Boolean.TRUE.equals( row.getState() );
+            if ( row.getStarted() != null )
+            {
+                created = Math.min( created, row.getStarted() );
+            }
+            if ( row.getTimestamps() != null && !row.getTimestamps().isEmpty() )
+            {
+                lastAccess = Math.max( lastAccess, Collections.max( row.getTimestamps() ) );
+            }
+        }
+        if ( created == Long.MAX_VALUE )
+        {
+            created = lastAccess > 0 ? lastAccess : System.currentTimeMillis();
+        }
+        if ( sealed )
+        {
+            BatchStatement batch = new BatchStatement( BatchStatement.Type.LOGGED );
+            batch.add( sealTrackingHeader.bind( Math.max( created, lastAccess ), created, id ) );
+            catalog.addSealedUnlogged( batch, id, created );
+            batch.setConsistencyLevel( consistency.get( SEAL ) );
+            session.execute( batch );
+            sealedGate.markSealed( id );
+        }
+        else
+        {
+            session.execute( inProgressState( id, created ) );
+            sealedGate.markInProgress( id );
+        }
+        if ( writtenRows != null )
+        {
+            writtenRows.invalidate( id );
+        }
+        if ( recordCache != null )
+        {
+            recordCache.invalidate( id );
+        }
+        return true;
     }
 
     public TrackedContent getLegacy( TrackingKey key )
@@ -373,35 +1507,34 @@ public class CassandraTrackingQuery
 
     public Set<TrackingKey> getLegacyTrackingKeys()
     {
-        BoundStatement statement = getLegacyTrackingKeys.bind();
-        return getTrackingKeys( statement );
+        return getTrackingKeys( "legacy-keys", getLegacyTrackingKeys );
     }
 
     private Set<TrackingKey> getTrackingKeys()
     {
-        BoundStatement statement = getTrackingKeys.bind();
-        return getTrackingKeys( statement );
+        return getTrackingKeys( "tracking-keys", getTrackingKeys );
     }
 
-    private Set<TrackingKey> getTrackingKeys( BoundStatement statement )
+    private Set<TrackingKey> getTrackingKeys( String name, PreparedStatement statement )
     {
-        ResultSet resultSet = session.execute( statement );
-        List<Row> all = resultSet.all();
-        Iterator<Row> iterator = all.iterator();
+        Set<TrackingKey> trackingKeys = ConcurrentHashMap.newKeySet();
+        scan( name, statement, row -> trackingKeys.add( new TrackingKey( row.getString( "tracking_key" ) ) ) );
+        return trackingKeys;
+    }
 
-        Set<TrackingKey> trackingKeys = new HashSet<>();
-        while ( iterator.hasNext() )
-        {
-            Row next = iterator.next();
-            String tracking_key = next.getString( "tracking_key" );
-            trackingKeys.add( new TrackingKey( tracking_key ) );
-        }
-        return trackingKeys.stream().collect( Collectors.toSet() );
+    /**
+     * Scan every row of a token-ranged statement in parallel and wait for it.
+     *
+     * @throws IllegalStateException if part of the rows could not be read
+     */
+    private TokenRangeScanner.Scan scan( String name, PreparedStatement statement, Consumer<Row> consumer )
+    {
+        return scanner.scan( name, statement, SCAN_FETCH_SIZE, null, consumer ).join();
     }
 
     public void createDtxTrackingRecord( DtxTrackingRecord trackingRecord )
     {
-        trackingMapper.save( trackingRecord );
+        session.execute( recordStatements.insert( trackingRecord ) );
     }
 
 }
@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.data.cassandra;
+
+import com.datastax.driver.core.ConsistencyLevel;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static com.datastax.driver.core.ConsistencyLevel.QUORUM;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+/**
+ * Consistency level of each kind of tracking record operation, instead of QUORUM for all of them.
+ * <p>
+ * A sealed record never changes again until it is deleted, so once a read is known to target a sealed record it can
+ * use a cheaper level than the reads of records in progress. Reads only count as sealed if the sealed state was
+ * already established, e.g. by the {@link SealedKeyGate}. Levels not configured stay QUORUM. With the local-DC switch,
+ * or once a local datacenter is configured, every level is mapped to its local-DC variant, so requests don't wait for
+ * remote datacenters.
+ */
+public class ConsistencyPolicy
+{
+    public enum Operation
+    {
+        /** Writes of record rows, one by one, batched or imported. */
+        INGEST_WRITE,
+        /** Reads of records which may still change, of the record state itself, the catalog and migration marks. */
+        IN_PROGRESS_READ,
+        /** Reads of records known to be sealed. */
+        SEALED_READ,
+        /** Seal, delete and other header, catalog and migration mark writes. */
+        SEAL
+    }
+
+    private final Map<Operation, ConsistencyLevel> levels = new EnumMap<>( Operation.class );
+
+    public ConsistencyPolicy( final CassandraConfiguration config )
+    {
+        this( config.getConsistencyIngestWrite(), config.getConsistencyInProgressRead(),
+              config.getConsistencySealedRead(), config.getConsistencySeal(),
+              config.isConsistencyLocalDc() || isNotBlank( config.getLocalDc() ) );
+    }
+
+    public ConsistencyPolicy( final ConsistencyLevel ingestWrite, final ConsistencyLevel inProgressRead,
+                              final ConsistencyLevel sealedRead, final ConsistencyLevel seal, final boolean localDc )
+    {
+        set( Operation.INGEST_WRITE, ingestWrite, localDc );
+        set( Operation.IN_PROGRESS_READ, inProgressRead, localDc );
+        set( Operation.SEALED_READ, sealedRead, localDc );
+        set( Operation.SEAL, seal, localDc );
+        if ( levels.get( Operation.IN_PROGRESS_READ ) == ConsistencyLevel.ANY
+                        || levels.get( Operation.SEALED_READ ) == ConsistencyLevel.ANY )
+        {
+            throw new IllegalArgumentException( "Consistency level ANY is only allowed for writes" );
+        }
+    }
+
+    public ConsistencyLevel get( final Operation operation )
+    {
+        return levels.get( operation );
+    }
+
+    /**
+     * @return the level of a read, depending on whether the record is known to be sealed
+     */
+    public ConsistencyLevel read( final boolean sealed )
+    {
+        return get( sealed ? Operation.SEALED_READ : Operation.IN_PROGRESS_READ );
+    }
+
+    private void set( final Operation operation, final ConsistencyLevel level, final boolean localDc )
+    {
+        ConsistencyLevel configured = level == null ? QUORUM : level;
+        levels.put( operation, localDc ? toLocalDc( configured ) : configured );
+    }
+
+    static ConsistencyLevel toLocalDc( final ConsistencyLevel level )
+    {
+        switch ( level )
+        {
+            case ONE:
+                return ConsistencyLevel.LOCAL_ONE;
+            case QUORUM:
+                return ConsistencyLevel.LOCAL_QUORUM;
+            case SERIAL:
+                return ConsistencyLevel.LOCAL_SERIAL;
+            default:
+                return level;
+        }
+    }
+}
@@ -15,11 +15,6 @@
  */
 package org.commonjava.indy.service.tracking.data.cassandra;
 
-import com.datastax.driver.core.Row;
-import com.datastax.driver.mapping.annotations.ClusteringColumn;
-import com.datastax.driver.mapping.annotations.Column;
-import com.datastax.driver.mapping.annotations.PartitionKey;
-import com.datastax.driver.mapping.annotations.Table;
 import org.commonjava.indy.service.tracking.model.AccessChannel;
 import org.commonjava.indy.service.tracking.model.StoreEffect;
 import org.commonjava.indy.service.tracking.model.StoreKey;
@@ -29,9 +24,9 @@ import org.commonjava.indy.service.tracking.model.TrackingKey;
 import java.util.HashSet;
 import java.util.Set;
 
-import static org.commonjava.indy.service.tracking.data.cassandra.CassandraFoloUtil.TABLE_FOLO;
-
-@Table( name = TABLE_FOLO, readConsistency = "QUORUM", writeConsistency = "QUORUM" )
+/**
+ * One row of the tracking records table, written and decoded by {@link RecordStatements}.
+ */
 public class DtxTrackingRecord
 {
 
@@ -39,50 +34,32 @@ public class DtxTrackingRecord
 
     private final static Boolean IN_PROGRESS = false;
 
-    @PartitionKey
-    @Column( name = "tracking_key" )
     String trackingKey;
 
-    @Column( name = "sealed" )
     Boolean state;
 
-    @ClusteringColumn( 0 )
-    @Column( name = "store_key" )
     String storeKey;
 
-    @Column( name = "access_channel" )
     String accessChannel;
 
-    @ClusteringColumn( 1 )
-    @Column( name = "path" )
     String path;
 
-    @Column( name = "origin_url" )
     String originUrl;
 
-    @Column( name = "local_url" )
     String localUrl;
 
-    @ClusteringColumn( 2 )
-    @Column( name = "store_effect" )
     String storeEffect;
 
-    @Column( name = "md5" )
     String md5;
 
-    @Column( name = "sha256" )
     String sha256;
 
-    @Column( name = "sha1" )
     String sha1;
 
-    @Column( name = "size" )
     Long size;
 
-    @Column( name = "started" ) // started timestamp *
     Long started;
 
-    @Column( name = "timestamps" )
     Set<Long> timestamps;
 
     public DtxTrackingRecord()
@@ -181,28 +158,6 @@ public class DtxTrackingRecord
         return trackedContentEntry;
     }
 
-    public static DtxTrackingRecord fromCassandraRow( Row row )
-    {
-
-        DtxTrackingRecord dtxTrackingRecord = new DtxTrackingRecord();
-        dtxTrackingRecord.setTrackingKey( row.getString( "tracking_key" ) );
-        dtxTrackingRecord.setState( row.getBool( "sealed" ) );
-        dtxTrackingRecord.setLocalUrl( row.getString( "local_url" ) );
-        dtxTrackingRecord.setOriginUrl( row.getString( "origin_url" ) );
-        dtxTrackingRecord.setTimestamps( row.getSet( "timestamps", Long.class ) );
-        dtxTrackingRecord.setPath( row.getString( "path" ) );
-        dtxTrackingRecord.setStoreEffect( row.getString( "store_effect" ) );
-        dtxTrackingRecord.setSha256( row.getString( "sha256" ) );
-        dtxTrackingRecord.setSha1( row.getString( "sha1" ) );
-        dtxTrackingRecord.setMd5( row.getString( "md5" ) );
-        dtxTrackingRecord.setSize( row.getLong( "size" ) );
-        dtxTrackingRecord.setStoreKey( row.getString( "store_key" ) );
-        dtxTrackingRecord.setAccessChannel( row.getString( "access_channel" ) );
-        dtxTrackingRecord.setStarted( row.getLong( "started" ) ); // started timestamp *
-
-        return dtxTrackingRecord;
-    }
-
     public String getLocalUrl()
     {
         return localUrl;
@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.data.cassandra;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Caps the number of in-flight async requests without blocking the caller. A request which can't get a permit is
+ * queued and started when an earlier one releases its permit. Futures are always completed outside the lock since
+ * their dependent stages run on the completing thread.
+ */
+public class InFlightLimiter
+{
+    private final int maxInFlight;
+
+    private final Deque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+
+    private List<CompletableFuture<Void>> capacityWaiters = new ArrayList<>();
+
+    private int inFlight;
+
+    public InFlightLimiter( final int maxInFlight )
+    {
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * @return a stage which completes once the caller holds a permit. Every permit must be given back with
+     *         {@link #release()}.
+     */
+    public CompletionStage<Void> acquire()
+    {
+        synchronized ( this )
+        {
+            if ( inFlight < maxInFlight )
+            {
+                inFlight++;
+                return CompletableFuture.completedFuture( null );
+            }
+            CompletableFuture<Void> waiter = new CompletableFuture<>();
+            waiters.add( waiter );
+            return waiter;
+        }
+    }
+
+    public void release()
+    {
+        CompletableFuture<Void> next;
+        List<CompletableFuture<Void>> ready = null;
+        synchronized ( this )
+        {
+            next = waiters.poll();
+            if ( next == null )
+            {
+                inFlight--;
+                ready = capacityWaiters;
+                capacityWaiters = new ArrayList<>();
+            }
+        }
+        if ( next != null )
+        {
+            // the permit is handed over to the next waiter as it is
+            next.complete( null );
+        }
+        else
+        {
+            ready.forEach( waiter -> waiter.complete( null ) );
+        }
+    }
+
+    /**
+     * @return a stage which completes once there is a free permit, without taking it. Producers use this for
+     *         back-pressure so they don't pile up requests in the wait queue.
+     */
+    public CompletionStage<Void> whenAvailable()
+    {
+        synchronized ( this )
+        {
+            if ( inFlight < maxInFlight && waiters.isEmpty() )
+            {
+                return CompletableFuture.completedFuture( null );
+            }
+            CompletableFuture<Void> waiter = new CompletableFuture<>();
+            capacityWaiters.add( waiter );
+            return waiter;
+        }
+    }
+
+    public synchronized int getInFlight()
+    {
+        return inFlight;
+    }
+}
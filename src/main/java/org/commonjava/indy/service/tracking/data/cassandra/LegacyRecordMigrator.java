@@ -0,0 +1,225 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.data.cassandra;
+
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Session;
+import com.google.common.util.concurrent.RateLimiter;
+import io.quarkus.runtime.Startup;
+import org.commonjava.indy.service.tracking.model.TrackingKey;
+import org.commonjava.indy.service.tracking.model.dto.LegacyMigrationStatusDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.commonjava.indy.service.tracking.data.cassandra.CassandraFoloUtil.TABLE_FOLO_LEGACY;
+import static org.commonjava.indy.service.tracking.data.cassandra.CassandraTrackingQuery.LEGACY_MIGRATION;
+import static org.commonjava.indy.service.tracking.data.cassandra.CassandraTrackingQuery.TOKEN_RANGE;
+
+/**
+ * Copies the records of the legacy table into the records table in the background, so reads can stop falling back to
+ * the legacy table. The legacy keys are read with a {@link TokenRangeScanner} over cassandra.legacyMigration.ranges
+ * token ranges; every range done is checkpointed, so a restarted migration only scans the ranges left. Sealed records
+ * whose copy was completed are skipped, a copy interrupted by a crash is redone. Records keep their sealed state, see
+ * {@link CassandraTrackingQuery#migrateLegacyRecord(TrackingKey)}. Copying is throttled by
+ * cassandra.legacyMigration.ratePerSecond to keep the load on the cluster low.
+ * <p>
+ * Once every range is done the legacy migration is marked completed, which switches off the legacy fallback on all
+ * service instances.
+ */
+@Startup
+@ApplicationScoped
+public class LegacyRecordMigrator
+{
+    public enum State
+    {
+        IDLE, RUNNING, COMPLETED, FAILED
+    }
+
+    private static final int FETCH_SIZE = 100;
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    CassandraClient client;
+
+    @Inject
+    CassandraConfiguration config;
+
+    @Inject
+    CassandraTrackingQuery recordManager;
+
+    private TokenRangeScanner scanner;
+
+    private ScanCheckpoint checkpoint;
+
+    private PreparedStatement getLegacyTrackingKeys;
+
+    private TokenRangeScanner.Scan scan;
+
+    private volatile boolean completed;
+
+    private final AtomicLong migrated = new AtomicLong();
+
+    private final AtomicLong skipped = new AtomicLong();
+
+    private volatile Long startedAt;
+
+    private volatile Long finishedAt;
+
+    protected LegacyRecordMigrator()
+    {
+    }
+
+    public LegacyRecordMigrator( CassandraClient client, CassandraConfiguration config,
+                                 CassandraTrackingQuery recordManager )
+    {
+        this.client = client;
+        this.config = config;
+        this.recordManager = recordManager;
+        init();
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        if ( config.isLegacyMigrationEnabled() )
+        {
+            start();
+        }
+    }
+
+    /**
+     * Start the migration in the background, resuming from the last checkpoint.
+     *
+     * @return false if it is already running or completed
+     */
+    public synchronized boolean start()
+    {
+        if ( scan != null && !scan.whenDone().isDone() )
+        {
+            return false;
+        }
+        if ( recordManager.isLegacyMigrated() )
+        {
+            completed = true;
+            return false;
+        }
+        prepare();
+
+        migrated.set( 0 );
+        skipped.set( 0 );
+        startedAt = System.currentTimeMillis();
+        finishedAt = null;
+        double rate = config.getLegacyMigrationRatePerSecond();
+        RateLimiter rateLimiter = RateLimiter.create( rate > 0 ? rate : Double.MAX_VALUE );
+
+        scan = scanner.scan( "legacy-migration", getLegacyTrackingKeys, FETCH_SIZE, checkpoint, row -> {
+            rateLimiter.acquire();
+            migrateRecord( new TrackingKey( row.getString( "tracking_key" ) ) );
+        } );
+        scan.whenDone().thenAccept( this::finish );
+        return true;
+    }
+
+    private void prepare()
+    {
+        if ( scanner != null )
+        {
+            return;
+        }
+        String keySpace = config.getKeyspace();
+        Session session = client.getSession( keySpace );
+        getLegacyTrackingKeys = session.prepare( "SELECT DISTINCT tracking_key FROM " + keySpace + "."
+                                                                 + TABLE_FOLO_LEGACY + TOKEN_RANGE + ";" );
+        checkpoint = new ScanCheckpoint( session, keySpace, LEGACY_MIGRATION, new ConsistencyPolicy( config ) );
+        scanner = new TokenRangeScanner( session, config.getLegacyMigrationParallelism(),
+                                         config.getLegacyMigrationRanges(), MAX_ATTEMPTS );
+    }
+
+    private void migrateRecord( TrackingKey key )
+    {
+        if ( recordManager.migrateLegacyRecord( key ) )
+        {
+            migrated.incrementAndGet();
+        }
+        else
+        {
+            skipped.incrementAndGet();
+        }
+    }
+
+    private synchronized void finish( TokenRangeScanner.Scan scan )
+    {
+        finishedAt = System.currentTimeMillis();
+        if ( scan.isComplete() )
+        {
+            recordManager.markLegacyMigrated();
+            completed = true;
+            logger.info( "Legacy migration completed in {} ms, {} records migrated, {} skipped",
+                         finishedAt - startedAt, migrated.get(), skipped.get() );
+        }
+        else
+        {
+            logger.error( "Legacy migration stopped with {} of {} token ranges not done, start it again to resume",
+                          scan.getRanges() - scan.getRangesDone(), scan.getRanges() );
+        }
+    }
+
+    public synchronized LegacyMigrationStatusDTO getStatus()
+    {
+        LegacyMigrationStatusDTO status = new LegacyMigrationStatusDTO();
+        if ( scan == null )
+        {
+            status.setState( ( completed || recordManager.isLegacyMigrated() ? State.COMPLETED : State.IDLE ).name() );
+            return status;
+        }
+        State state;
+        if ( !scan.whenDone().isDone() )
+        {
+            state = State.RUNNING;
+        }
+        else
+        {
+            state = scan.isComplete() ? State.COMPLETED : State.FAILED;
+        }
+        status.setState( state.name() );
+        status.setRanges( scan.getRanges() );
+        status.setRangesDone( scan.getRangesDone() );
+        status.setRangesFailed( scan.getRangesFailed() );
+        status.setMigrated( migrated.get() );
+        status.setSkipped( skipped.get() );
+        status.setStartedAt( startedAt );
+        status.setFinishedAt( finishedAt );
+        return status;
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        if ( scan != null )
+        {
+            scan.cancel();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.data.cassandra;
+
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.commonjava.indy.service.tracking.data.cassandra.CassandraFoloUtil.TABLE_FOLO_MIGRATION;
+import static org.commonjava.indy.service.tracking.data.cassandra.ConsistencyPolicy.Operation.IN_PROGRESS_READ;
+import static org.commonjava.indy.service.tracking.data.cassandra.ConsistencyPolicy.Operation.SEAL;
+
+/**
+ * Completion marks of the one-off data migrations, shared by all service instances. A completed mark is cached for
+ * good; a missing one is only re-read after a while, so callers can ask on every request.
+ */
+public class MigrationMarks
+{
+    private static final long RECHECK_MILLIS = 60000;
+
+    private final Session session;
+
+    private final PreparedStatement getMigration;
+
+    private final PreparedStatement markMigration;
+
+    private final Set<String> completed = ConcurrentHashMap.newKeySet();
+
+    private final Map<String, Long> checked = new ConcurrentHashMap<>();
+
+    public MigrationMarks( final Session session, final String keySpace, final ConsistencyPolicy consistency )
+    {
+        this.session = session;
+        session.execute( CassandraFoloUtil.getSchemaCreateTableFoloMigration( keySpace ) );
+
+        String migration = keySpace + "." + TABLE_FOLO_MIGRATION;
+        getMigration = session.prepare( "SELECT completed FROM " + migration + " WHERE name=?;" );
+        getMigration.setConsistencyLevel( consistency.get( IN_PROGRESS_READ ) );
+        markMigration = session.prepare( "INSERT INTO " + migration + " (name, completed) VALUES (?, ?);" );
+        markMigration.setConsistencyLevel( consistency.get( SEAL ) );
+    }
+
+    public boolean isCompleted( final String name )
+    {
+        if ( completed.contains( name ) )
+        {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        Long last = checked.get( name );
+        if ( last != null && now - last < RECHECK_MILLIS )
+        {
+            return false;
+        }
+        Row row = session.execute( getMigration.bind( name ) ).one();
+        checked.put( name, now );
+        if ( row != null && !row.isNull( "completed" ) )
+        {
+            completed.add( name );
+            return true;
+        }
+        return false;
+    }
+
+    public void markCompleted( final String name )
+    {
+        session.execute( markMigration.bind( name, System.currentTimeMillis() ) );
+        completed.add( name );
+    }
+}
@@ -0,0 +1,376 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.data.cassandra;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.commonjava.indy.service.tracking.data.cassandra.CassandraFoloUtil.TABLE_FOLO;
+import static org.commonjava.indy.service.tracking.data.cassandra.CassandraFoloUtil.TABLE_FOLO_BUCKETED;
+import static org.commonjava.indy.service.tracking.data.cassandra.ConsistencyPolicy.Operation.INGEST_WRITE;
+import static org.commonjava.indy.service.tracking.data.cassandra.ConsistencyPolicy.Operation.IN_PROGRESS_READ;
+import static org.commonjava.indy.service.tracking.data.cassandra.ConsistencyPolicy.Operation.SEAL;
+
+/**
+ * Prepared statements of the record rows, bound and decoded by position. This replaces the object mapper, which binds
+ * through reflection, looks every column up by name and always writes the unused local_url column.
+ * <p>
+ * With buckets configured, the rows live in {@link CassandraFoloUtil#TABLE_FOLO_BUCKETED} instead, where a tracking
+ * record is split into that many partitions by a hash of the store key and path. The statements reading or deleting
+ * a whole record then come as one per bucket, for the caller to run in parallel.
+ */
+public class RecordStatements
+{
+    /**
+     * Columns read by {@link #select(String)}, in the order of the index constants below.
+     */
+    private static final String READ_COLUMNS =
+                    "tracking_key, store_key, path, store_effect, sealed, access_channel, origin_url, md5, sha256,"
+                                    + " sha1, size, timestamps";
+
+    private static final int TRACKING_KEY = 0;
+
+    private static final int STORE_KEY = 1;
+
+    private static final int PATH = 2;
+
+    private static final int STORE_EFFECT = 3;
+
+    private static final int SEALED = 4;
+
+    private static final int ACCESS_CHANNEL = 5;
+
+    private static final int ORIGIN_URL = 6;
+
+    private static final int MD5 = 7;
+
+    private static final int SHA256 = 8;
+
+    private static final int SHA1 = 9;
+
+    private static final int SIZE = 10;
+
+    private static final int TIMESTAMPS = 11;
+
+    /**
+     * Order of the rows within a partition, to merge the rows of several buckets.
+     */
+    public static final Comparator<Row> CLUSTERING_ORDER =
+                    Comparator.comparing( ( Row row ) -> row.getString( STORE_KEY ) )
+                              .thenComparing( row -> row.getString( PATH ) )
+                              .thenComparing( row -> row.getString( STORE_EFFECT ) );
+
+    private final int buckets;
+
+    private final String table;
+
+    private final String partition;
+
+    private final String tokenRange;
+
+    private final PreparedStatement insert;
+
+    private final PreparedStatement upsert;
+
+    private final PreparedStatement update;
+
+    private final PreparedStatement selectRecord;
+
+    private final PreparedStatement selectState;
+
+    private final PreparedStatement deleteRecord;
+
+    /**
+     * @param buckets partitions per tracking record, or 0 for the unbucketed records table. This must not change once
+     *                records are written, rows are only found in the bucket they were written to.
+     * @param consistency levels of the writes, and the default level of the reads which may be raised per call
+     */
+    public RecordStatements( final Session session, final String keySpace, final int buckets,
+                             final ConsistencyPolicy consistency )
+    {
+        this.buckets = Math.max( 0, buckets );
+        boolean bucketed = this.buckets > 0;
+        this.table = keySpace + "." + ( bucketed ? TABLE_FOLO_BUCKETED : TABLE_FOLO );
+        this.partition = bucketed ? "tracking_key, bucket" : "tracking_key";
+        String partitionKey = bucketed ? " WHERE tracking_key=? AND bucket=?" : " WHERE tracking_key=?";
+        String rowKey = partitionKey + " AND store_key=? AND path=? AND store_effect=?;";
+        this.tokenRange = " WHERE token(" + partition + ") > ? AND token(" + partition + ") <= ?";
+
+        insert = session.prepare( "INSERT INTO " + table + " (" + partition + ", store_key, path, store_effect,"
+                                                  + " sealed, access_channel, origin_url, md5, sha256, sha1, size,"
+                                                  + " started, timestamps) VALUES (" + ( bucketed ? "?, " : "" )
+                                                  + "?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?);" );
+        insert.setConsistencyLevel( consistency.get( INGEST_WRITE ) );
+
+        upsert = session.prepare( "UPDATE " + table + " SET sealed=?, access_channel=?, origin_url=?, md5=?,"
+                                                  + " sha256=?, sha1=?, size=?, started=?,"
+                                                  + " timestamps = timestamps + ?" + rowKey );
+        upsert.setConsistencyLevel( consistency.get( INGEST_WRITE ) );
+
+        update = session.prepare( "UPDATE " + table + " SET md5=?, sha256=?, sha1=?, size=?,"
+                                                  + " timestamps = timestamps + ?" + rowKey );
+        update.setConsistencyLevel( consistency.get( INGEST_WRITE ) );
+
+        selectRecord = session.prepare( select( table ) + partitionKey + ";" );
+        selectRecord.setConsistencyLevel( consistency.get( IN_PROGRESS_READ ) );
+        selectRecord.setIdempotent( true );
+
+        selectState = session.prepare( "SELECT sealed, started FROM " + table + partitionKey + " LIMIT 1;" );
+        selectState.setConsistencyLevel( consistency.get( IN_PROGRESS_READ ) );
+        selectState.setIdempotent( true );
+
+        deleteRecord = session.prepare( "DELETE FROM " + table + partitionKey + ";" );
+        deleteRecord.setConsistencyLevel( consistency.get( SEAL ) );
+    }
+
+    /**
+     * @return the select of all read columns of a records table, to be completed with the where clause
+     */
+    public static String select( final String table )
+    {
+        return "SELECT " + READ_COLUMNS + " FROM " + table;
+    }
+
+    /**
+     * @return keyspace-qualified name of the table holding the record rows
+     */
+    public String getTable()
+    {
+        return table;
+    }
+
+    /**
+     * @return the partition key columns, as listed in a select
+     */
+    public String getPartitionKey()
+    {
+        return partition;
+    }
+
+    /**
+     * @return restriction of a full-table scan to the token range the {@link TokenRangeScanner} binds
+     */
+    public String getTokenRange()
+    {
+        return tokenRange;
+    }
+
+    public int getBuckets()
+    {
+        return buckets;
+    }
+
+    /**
+     * @return the bucket of a row, stable across service instances and restarts, or 0 if the layout is unbucketed
+     */
+    public int bucket( final String storeKey, final String path )
+    {
+        if ( buckets == 0 )
+        {
+            return 0;
+        }
+        int hash = 31 * storeKey.hashCode() + path.hashCode();
+        // spread the low bits, the bucket count is usually small
+        hash ^= hash >>> 16;
+        return Math.floorMod( hash * 0x9E3779B1, buckets );
+    }
+
+    /**
+     * Write the whole row, replacing its timestamps.
+     */
+    public BoundStatement insert( final DtxTrackingRecord record )
+    {
+        BoundStatement bound = insert.bind();
+        int i = setPartitionKey( bound, record );
+        bound.setString( i++, record.getStoreKey() );
+        bound.setString( i++, record.getPath() );
+        bound.setString( i++, record.getStoreEffect() );
+        setBool( bound, i++, record.getState() );
+        bound.setString( i++, record.getAccessChannel() );
+        bound.setString( i++, record.getOriginUrl() );
+        bound.setString( i++, record.getMd5() );
+        bound.setString( i++, record.getSha256() );
+        bound.setString( i++, record.getSha1() );
+        setLong( bound, i++, record.getSize() );
+        setLong( bound, i++, record.getStarted() );
+        bound.setSet( i, record.getTimestamps(), Long.class );
+        return bound;
+    }
+
+    /**
+     * Write the whole row, adding the timestamps to the stored ones.
+     */
+    public BoundStatement upsert( final DtxTrackingRecord record )
+    {
+        BoundStatement bound = upsert.bind();
+        setBool( bound, 0, record.getState() );
+        bound.setString( 1, record.getAccessChannel() );
+        bound.setString( 2, record.getOriginUrl() );
+        bound.setString( 3, record.getMd5() );
+        bound.setString( 4, record.getSha256() );
+        bound.setString( 5, record.getSha1() );
+        setLong( bound, 6, record.getSize() );
+        setLong( bound, 7, record.getStarted() );
+        bound.setSet( 8, record.getTimestamps(), Long.class );
+        setRowKey( bound, 9, record );
+        return bound;
+    }
+
+    /**
+     * Add the timestamps to a row and write only the checksum and size columns which differ from the previous write.
+     * The other variables are left unset, so those columns are not written at all; this needs native protocol v4.
+     */
+    public BoundStatement update( final DtxTrackingRecord record, final WrittenRows.Columns previous )
+    {
+        BoundStatement bound = update.bind();
+        if ( !previous.isSameMd5( record ) )
+        {
+            bound.setString( 0, record.getMd5() );
+        }
+        if ( !previous.isSameSha256( record ) )
+        {
+            bound.setString( 1, record.getSha256() );
+        }
+        if ( !previous.isSameSha1( record ) )
+        {
+            bound.setString( 2, record.getSha1() );
+        }
+        if ( !previous.isSameSize( record ) )
+        {
+            setLong( bound, 3, record.getSize() );
+        }
+        bound.setSet( 4, record.getTimestamps(), Long.class );
+        setRowKey( bound, 5, record );
+        return bound;
+    }
+
+    /**
+     * @return reads of all rows of a tracking record, one per partition
+     */
+    public List<Statement> selectRecord( final String trackingId )
+    {
+        return perPartition( selectRecord, trackingId );
+    }
+
+    /**
+     * @return reads of the sealed state and start time of any one row of a tracking record, one per partition
+     */
+    public List<Statement> selectState( final String trackingId )
+    {
+        return perPartition( selectState, trackingId );
+    }
+
+    /**
+     * @return deletes of all rows of a tracking record, one per partition
+     */
+    public List<Statement> deleteRecord( final String trackingId )
+    {
+        return perPartition( deleteRecord, trackingId );
+    }
+
+    private List<Statement> perPartition( final PreparedStatement statement, final String trackingId )
+    {
+        List<Statement> statements = new ArrayList<>( Math.max( 1, buckets ) );
+        if ( buckets == 0 )
+        {
+            statements.add( statement.bind( trackingId ) );
+        }
+        for ( int bucket = 0; bucket < buckets; bucket++ )
+        {
+            statements.add( statement.bind( trackingId, bucket ) );
+        }
+        return statements;
+    }
+
+    /**
+     * Decode a row read with {@link #select(String)}.
+     */
+    public static DtxTrackingRecord toRecord( final Row row )
+    {
+        DtxTrackingRecord record = new DtxTrackingRecord();
+        record.setTrackingKey( row.getString( TRACKING_KEY ) );
+        record.setStoreKey( row.getString( STORE_KEY ) );
+        record.setPath( row.getString( PATH ) );
+        record.setStoreEffect( row.getString( STORE_EFFECT ) );
+        record.setState( row.getBool( SEALED ) );
+        record.setAccessChannel( row.getString( ACCESS_CHANNEL ) );
+        record.setOriginUrl( row.getString( ORIGIN_URL ) );
+        record.setMd5( row.getString( MD5 ) );
+        record.setSha256( row.getString( SHA256 ) );
+        record.setSha1( row.getString( SHA1 ) );
+        record.setSize( row.getLong( SIZE ) );
+        record.setTimestamps( row.getSet( TIMESTAMPS, Long.class ) );
+        return record;
+    }
+
+    /**
+     * @return index of the next variable
+     */
+    private int setPartitionKey( final BoundStatement bound, final DtxTrackingRecord record )
+    {
+        bound.setString( 0, record.getTrackingKey() );
+        if ( buckets == 0 )
+        {
+            return 1;
+        }
+        bound.setInt( 1, bucket( record.getStoreKey(), record.getPath() ) );
+        return 2;
+    }
+
+    private void setRowKey( final BoundStatement bound, final int first, final DtxTrackingRecord record )
+    {
+        bound.setString( first, record.getTrackingKey() );
+        int i = first + 1;
+        if ( buckets > 0 )
+        {
+            bound.setInt( i++, bucket( record.getStoreKey(), record.getPath() ) );
+        }
+        bound.setString( i++, record.getStoreKey() );
+        bound.setString( i++, record.getPath() );
+        bound.setString( i, record.getStoreEffect() );
+    }
+
+    private static void setBool( final BoundStatement bound, final int index, final Boolean value )
+    {
+        if ( value == null )
+        {
+            bound.setToNull( index );
+        }
+        else
+        {
+            bound.setBool( index, value );
+        }
+    }
+
+    private static void setLong( final BoundStatement bound, final int index, final Long value )
+    {
+        if ( value == null )
+        {
+            bound.setToNull( index );
+        }
+        else
+        {
+            bound.setLong( index, value );
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.data.cassandra;
+
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.commonjava.indy.service.tracking.data.cassandra.CassandraFoloUtil.TABLE_FOLO_MIGRATION_RANGES;
+import static org.commonjava.indy.service.tracking.data.cassandra.ConsistencyPolicy.Operation.IN_PROGRESS_READ;
+import static org.commonjava.indy.service.tracking.data.cassandra.ConsistencyPolicy.Operation.SEAL;
+
+/**
+ * Checkpoint of a resumable token-range scan, one row per completed sub-range under the name of the scan.
+ */
+public class ScanCheckpoint
+                implements TokenRangeScanner.Checkpoint
+{
+    private final Session session;
+
+    private final String name;
+
+    private final PreparedStatement getCompleted;
+
+    private final PreparedStatement markCompleted;
+
+    public ScanCheckpoint( final Session session, final String keySpace, final String name,
+                           final ConsistencyPolicy consistency )
+    {
+        this.session = session;
+        this.name = name;
+        session.execute( CassandraFoloUtil.getSchemaCreateTableFoloMigrationRanges( keySpace ) );
+
+        String ranges = keySpace + "." + TABLE_FOLO_MIGRATION_RANGES;
+        getCompleted = session.prepare( "SELECT range_start, range_end FROM " + ranges + " WHERE name=?;" );
+        getCompleted.setConsistencyLevel( consistency.get( IN_PROGRESS_READ ) );
+        markCompleted = session.prepare( "INSERT INTO " + ranges
+                                                         + " (name, range_start, range_end, records, completed)"
+                                                         + " VALUES (?, ?, ?, ?, ?);" );
+        markCompleted.setConsistencyLevel( consistency.get( SEAL ) );
+    }
+
+    @Override
+    public Set<TokenRangeScanner.Range> getCompleted()
+    {
+        Set<TokenRangeScanner.Range> completed = new HashSet<>();
+        for ( Row row : session.execute( getCompleted.bind( name ) ) )
+        {
+            completed.add( new TokenRangeScanner.Range( row.getLong( "range_start" ), row.getLong( "range_end" ) ) );
+        }
+        return completed;
+    }
+
+    @Override
+    public void markCompleted( final TokenRangeScanner.Range range, final long rows )
+    {
+        session.execute( markCompleted.bind( name, range.getStart(), range.getEnd(), rows,
+                                             System.currentTimeMillis() ) );
+    }
+}
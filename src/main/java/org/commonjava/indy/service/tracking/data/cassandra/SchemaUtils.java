@@ -15,6 +15,12 @@
  */
 package org.commonjava.indy.service.tracking.data.cassandra;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
 public class SchemaUtils
 {
     public static String getSchemaCreateKeyspace( String keyspace, int replica )
@@ -22,4 +28,42 @@ public class SchemaUtils
         return "CREATE KEYSPACE IF NOT EXISTS " + keyspace
                         + " WITH REPLICATION = {'class':'SimpleStrategy', 'replication_factor':" + replica + "};";
     }
+
+    /**
+     * @param replicasPerDc replication factor of each datacenter
+     */
+    public static String getSchemaCreateKeyspace( String keyspace, Map<String, Integer> replicasPerDc )
+    {
+        return "CREATE KEYSPACE IF NOT EXISTS " + keyspace + " WITH REPLICATION = {'class':'NetworkTopologyStrategy'"
+                        + replicasPerDc.entrySet()
+                                       .stream()
+                                       .map( dc -> ", '" + dc.getKey() + "':" + dc.getValue() )
+                                       .collect( Collectors.joining() ) + "};";
+    }
+
+    /**
+     * Parse replication factors per datacenter, like <code>dc1:3,dc2:3</code>.
+     *
+     * @return the factors in the configured order, or an empty map if none are configured
+     * @throws IllegalArgumentException if an entry is not a datacenter name and a positive factor
+     */
+    public static Map<String, Integer> parseReplicasPerDc( String replicasPerDc )
+    {
+        Map<String, Integer> factors = new LinkedHashMap<>();
+        if ( isBlank( replicasPerDc ) )
+        {
+            return factors;
+        }
+        for ( String entry : replicasPerDc.split( "," ) )
+        {
+            String[] parts = entry.split( ":" );
+            String dc = parts[0].trim();
+            if ( parts.length != 2 || !dc.matches( "[\\w.-]+" ) || !parts[1].trim().matches( "[1-9]\\d*" ) )
+            {
+                throw new IllegalArgumentException( "Invalid replication factor of datacenter: '" + entry + "'" );
+            }
+            factors.put( dc, Integer.valueOf( parts[1].trim() ) );
+        }
+        return factors;
+    }
 }
@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.data.cassandra;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Answers "is this tracking key sealed?" on the ingest path without a database read.
+ * <p>
+ * A sealed record never goes back to in-progress, but it can be deleted on another service instance and its id used
+ * again, so a sealed answer is only kept for cassandra.sealedGate.sealedTtlMillis. The write path also checks the
+ * header before rejecting a write to a key the gate calls sealed. An in-progress answer may be outdated by a seal on
+ * another service instance, so it is only trusted for cassandra.sealedGate.inProgressTtlMillis; that is how long
+ * entries may still be written into a record sealed elsewhere. Both maps are LRU-bounded; anything not found, expired
+ * or evicted is ambiguous and must be answered from storage by the caller.
+ */
+public class SealedKeyGate
+{
+    private final Map<String, Long> sealed;
+
+    private final Map<String, Long> inProgress;
+
+    private final int maxKeys;
+
+    private final long inProgressTtlMillis;
+
+    private final long sealedTtlMillis;
+
+    public SealedKeyGate( final int maxKeys, final long inProgressTtlMillis )
+    {
+        this( maxKeys, inProgressTtlMillis, 0 );
+    }
+
+    /**
+     * @param sealedTtlMillis how long a sealed answer is trusted, 0 to keep it until evicted
+     */
+    public SealedKeyGate( final int maxKeys, final long inProgressTtlMillis, final long sealedTtlMillis )
+    {
+        this.maxKeys = maxKeys;
+        this.sealed = Collections.synchronizedMap( new LruMap<>( maxKeys ) );
+        this.inProgress = Collections.synchronizedMap( new LruMap<>( maxKeys ) );
+        this.inProgressTtlMillis = inProgressTtlMillis;
+        this.sealedTtlMillis = sealedTtlMillis;
+    }
+
+    /**
+     * @return TRUE if sealed, FALSE if recently verified to be in progress, or null if it has to be checked in storage
+     */
+    public Boolean isSealed( final String trackingId )
+    {
+        Long sealedAt = sealed.get( trackingId );
+        if ( sealedAt != null )
+        {
+            if ( sealedTtlMillis <= 0 || System.currentTimeMillis() - sealedAt < sealedTtlMillis )
+            {
+                return Boolean.TRUE;
+            }
+            sealed.remove( trackingId );
+        }
+        Long verified = inProgress.get( trackingId );
+        if ( verified != null && System.currentTimeMillis() - verified < inProgressTtlMillis )
+        {
+            return Boolean.FALSE;
+        }
+        return null;
+    }
+
+    public void markSealed( final String trackingId )
+    {
+        inProgress.remove( trackingId );
+        sealed.put( trackingId, System.currentTimeMillis() );
+    }
+
+    public void markInProgress( final String trackingId )
+    {
+        inProgress.put( trackingId, System.currentTimeMillis() );
+    }
+
+    public void invalidate( final String trackingId )
+    {
+        sealed.remove( trackingId );
+        inProgress.remove( trackingId );
+    }
+
+    public int sealedSize()
+    {
+        return sealed.size();
+    }
+
+    public boolean isSealedFull()
+    {
+        return sealed.size() >= maxKeys;
+    }
+
+    private static final class LruMap<K, V>
+                    extends LinkedHashMap<K, V>
+    {
+        private final int maxSize;
+
+        LruMap( final int maxSize )
+        {
+            super( 16, 0.75f, true );
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry( final Map.Entry<K, V> eldest )
+        {
+            return size() > maxSize;
+        }
+    }
+}
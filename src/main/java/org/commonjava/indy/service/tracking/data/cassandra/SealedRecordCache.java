@@ -0,0 +1,286 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.data.cassandra;
+
+import io.opentelemetry.api.metrics.Meter;
+import org.commonjava.indy.service.tracking.model.TrackedContent;
+import org.commonjava.indy.service.tracking.model.TrackedContentEntry;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.commonjava.indy.service.tracking.data.metrics.MetricsManager.metricName;
+
+/**
+ * Read-through cache of sealed tracking records. A sealed record never changes until it is deleted or replaced. Entries
+ * are evicted least-recently-used first once either the entry count or the estimated heap size of the cached records
+ * goes over its limit.
+ * <p>
+ * Deletes, recalculations and imports only invalidate the cache of the service instance doing them. With several
+ * instances, the others keep serving the old record until it expires after the configured TTL, which bounds how stale
+ * a record can be; a TTL of 0 keeps records until evicted, which is only right for a single instance.
+ * <p>
+ * Callers get a copy of the cached record, so changing it doesn't change what the next reader gets.
+ */
+public class SealedRecordCache
+{
+    private static final long RECORD_OVERHEAD = 256;
+
+    private static final long ENTRY_OVERHEAD = 320;
+
+    private static final long TIMESTAMP_OVERHEAD = 48;
+
+    private final LinkedHashMap<String, Cached> records = new LinkedHashMap<>( 16, 0.75f, true );
+
+    private final long maxBytes;
+
+    private final int maxEntries;
+
+    private final long ttlMillis;
+
+    private final AtomicLong version = new AtomicLong();
+
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    public SealedRecordCache( final long maxBytes, final int maxEntries )
+    {
+        this( maxBytes, maxEntries, 0 );
+    }
+
+    public SealedRecordCache( final long maxBytes, final int maxEntries, final long ttlMillis )
+    {
+        this.maxBytes = maxBytes;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public void registerMetrics( final Meter meter )
+    {
+        meter.counterBuilder( metricName( "record", "cache", "hits" ) )
+             .setDescription( "Sealed record reads served from the cache" )
+             .buildWithCallback( m -> m.record( hits.get() ) );
+        meter.counterBuilder( metricName( "record", "cache", "misses" ) )
+             .setDescription( "Record reads which missed the sealed record cache" )
+             .buildWithCallback( m -> m.record( misses.get() ) );
+        meter.counterBuilder( metricName( "record", "cache", "evictions" ) )
+             .setDescription( "Records evicted from the sealed record cache" )
+             .buildWithCallback( m -> m.record( evictions.get() ) );
+        meter.gaugeBuilder( metricName( "record", "cache", "size" ) )
+             .setDescription( "Estimated heap size of the cached sealed records" )
+             .setUnit( "By" )
+             .ofLongs()
+             .buildWithCallback( m -> m.record( getBytes() ) );
+    }
+
+    /**
+     * @return a copy of the cached record, or null if it is not cached or expired
+     */
+    public TrackedContent get( final String trackingId )
+    {
+        Cached cached;
+        synchronized ( records )
+        {
+            cached = records.get( trackingId );
+            if ( cached != null && ttlMillis > 0 && System.currentTimeMillis() - cached.cachedAt >= ttlMillis )
+            {
+                records.remove( trackingId );
+                bytes -= cached.bytes;
+                cached = null;
+            }
+        }
+        if ( cached == null )
+        {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return copy( cached.record );
+    }
+
+    /**
+     * @return a value to pass to {@link #put(TrackedContent, long)}, taken before the record is read
+     */
+    public long version()
+    {
+        return version.get();
+    }
+
+    /**
+     * Cache a record, which must be sealed. Records bigger than the whole cache are not cached.
+     */
+    public void put( final TrackedContent record )
+    {
+        put( record, version() );
+    }
+
+    /**
+     * Cache a record, which must be sealed. It is dropped if any record was invalidated since the given version was
+     * taken, since it may have been read before the invalidation.
+     */
+    public void put( final TrackedContent record, final long readVersion )
+    {
+        long size = estimateBytes( record );
+        if ( size > maxBytes )
+        {
+            return;
+        }
+        TrackedContent cached = copy( record );
+        synchronized ( records )
+        {
+            if ( version.get() != readVersion )
+            {
+                return;
+            }
+            Cached prev = records.put( record.getKey().getId(), new Cached( cached, size ) );
+            if ( prev != null )
+            {
+                bytes -= prev.bytes;
+            }
+            bytes += size;
+            Iterator<Cached> eldest = records.values().iterator();
+            while ( ( bytes > maxBytes || records.size() > maxEntries ) && eldest.hasNext() )
+            {
+                bytes -= eldest.next().bytes;
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public void invalidate( final String trackingId )
+    {
+        synchronized ( records )
+        {
+            version.incrementAndGet();
+            Cached prev = records.remove( trackingId );
+            if ( prev != null )
+            {
+                bytes -= prev.bytes;
+            }
+        }
+    }
+
+    public long getBytes()
+    {
+        synchronized ( records )
+        {
+            return bytes;
+        }
+    }
+
+    public int size()
+    {
+        synchronized ( records )
+        {
+            return records.size();
+        }
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    private static TrackedContent copy( final TrackedContent record )
+    {
+        return new TrackedContent( record.getKey(), copy( record.getUploads() ), copy( record.getDownloads() ) );
+    }
+
+    private static Set<TrackedContentEntry> copy( final Set<TrackedContentEntry> entries )
+    {
+        if ( entries == null )
+        {
+            return null;
+        }
+        Set<TrackedContentEntry> copies = new HashSet<>( entries.size() * 2 );
+        for ( TrackedContentEntry entry : entries )
+        {
+            TrackedContentEntry copy = new TrackedContentEntry( entry.getTrackingKey(), entry.getStoreKey(),
+                                                                entry.getAccessChannel(), entry.getOriginUrl(),
+                                                                entry.getPath(), entry.getEffect(), entry.getSize(),
+                                                                entry.getMd5(), entry.getSha1(), entry.getSha256() );
+            copy.setTimestamps( entry.getTimestamps() == null ? null : new HashSet<>( entry.getTimestamps() ) );
+            copy.setIndex( entry.getIndex() );
+            copies.add( copy );
+        }
+        return copies;
+    }
+
+    /**
+     * Rough heap size of a record: strings count two bytes per char, plus a fixed overhead per object.
+     */
+    static long estimateBytes( final TrackedContent record )
+    {
+        return RECORD_OVERHEAD + estimateBytes( record.getUploads() ) + estimateBytes( record.getDownloads() );
+    }
+
+    private static long estimateBytes( final Set<TrackedContentEntry> entries )
+    {
+        long size = 0;
+        if ( entries != null )
+        {
+            for ( TrackedContentEntry entry : entries )
+            {
+                size += ENTRY_OVERHEAD + chars( entry.getPath() ) + chars( entry.getOriginUrl() ) + chars(
+                                entry.getMd5() ) + chars( entry.getSha1() ) + chars( entry.getSha256() );
+                if ( entry.getTimestamps() != null )
+                {
+                    size += TIMESTAMP_OVERHEAD * entry.getTimestamps().size();
+                }
+            }
+        }
+        return size;
+    }
+
+    private static long chars( final String value )
+    {
+        return value == null ? 0 : 2L * value.length();
+    }
+
+    private static final class Cached
+    {
+        private final TrackedContent record;
+
+        private final long bytes;
+
+        private final long cachedAt = System.currentTimeMillis();
+
+        private Cached( final TrackedContent record, final long bytes )
+        {
+            this.record = record;
+            this.bytes = bytes;
+        }
+    }
+}
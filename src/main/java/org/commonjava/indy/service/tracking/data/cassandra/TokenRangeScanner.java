@@ -0,0 +1,381 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.data.cassandra;
+
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.TokenRange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Full-table scans split over the token ring. The token ranges of the cluster metadata are cut into sub-ranges, which
+ * are scanned in parallel by a bounded pool of threads, each with its own paged query. A sub-range that fails is
+ * retried from its start, so the row consumer may see a row more than once; it has to be thread-safe and idempotent.
+ * Completed sub-ranges can be checkpointed, so a scan started again only reads the sub-ranges left.
+ * <p>
+ * The statement scanned must take the start (exclusive) and the end (inclusive) token of the sub-range as its two
+ * parameters, e.g. <code>WHERE token(tracking_key) &gt; ? AND token(tracking_key) &lt;= ?</code>. Tokens are handled as
+ * longs, which holds for the Murmur3Partitioner the keyspaces of the service use.
+ */
+public class TokenRangeScanner
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Session session;
+
+    private final int parallelism;
+
+    private final int splits;
+
+    private final int maxAttempts;
+
+    /**
+     * @param parallelism count of sub-ranges scanned at the same time
+     * @param splits count of sub-ranges to cut the ring into, at least one per token range of the cluster
+     * @param maxAttempts times a sub-range is tried before it is given up
+     */
+    public TokenRangeScanner( final Session session, final int parallelism, final int splits, final int maxAttempts )
+    {
+        this.session = session;
+        this.parallelism = Math.max( 1, parallelism );
+        this.splits = Math.max( 1, splits );
+        this.maxAttempts = Math.max( 1, maxAttempts );
+    }
+
+    /**
+     * Start scanning all rows of the statement in the background.
+     *
+     * @param name used for the scanning threads and in logs
+     * @param checkpoint where completed sub-ranges are recorded, or null if the scan is not resumable
+     * @param consumer called from the scanning threads for every row
+     */
+    public Scan scan( final String name, final PreparedStatement statement, final int fetchSize,
+                      final Checkpoint checkpoint, final Consumer<Row> consumer )
+    {
+        List<Range> ranges = getRanges();
+        Set<Range> completed = checkpoint == null ? Collections.emptySet() : checkpoint.getCompleted();
+
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool( parallelism, r -> {
+            Thread thread = new Thread( r, name + "-scan-" + threads.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        Scan scan = new Scan( name, ranges.size(), executor );
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for ( Range range : ranges )
+        {
+            if ( completed.contains( range ) )
+            {
+                scan.rangesDone.incrementAndGet();
+            }
+            else
+            {
+                futures.add( CompletableFuture.runAsync(
+                                () -> scanRange( scan, range, statement, fetchSize, checkpoint, consumer ),
+                                executor ) );
+            }
+        }
+        executor.shutdown();
+        logger.info( "Scan {} started, {} of {} token ranges left", name, futures.size(), ranges.size() );
+
+        CompletableFuture.allOf( futures.toArray( new CompletableFuture[0] ) ).whenComplete( ( result, error ) -> {
+            logger.info( "Scan {} finished in {} ms, {} of {} token ranges done, {} failed, {} rows", name,
+                         System.currentTimeMillis() - scan.startedAt, scan.getRangesDone(), scan.getRanges(),
+                         scan.getRangesFailed(), scan.getRows() );
+            scan.done.complete( scan );
+        } );
+        return scan;
+    }
+
+    private void scanRange( final Scan scan, final Range range, final PreparedStatement statement, final int fetchSize,
+                            final Checkpoint checkpoint, final Consumer<Row> consumer )
+    {
+        for ( int attempt = 1; attempt <= maxAttempts; attempt++ )
+        {
+            try
+            {
+                long rows = 0;
+                Statement bound = statement.bind( range.getStart(), range.getEnd() ).setFetchSize( fetchSize );
+                for ( Row row : session.execute( bound ) )
+                {
+                    if ( Thread.currentThread().isInterrupted() )
+                    {
+                        throw new CancellationException( "Scan " + scan.getName() + " was cancelled" );
+                    }
+                    consumer.accept( row );
+                    rows++;
+                }
+                if ( checkpoint != null )
+                {
+                    checkpoint.markCompleted( range, rows );
+                }
+                scan.rows.addAndGet( rows );
+                scan.rangesDone.incrementAndGet();
+                logger.debug( "Scan {} done with token range {}, {} rows", scan.getName(), range, rows );
+                return;
+            }
+            catch ( CancellationException e )
+            {
+                break;
+            }
+            catch ( RuntimeException e )
+            {
+                logger.warn( "Scan {} failed on token range {}, attempt {} of {}", scan.getName(), range, attempt,
+                             maxAttempts, e );
+            }
+        }
+        scan.rangesFailed.incrementAndGet();
+    }
+
+    /**
+     * Cut the token ranges of the cluster into sub-ranges, ordered by token. Falls back to splitting the ring evenly
+     * when the driver has no token metadata.
+     */
+    public List<Range> getRanges()
+    {
+        Set<TokenRange> tokenRanges = session.getCluster().getMetadata().getTokenRanges();
+        if ( tokenRanges.isEmpty() )
+        {
+            return splitRing( splits );
+        }
+        int perTokenRange = ( splits + tokenRanges.size() - 1 ) / tokenRanges.size();
+        List<Range> ranges = new ArrayList<>();
+        for ( TokenRange tokenRange : tokenRanges )
+        {
+            List<TokenRange> subRanges = perTokenRange > 1 ?
+                            tokenRange.splitEvenly( perTokenRange ) :
+                            Collections.singletonList( tokenRange );
+            for ( TokenRange subRange : subRanges )
+            {
+                for ( TokenRange unwrapped : subRange.unwrap() )
+                {
+                    ranges.add( range( (Long) unwrapped.getStart().getValue(),
+                                       (Long) unwrapped.getEnd().getValue() ) );
+                }
+            }
+        }
+        ranges.sort( Comparator.comparingLong( Range::getStart ) );
+        return ranges;
+    }
+
+    /**
+     * Range of tokens (start, end]. The minimum token as the end stands for the end of the ring, as in the driver, and
+     * is moved to the maximum token so it can be used in a query.
+     */
+    static Range range( final long start, final long end )
+    {
+        return new Range( start, end == Long.MIN_VALUE ? Long.MAX_VALUE : end );
+    }
+
+    /**
+     * Split the Murmur3 token ring into ranges of about the same size.
+     */
+    static List<Range> splitRing( final int count )
+    {
+        BigInteger min = BigInteger.valueOf( Long.MIN_VALUE );
+        BigInteger span = BigInteger.valueOf( Long.MAX_VALUE ).subtract( min );
+        List<Range> ranges = new ArrayList<>( count );
+        long start = Long.MIN_VALUE;
+        for ( int i = 1; i <= count; i++ )
+        {
+            long end = i == count ?
+                            Long.MAX_VALUE :
+                            min.add( span.multiply( BigInteger.valueOf( i ) ).divide( BigInteger.valueOf( count ) ) )
+                               .longValue();
+            ranges.add( new Range( start, end ) );
+            start = end;
+        }
+        return ranges;
+    }
+
+    /**
+     * Range of tokens (start, end].
+     */
+    public static final class Range
+    {
+        private final long start;
+
+        private final long end;
+
+        public Range( final long start, final long end )
+        {
+            this.start = start;
+            this.end = end;
+        }
+
+        public long getStart()
+        {
+            return start;
+        }
+
+        public long getEnd()
+        {
+            return end;
+        }
+
+        @Override
+        public boolean equals( final Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( o == null || getClass() != o.getClass() )
+            {
+                return false;
+            }
+            Range range = (Range) o;
+            return start == range.start && end == range.end;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash( start, end );
+        }
+
+        @Override
+        public String toString()
+        {
+            return "(" + start + ", " + end + "]";
+        }
+    }
+
+    /**
+     * Record of the sub-ranges a resumable scan has completed.
+     */
+    public interface Checkpoint
+    {
+        Set<Range> getCompleted();
+
+        void markCompleted( Range range, long rows );
+    }
+
+    /**
+     * Progress of a running scan.
+     */
+    public static final class Scan
+    {
+        private final String name;
+
+        private final int ranges;
+
+        private final ExecutorService executor;
+
+        private final long startedAt = System.currentTimeMillis();
+
+        private final AtomicInteger rangesDone = new AtomicInteger();
+
+        private final AtomicInteger rangesFailed = new AtomicInteger();
+
+        private final AtomicLong rows = new AtomicLong();
+
+        private final CompletableFuture<Scan> done = new CompletableFuture<>();
+
+        private Scan( final String name, final int ranges, final ExecutorService executor )
+        {
+            this.name = name;
+            this.ranges = ranges;
+            this.executor = executor;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public int getRanges()
+        {
+            return ranges;
+        }
+
+        public int getRangesDone()
+        {
+            return rangesDone.get();
+        }
+
+        public int getRangesFailed()
+        {
+            return rangesFailed.get();
+        }
+
+        public long getRows()
+        {
+            return rows.get();
+        }
+
+        /**
+         * @return true once every sub-range is scanned
+         */
+        public boolean isComplete()
+        {
+            return rangesDone.get() == ranges;
+        }
+
+        /**
+         * @return completed with this scan when no sub-range is left running, whether they all succeeded or not
+         */
+        public CompletableFuture<Scan> whenDone()
+        {
+            return done;
+        }
+
+        /**
+         * Wait for the scan to finish.
+         *
+         * @throws IllegalStateException if any sub-range could not be scanned
+         */
+        public Scan join()
+        {
+            done.join();
+            if ( !isComplete() )
+            {
+                throw new IllegalStateException(
+                                "Scan " + name + " failed on " + ( ranges - rangesDone.get() ) + " of " + ranges
+                                                + " token ranges" );
+            }
+            return this;
+        }
+
+        /**
+         * Stop the scan. Sub-ranges being scanned are left unfinished and are not checkpointed.
+         */
+        public void cancel()
+        {
+            executor.shutdownNow();
+            done.complete( this );
+        }
+    }
+}
@@ -0,0 +1,391 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.data.cassandra;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import org.commonjava.indy.service.tracking.Constants.TRACKING_TYPE;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.commonjava.indy.service.tracking.data.cassandra.CassandraFoloUtil.TABLE_FOLO_CATALOG;
+import static org.commonjava.indy.service.tracking.data.cassandra.CassandraFoloUtil.TABLE_FOLO_CATALOG_DAYS;
+import static org.commonjava.indy.service.tracking.data.cassandra.CassandraFoloUtil.TABLE_FOLO_SEAL_LOG;
+import static org.commonjava.indy.service.tracking.data.cassandra.CassandraFoloUtil.TABLE_FOLO_SEAL_LOG_DAYS;
+import static org.commonjava.indy.service.tracking.data.cassandra.ConsistencyPolicy.Operation.IN_PROGRESS_READ;
+
+/**
+ * Catalog of tracking ids, bucketed by state and by the day the record was created. Entries are written together with
+ * the record header, when a tracking record is first seen and when it is sealed, so listing the ids of one state only
+ * reads the non-empty buckets of that state instead of scanning the records table.
+ * <p>
+ * Sealed ids are also logged by the time they were sealed, so the records sealed within a time range are found by
+ * reading that range only.
+ * <p>
+ * Records created before the catalog existed are only listed after the backfill marked the catalog ready, see
+ * {@link CassandraTrackingQuery#migrateRecordHeaders()}. The seal log has its own mark since it was added later.
+ */
+public class TrackingCatalog
+{
+    private static final String CATALOG_MIGRATION = "catalog";
+
+    private static final String SEAL_LOG_MIGRATION = "seal-log";
+
+    /**
+     * Partition key of the seal log day index, which is a single partition.
+     */
+    private static final String SEAL_LOG = "sealed";
+
+    private static final int FETCH_SIZE = 1000;
+
+    private final Session session;
+
+    private final PreparedStatement insertEntry;
+
+    private final PreparedStatement deleteEntry;
+
+    private final PreparedStatement insertDay;
+
+    private final PreparedStatement getDays;
+
+    private final PreparedStatement getDaysFrom;
+
+    private final PreparedStatement getEntries;
+
+    private final PreparedStatement getEntriesAfter;
+
+    private final PreparedStatement insertSealLog;
+
+    private final PreparedStatement deleteSealLog;
+
+    private final PreparedStatement insertSealLogDay;
+
+    private final PreparedStatement getSealLogDays;
+
+    private final PreparedStatement getSealLog;
+
+    private final MigrationMarks migrationMarks;
+
+    public TrackingCatalog( final Session session, final String keySpace, final MigrationMarks migrationMarks,
+                            final ConsistencyPolicy consistency )
+    {
+        this.session = session;
+        this.migrationMarks = migrationMarks;
+        session.execute( CassandraFoloUtil.getSchemaCreateTableFoloCatalog( keySpace ) );
+        session.execute( CassandraFoloUtil.getSchemaCreateTableFoloCatalogDays( keySpace ) );
+        session.execute( CassandraFoloUtil.getSchemaCreateTableFoloSealLog( keySpace ) );
+        session.execute( CassandraFoloUtil.getSchemaCreateTableFoloSealLogDays( keySpace ) );
+
+        String catalog = keySpace + "." + TABLE_FOLO_CATALOG;
+        String days = keySpace + "." + TABLE_FOLO_CATALOG_DAYS;
+
+        insertEntry = session.prepare(
+                        "INSERT INTO " + catalog + " (state, day, tracking_key, created) VALUES (?, ?, ?, ?);" );
+        deleteEntry = session.prepare( "DELETE FROM " + catalog + " WHERE state=? AND day=? AND tracking_key=?;" );
+        insertDay = session.prepare( "INSERT INTO " + days + " (state, day) VALUES (?, ?);" );
+
+        getDays = session.prepare( "SELECT day FROM " + days + " WHERE state=?;" );
+        getDays.setConsistencyLevel( consistency.get( IN_PROGRESS_READ ) );
+        getDaysFrom = session.prepare( "SELECT day FROM " + days + " WHERE state=? AND day<=?;" );
+        getDaysFrom.setConsistencyLevel( consistency.get( IN_PROGRESS_READ ) );
+        getEntries = session.prepare(
+                        "SELECT tracking_key FROM " + catalog + " WHERE state=? AND day=? LIMIT ?;" );
+        getEntries.setConsistencyLevel( consistency.get( IN_PROGRESS_READ ) );
+        getEntriesAfter = session.prepare( "SELECT tracking_key FROM " + catalog
+                                                           + " WHERE state=? AND day=? AND tracking_key>? LIMIT ?;" );
+        getEntriesAfter.setConsistencyLevel( consistency.get( IN_PROGRESS_READ ) );
+
+        String sealLog = keySpace + "." + TABLE_FOLO_SEAL_LOG;
+        String sealLogDays = keySpace + "." + TABLE_FOLO_SEAL_LOG_DAYS;
+
+        insertSealLog = session.prepare(
+                        "INSERT INTO " + sealLog + " (day, sealed_at, tracking_key) VALUES (?, ?, ?);" );
+        deleteSealLog = session.prepare(
+                        "DELETE FROM " + sealLog + " WHERE day=? AND sealed_at=? AND tracking_key=?;" );
+        insertSealLogDay = session.prepare( "INSERT INTO " + sealLogDays + " (name, day) VALUES (?, ?);" );
+
+        getSealLogDays = session.prepare(
+                        "SELECT day FROM " + sealLogDays + " WHERE name=? AND day>=? AND day<=?;" );
+        getSealLogDays.setConsistencyLevel( consistency.get( IN_PROGRESS_READ ) );
+        getSealLog = session.prepare( "SELECT tracking_key FROM " + sealLog
+                                                      + " WHERE day=? AND sealed_at>? AND sealed_at<=?;" );
+        getSealLog.setConsistencyLevel( consistency.get( IN_PROGRESS_READ ) );
+    }
+
+    /**
+     * Add the catalog writes for a record which is in progress.
+     */
+    public void addInProgress( final BatchStatement batch, final String trackingId, final long created )
+    {
+        int day = toDay( created );
+        String state = TRACKING_TYPE.IN_PROGRESS.getValue();
+        batch.add( insertEntry.bind( state, day, trackingId, created ) );
+        batch.add( insertDay.bind( state, day ) );
+    }
+
+    /**
+     * Add the catalog writes for a record which is sealed, moving it out of the in-progress bucket and logging it at
+     * the time it was sealed.
+     */
+    public void addSealed( final BatchStatement batch, final String trackingId, final long created,
+                           final long sealedAt )
+    {
+        addSealedUnlogged( batch, trackingId, created );
+
+        int sealDay = toDay( sealedAt );
+        batch.add( insertSealLog.bind( sealDay, sealedAt, trackingId ) );
+        batch.add( insertSealLogDay.bind( SEAL_LOG, sealDay ) );
+    }
+
+    /**
+     * Like {@link #addSealed(BatchStatement, String, long, long)}, but without a seal log entry. For records copied
+     * from history, which incremental exports must not see as newly sealed.
+     */
+    public void addSealedUnlogged( final BatchStatement batch, final String trackingId, final long created )
+    {
+        int day = toDay( created );
+        String state = TRACKING_TYPE.SEALED.getValue();
+        batch.add( insertEntry.bind( state, day, trackingId, created ) );
+        batch.add( insertDay.bind( state, day ) );
+        batch.add( deleteEntry.bind( TRACKING_TYPE.IN_PROGRESS.getValue(), day, trackingId ) );
+    }
+
+    /**
+     * Add the removal of a seal log entry, when the record is deleted or sealed again at a later time.
+     */
+    public void addUnsealed( final BatchStatement batch, final String trackingId, final long sealedAt )
+    {
+        batch.add( deleteSealLog.bind( toDay( sealedAt ), sealedAt, trackingId ) );
+    }
+
+    /**
+     * Add the catalog writes for a record which is deleted. Emptied buckets stay in the day index, they only cost an
+     * empty read when listing.
+     */
+    public void addRemoved( final BatchStatement batch, final String trackingId, final long created )
+    {
+        int day = toDay( created );
+        for ( TRACKING_TYPE type : TRACKING_TYPE.values() )
+        {
+            batch.add( deleteEntry.bind( type.getValue(), day, trackingId ) );
+        }
+    }
+
+    /**
+     * @return true once the backfill of records created before the catalog existed has completed, on any instance
+     */
+    public boolean isReady()
+    {
+        return migrationMarks.isCompleted( CATALOG_MIGRATION );
+    }
+
+    public void markReady()
+    {
+        migrationMarks.markCompleted( CATALOG_MIGRATION );
+    }
+
+    /**
+     * @return true once every sealed record has an entry in the seal log, on any instance
+     */
+    public boolean isSealLogReady()
+    {
+        return migrationMarks.isCompleted( SEAL_LOG_MIGRATION );
+    }
+
+    public void markSealLogReady()
+    {
+        migrationMarks.markCompleted( SEAL_LOG_MIGRATION );
+    }
+
+    /**
+     * Pass every tracking id of the given state to the consumer, newest day first. Rows are fetched page by page.
+     */
+    public void forEach( final TRACKING_TYPE type, final Consumer<String> consumer )
+    {
+        String state = type.getValue();
+        for ( Row dayRow : session.execute( getDays.bind( state ).setFetchSize( FETCH_SIZE ) ) )
+        {
+            Statement statement = getEntries.bind( state, dayRow.getInt( "day" ), Integer.MAX_VALUE )
+                                            .setFetchSize( FETCH_SIZE );
+            for ( Row row : session.execute( statement ) )
+            {
+                consumer.accept( row.getString( "tracking_key" ) );
+            }
+        }
+    }
+
+    /**
+     * List one page of tracking ids. In-progress ids come before sealed ones, and within a state the newest day comes
+     * first and ids are in alphabetical order.
+     *
+     * @param after the cursor returned with the previous page, or null for the first page
+     */
+    public Page list( final Set<TRACKING_TYPE> types, final String after, final int limit )
+    {
+        Cursor cursor = Cursor.parse( after );
+        List<String> ids = new ArrayList<>( Math.min( limit, FETCH_SIZE ) );
+        for ( TRACKING_TYPE type : TRACKING_TYPE.values() )
+        {
+            if ( !types.contains( type ) || ( cursor != null && type.ordinal() < cursor.type.ordinal() ) )
+            {
+                continue;
+            }
+            String state = type.getValue();
+            boolean resume = cursor != null && cursor.type == type;
+            Statement days = resume ? getDaysFrom.bind( state, cursor.day ) : getDays.bind( state );
+            for ( Row dayRow : session.execute( days.setFetchSize( FETCH_SIZE ) ) )
+            {
+                int day = dayRow.getInt( "day" );
+                int remaining = limit - ids.size();
+                Statement entries = resume && cursor.day == day ?
+                                getEntriesAfter.bind( state, day, cursor.trackingId, remaining ) :
+                                getEntries.bind( state, day, remaining );
+                String last = null;
+                for ( Row row : session.execute( entries ) )
+                {
+                    last = row.getString( "tracking_key" );
+                    ids.add( last );
+                }
+                if ( ids.size() >= limit )
+                {
+                    return new Page( ids, new Cursor( type, day, last ).toString() );
+                }
+            }
+        }
+        return new Page( ids, null );
+    }
+
+    /**
+     * Iterate the ids of the records sealed after {@code since} and up to {@code until}, in the order they were sealed.
+     * The days holding any seal are read before this returns, the ids of each day are read page by page while
+     * iterating.
+     */
+    public Iterator<String> sealedBetween( final long since, final long until, final int pageSize )
+    {
+        Statement statement = getSealLogDays.bind( SEAL_LOG, toDay( since ), toDay( until ) );
+        final Iterator<Row> days = session.execute( statement.setFetchSize( FETCH_SIZE ) ).iterator();
+        return new Iterator<String>()
+        {
+            private Iterator<Row> rows = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext()
+            {
+                while ( !rows.hasNext() && days.hasNext() )
+                {
+                    Statement entries = getSealLog.bind( days.next().getInt( "day" ), since, until )
+                                                  .setFetchSize( pageSize );
+                    rows = session.execute( entries ).iterator();
+                }
+                return rows.hasNext();
+            }
+
+            @Override
+            public String next()
+            {
+                if ( !hasNext() )
+                {
+                    throw new NoSuchElementException();
+                }
+                return rows.next().getString( "tracking_key" );
+            }
+        };
+    }
+
+    static int toDay( final long timestamp )
+    {
+        return (int) TimeUnit.MILLISECONDS.toDays( timestamp );
+    }
+
+    public static final class Page
+    {
+        private final List<String> ids;
+
+        private final String next;
+
+        Page( final List<String> ids, final String next )
+        {
+            this.ids = Collections.unmodifiableList( ids );
+            this.next = next;
+        }
+
+        public List<String> getIds()
+        {
+            return ids;
+        }
+
+        /**
+         * @return the cursor of the next page, or null if this is the last one
+         */
+        public String getNext()
+        {
+            return next;
+        }
+    }
+
+    static final class Cursor
+    {
+        private final TRACKING_TYPE type;
+
+        private final int day;
+
+        private final String trackingId;
+
+        Cursor( final TRACKING_TYPE type, final int day, final String trackingId )
+        {
+            this.type = type;
+            this.day = day;
+            this.trackingId = trackingId;
+        }
+
+        static Cursor parse( final String value )
+        {
+            if ( value == null || value.isEmpty() )
+            {
+                return null;
+            }
+            String[] parts = value.split( ":", 3 );
+            if ( parts.length != 3 )
+            {
+                throw new IllegalArgumentException( "Invalid tracking id cursor: " + value );
+            }
+            try
+            {
+                return new Cursor( TRACKING_TYPE.valueOf( parts[0] ), Integer.parseInt( parts[1] ), parts[2] );
+            }
+            catch ( IllegalArgumentException e )
+            {
+                throw new IllegalArgumentException( "Invalid tracking id cursor: " + value, e );
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return type.name() + ":" + day + ":" + trackingId;
+        }
+    }
+}
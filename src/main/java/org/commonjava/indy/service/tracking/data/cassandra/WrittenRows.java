@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.data.cassandra;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Checksums and size of the record rows this instance wrote recently, so a repeated access of the same path only
+ * writes what changed instead of the whole row.
+ * <p>
+ * A row may be deleted by another service instance together with its tracking record, and a partial write would then
+ * leave a row without its other columns. So, like the in-progress answers of the {@link SealedKeyGate}, an entry is
+ * only trusted for a short time. The map is LRU-bounded; a row not found or expired is written in full.
+ * <p>
+ * Another service instance may also write different checksums or size to the same row in between, e.g. when a build
+ * uploads a path again through another consumer. Values equal to what this instance wrote last are then left out, so
+ * the other instance's values stay until this entry expires, instead of the last write always winning. This is bounded
+ * by cassandra.partialUpdates.ttlMillis, which defaults to a few seconds for that reason. Imports and legacy copies
+ * write rows in full without going through here, so they invalidate the rows of their record.
+ */
+public class WrittenRows
+{
+    private final Map<List<String>, Columns> rows;
+
+    private final long ttlMillis;
+
+    public WrittenRows( final int maxRows, final long ttlMillis )
+    {
+        this.rows = Collections.synchronizedMap( new LruMap<>( maxRows ) );
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @return the columns last written to the row of this record, or null if the row has to be written in full
+     */
+    public Columns lastWritten( final DtxTrackingRecord record )
+    {
+        Columns columns = rows.get( key( record ) );
+        if ( columns != null && System.currentTimeMillis() - columns.written < ttlMillis )
+        {
+            return columns;
+        }
+        return null;
+    }
+
+    /**
+     * Remember the columns of a row once the write has succeeded.
+     */
+    public void markWritten( final DtxTrackingRecord record )
+    {
+        rows.put( key( record ), new Columns( record ) );
+    }
+
+    public void invalidate( final DtxTrackingRecord record )
+    {
+        rows.remove( key( record ) );
+    }
+
+    /**
+     * Forget all rows of the tracking record, when it is deleted.
+     */
+    public void invalidate( final String trackingId )
+    {
+        synchronized ( rows )
+        {
+            rows.keySet().removeIf( key -> key.get( 0 ).equals( trackingId ) );
+        }
+    }
+
+    public int size()
+    {
+        return rows.size();
+    }
+
+    private static List<String> key( final DtxTrackingRecord record )
+    {
+        return Arrays.asList( record.getTrackingKey(), record.getStoreKey(), record.getPath(),
+                              record.getStoreEffect() );
+    }
+
+    public static final class Columns
+    {
+        private final String md5;
+
+        private final String sha256;
+
+        private final String sha1;
+
+        private final Long size;
+
+        private final long written;
+
+        Columns( final DtxTrackingRecord record )
+        {
+            this.md5 = record.getMd5();
+            this.sha256 = record.getSha256();
+            this.sha1 = record.getSha1();
+            this.size = record.getSize();
+            this.written = System.currentTimeMillis();
+        }
+
+        public boolean isSameMd5( final DtxTrackingRecord record )
+        {
+            return Objects.equals( md5, record.getMd5() );
+        }
+
+        public boolean isSameSha256( final DtxTrackingRecord record )
+        {
+            return Objects.equals( sha256, record.getSha256() );
+        }
+
+        public boolean isSameSha1( final DtxTrackingRecord record )
+        {
+            return Objects.equals( sha1, record.getSha1() );
+        }
+
+        public boolean isSameSize( final DtxTrackingRecord record )
+        {
+            return Objects.equals( size, record.getSize() );
+        }
+    }
+
+    private static final class LruMap<K, V>
+                    extends LinkedHashMap<K, V>
+    {
+        private final int maxSize;
+
+        LruMap( final int maxSize )
+        {
+            super( 16, 0.75f, true );
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry( final Map.Entry<K, V> eldest )
+        {
+            return size() > maxSize;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.data.metrics;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.metrics.Meter;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import static org.commonjava.indy.service.tracking.data.metrics.NameUtils.name;
+
+/**
+ * Entry point for service metrics. The meter is a no-op unless OpenTelemetry metrics are enabled.
+ */
+@ApplicationScoped
+public class MetricsManager
+{
+    public static final String INSTRUMENTATION_NAME = "indy-tracking-service";
+
+    public static final String METRIC_PREFIX = "indy.tracking";
+
+    private final Meter meter;
+
+    @Inject
+    public MetricsManager( OpenTelemetry openTelemetry )
+    {
+        this.meter = openTelemetry.getMeter( INSTRUMENTATION_NAME );
+    }
+
+    public Meter getMeter()
+    {
+        return meter;
+    }
+
+    public static String metricName( String... names )
+    {
+        return name( METRIC_PREFIX, names );
+    }
+}
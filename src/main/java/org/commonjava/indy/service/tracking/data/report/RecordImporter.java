@@ -0,0 +1,315 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.data.report;
+
+import org.apache.commons.io.IOUtils;
+import org.commonjava.indy.service.tracking.data.cassandra.CassandraTrackingQuery;
+import org.commonjava.indy.service.tracking.model.TrackedContent;
+import org.commonjava.indy.service.tracking.model.dto.ImportResultDTO;
+import org.commonjava.indy.service.tracking.util.BinaryRecordCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.commonjava.indy.service.tracking.util.TrackingUtils.toTrackedContent;
+
+/**
+ * Imports the records of an export as a pipeline of three stages joined by bounded queues. The calling thread reads
+ * the raw records, a pool of decoder threads decodes them, and a writer thread hands the records to the async
+ * storage API, which writes the entries of each record as single-partition batches with capped writes in flight. A
+ * full queue holds back the stage feeding it, so memory stays bounded whatever the size of the zip. The first failure
+ * in any stage stops the import.
+ * <p>
+ * The format is detected from the first bytes: a {@link BinaryRecordCodec} stream, or the zip of Java-serialized
+ * records.
+ */
+public class RecordImporter
+{
+    private static final byte[] END_OF_ENTRIES = new byte[0];
+
+    private static final TrackedContent END_OF_RECORDS = new TrackedContent();
+
+    private static final long POLL_MILLIS = 100;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final CassandraTrackingQuery recordManager;
+
+    private final int decoders;
+
+    private final boolean skipIdentical;
+
+    private final Consumer<TrackedContent> onImported;
+
+    private final BlockingQueue<byte[]> entries;
+
+    private final BlockingQueue<TrackedContent> records;
+
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    private final AtomicInteger read = new AtomicInteger();
+
+    private final AtomicInteger imported = new AtomicInteger();
+
+    private final AtomicInteger skipped = new AtomicInteger();
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    /**
+     * @param skipIdentical don't write records which are stored sealed with the same entries already
+     * @param onImported called for every record written, from the driver's threads
+     */
+    public RecordImporter( final CassandraTrackingQuery recordManager, final int decoders, final int queueDepth,
+                           final boolean skipIdentical, final Consumer<TrackedContent> onImported )
+    {
+        this.recordManager = recordManager;
+        this.decoders = Math.max( 1, decoders );
+        this.skipIdentical = skipIdentical;
+        this.onImported = onImported;
+        this.entries = new ArrayBlockingQueue<>( Math.max( 1, queueDepth ) );
+        this.records = new ArrayBlockingQueue<>( Math.max( 1, queueDepth ) );
+    }
+
+    /**
+     * Import all records of the stream, returning once they are all written.
+     *
+     * @throws IOException if any record could not be read, decoded or written; records written before are kept
+     */
+    public ImportResultDTO importRecords( final InputStream stream ) throws IOException
+    {
+        long start = System.currentTimeMillis();
+        BufferedInputStream in = new BufferedInputStream( stream );
+        boolean binary = isBinary( in );
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool( decoders + 1, r -> {
+            Thread thread = new Thread( r, "record-import-" + threads.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        try
+        {
+            AtomicInteger running = new AtomicInteger( decoders );
+            for ( int i = 0; i < decoders; i++ )
+            {
+                executor.execute( () -> decode( running, binary ) );
+            }
+            Future<?> writer = executor.submit( this::write );
+
+            if ( binary )
+            {
+                readBinary( in );
+            }
+            else
+            {
+                readZip( in );
+            }
+            for ( int i = 0; i < decoders; i++ )
+            {
+                put( entries, END_OF_ENTRIES );
+            }
+            writer.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            fail( e );
+        }
+        catch ( ExecutionException e )
+        {
+            fail( e.getCause() );
+        }
+        catch ( IOException | RuntimeException e )
+        {
+            fail( e );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        Throwable error = failure.get();
+        if ( error != null )
+        {
+            throw new IOException( "Import failed after " + imported.get() + " of " + read.get() + " records", error );
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        ImportResultDTO result = new ImportResultDTO();
+        result.setRead( read.get() );
+        result.setImported( imported.get() );
+        result.setSkipped( skipped.get() );
+        result.setBytes( bytes.get() );
+        result.setElapsedMillis( elapsed );
+        result.setRecordsPerSecond( elapsed > 0 ? read.get() * 1000.0 / elapsed : read.get() );
+        logger.info( "Imported {} of {} records ({} identical skipped, {} bytes) in {} ms", imported.get(), read.get(),
+                     skipped.get(), bytes.get(), elapsed );
+        return result;
+    }
+
+    private static boolean isBinary( final BufferedInputStream in ) throws IOException
+    {
+        byte[] magic = new byte[BinaryRecordCodec.MAGIC.length];
+        in.mark( magic.length );
+        int read = IOUtils.read( in, magic );
+        in.reset();
+        return read == magic.length && BinaryRecordCodec.isBinary( magic );
+    }
+
+    private void readBinary( final InputStream in ) throws IOException, InterruptedException
+    {
+        BinaryRecordCodec.readHeader( in );
+        byte[] record;
+        while ( ( record = BinaryRecordCodec.readRecord( in ) ) != null )
+        {
+            queue( record );
+        }
+    }
+
+    private void readZip( final InputStream in ) throws IOException, InterruptedException
+    {
+        try (ZipInputStream zip = new ZipInputStream( in ))
+        {
+            ZipEntry entry;
+            while ( ( entry = zip.getNextEntry() ) != null )
+            {
+                if ( !entry.isDirectory() )
+                {
+                    queue( IOUtils.toByteArray( zip ) );
+                }
+            }
+        }
+    }
+
+    private void queue( final byte[] record ) throws InterruptedException
+    {
+        bytes.addAndGet( record.length );
+        put( entries, record );
+        read.incrementAndGet();
+    }
+
+    private void decode( final AtomicInteger running, final boolean binary )
+    {
+        try
+        {
+            byte[] entry;
+            while ( ( entry = take( entries ) ) != END_OF_ENTRIES )
+            {
+                put( records, binary ? BinaryRecordCodec.decode( entry ) : toTrackedContent( entry ) );
+            }
+            if ( running.decrementAndGet() == 0 )
+            {
+                put( records, END_OF_RECORDS );
+            }
+        }
+        catch ( Throwable e )
+        {
+            fail( e );
+        }
+    }
+
+    private void write()
+    {
+        // one party for this thread, plus one for every write in flight
+        Phaser inFlight = new Phaser( 1 );
+        try
+        {
+            TrackedContent record;
+            while ( ( record = take( records ) ) != END_OF_RECORDS )
+            {
+                if ( skipIdentical && recordManager.isSameSealedRecord( record ) )
+                {
+                    skipped.incrementAndGet();
+                    continue;
+                }
+                recordManager.whenWriteCapacityAvailable().toCompletableFuture().join();
+                inFlight.register();
+                TrackedContent written = record;
+                recordManager.addSealedRecordAsync( record ).whenComplete( ( result, error ) -> {
+                    if ( error != null )
+                    {
+                        fail( error );
+                    }
+                    else
+                    {
+                        imported.incrementAndGet();
+                        onImported.accept( written );
+                    }
+                    inFlight.arriveAndDeregister();
+                } );
+            }
+        }
+        catch ( Throwable e )
+        {
+            fail( e );
+        }
+        inFlight.arriveAndAwaitAdvance();
+    }
+
+    private void fail( final Throwable error )
+    {
+        if ( failure.compareAndSet( null, error ) )
+        {
+            logger.error( "Record import failed", error );
+        }
+    }
+
+    /**
+     * Wait for room in the queue, giving up once another stage has failed.
+     */
+    private <T> void put( final BlockingQueue<T> queue, final T item ) throws InterruptedException
+    {
+        while ( !queue.offer( item, POLL_MILLIS, TimeUnit.MILLISECONDS ) )
+        {
+            checkFailure();
+        }
+    }
+
+    private <T> T take( final BlockingQueue<T> queue ) throws InterruptedException
+    {
+        T item;
+        while ( ( item = queue.poll( POLL_MILLIS, TimeUnit.MILLISECONDS ) ) == null )
+        {
+            checkFailure();
+        }
+        return item;
+    }
+
+    private void checkFailure()
+    {
+        if ( failure.get() != null )
+        {
+            throw new CancellationException( "Import stopped by an earlier failure" );
+        }
+    }
+}
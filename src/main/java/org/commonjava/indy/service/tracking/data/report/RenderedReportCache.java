@@ -0,0 +1,278 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.data.report;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.FileUtils;
+import org.commonjava.indy.service.tracking.config.IndyTrackingConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Disk cache of rendered tracking reports, stored gzip-compressed under ${tracking.baseDir}/reports. Only reports of
+ * sealed records belong here since they never change until deleted or recalculated. Reports are evicted least
+ * recently used first once the total file size goes over tracking.report-cache.max-bytes.
+ * <p>
+ * Reports are handed out as streams opened under the cache lock, so a report being sent is still read whole when it is
+ * evicted or invalidated meanwhile; the file is unlinked, but stays readable through the open stream.
+ * <p>
+ * Deletes and recalculations only invalidate the cache of the service instance doing them, so reports expire after
+ * tracking.report-cache.ttl-millis to bound how long other instances serve an outdated one.
+ * <p>
+ * The index lives in memory, so the directory is emptied on startup; this also drops reports rendered with an older
+ * content service URL.
+ */
+@ApplicationScoped
+public class RenderedReportCache
+{
+    public static final String REPORTS_DIR = "reports";
+
+    private static final String REPORT_SUFFIX = ".json.gz";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    IndyTrackingConfiguration config;
+
+    @Inject
+    ObjectMapper mapper;
+
+    private File dir;
+
+    private long maxBytes;
+
+    private long ttlMillis;
+
+    private long bytes;
+
+    private final LinkedHashMap<String, Report> reports = new LinkedHashMap<>( 16, 0.75f, true );
+
+    private final AtomicLong version = new AtomicLong();
+
+    protected RenderedReportCache()
+    {
+    }
+
+    public RenderedReportCache( IndyTrackingConfiguration config, ObjectMapper mapper )
+    {
+        this.config = config;
+        this.mapper = mapper;
+        init();
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        if ( !isEnabled() )
+        {
+            return;
+        }
+        dir = new File( config.baseDir(), REPORTS_DIR );
+        maxBytes = config.reportCacheMaxBytes();
+        Long ttl = config.reportCacheTtlMillis();
+        ttlMillis = ttl == null ? 0 : ttl;
+        try
+        {
+            if ( dir.exists() )
+            {
+                FileUtils.cleanDirectory( dir );
+            }
+            Files.createDirectories( dir.toPath() );
+        }
+        catch ( IOException e )
+        {
+            throw new IllegalStateException( "Failed to prepare report cache in " + dir, e );
+        }
+    }
+
+    public boolean isEnabled()
+    {
+        return config != null && Boolean.TRUE.equals( config.reportCacheEnabled() );
+    }
+
+    /**
+     * @return the gzip-compressed report, which the caller must close, or null if it is not cached or expired
+     */
+    public InputStream open( final String trackingId )
+    {
+        synchronized ( reports )
+        {
+            Report report = reports.get( trackingId );
+            if ( report == null )
+            {
+                return null;
+            }
+            if ( ttlMillis > 0 && System.currentTimeMillis() - report.cachedAt >= ttlMillis )
+            {
+                remove( trackingId );
+                return null;
+            }
+            try
+            {
+                return Files.newInputStream( getFile( trackingId ).toPath() );
+            }
+            catch ( IOException e )
+            {
+                logger.warn( "Failed to open cached report of: {}", trackingId, e );
+                remove( trackingId );
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @return a value to pass to {@link #put(String, Object, long)}, taken before the report is built
+     */
+    public long version()
+    {
+        return version.get();
+    }
+
+    /**
+     * Render the report into the cache. It is dropped if any report was invalidated since the given version was taken,
+     * since the record may have been read before the invalidation.
+     *
+     * @return the cached file, or null if it was not cached
+     */
+    public File put( final String trackingId, final Object dto, final long readVersion )
+    {
+        File file = getFile( trackingId );
+        Path tmp = null;
+        try
+        {
+            tmp = Files.createTempFile( dir.toPath(), "report-", ".tmp" );
+            try (OutputStream out = new GZIPOutputStream( Files.newOutputStream( tmp ) ))
+            {
+                mapper.writeValue( out, dto );
+            }
+            long size = Files.size( tmp );
+            if ( size > maxBytes )
+            {
+                Files.delete( tmp );
+                return null;
+            }
+            synchronized ( reports )
+            {
+                if ( version.get() != readVersion )
+                {
+                    Files.delete( tmp );
+                    return null;
+                }
+                Files.move( tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+                Report prev = reports.put( trackingId, new Report( size ) );
+                bytes += size - ( prev == null ? 0 : prev.size );
+                Iterator<Map.Entry<String, Report>> eldest = reports.entrySet().iterator();
+                while ( bytes > maxBytes && eldest.hasNext() )
+                {
+                    Map.Entry<String, Report> evicted = eldest.next();
+                    bytes -= evicted.getValue().size;
+                    eldest.remove();
+                    Files.deleteIfExists( getFile( evicted.getKey() ).toPath() );
+                }
+            }
+            return file;
+        }
+        catch ( IOException e )
+        {
+            logger.warn( "Failed to cache rendered report of: {}", trackingId, e );
+            if ( tmp != null )
+            {
+                FileUtils.deleteQuietly( tmp.toFile() );
+            }
+            return null;
+        }
+    }
+
+    public void invalidate( final String trackingId )
+    {
+        if ( !isEnabled() )
+        {
+            return;
+        }
+        synchronized ( reports )
+        {
+            version.incrementAndGet();
+            remove( trackingId );
+        }
+    }
+
+    private void remove( final String trackingId )
+    {
+        Report prev = reports.remove( trackingId );
+        if ( prev != null )
+        {
+            bytes -= prev.size;
+            FileUtils.deleteQuietly( getFile( trackingId ) );
+        }
+    }
+
+    public long getBytes()
+    {
+        synchronized ( reports )
+        {
+            return bytes;
+        }
+    }
+
+    private File getFile( final String trackingId )
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance( "SHA-256" );
+            StringBuilder name = new StringBuilder();
+            for ( byte b : digest.digest( trackingId.getBytes( StandardCharsets.UTF_8 ) ) )
+            {
+                name.append( String.format( "%02x", b ) );
+            }
+            return new File( dir, name.append( REPORT_SUFFIX ).toString() );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( "SHA-256 is not available", e );
+        }
+    }
+
+    private static final class Report
+    {
+        private final long size;
+
+        private final long cachedAt = System.currentTimeMillis();
+
+        private Report( final long size )
+        {
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,661 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.data.spool;
+
+import io.quarkus.runtime.Startup;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.metrics.ObservableLongGauge;
+import org.commonjava.indy.service.tracking.config.IndyTrackingConfiguration;
+import org.commonjava.indy.service.tracking.data.cassandra.CassandraTrackingQuery;
+import org.commonjava.indy.service.tracking.data.metrics.MetricsManager;
+import org.commonjava.indy.service.tracking.model.TrackedContentEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import static org.commonjava.indy.service.tracking.data.metrics.MetricsManager.metricName;
+
+/**
+ * Local write-ahead spool for entries which could not be written to Cassandra. Entries are appended to memory-mapped
+ * segment files under ${tracking.baseDir}/spool and replayed to Cassandra by a background thread, with exponential
+ * backoff while Cassandra keeps failing. The replay position is kept in a checkpoint file, so the spool survives
+ * restarts; a replayed segment is unmapped and deleted.
+ * <p>
+ * Entries carry their append time into the replay, so entries which were spooled before their tracking record got
+ * sealed are still written; see {@link CassandraTrackingQuery#replayArtifacts(List, List)}.
+ * <p>
+ * A record is [int length][int crc32][long append time][serialized entry]. The length is written last, so a record
+ * torn by a crash is never visible; the crc catches a torn record over older data. Mapped pages are forced to disk
+ * once a second, which covers a crash of the service but not of the host within that second.
+ */
+@Startup
+@ApplicationScoped
+public class WriteAheadSpool
+{
+    public static final String SPOOL_DIR = "spool";
+
+    private static final String CHECKPOINT_FILE = "spool.checkpoint";
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile( "spool-(\\d+)\\.log" );
+
+    private static final int HEADER_BYTES = 16;
+
+    private static final long IDLE_MILLIS = 200;
+
+    private static final long FORCE_MILLIS = 1000;
+
+    private static final long INITIAL_BACKOFF_MILLIS = 100;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    IndyTrackingConfiguration config;
+
+    @Inject
+    CassandraTrackingQuery recordManager;
+
+    @Inject
+    MetricsManager metricsManager;
+
+    private File dir;
+
+    private int segmentBytes;
+
+    private final TreeSet<Long> segments = new TreeSet<>();
+
+    private Segment writeSegment;
+
+    private int writePos;
+
+    private Segment readSegment;
+
+    private int readPos;
+
+    private long depth;
+
+    private final AtomicLong replayed = new AtomicLong();
+
+    private LongCounter appendedCounter;
+
+    private LongCounter replayedCounter;
+
+    private final List<ObservableLongGauge> gauges = new ArrayList<>();
+
+    private volatile boolean running;
+
+    private Thread replayThread;
+
+    protected WriteAheadSpool()
+    {
+    }
+
+    public WriteAheadSpool( IndyTrackingConfiguration config, CassandraTrackingQuery recordManager,
+                            MetricsManager metricsManager )
+    {
+        this.config = config;
+        this.recordManager = recordManager;
+        this.metricsManager = metricsManager;
+        init();
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        if ( !isEnabled() )
+        {
+            return;
+        }
+        dir = new File( config.baseDir(), SPOOL_DIR );
+        segmentBytes = config.spoolSegmentBytes();
+        try
+        {
+            open();
+        }
+        catch ( IOException e )
+        {
+            throw new IllegalStateException( "Failed to open write-ahead spool in " + dir, e );
+        }
+
+        Meter meter = metricsManager.getMeter();
+        appendedCounter = meter.counterBuilder( metricName( "spool", "appended" ) )
+                               .setDescription( "Entries appended to the write-ahead spool" )
+                               .build();
+        replayedCounter = meter.counterBuilder( metricName( "spool", "replayed" ) )
+                               .setDescription( "Entries replayed from the write-ahead spool" )
+                               .build();
+        gauges.add( meter.gaugeBuilder( metricName( "spool", "depth" ) )
+                         .setDescription( "Entries waiting in the write-ahead spool" )
+                         .ofLongs()
+                         .buildWithCallback( m -> m.record( getDepth() ) ) );
+        gauges.add( meter.gaugeBuilder( metricName( "spool", "age" ) )
+                         .setDescription( "Age of the oldest entry waiting in the write-ahead spool" )
+                         .setUnit( "ms" )
+                         .ofLongs()
+                         .buildWithCallback( m -> m.record( getAgeMillis() ) ) );
+
+        running = true;
+        replayThread = new Thread( this::replay, "spool-replay" );
+        replayThread.setDaemon( true );
+        replayThread.start();
+        logger.info( "Write-ahead spool opened in {}, {} entries to replay", dir, depth );
+    }
+
+    public boolean isEnabled()
+    {
+        return config.spoolEnabled();
+    }
+
+    /**
+     * @return true if entries are waiting for replay. New entries should then go to the spool as well, so the
+     *         consumer is not held back by a failing Cassandra.
+     */
+    public synchronized boolean isBacklogged()
+    {
+        return running && depth > 0;
+    }
+
+    public synchronized long getDepth()
+    {
+        return depth;
+    }
+
+    public long getReplayed()
+    {
+        return replayed.get();
+    }
+
+    /**
+     * @return millis since the oldest entry waiting for replay was appended, or 0 if there is none
+     */
+    public synchronized long getAgeMillis()
+    {
+        if ( depth == 0 )
+        {
+            return 0;
+        }
+        int pos = readPos;
+        Segment segment = readSegment;
+        while ( segment.buffer.getInt( pos ) <= 0 && segment != writeSegment )
+        {
+            segment = segment.next;
+            pos = 0;
+        }
+        return System.currentTimeMillis() - segment.buffer.getLong( pos + 8 );
+    }
+
+    /**
+     * Append entries to the spool. They are replayed to Cassandra in the background.
+     */
+    public void append( Collection<TrackedContentEntry> entries ) throws IOException
+    {
+        List<byte[]> payloads = new ArrayList<>( entries.size() );
+        for ( TrackedContentEntry entry : entries )
+        {
+            payloads.add( serialize( entry ) );
+        }
+
+        synchronized ( this )
+        {
+            if ( !running )
+            {
+                throw new IOException( "Write-ahead spool is not running" );
+            }
+            long now = System.currentTimeMillis();
+            for ( byte[] payload : payloads )
+            {
+                int size = HEADER_BYTES + payload.length;
+                // keep room for the zero length which marks the end of the segment
+                if ( writePos + size + 4 > segmentBytes )
+                {
+                    if ( size + 4 > segmentBytes )
+                    {
+                        throw new IOException( "Entry of " + payload.length + " bytes does not fit in a spool segment" );
+                    }
+                    rollSegment();
+                }
+                CRC32 crc = new CRC32();
+                crc.update( payload );
+                MappedByteBuffer buffer = writeSegment.buffer;
+                ByteBuffer target = buffer.duplicate();
+                target.position( writePos + HEADER_BYTES );
+                target.put( payload );
+                buffer.putInt( writePos + 4, (int) crc.getValue() );
+                buffer.putLong( writePos + 8, now );
+                buffer.putInt( writePos, payload.length );
+                writePos += size;
+                depth++;
+            }
+        }
+        appendedCounter.add( payloads.size() );
+    }
+
+    public void append( TrackedContentEntry entry ) throws IOException
+    {
+        append( Collections.singletonList( entry ) );
+    }
+
+    /**
+     * Spool entries which failed to be written to Cassandra.
+     *
+     * @return true if the entries are spooled, false if the spool is disabled or the append failed
+     */
+    public boolean offer( Collection<TrackedContentEntry> entries )
+    {
+        if ( !isEnabled() )
+        {
+            return false;
+        }
+        try
+        {
+            append( entries );
+            return true;
+        }
+        catch ( IOException e )
+        {
+            logger.error( String.format( "Failed to spool %s entries. Reason: %s", entries.size(), e.getMessage() ),
+                          e );
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        if ( !running )
+        {
+            return;
+        }
+        running = false;
+        try
+        {
+            replayThread.join( INITIAL_BACKOFF_MILLIS * 100 );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+        synchronized ( this )
+        {
+            writeSegment.buffer.force();
+        }
+        gauges.forEach( ObservableLongGauge::close );
+    }
+
+    private void replay()
+    {
+        long backoff = INITIAL_BACKOFF_MILLIS;
+        long lastForce = System.currentTimeMillis();
+        while ( running )
+        {
+            try
+            {
+                if ( System.currentTimeMillis() - lastForce >= FORCE_MILLIS )
+                {
+                    synchronized ( this )
+                    {
+                        writeSegment.buffer.force();
+                    }
+                    lastForce = System.currentTimeMillis();
+                }
+
+                Batch batch = readBatch( config.spoolReplayBatchSize() );
+                if ( batch.entries.isEmpty() && batch.records == 0 )
+                {
+                    Thread.sleep( IDLE_MILLIS );
+                    continue;
+                }
+                if ( !batch.entries.isEmpty() )
+                {
+                    try
+                    {
+                        recordManager.replayArtifacts( batch.entries, batch.appended );
+                    }
+                    catch ( RuntimeException e )
+                    {
+                        logger.warn( "Failed to replay {} spooled entries, retry in {} ms. Reason: {}",
+                                     batch.entries.size(), backoff, e.getMessage() );
+                        Thread.sleep( backoff );
+                        backoff = Math.min( backoff * 2, config.spoolReplayMaxBackoffMillis() );
+                        continue;
+                    }
+                }
+                commit( batch );
+                replayedCounter.add( batch.entries.size() );
+                backoff = INITIAL_BACKOFF_MILLIS;
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch ( IOException | RuntimeException e )
+            {
+                logger.error( "Write-ahead spool replay failed", e );
+            }
+        }
+    }
+
+    /**
+     * Read up to max records from the replay position, without moving it.
+     */
+    private synchronized Batch readBatch( int max )
+    {
+        Batch batch = new Batch();
+        batch.segment = readSegment;
+        batch.pos = readPos;
+        while ( batch.records < max )
+        {
+            int length = batch.segment.buffer.getInt( batch.pos );
+            if ( length <= 0 )
+            {
+                if ( batch.segment == writeSegment )
+                {
+                    break;
+                }
+                // the writer moved on to the next segment
+                batch.segment = nextSegment( batch.segment );
+                batch.pos = 0;
+                continue;
+            }
+            byte[] payload = new byte[length];
+            ByteBuffer source = batch.segment.buffer.duplicate();
+            source.position( batch.pos + HEADER_BYTES );
+            source.get( payload );
+            long appended = batch.segment.buffer.getLong( batch.pos + 8 );
+            batch.pos += HEADER_BYTES + length;
+            batch.records++;
+            try
+            {
+                batch.entries.add( deserialize( payload ) );
+                batch.appended.add( appended );
+            }
+            catch ( IOException | ClassNotFoundException e )
+            {
+                logger.error( "Dropping unreadable spool record in " + batch.segment.file, e );
+            }
+        }
+        return batch;
+    }
+
+    private void commit( Batch batch ) throws IOException
+    {
+        List<Segment> finished = new ArrayList<>();
+        synchronized ( this )
+        {
+            while ( readSegment != batch.segment )
+            {
+                finished.add( readSegment );
+                segments.remove( readSegment.seq );
+                readSegment = nextSegment( readSegment );
+            }
+            readPos = batch.pos;
+            depth -= batch.records;
+            writeCheckpoint( readSegment.seq, readPos );
+        }
+        replayed.addAndGet( batch.entries.size() );
+        for ( Segment segment : finished )
+        {
+            // the disk space of a deleted file is only freed once it is not mapped any more
+            unmap( segment.buffer );
+            Files.deleteIfExists( segment.file.toPath() );
+        }
+    }
+
+    /**
+     * Release a mapping right away instead of when the buffer is collected. There is no public API for it before Java
+     * 19, so this goes through sun.misc.Unsafe; if that is not available the mapping is left to the GC.
+     */
+    private void unmap( MappedByteBuffer buffer )
+    {
+        try
+        {
+            Class<?> unsafeClass = Class.forName( "sun.misc.Unsafe" );
+            Field theUnsafe = unsafeClass.getDeclaredField( "theUnsafe" );
+            theUnsafe.setAccessible( true );
+            Method invokeCleaner = unsafeClass.getMethod( "invokeCleaner", ByteBuffer.class );
+            invokeCleaner.invoke( theUnsafe.get( null ), buffer );
+        }
+        catch ( ReflectiveOperationException | RuntimeException e )
+        {
+            logger.debug( "Failed to unmap spool segment, it is released by the GC. Reason: {}", e.getMessage() );
+        }
+    }
+
+    private void open() throws IOException
+    {
+        Files.createDirectories( dir.toPath() );
+        File[] files = dir.listFiles();
+        if ( files != null )
+        {
+            for ( File file : files )
+            {
+                Matcher matcher = SEGMENT_NAME.matcher( file.getName() );
+                if ( matcher.matches() )
+                {
+                    segments.add( Long.parseLong( matcher.group( 1 ) ) );
+                }
+            }
+        }
+        if ( segments.isEmpty() )
+        {
+            segments.add( 0L );
+        }
+
+        long readSeq = segments.first();
+        readPos = 0;
+        Path checkpoint = dir.toPath().resolve( CHECKPOINT_FILE );
+        if ( Files.exists( checkpoint ) )
+        {
+            ByteBuffer saved = ByteBuffer.wrap( Files.readAllBytes( checkpoint ) );
+            long seq = saved.getLong();
+            if ( segments.contains( seq ) )
+            {
+                readSeq = seq;
+                readPos = saved.getInt();
+            }
+        }
+        // segments before the checkpoint are already replayed
+        for ( Long seq : new ArrayList<>( segments.headSet( readSeq ) ) )
+        {
+            Files.deleteIfExists( segmentFile( seq ).toPath() );
+            segments.remove( seq );
+        }
+
+        depth = 0;
+        Segment segment = null;
+        for ( Long seq : segments )
+        {
+            segment = mapSegment( seq );
+            int pos = seq == readSeq ? readPos : 0;
+            if ( readSegment == null )
+            {
+                readSegment = segment;
+            }
+            pos = scan( segment, pos );
+            writePos = pos;
+        }
+        writeSegment = segment;
+    }
+
+    /**
+     * Count valid records from pos on.
+     *
+     * @return position after the last valid record
+     */
+    private int scan( Segment segment, int pos )
+    {
+        MappedByteBuffer buffer = segment.buffer;
+        while ( pos + HEADER_BYTES <= segmentBytes )
+        {
+            int length = buffer.getInt( pos );
+            if ( length <= 0 || pos + HEADER_BYTES + length > segmentBytes )
+            {
+                break;
+            }
+            byte[] payload = new byte[length];
+            ByteBuffer source = buffer.duplicate();
+            source.position( pos + HEADER_BYTES );
+            source.get( payload );
+            CRC32 crc = new CRC32();
+            crc.update( payload );
+            if ( (int) crc.getValue() != buffer.getInt( pos + 4 ) )
+            {
+                logger.warn( "Torn record at {} in {}, ignoring the rest of the segment", pos, segment.file );
+                buffer.putInt( pos, 0 );
+                break;
+            }
+            pos += HEADER_BYTES + length;
+            depth++;
+        }
+        return pos;
+    }
+
+    private void rollSegment() throws IOException
+    {
+        writeSegment.buffer.force();
+        long seq = writeSegment.seq + 1;
+        segments.add( seq );
+        writeSegment = mapSegment( seq );
+        writePos = 0;
+    }
+
+    private Segment nextSegment( Segment segment )
+    {
+        if ( segment.next == null )
+        {
+            throw new IllegalStateException( "No spool segment after " + segment.file );
+        }
+        return segment.next;
+    }
+
+    private Segment mapSegment( long seq ) throws IOException
+    {
+        File file = segmentFile( seq );
+        try (FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                                     StandardOpenOption.WRITE ))
+        {
+            Segment segment = new Segment( seq, file, channel.map( FileChannel.MapMode.READ_WRITE, 0, segmentBytes ) );
+            if ( writeSegment != null )
+            {
+                writeSegment.next = segment;
+            }
+            else if ( readSegment != null )
+            {
+                // while opening, segments are mapped in order
+                Segment last = readSegment;
+                while ( last.next != null )
+                {
+                    last = last.next;
+                }
+                last.next = segment;
+            }
+            return segment;
+        }
+    }
+
+    private File segmentFile( long seq )
+    {
+        return new File( dir, String.format( "spool-%019d.log", seq ) );
+    }
+
+    private void writeCheckpoint( long seq, int pos ) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate( 12 );
+        buffer.putLong( seq ).putInt( pos );
+        Path checkpoint = dir.toPath().resolve( CHECKPOINT_FILE );
+        Path tmp = dir.toPath().resolve( CHECKPOINT_FILE + ".tmp" );
+        Files.write( tmp, buffer.array() );
+        Files.move( tmp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+    }
+
+    private static byte[] serialize( TrackedContentEntry entry ) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream( bytes ))
+        {
+            out.writeObject( entry );
+        }
+        return bytes.toByteArray();
+    }
+
+    private static TrackedContentEntry deserialize( byte[] payload ) throws IOException, ClassNotFoundException
+    {
+        try (ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream( payload ) ))
+        {
+            return (TrackedContentEntry) in.readObject();
+        }
+    }
+
+    private static final class Segment
+    {
+        private final long seq;
+
+        private final File file;
+
+        private final MappedByteBuffer buffer;
+
+        private Segment next;
+
+        private Segment( long seq, File file, MappedByteBuffer buffer )
+        {
+            this.seq = seq;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    private static final class Batch
+    {
+        private final List<TrackedContentEntry> entries = new ArrayList<>();
+
+        private final List<Long> appended = new ArrayList<>();
+
+        private Segment segment;
+
+        private int pos;
+
+        private int records;
+    }
+}
@@ -0,0 +1,305 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.handler;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.commonjava.event.common.EventMetadata;
+import org.commonjava.event.file.FileEvent;
+import org.commonjava.event.file.FileEventType;
+import org.commonjava.event.file.TransferOperation;
+import org.commonjava.indy.service.tracking.model.StoreKey;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.io.IOException;
+
+import static org.commonjava.indy.service.tracking.Constants.ACCESS_CHANNEL;
+import static org.commonjava.indy.service.tracking.Constants.ORIGIN_PATH;
+import static org.commonjava.indy.service.tracking.model.StoreType.group;
+
+/**
+ * Streaming deserializer for the file-event-in channel. It reads only the fields tracking needs and returns null for
+ * events the listener would drop anyway, as soon as one of their fields gives them away: no session id, a
+ * self-tracking origin path, a storage event which is not an upload, or a group store when group content is not
+ * tracked. Tracked events come out as a sparse {@link FileEvent} whose metadata holds only the access channel and the
+ * origin path.
+ * <p>
+ * Metadata entries are read either from the event metadata object itself or from its nested "metadata" object.
+ */
+public class FileEventStreamingDeserializer
+                implements Deserializer<FileEvent>
+{
+    private static final JsonFactory factory = new JsonFactory();
+
+    private static final String SELF_TRACKING_PATH = "api/folo/track";
+
+    private final boolean trackGroupContent;
+
+    public FileEventStreamingDeserializer()
+    {
+        this( ConfigProvider.getConfig()
+                            .getOptionalValue( "tracking.track.group.content", Boolean.class )
+                            .orElse( Boolean.TRUE ) );
+    }
+
+    public FileEventStreamingDeserializer( boolean trackGroupContent )
+    {
+        this.trackGroupContent = trackGroupContent;
+    }
+
+    @Override
+    public FileEvent deserialize( String topic, byte[] data )
+    {
+        if ( data == null )
+        {
+            return null;
+        }
+        try (JsonParser parser = factory.createParser( data ))
+        {
+            return read( parser );
+        }
+        catch ( IOException | IllegalArgumentException e )
+        {
+            throw new SerializationException( "Failed to read file event from topic " + topic, e );
+        }
+    }
+
+    private FileEvent read( JsonParser parser ) throws IOException
+    {
+        if ( parser.nextToken() != JsonToken.START_OBJECT )
+        {
+            return null;
+        }
+        Fields fields = new Fields();
+        while ( parser.nextToken() == JsonToken.FIELD_NAME )
+        {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch ( name )
+            {
+                case "eventType":
+                    fields.eventType = eventType( text( parser, value ) );
+                    if ( fields.eventType != FileEventType.ACCESS && fields.eventType != FileEventType.STORAGE )
+                    {
+                        return null;
+                    }
+                    break;
+                case "sessionId":
+                    fields.sessionId = text( parser, value );
+                    if ( StringUtils.isBlank( fields.sessionId ) )
+                    {
+                        return null;
+                    }
+                    break;
+                case "storeKey":
+                    fields.storeKey = text( parser, value );
+                    if ( StringUtils.isBlank( fields.storeKey ) || !isTrackedStore( fields.storeKey ) )
+                    {
+                        return null;
+                    }
+                    break;
+                case "operation":
+                    fields.operation = text( parser, value );
+                    break;
+                case "targetPath":
+                    fields.targetPath = text( parser, value );
+                    break;
+                case "sourceLocation":
+                    fields.sourceLocation = text( parser, value );
+                    break;
+                case "sourcePath":
+                    fields.sourcePath = text( parser, value );
+                    break;
+                case "size":
+                    fields.size = value == JsonToken.VALUE_NULL ? null : parser.getLongValue();
+                    break;
+                case "md5":
+                    fields.md5 = text( parser, value );
+                    break;
+                case "sha1":
+                    fields.sha1 = text( parser, value );
+                    break;
+                case "checksum":
+                    fields.checksum = text( parser, value );
+                    break;
+                case "eventMetadata":
+                    readMetadata( parser, fields );
+                    if ( fields.originPath != null && fields.originPath.contains( SELF_TRACKING_PATH ) )
+                    {
+                        return null;
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+            if ( fields.eventType == FileEventType.STORAGE && fields.operation != null
+                            && !TransferOperation.UPLOAD.name().equals( fields.operation ) )
+            {
+                return null;
+            }
+        }
+        return fields.toEvent();
+    }
+
+    private void readMetadata( JsonParser parser, Fields fields ) throws IOException
+    {
+        if ( parser.currentToken() != JsonToken.START_OBJECT )
+        {
+            parser.skipChildren();
+            return;
+        }
+        while ( parser.nextToken() == JsonToken.FIELD_NAME )
+        {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch ( name )
+            {
+                case ACCESS_CHANNEL:
+                    fields.accessChannel = text( parser, value );
+                    break;
+                case ORIGIN_PATH:
+                    fields.originPath = text( parser, value );
+                    break;
+                case "metadata":
+                    readMetadata( parser, fields );
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+    }
+
+    private boolean isTrackedStore( String storeKey )
+    {
+        if ( trackGroupContent )
+        {
+            return true;
+        }
+        try
+        {
+            return StoreKey.fromString( storeKey ).getType() != group;
+        }
+        catch ( IllegalArgumentException e )
+        {
+            // let the listener report it
+            return true;
+        }
+    }
+
+    private static FileEventType eventType( String name )
+    {
+        if ( name == null )
+        {
+            return null;
+        }
+        try
+        {
+            return FileEventType.valueOf( name );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            return null;
+        }
+    }
+
+    private static String text( JsonParser parser, JsonToken value ) throws IOException
+    {
+        if ( value == JsonToken.VALUE_NULL )
+        {
+            return null;
+        }
+        if ( value.isScalarValue() )
+        {
+            return parser.getText();
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    private static final class Fields
+    {
+        private FileEventType eventType;
+
+        private String sessionId;
+
+        private String storeKey;
+
+        private String operation;
+
+        private String targetPath;
+
+        private String sourceLocation;
+
+        private String sourcePath;
+
+        private Long size;
+
+        private String md5;
+
+        private String sha1;
+
+        private String checksum;
+
+        private String accessChannel;
+
+        private String originPath;
+
+        private FileEvent toEvent()
+        {
+            if ( eventType == null || StringUtils.isBlank( sessionId ) || StringUtils.isBlank( storeKey ) )
+            {
+                return null;
+            }
+            if ( eventType == FileEventType.STORAGE && !TransferOperation.UPLOAD.name().equals( operation ) )
+            {
+                return null;
+            }
+            FileEvent event = new FileEvent( eventType );
+            event.setSessionId( sessionId );
+            event.setStoreKey( storeKey );
+            if ( operation != null )
+            {
+                event.setOperation( TransferOperation.valueOf( operation ) );
+            }
+            event.setTargetPath( targetPath );
+            event.setSourceLocation( sourceLocation );
+            event.setSourcePath( sourcePath );
+            if ( size != null )
+            {
+                event.setSize( size );
+            }
+            event.setMd5( md5 );
+            event.setSha1( sha1 );
+            event.setChecksum( checksum );
+
+            EventMetadata metadata = new EventMetadata();
+            if ( accessChannel != null )
+            {
+                metadata.set( ACCESS_CHANNEL, accessChannel );
+            }
+            if ( originPath != null )
+            {
+                metadata.set( ORIGIN_PATH, originPath );
+            }
+            event.setEventMetadata( metadata );
+            return event;
+        }
+    }
+}
@@ -28,9 +28,11 @@ import org.commonjava.indy.service.tracking.model.StoreKey;
 import org.commonjava.indy.service.tracking.model.StoreType;
 import org.commonjava.indy.service.tracking.model.TrackedContentEntry;
 import org.commonjava.indy.service.tracking.model.TrackingKey;
+import org.commonjava.indy.service.tracking.model.dto.ImportResultDTO;
 import org.commonjava.indy.service.tracking.model.dto.TrackedContentDTO;
 import org.commonjava.indy.service.tracking.model.dto.TrackedContentEntryDTO;
 import org.commonjava.indy.service.tracking.model.dto.TrackingIdsDTO;
+import org.commonjava.indy.service.tracking.model.dto.TrackingIdsPageDTO;
 import org.eclipse.microprofile.openapi.annotations.Operation;
 import org.eclipse.microprofile.openapi.annotations.media.Content;
 import org.eclipse.microprofile.openapi.annotations.media.Schema;
@@ -48,7 +50,9 @@ import jakarta.inject.Inject;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
@@ -56,20 +60,25 @@ import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.UriInfo;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 import static java.util.Collections.emptySet;
 import static jakarta.ws.rs.core.MediaType.APPLICATION_JSON;
+import static jakarta.ws.rs.core.MediaType.APPLICATION_OCTET_STREAM;
 import static org.commonjava.indy.service.tracking.Constants.ALL;
 import static org.commonjava.indy.service.tracking.Constants.LEGACY;
 import static org.commonjava.indy.service.tracking.Constants.TRACKING_TYPE.IN_PROGRESS;
 import static org.commonjava.indy.service.tracking.Constants.TRACKING_TYPE.SEALED;
+import static org.commonjava.indy.service.tracking.jaxrs.NdjsonStreamingOutput.MEDIATYPE_APPLICATION_NDJSON;
 import static org.eclipse.microprofile.openapi.annotations.enums.ParameterIn.PATH;
 import static org.eclipse.microprofile.openapi.annotations.enums.ParameterIn.QUERY;
 
@@ -80,6 +89,17 @@ public class AdminResource
 {
     public static final String MEDIATYPE_APPLICATION_ZIP = "application/zip";
 
+    public static final String EXPORT_FORMAT_ZIP = "zip";
+
+    public static final String EXPORT_FORMAT_BINARY = "binary";
+
+    /**
+     * Response header carrying the seal-time watermark of an export, to be passed as since to the next export.
+     */
+    public static final String EXPORT_WATERMARK_HEADER = "Indy-Export-Watermark";
+
+    private static final String GZIP = "gzip";
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     @Inject
@@ -146,6 +166,31 @@ public class AdminResource
         return controller.getZipRepository( id );
     }
 
+    @Operation( description = "Get the progress of the background migration of the legacy records table." )
+    @APIResponse( responseCode = "200", description = "Migration status" )
+    @Path( "/legacy/migration" )
+    @GET
+    @Produces( APPLICATION_JSON )
+    public Response getLegacyMigrationStatus()
+    {
+        return responseHelper.formatOkResponseWithJsonEntity( controller.getLegacyMigrationStatus() );
+    }
+
+    @Operation( description = "Start or resume the background migration of the legacy records table. Legacy record reads switch off once it has completed." )
+    @APIResponse( responseCode = "202", description = "Migration started" )
+    @APIResponse( responseCode = "409", description = "Migration is already running or completed" )
+    @Path( "/legacy/migration" )
+    @POST
+    @Produces( APPLICATION_JSON )
+    public Response startLegacyMigration()
+    {
+        if ( controller.startLegacyMigration() )
+        {
+            return Response.accepted( controller.getLegacyMigrationStatus() ).build();
+        }
+        return Response.status( Response.Status.CONFLICT ).entity( controller.getLegacyMigrationStatus() ).build();
+    }
+
     @Operation( description = "Alias of /{id}/record, returns the tracking record for the specified key" )
     @APIResponse( responseCode = "200", description = "Tracking record" )
     @APIResponse( responseCode = "404", description = "No such tracking record" )
@@ -153,9 +198,11 @@ public class AdminResource
     @GET
     public Response getReport(
                     @Parameter( description = "User-assigned tracking session key", in = PATH, required = true ) @PathParam( "id" ) final String id,
+                    @HeaderParam( HttpHeaders.ACCEPT ) final String accept,
+                    @HeaderParam( HttpHeaders.ACCEPT_ENCODING ) final String acceptEncoding,
                     @Context final UriInfo uriInfo )
     {
-        return getRecord( id, uriInfo );
+        return getRecord( id, accept, acceptEncoding, uriInfo );
     }
 
     @Operation( description = "Explicitly setup a new tracking record for the specified key, to prevent 404 if the record is never used." )
@@ -231,15 +278,46 @@ public class AdminResource
         }
     }
 
-    @Operation( description = "Alias of /{id}/record, returns the tracking record for the specified key" )
+    @Operation( description = "Write the sealed-state header and the tracking id catalog entry of every tracking record, for records created before they existed. Id listings use the catalog once this has completed." )
+    @APIResponse( responseCode = "200", description = "Count of migrated records" )
+    @Path( "/record/headers/migrate" )
+    @POST
+    @Produces( APPLICATION_JSON )
+    public Response migrateRecordHeaders()
+    {
+        int migrated = controller.migrateRecordHeaders();
+        return responseHelper.formatOkResponseWithJsonEntity( Collections.singletonMap( "migrated", migrated ) );
+    }
+
+    @Operation( description = "Alias of /{id}/record, returns the tracking record for the specified key. With Accept: application/x-ndjson the entries are streamed one per line." )
     @APIResponse( responseCode = "200", description = "Tracking record" )
     @APIResponse( responseCode = "404", description = "No such tracking record" )
     @Path( "/{id}/record" )
     @GET
     public Response getRecord(
                     @Parameter( description = "User-assigned tracking session key", in = PATH, required = true ) @PathParam( "id" ) final String id,
+                    @HeaderParam( HttpHeaders.ACCEPT ) final String accept,
+                    @HeaderParam( HttpHeaders.ACCEPT_ENCODING ) final String acceptEncoding,
                     @Context final UriInfo uriInfo )
     {
+        if ( accept != null && accept.contains( MEDIATYPE_APPLICATION_NDJSON ) )
+        {
+            return responseHelper.formatOkResponseWithNdjsonEntity(
+                            controller.streamRecord( id, config.contentServiceURL() ) );
+        }
+        if ( acceptsGzip( acceptEncoding ) )
+        {
+            // sealed reports are copied as they are from the pre-compressed file, so they are not compressed again
+            InputStream report = controller.getSealedReport( id, config.contentServiceURL() );
+            if ( report != null )
+            {
+                return Response.ok( report, APPLICATION_JSON )
+                               .header( HttpHeaders.CONTENT_ENCODING, GZIP )
+                               .header( HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING )
+                               .build();
+            }
+        }
+
         Response response;
         try
         {
@@ -254,7 +332,9 @@ public class AdminResource
                 // if not found, return an empty report
                 record = new TrackedContentDTO( new TrackingKey( id ), emptySet(), emptySet() );
             }
-            response = responseHelper.formatOkResponseWithJsonEntity( record );
+            response = Response.fromResponse( responseHelper.formatOkResponseWithJsonEntity( record ) )
+                               .header( HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING )
+                               .build();
         }
         catch ( final IndyWorkflowException e )
         {
@@ -318,6 +398,79 @@ public class AdminResource
         return response;
     }
 
+    @Operation( description = "Retrieve one page of tracking ids for records of given type, from the tracking id catalog." )
+    @APIResponse( responseCode = "200", content = @Content( schema = @Schema( implementation = TrackingIdsPageDTO.class ) ), description = "tracking ids and the cursor of the next page" )
+    @APIResponse( responseCode = "400", description = "Invalid type or cursor" )
+    @APIResponse( responseCode = "503", description = "Tracking id catalog is not migrated yet" )
+    @Path( "/report/ids/{type}/page" )
+    @GET
+    public Response getRecordIdsPage(
+                    @Parameter( description = "Report type, should be in_progress|sealed|all", in = PATH, required = true ) @PathParam( "type" ) final String type,
+                    @Parameter( description = "Cursor returned as next with the previous page", in = QUERY ) @QueryParam( "after" ) final String after,
+                    @Parameter( description = "Max ids in the page", in = QUERY ) @QueryParam( "limit" ) @DefaultValue( "1000" ) final int limit )
+    {
+        Set<Constants.TRACKING_TYPE> types = getRequiredTypes( type );
+        if ( types.isEmpty() || limit <= 0 )
+        {
+            return Response.status( Response.Status.BAD_REQUEST ).build();
+        }
+        try
+        {
+            return responseHelper.formatOkResponseWithJsonEntity( controller.getTrackingIdsPage( types, after, limit ) );
+        }
+        catch ( IndyWorkflowException e )
+        {
+            return responseHelper.formatResponse( e );
+        }
+    }
+
+    /**
+     * Whether the Accept-Encoding header allows gzip, going by q-values so that "gzip;q=0" refuses it.
+     */
+    static boolean acceptsGzip( final String acceptEncoding )
+    {
+        if ( acceptEncoding == null )
+        {
+            return false;
+        }
+        Double gzip = null;
+        Double any = null;
+        for ( String coding : acceptEncoding.split( "," ) )
+        {
+            String[] parts = coding.split( ";" );
+            String name = parts[0].trim().toLowerCase();
+            double q = 1;
+            for ( int i = 1; i < parts.length; i++ )
+            {
+                String param = parts[i].trim();
+                if ( param.startsWith( "q=" ) || param.startsWith( "Q=" ) )
+                {
+                    try
+                    {
+                        q = Double.parseDouble( param.substring( 2 ).trim() );
+                    }
+                    catch ( NumberFormatException e )
+                    {
+                        q = 0;
+                    }
+                }
+            }
+            if ( GZIP.equals( name ) || "x-gzip".equals( name ) )
+            {
+                gzip = q;
+            }
+            else if ( "*".equals( name ) )
+            {
+                any = q;
+            }
+        }
+        if ( gzip != null )
+        {
+            return gzip > 0;
+        }
+        return any != null && any > 0;
+    }
+
     private Set<Constants.TRACKING_TYPE> getRequiredTypes( String type )
     {
         Set<Constants.TRACKING_TYPE> types = new HashSet<>();
@@ -333,16 +486,31 @@ public class AdminResource
         return types;
     }
 
-    @Operation( description = "Export the records as a ZIP file." )
-    @APIResponse( responseCode = "200", description = "ZIP content" )
+    @Operation( description = "Export the sealed records, streamed while the records are read. The format is a ZIP file of serialized records by default, or the compact binary record stream with format=binary. With since, only the records sealed after that time are exported. The " + EXPORT_WATERMARK_HEADER + " response header holds the value to pass as since to the next export." )
+    @APIResponse( responseCode = "200", description = "ZIP or binary content" )
     @Path( "/report/export" )
     @GET
-    @Produces( MEDIATYPE_APPLICATION_ZIP )
-    public File exportReport()
+    @Produces( { MEDIATYPE_APPLICATION_ZIP, APPLICATION_OCTET_STREAM } )
+    public Response exportReport(
+                    @Parameter( description = "Export format, should be zip|binary", in = QUERY ) @QueryParam( "format" ) @DefaultValue( EXPORT_FORMAT_ZIP ) final String format,
+                    @Parameter( description = "Watermark of a previous export, in milliseconds since the epoch", in = QUERY ) @QueryParam( "since" ) final Long since )
     {
         try
         {
-            return controller.renderReportZip();
+            long watermark = controller.getExportWatermark();
+            if ( EXPORT_FORMAT_BINARY.equals( format ) )
+            {
+                return Response.ok( controller.exportReportBinary( since, watermark ), APPLICATION_OCTET_STREAM )
+                               .header( HttpHeaders.CONTENT_DISPOSITION,
+                                        "attachment; filename=" + AdminController.FOLO_SEALED_BINARY )
+                               .header( EXPORT_WATERMARK_HEADER, watermark )
+                               .build();
+            }
+            return Response.ok( controller.exportReportZip( since, watermark ), MEDIATYPE_APPLICATION_ZIP )
+                           .header( HttpHeaders.CONTENT_DISPOSITION,
+                                    "attachment; filename=" + AdminController.FOLO_SEALED_ZIP )
+                           .header( EXPORT_WATERMARK_HEADER, watermark )
+                           .build();
         }
         catch ( IndyWorkflowException e )
         {
@@ -352,15 +520,18 @@ public class AdminResource
         return null;
     }
 
-    @Operation( description = "Import records from a ZIP file." )
+    @Operation( description = "Import records from a ZIP file or a binary record stream, as produced by /report/export. Reports the record counts and throughput." )
     @APIResponse( responseCode = "201", description = "Import ZIP content" )
     @Path( "/report/import" )
     @PUT
-    public Response importReport( final @Context UriInfo uriInfo, final @Context HttpServletRequest request )
+    @Produces( APPLICATION_JSON )
+    public Response importReport( final @Context UriInfo uriInfo, final @Context HttpServletRequest request,
+                                  @Parameter( description = "Skip records stored sealed with the same entries already", in = QUERY ) @QueryParam( "skipIdentical" ) final boolean skipIdentical )
     {
+        ImportResultDTO result = null;
         try
         {
-            controller.importRecordZip( request.getInputStream() );
+            result = controller.importRecordZip( request.getInputStream(), skipIdentical );
         }
         catch ( IndyWorkflowException e )
         {
@@ -371,7 +542,7 @@ public class AdminResource
             responseHelper.throwError( new IndyWorkflowException( "IO error", e ) );
         }
 
-        return Response.created( uriInfo.getRequestUri() ).build();
+        return Response.created( uriInfo.getRequestUri() ).entity( result ).build();
     }
 
     @Operation( description = "Batch delete files uploaded through FOLO trackingID under the given storeKey." )
@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.jaxrs;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.commonjava.indy.service.tracking.data.metrics.TraceManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes each element of an iterator as one line of JSON (newline-delimited JSON). Elements are serialized straight
+ * to the output as they are pulled from the iterator, so memory use does not grow with the number of elements.
+ */
+public class NdjsonStreamingOutput
+                implements StreamingOutput
+{
+    public static final String MEDIATYPE_APPLICATION_NDJSON = "application/x-ndjson";
+
+    private static final String TRANSFER_METRIC_NAME = "indy.transferred.ndjson";
+
+    private final ObjectMapper mapper;
+
+    private final Iterator<?> elements;
+
+    private final TraceManager traceManager;
+
+    public NdjsonStreamingOutput( final ObjectMapper mapper, final Iterator<?> elements,
+                                  final TraceManager traceManager )
+    {
+        this.mapper = mapper;
+        this.elements = elements;
+        this.traceManager = traceManager;
+    }
+
+    @Override
+    public void write( final OutputStream outputStream ) throws IOException, WebApplicationException
+    {
+        AtomicReference<IOException> ioe = new AtomicReference<>();
+        traceManager.wrapWithStandardMetrics( ( span ) -> {
+            CountingOutputStream cout = new CountingOutputStream( outputStream );
+            long count = 0;
+            ObjectWriter writer = mapper.writer().without( SerializationFeature.INDENT_OUTPUT );
+            try (JsonGenerator generator = mapper.getFactory().createGenerator( cout ))
+            {
+                generator.disable( JsonGenerator.Feature.AUTO_CLOSE_TARGET );
+                generator.setRootValueSeparator( null );
+                while ( elements.hasNext() )
+                {
+                    writer.writeValue( generator, elements.next() );
+                    generator.writeRaw( '\n' );
+                    count++;
+                }
+            }
+            catch ( IOException e )
+            {
+                ioe.set( e );
+            }
+            finally
+            {
+                Logger logger = LoggerFactory.getLogger( getClass() );
+                logger.trace( "Wrote: {} elements in {} bytes", count, cout.getByteCount() );
+                span.setAttribute( TRANSFER_METRIC_NAME + ".size", cout.getByteCount() );
+            }
+
+            return null;
+
+        }, () -> TRANSFER_METRIC_NAME );
+
+        if ( ioe.get() != null )
+        {
+            throw ioe.get();
+        }
+    }
+}
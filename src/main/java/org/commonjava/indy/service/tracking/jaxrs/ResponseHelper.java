@@ -31,6 +31,7 @@ import jakarta.ws.rs.core.Response.ResponseBuilder;
 import jakarta.ws.rs.core.Response.Status;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.Iterator;
 import java.util.function.Consumer;
 
 import static jakarta.ws.rs.core.MediaType.APPLICATION_JSON;
@@ -70,6 +71,12 @@ public class ResponseHelper
         return builder.build();
     }
 
+    public Response formatOkResponseWithNdjsonEntity( final Iterator<?> elements )
+    {
+        return Response.ok( new NdjsonStreamingOutput( mapper, elements, metricsManager ),
+                            NdjsonStreamingOutput.MEDIATYPE_APPLICATION_NDJSON ).build();
+    }
+
     public void throwError( final Throwable error )
     {
         formulateResponse( 0, error, null, true, null );
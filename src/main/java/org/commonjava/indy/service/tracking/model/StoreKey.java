@@ -23,7 +23,6 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
-import java.util.Arrays;
 import java.util.concurrent.ConcurrentHashMap;
 
 import static org.apache.commons.lang3.StringUtils.isBlank;
@@ -35,8 +34,14 @@ public final class StoreKey
 
     private static final String MAVEN_PKG_KEY = "maven";
 
+    private static final int MAX_INTERNED_KEYS = 4096;
+
+    private static final Logger logger = LoggerFactory.getLogger( StoreKey.class );
+
     private static final ConcurrentHashMap<StoreKey, StoreKey> deduplications = new ConcurrentHashMap<>();
 
+    private static final ConcurrentHashMap<String, StoreKey> parsed = new ConcurrentHashMap<>();
+
     private String packageType;
 
     private StoreType type;
@@ -59,61 +64,103 @@ public final class StoreKey
         this.name = name;
     }
 
+    /**
+     * Parse a store key string. Parsed keys are interned, so repeated calls for the same string allocate nothing.
+     */
     public static StoreKey fromString( final String id )
     {
-        Logger logger = LoggerFactory.getLogger( StoreKey.class );
-        logger.debug( "Parsing raw string: '{}' to StoreKey", id );
+        StoreKey key = parsed.get( id );
+        if ( key == null )
+        {
+            key = dedupe( parse( id ) );
+            intern( parsed, id, key );
+        }
+        return key;
+    }
 
-        String[] parts = id.split( ":" );
+    /**
+     * Same result as splitting on ':' (trailing empty parts dropped), but without the regex and the array.
+     */
+    private static StoreKey parse( final String id )
+    {
+        logger.debug( "Parsing raw string: '{}' to StoreKey", id );
 
-        logger.debug( "Got {} parts: {}", parts.length, Arrays.asList( parts ) );
+        int end = id.length();
+        while ( end > 0 && id.charAt( end - 1 ) == ':' )
+        {
+            end--;
+        }
+        int first = indexOfColon( id, 0, end );
+        int second = first < 0 ? -1 : indexOfColon( id, first + 1, end );
 
-        String packageType = null;
+        String packageType;
         String name;
-        StoreType type = null;
+        StoreType type;
+        String typePart;
 
         // FIXME: We need to get to a point where it's safe for this to be an error and not default to maven.
-        if ( parts.length < 2 )
+        if ( first < 0 )
         {
             packageType = MAVEN_PKG_KEY;
+            typePart = null;
             type = StoreType.remote;
             name = id;
         }
-        else if ( parts.length < 3 || isBlank( parts[0] ) )
+        else if ( second < 0 || first == 0 || isBlank( id.substring( 0, first ) ) )
         {
             packageType = MAVEN_PKG_KEY;
-            type = StoreType.get( parts[0] );
-            name = parts[1];
+            typePart = id.substring( first + 1, second < 0 ? end : second );
+            type = StoreType.get( id.substring( 0, first ) );
+            name = typePart;
         }
         else
         {
-            packageType = parts[0];
-            type = StoreType.get( parts[1] );
-            name = parts[2];
+            int third = indexOfColon( id, second + 1, end );
+            packageType = id.substring( 0, first );
+            typePart = id.substring( first + 1, second );
+            type = StoreType.get( typePart );
+            name = id.substring( second + 1, third < 0 ? end : third );
         }
 
         if ( type == null )
         {
-            throw new IllegalArgumentException( "Invalid StoreType: " + parts[1] );
+            throw new IllegalArgumentException( "Invalid StoreType: " + typePart );
         }
 
-        // logger.info( "parsed store-key with type: '{}' and name: '{}'", type, name );
-
         return new StoreKey( packageType, type, name );
     }
 
+    private static int indexOfColon( final String id, final int from, final int end )
+    {
+        int idx = id.indexOf( ':', from );
+        return idx < end ? idx : -1;
+    }
+
     public static StoreKey dedupe( StoreKey key )
     {
         StoreKey result = deduplications.get( key );
         if ( result == null )
         {
-            deduplications.put( key, key );
+            intern( deduplications, key, key );
             result = key;
         }
 
         return result;
     }
 
+    /**
+     * There are only so many stores, so a full cache means it was filled with one-off keys. Starting over keeps it
+     * bounded without the bookkeeping of an LRU on this hot path.
+     */
+    private static <K> void intern( final ConcurrentHashMap<K, StoreKey> cache, final K key, final StoreKey value )
+    {
+        if ( cache.size() >= MAX_INTERNED_KEYS )
+        {
+            cache.clear();
+        }
+        cache.putIfAbsent( key, value );
+    }
+
     public String getPackageType()
     {
         return packageType;
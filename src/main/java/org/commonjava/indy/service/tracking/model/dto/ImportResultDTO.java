@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.model.dto;
+
+public class ImportResultDTO
+{
+
+    private int read;
+
+    private int imported;
+
+    private int skipped;
+
+    private long bytes;
+
+    private long elapsedMillis;
+
+    private double recordsPerSecond;
+
+    public int getRead()
+    {
+        return read;
+    }
+
+    public void setRead( int read )
+    {
+        this.read = read;
+    }
+
+    public int getImported()
+    {
+        return imported;
+    }
+
+    public void setImported( int imported )
+    {
+        this.imported = imported;
+    }
+
+    public int getSkipped()
+    {
+        return skipped;
+    }
+
+    public void setSkipped( int skipped )
+    {
+        this.skipped = skipped;
+    }
+
+    public long getBytes()
+    {
+        return bytes;
+    }
+
+    public void setBytes( long bytes )
+    {
+        this.bytes = bytes;
+    }
+
+    public long getElapsedMillis()
+    {
+        return elapsedMillis;
+    }
+
+    public void setElapsedMillis( long elapsedMillis )
+    {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public double getRecordsPerSecond()
+    {
+        return recordsPerSecond;
+    }
+
+    public void setRecordsPerSecond( double recordsPerSecond )
+    {
+        this.recordsPerSecond = recordsPerSecond;
+    }
+}
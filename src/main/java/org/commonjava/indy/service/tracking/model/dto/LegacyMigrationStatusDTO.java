@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.model.dto;
+
+public class LegacyMigrationStatusDTO
+{
+
+    private String state;
+
+    private int ranges;
+
+    private int rangesDone;
+
+    private int rangesFailed;
+
+    private long migrated;
+
+    private long skipped;
+
+    private Long startedAt;
+
+    private Long finishedAt;
+
+    public String getState()
+    {
+        return state;
+    }
+
+    public void setState( String state )
+    {
+        this.state = state;
+    }
+
+    public int getRanges()
+    {
+        return ranges;
+    }
+
+    public void setRanges( int ranges )
+    {
+        this.ranges = ranges;
+    }
+
+    public int getRangesDone()
+    {
+        return rangesDone;
+    }
+
+    public void setRangesDone( int rangesDone )
+    {
+        this.rangesDone = rangesDone;
+    }
+
+    public int getRangesFailed()
+    {
+        return rangesFailed;
+    }
+
+    public void setRangesFailed( int rangesFailed )
+    {
+        this.rangesFailed = rangesFailed;
+    }
+
+    public long getMigrated()
+    {
+        return migrated;
+    }
+
+    public void setMigrated( long migrated )
+    {
+        this.migrated = migrated;
+    }
+
+    public long getSkipped()
+    {
+        return skipped;
+    }
+
+    public void setSkipped( long skipped )
+    {
+        this.skipped = skipped;
+    }
+
+    public Long getStartedAt()
+    {
+        return startedAt;
+    }
+
+    public void setStartedAt( Long startedAt )
+    {
+        this.startedAt = startedAt;
+    }
+
+    public Long getFinishedAt()
+    {
+        return finishedAt;
+    }
+
+    public void setFinishedAt( Long finishedAt )
+    {
+        this.finishedAt = finishedAt;
+    }
+}
@@ -16,6 +16,7 @@
 package org.commonjava.indy.service.tracking.model.dto;
 
 import org.commonjava.indy.service.tracking.model.AccessChannel;
+import org.commonjava.indy.service.tracking.model.StoreEffect;
 import org.commonjava.indy.service.tracking.model.StoreKey;
 
 import java.util.Set;
@@ -43,6 +44,11 @@ public class TrackedContentEntryDTO
 
     private Set<Long> timestamps;
 
+    /**
+     * Only set in streamed reports, where uploads and downloads are not separated.
+     */
+    private StoreEffect effect;
+
     public TrackedContentEntryDTO()
     {
     }
@@ -235,4 +241,14 @@ public class TrackedContentEntryDTO
     {
         this.timestamps = timestamps;
     }
+
+    public StoreEffect getEffect()
+    {
+        return effect;
+    }
+
+    public void setEffect( final StoreEffect effect )
+    {
+        this.effect = effect;
+    }
 }
@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.model.dto;
+
+import java.util.List;
+
+public class TrackingIdsPageDTO
+{
+
+    private List<String> ids;
+
+    private String next;
+
+    public TrackingIdsPageDTO()
+    {
+    }
+
+    public TrackingIdsPageDTO( final List<String> ids, final String next )
+    {
+        this.ids = ids;
+        this.next = next;
+    }
+
+    public List<String> getIds()
+    {
+        return ids;
+    }
+
+    public void setIds( List<String> ids )
+    {
+        this.ids = ids;
+    }
+
+    /**
+     * @return cursor to pass as "after" to get the next page, or null on the last page
+     */
+    public String getNext()
+    {
+        return next;
+    }
+
+    public void setNext( String next )
+    {
+        this.next = next;
+    }
+}
@@ -0,0 +1,686 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.util;
+
+import org.commonjava.indy.service.tracking.model.AccessChannel;
+import org.commonjava.indy.service.tracking.model.StoreEffect;
+import org.commonjava.indy.service.tracking.model.StoreKey;
+import org.commonjava.indy.service.tracking.model.StoreType;
+import org.commonjava.indy.service.tracking.model.TrackedContent;
+import org.commonjava.indy.service.tracking.model.TrackedContentEntry;
+import org.commonjava.indy.service.tracking.model.TrackingKey;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Compact binary format of tracking records for export and import, replacing Java object serialization.
+ * <p>
+ * A stream starts with the magic bytes "FOLB" and a version byte, followed by length-prefixed records and a zero
+ * length at the end. Numbers are varints; signed ones are zigzag-encoded. Each record carries its own dictionaries of
+ * store keys and origin url prefixes, which entries refer to by index. Entries are sorted by path and each path only
+ * stores what differs from the path before it. Checksums in lower-case hex are stored as raw bytes.
+ * <p>
+ * Store effects, access channels and store types are written as the codes of the tables below, never as enum
+ * ordinals, so reordering an enum can't change what an export means. A value added to one of these enums must get a
+ * new code appended to its table; encoding a value without one fails instead of writing a wrong code.
+ * <p>
+ * The entries of a record are expected to carry the tracking key of the record; they get it back when decoded.
+ */
+public class BinaryRecordCodec
+{
+    public static final byte[] MAGIC = { 'F', 'O', 'L', 'B' };
+
+    public static final int VERSION = 1;
+
+    private static final int EFFECT_MASK = 0x03;
+
+    private static final int CHANNEL_SHIFT = 2;
+
+    private static final int CHANNEL_MASK = 0x03;
+
+    private static final int HAS_SIZE = 0x10;
+
+    private static final int HAS_PATH = 0x20;
+
+    private static final int ORIGIN_SHIFT = 6;
+
+    private static final int ORIGIN_NONE = 0;
+
+    private static final int ORIGIN_PREFIX_AND_PATH = 1;
+
+    private static final int ORIGIN_PREFIX_AND_REST = 2;
+
+    private static final int CHECKSUM_NONE = 0;
+
+    private static final int CHECKSUM_HEX = 1;
+
+    private static final int CHECKSUM_TEXT = 2;
+
+    /** Code n of each table is the value at index n - 1; code 0 is null. Codes are part of format version 1. */
+    private static final StoreEffect[] EFFECT_CODES = { StoreEffect.UPLOAD, StoreEffect.DOWNLOAD };
+
+    private static final AccessChannel[] CHANNEL_CODES =
+                    { AccessChannel.GENERIC_PROXY, AccessChannel.NATIVE, AccessChannel.MAVEN_REPO };
+
+    private static final StoreType[] STORE_TYPE_CODES = { StoreType.group, StoreType.remote, StoreType.hosted };
+
+    private static final Comparator<TrackedContentEntry> BY_PATH =
+                    Comparator.comparing( TrackedContentEntry::getPath, Comparator.nullsFirst( String::compareTo ) );
+
+    private BinaryRecordCodec()
+    {
+    }
+
+    /**
+     * @return true if the bytes start with the magic bytes of this format
+     */
+    public static boolean isBinary( final byte[] bytes )
+    {
+        if ( bytes.length < MAGIC.length )
+        {
+            return false;
+        }
+        for ( int i = 0; i < MAGIC.length; i++ )
+        {
+            if ( bytes[i] != MAGIC[i] )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write the records as a stream in this format. The stream is left open.
+     *
+     * @return count of records written
+     */
+    public static int write( final OutputStream out, final Iterator<TrackedContent> records ) throws IOException
+    {
+        out.write( MAGIC );
+        out.write( VERSION );
+        int count = 0;
+        Writer lengths = new Writer();
+        while ( records.hasNext() )
+        {
+            TrackedContent record = records.next();
+            if ( record == null )
+            {
+                continue;
+            }
+            byte[] bytes = encode( record );
+            lengths.reset();
+            lengths.writeVarLong( bytes.length );
+            lengths.writeTo( out );
+            out.write( bytes );
+            count++;
+        }
+        out.write( 0 );
+        out.flush();
+        return count;
+    }
+
+    /**
+     * Read the header of a stream in this format.
+     *
+     * @throws IOException if the stream is not in this format or of a later version
+     */
+    public static void readHeader( final InputStream in ) throws IOException
+    {
+        byte[] magic = readFully( in, MAGIC.length );
+        if ( !Arrays.equals( magic, MAGIC ) )
+        {
+            throw new IOException( "Not a binary record stream" );
+        }
+        int version = in.read();
+        if ( version < 1 || version > VERSION )
+        {
+            throw new IOException( "Unsupported binary record format version: " + version );
+        }
+    }
+
+    /**
+     * Read the bytes of the next record of a stream, after the header.
+     *
+     * @return the encoded record for {@link #decode(byte[])}, or null at the end of the stream
+     */
+    public static byte[] readRecord( final InputStream in ) throws IOException
+    {
+        long length = 0;
+        for ( int shift = 0; ; shift += 7 )
+        {
+            int b = in.read();
+            if ( b < 0 )
+            {
+                throw new EOFException( "Binary record stream ended without end marker" );
+            }
+            length |= (long) ( b & 0x7f ) << shift;
+            if ( ( b & 0x80 ) == 0 )
+            {
+                break;
+            }
+        }
+        if ( length == 0 )
+        {
+            return null;
+        }
+        if ( length > Integer.MAX_VALUE )
+        {
+            throw new IOException( "Binary record too large: " + length );
+        }
+        return readFully( in, (int) length );
+    }
+
+    private static byte[] readFully( final InputStream in, final int length ) throws IOException
+    {
+        byte[] bytes = new byte[length];
+        int read = 0;
+        while ( read < length )
+        {
+            int n = in.read( bytes, read, length - read );
+            if ( n < 0 )
+            {
+                throw new EOFException( "Binary record stream ended within a record" );
+            }
+            read += n;
+        }
+        return bytes;
+    }
+
+    public static byte[] encode( final TrackedContent record )
+    {
+        List<TrackedContentEntry> uploads = sorted( record.getUploads() );
+        List<TrackedContentEntry> downloads = sorted( record.getDownloads() );
+
+        Map<StoreKey, Integer> storeKeys = new LinkedHashMap<>();
+        Map<String, Integer> prefixes = new LinkedHashMap<>();
+        for ( List<TrackedContentEntry> entries : Arrays.asList( uploads, downloads ) )
+        {
+            for ( TrackedContentEntry entry : entries )
+            {
+                if ( entry.getStoreKey() != null )
+                {
+                    storeKeys.putIfAbsent( entry.getStoreKey(), storeKeys.size() );
+                }
+                String prefix = originPrefix( entry );
+                if ( prefix != null )
+                {
+                    prefixes.putIfAbsent( prefix, prefixes.size() );
+                }
+            }
+        }
+
+        Writer out = new Writer();
+        out.writeString( record.getKey() == null ? null : record.getKey().getId() );
+        out.writeVarLong( storeKeys.size() );
+        for ( StoreKey storeKey : storeKeys.keySet() )
+        {
+            out.writeString( storeKey.getPackageType() );
+            out.writeVarLong( toCode( STORE_TYPE_CODES, storeKey.getType(), Integer.MAX_VALUE ) );
+            out.writeString( storeKey.getName() );
+        }
+        out.writeVarLong( prefixes.size() );
+        for ( String prefix : prefixes.keySet() )
+        {
+            out.writeString( prefix );
+        }
+        out.writeVarLong( uploads.size() );
+        out.writeVarLong( downloads.size() );
+        for ( List<TrackedContentEntry> entries : Arrays.asList( uploads, downloads ) )
+        {
+            String previousPath = "";
+            for ( TrackedContentEntry entry : entries )
+            {
+                writeEntry( out, entry, previousPath, storeKeys, prefixes );
+                if ( entry.getPath() != null )
+                {
+                    previousPath = entry.getPath();
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeEntry( final Writer out, final TrackedContentEntry entry, final String previousPath,
+                                    final Map<StoreKey, Integer> storeKeys, final Map<String, Integer> prefixes )
+    {
+        String path = entry.getPath();
+        String origin = entry.getOriginUrl();
+        String prefix = originPrefix( entry );
+        int originMode = ORIGIN_NONE;
+        if ( prefix != null )
+        {
+            boolean endsWithPath = path != null && origin.length() == prefix.length() + path.length()
+                            && origin.endsWith( path );
+            originMode = endsWithPath ? ORIGIN_PREFIX_AND_PATH : ORIGIN_PREFIX_AND_REST;
+        }
+
+        int flags = toCode( EFFECT_CODES, entry.getEffect(), EFFECT_MASK );
+        flags |= toCode( CHANNEL_CODES, entry.getAccessChannel(), CHANNEL_MASK ) << CHANNEL_SHIFT;
+        flags |= entry.getSize() != null ? HAS_SIZE : 0;
+        flags |= path != null ? HAS_PATH : 0;
+        flags |= originMode << ORIGIN_SHIFT;
+        out.writeByte( flags );
+
+        out.writeVarLong( entry.getStoreKey() == null ? 0 : storeKeys.get( entry.getStoreKey() ) + 1 );
+        if ( path != null )
+        {
+            int shared = sharedPrefixLength( previousPath, path );
+            out.writeVarLong( shared );
+            out.writeString( path.substring( shared ) );
+        }
+        if ( originMode != ORIGIN_NONE )
+        {
+            out.writeVarLong( prefixes.get( prefix ) );
+            if ( originMode == ORIGIN_PREFIX_AND_REST )
+            {
+                out.writeString( origin.substring( prefix.length() ) );
+            }
+        }
+        if ( entry.getSize() != null )
+        {
+            out.writeZigZag( entry.getSize() );
+        }
+        out.writeChecksum( entry.getMd5() );
+        out.writeChecksum( entry.getSha1() );
+        out.writeChecksum( entry.getSha256() );
+        out.writeZigZag( entry.getIndex() );
+
+        Set<Long> timestamps = entry.getTimestamps();
+        if ( timestamps == null )
+        {
+            out.writeVarLong( 0 );
+        }
+        else
+        {
+            out.writeVarLong( timestamps.size() + 1 );
+            long previous = 0;
+            for ( Long timestamp : new TreeSet<>( timestamps ) )
+            {
+                out.writeZigZag( timestamp - previous );
+                previous = timestamp;
+            }
+        }
+    }
+
+    public static TrackedContent decode( final byte[] bytes ) throws IOException
+    {
+        Reader in = new Reader( bytes );
+        String id = in.readString();
+        TrackingKey key = id == null ? null : new TrackingKey( id );
+
+        int storeKeyCount = in.readVarInt();
+        StoreKey[] storeKeys = new StoreKey[storeKeyCount];
+        for ( int i = 0; i < storeKeyCount; i++ )
+        {
+            String packageType = in.readString();
+            int type = in.readVarInt();
+            String name = in.readString();
+            storeKeys[i] = StoreKey.dedupe( new StoreKey( packageType, fromCode( STORE_TYPE_CODES, type ), name ) );
+        }
+        int prefixCount = in.readVarInt();
+        String[] prefixes = new String[prefixCount];
+        for ( int i = 0; i < prefixCount; i++ )
+        {
+            prefixes[i] = in.readString();
+        }
+
+        int uploadCount = in.readVarInt();
+        int downloadCount = in.readVarInt();
+        Set<TrackedContentEntry> uploads = new HashSet<>( capacity( uploadCount ) );
+        Set<TrackedContentEntry> downloads = new HashSet<>( capacity( downloadCount ) );
+        String previousPath = "";
+        for ( int i = 0; i < uploadCount + downloadCount; i++ )
+        {
+            if ( i == uploadCount )
+            {
+                previousPath = "";
+            }
+            TrackedContentEntry entry = readEntry( in, key, previousPath, storeKeys, prefixes );
+            if ( entry.getPath() != null )
+            {
+                previousPath = entry.getPath();
+            }
+            ( i < uploadCount ? uploads : downloads ).add( entry );
+        }
+        return new TrackedContent( key, uploads, downloads );
+    }
+
+    private static TrackedContentEntry readEntry( final Reader in, final TrackingKey key, final String previousPath,
+                                                  final StoreKey[] storeKeys, final String[] prefixes )
+                    throws IOException
+    {
+        int flags = in.readByte();
+        TrackedContentEntry entry = new TrackedContentEntry();
+        entry.setTrackingKey( key );
+        entry.setEffect( fromCode( EFFECT_CODES, flags & EFFECT_MASK ) );
+        entry.setAccessChannel( fromCode( CHANNEL_CODES, ( flags >> CHANNEL_SHIFT ) & CHANNEL_MASK ) );
+
+        int storeKey = in.readVarInt();
+        entry.setStoreKey( storeKey == 0 ? null : storeKeys[storeKey - 1] );
+        if ( ( flags & HAS_PATH ) != 0 )
+        {
+            int shared = in.readVarInt();
+            entry.setPath( previousPath.substring( 0, shared ) + in.readString() );
+        }
+        int originMode = flags >>> ORIGIN_SHIFT;
+        if ( originMode != ORIGIN_NONE )
+        {
+            String prefix = prefixes[in.readVarInt()];
+            entry.setOriginUrl(
+                            prefix + ( originMode == ORIGIN_PREFIX_AND_PATH ? entry.getPath() : in.readString() ) );
+        }
+        if ( ( flags & HAS_SIZE ) != 0 )
+        {
+            entry.setSize( in.readZigZag() );
+        }
+        entry.setMd5( in.readChecksum() );
+        entry.setSha1( in.readChecksum() );
+        entry.setSha256( in.readChecksum() );
+        entry.setIndex( in.readZigZag() );
+
+        int timestamps = in.readVarInt();
+        if ( timestamps > 0 )
+        {
+            Set<Long> values = new HashSet<>( capacity( timestamps - 1 ) );
+            long previous = 0;
+            for ( int i = 1; i < timestamps; i++ )
+            {
+                previous += in.readZigZag();
+                values.add( previous );
+            }
+            entry.setTimestamps( values );
+        }
+        return entry;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the value has no code, or its code does not fit in max
+     */
+    private static <T> int toCode( final T[] codes, final T value, final int max )
+    {
+        if ( value == null )
+        {
+            return 0;
+        }
+        for ( int i = 0; i < codes.length; i++ )
+        {
+            if ( codes[i] == value )
+            {
+                if ( i + 1 > max )
+                {
+                    throw new IllegalArgumentException( "Code of " + value + " does not fit the binary record format" );
+                }
+                return i + 1;
+            }
+        }
+        throw new IllegalArgumentException( "No binary record code for " + value );
+    }
+
+    private static <T> T fromCode( final T[] codes, final int code ) throws IOException
+    {
+        if ( code == 0 )
+        {
+            return null;
+        }
+        if ( code > codes.length )
+        {
+            throw new IOException( "Unknown code in binary record: " + code );
+        }
+        return codes[code - 1];
+    }
+
+    private static List<TrackedContentEntry> sorted( final Collection<TrackedContentEntry> entries )
+    {
+        List<TrackedContentEntry> sorted = entries == null ? new ArrayList<>() : new ArrayList<>( entries );
+        sorted.sort( BY_PATH );
+        return sorted;
+    }
+
+    /**
+     * The origin url up to the path of the entry if it ends with it, otherwise up to its last slash.
+     */
+    private static String originPrefix( final TrackedContentEntry entry )
+    {
+        String origin = entry.getOriginUrl();
+        if ( origin == null )
+        {
+            return null;
+        }
+        String path = entry.getPath();
+        if ( path != null && !path.isEmpty() && origin.endsWith( path ) )
+        {
+            return origin.substring( 0, origin.length() - path.length() );
+        }
+        return origin.substring( 0, origin.lastIndexOf( '/' ) + 1 );
+    }
+
+    private static int sharedPrefixLength( final String a, final String b )
+    {
+        int max = Math.min( a.length(), b.length() );
+        int i = 0;
+        while ( i < max && a.charAt( i ) == b.charAt( i ) )
+        {
+            i++;
+        }
+        // don't split a surrogate pair
+        if ( i > 0 && Character.isHighSurrogate( b.charAt( i - 1 ) ) )
+        {
+            i--;
+        }
+        return i;
+    }
+
+    private static int capacity( final int size )
+    {
+        return Math.max( 16, (int) ( size / 0.75f ) + 1 );
+    }
+
+    private static final class Writer
+                    extends ByteArrayOutputStream
+    {
+        Writer()
+        {
+            super( 256 );
+        }
+
+        void writeByte( final int b )
+        {
+            write( b );
+        }
+
+        void writeVarLong( long value )
+        {
+            while ( ( value & ~0x7fL ) != 0 )
+            {
+                write( (int) ( ( value & 0x7f ) | 0x80 ) );
+                value >>>= 7;
+            }
+            write( (int) value );
+        }
+
+        void writeZigZag( final long value )
+        {
+            writeVarLong( ( value << 1 ) ^ ( value >> 63 ) );
+        }
+
+        /**
+         * Length plus one, so null is told apart from empty.
+         */
+        void writeString( final String value )
+        {
+            if ( value == null )
+            {
+                writeVarLong( 0 );
+                return;
+            }
+            byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+            writeVarLong( bytes.length + 1L );
+            write( bytes, 0, bytes.length );
+        }
+
+        void writeChecksum( final String value )
+        {
+            if ( value == null )
+            {
+                writeByte( CHECKSUM_NONE );
+            }
+            else if ( isLowerHex( value ) )
+            {
+                writeByte( CHECKSUM_HEX );
+                writeVarLong( value.length() / 2 );
+                for ( int i = 0; i < value.length(); i += 2 )
+                {
+                    write( Character.digit( value.charAt( i ), 16 ) << 4 | Character.digit( value.charAt( i + 1 ),
+                                                                                               16 ) );
+                }
+            }
+            else
+            {
+                writeByte( CHECKSUM_TEXT );
+                writeString( value );
+            }
+        }
+
+        private static boolean isLowerHex( final String value )
+        {
+            if ( value.isEmpty() || value.length() % 2 != 0 )
+            {
+                return false;
+            }
+            for ( int i = 0; i < value.length(); i++ )
+            {
+                char c = value.charAt( i );
+                if ( ( c < '0' || c > '9' ) && ( c < 'a' || c > 'f' ) )
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Reader
+    {
+        private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+        private final byte[] bytes;
+
+        private int pos;
+
+        Reader( final byte[] bytes )
+        {
+            this.bytes = bytes;
+        }
+
+        int readByte() throws IOException
+        {
+            if ( pos >= bytes.length )
+            {
+                throw new EOFException( "Binary record is truncated" );
+            }
+            return bytes[pos++] & 0xff;
+        }
+
+        long readVarLong() throws IOException
+        {
+            long value = 0;
+            for ( int shift = 0; shift < 64; shift += 7 )
+            {
+                int b = readByte();
+                value |= (long) ( b & 0x7f ) << shift;
+                if ( ( b & 0x80 ) == 0 )
+                {
+                    return value;
+                }
+            }
+            throw new IOException( "Malformed varint in binary record" );
+        }
+
+        int readVarInt() throws IOException
+        {
+            long value = readVarLong();
+            if ( value < 0 || value > Integer.MAX_VALUE )
+            {
+                throw new IOException( "Count out of range in binary record: " + value );
+            }
+            return (int) value;
+        }
+
+        long readZigZag() throws IOException
+        {
+            long value = readVarLong();
+            return ( value >>> 1 ) ^ -( value & 1 );
+        }
+
+        String readString() throws IOException
+        {
+            int length = readVarInt();
+            if ( length == 0 )
+            {
+                return null;
+            }
+            length--;
+            if ( length > bytes.length - pos )
+            {
+                throw new EOFException( "Binary record is truncated" );
+            }
+            String value = new String( bytes, pos, length, StandardCharsets.UTF_8 );
+            pos += length;
+            return value;
+        }
+
+        String readChecksum() throws IOException
+        {
+            int kind = readByte();
+            switch ( kind )
+            {
+                case CHECKSUM_NONE:
+                    return null;
+                case CHECKSUM_HEX:
+                    int length = readVarInt();
+                    char[] hex = new char[length * 2];
+                    for ( int i = 0; i < length; i++ )
+                    {
+                        int b = readByte();
+                        hex[i * 2] = HEX[b >>> 4];
+                        hex[i * 2 + 1] = HEX[b & 0x0f];
+                    }
+                    return new String( hex );
+                case CHECKSUM_TEXT:
+                    return readString();
+                default:
+                    throw new IOException( "Unknown checksum encoding in binary record: " + kind );
+            }
+        }
+    }
+}
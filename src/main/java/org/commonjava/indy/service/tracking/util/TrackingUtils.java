@@ -21,17 +21,13 @@ import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
-import java.util.Set;
-import java.util.function.Consumer;
+import java.util.Iterator;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 import static org.apache.commons.io.IOUtils.copy;
@@ -42,71 +38,40 @@ public class TrackingUtils
     private static final Logger logger = LoggerFactory.getLogger( TrackingUtils.class );
 
     /**
-     * Write sealed records to a zip file.
+     * Write sealed records to a zip stream as the iterator hands them out, so only one record is held at a time. Null
+     * records are skipped. The zip is finished but the stream is left open.
+     *
+     * @return count of records written
      */
-    public static void zipTrackedContent( File out, Set<TrackedContent> sealed ) throws IOException
+    public static int zipTrackedContent( OutputStream out, Iterator<TrackedContent> sealed ) throws IOException
     {
-        logger.info( "Writing sealed zip to: '{}'", out.getAbsolutePath() );
-
-        try (ZipOutputStream zip = new ZipOutputStream( new FileOutputStream( out ) ))
+        ZipOutputStream zip = new ZipOutputStream( out );
+        int count = 0;
+        while ( sealed.hasNext() )
         {
-            for ( TrackedContent f : sealed )
+            TrackedContent f = sealed.next();
+            if ( f == null )
             {
-                String name = SEALED.getValue() + "/" + f.getKey().getId();
-
-                logger.trace( "Adding {} to zip", name );
-                zip.putNextEntry( new ZipEntry( name ) );
-                copy( toInputStream( f ), zip );
+                continue;
             }
-        }
-    }
+            String name = SEALED.getValue() + "/" + f.getKey().getId();
 
-    public static void backupTrackedContent( File dir, Set<TrackedContent> sealed ) throws IOException
-    {
-        logger.info( "Backup sealed to: '{}', size: {}", dir.getAbsolutePath(), sealed.size() );
-        for ( TrackedContent f : sealed )
-        {
-            String name = f.getKey().getId();
-            logger.trace( "Adding {} to {}", name, dir );
-            try (OutputStream out = new FileOutputStream( new File( dir, name ) ))
-            {
-                copy( toInputStream( f ), out );
-            }
+            logger.trace( "Adding {} to zip", name );
+            zip.putNextEntry( new ZipEntry( name ) );
+            copy( toInputStream( f ), zip );
+            zip.closeEntry();
+            count++;
         }
+        zip.finish();
+        return count;
     }
 
-    /**
-     * Read records from input stream and execute consumer function.
-     * @param inputStream
-     * @param consumer
-     * @return count of records read from the stream
-     */
-    public static int readZipInputStreamAnd( InputStream inputStream, Consumer<TrackedContent> consumer )
-                    throws IOException, ClassNotFoundException
+    public static TrackedContent toTrackedContent( byte[] bytes ) throws IOException, ClassNotFoundException
     {
-        int count = 0;
-        try (ZipInputStream stream = new ZipInputStream( inputStream ))
+        try (ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( bytes ) ))
         {
-            ZipEntry entry;
-            while ( ( entry = stream.getNextEntry() ) != null )
-            {
-                logger.trace( "Read entry: %s, len: %d", entry.getName(), entry.getSize() );
-                ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                int len;
-                byte[] buffer = new byte[1024];
-                while ( ( len = stream.read( buffer ) ) > 0 )
-                {
-                    bos.write( buffer, 0, len );
-                }
-                bos.close();
-
-                ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( bos.toByteArray() ) );
-                TrackedContent record = (TrackedContent) ois.readObject();
-                consumer.accept( record );
-                count++;
-            }
+            return (TrackedContent) ois.readObject();
         }
-        return count;
     }
 
     public static InputStream toInputStream( TrackedContent f ) throws IOException
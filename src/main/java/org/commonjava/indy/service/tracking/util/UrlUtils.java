@@ -21,9 +21,17 @@ import java.net.URL;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class UrlUtils
 {
+    private static final int MAX_VALIDATED_BASES = 1024;
+
+    /**
+     * Base urls which parse as a {@link URL} and come back unchanged from {@link URL#toExternalForm()}. Appending path
+     * parts can't change how such a base is parsed, so urls built on them skip the {@link URL} round trip.
+     */
+    private static final ConcurrentHashMap<String, Boolean> validatedBases = new ConcurrentHashMap<>();
 
     private UrlUtils()
     {
@@ -88,7 +96,34 @@ public final class UrlUtils
             }
         }
 
-        return new URL( urlBuilder.toString() ).toExternalForm();
+        String url = urlBuilder.toString();
+        if ( url.startsWith( baseUrl ) && isValidatedBase( baseUrl ) )
+        {
+            return url;
+        }
+        return new URL( url ).toExternalForm();
+    }
+
+    private static boolean isValidatedBase( final String baseUrl )
+    {
+        Boolean valid = validatedBases.get( baseUrl );
+        if ( valid == null )
+        {
+            try
+            {
+                valid = new URL( baseUrl ).toExternalForm().equals( baseUrl );
+            }
+            catch ( MalformedURLException e )
+            {
+                valid = false;
+            }
+            if ( validatedBases.size() >= MAX_VALIDATED_BASES )
+            {
+                validatedBases.clear();
+            }
+            validatedBases.put( baseUrl, valid );
+        }
+        return valid;
     }
 
     /**
@@ -0,0 +1,57 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking;
+
+import org.commonjava.indy.service.tracking.model.AccessChannel;
+import org.commonjava.indy.service.tracking.model.StoreEffect;
+import org.commonjava.indy.service.tracking.model.StoreKey;
+import org.commonjava.indy.service.tracking.model.StoreType;
+import org.commonjava.indy.service.tracking.model.TrackedContentEntry;
+import org.commonjava.indy.service.tracking.model.TrackingKey;
+
+import static org.commonjava.indy.service.tracking.model.pkg.PackageTypeConstants.PKG_TYPE_MAVEN;
+
+/**
+ * Builds the download entries the unit tests, ftests and benchmarks write, all from remote:central.
+ */
+public final class TrackingFixtures
+{
+    private static final String CENTRAL_URL = "https://repo.maven.apache.org/maven2";
+
+    private TrackingFixtures()
+    {
+    }
+
+    /**
+     * A download of <code>/org/foo/bar/{index}/bar-{index}.jar</code>, distinct per index.
+     */
+    public static TrackedContentEntry downloadEntry( final String trackingId, final int index )
+    {
+        return downloadEntry( new TrackingKey( trackingId ), "/org/foo/bar/" + index + "/bar-" + index + ".jar",
+                              index );
+    }
+
+    /**
+     * A download of the given path; the index only varies the checksums.
+     */
+    public static TrackedContentEntry downloadEntry( final TrackingKey trackingKey, final String path,
+                                                     final int index )
+    {
+        return new TrackedContentEntry( trackingKey, new StoreKey( PKG_TYPE_MAVEN, StoreType.remote, "central" ),
+                                        AccessChannel.NATIVE, CENTRAL_URL + path, path, StoreEffect.DOWNLOAD, 1024L,
+                                        "md5-" + index, "sha1-" + index, "sha256-" + index );
+    }
+}
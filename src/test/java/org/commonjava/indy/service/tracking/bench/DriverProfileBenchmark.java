@@ -0,0 +1,196 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.bench;
+
+import com.datastax.driver.core.ProtocolOptions;
+import org.commonjava.indy.service.tracking.data.cassandra.CassandraClient;
+import org.commonjava.indy.service.tracking.data.cassandra.CassandraConfiguration;
+import org.commonjava.indy.service.tracking.data.cassandra.CassandraTrackingQuery;
+import org.commonjava.indy.service.tracking.model.TrackedContent;
+import org.commonjava.indy.service.tracking.model.TrackedContentEntry;
+import org.commonjava.indy.service.tracking.model.TrackingKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.testcontainers.containers.CassandraContainer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.commonjava.indy.service.tracking.TrackingFixtures.downloadEntry;
+import static org.commonjava.indy.service.tracking.profile.CassandraFunctionProfile.CASSANDRA_CONTAINER_IMAGE;
+
+/**
+ * Latency distribution of reading large tracking records, with the driver defaults and with the tuned driver profile:
+ * more connections and in-flight requests per host, LZ4 frame compression, speculative reads and latency-aware host
+ * selection. Compare the p0.99 rows of the sample-time output. Several threads read at once, so the pool is contended
+ * like under production load.
+ * <p>
+ * By default it runs against a single-node Cassandra container, which needs Docker. One node has no other replica to
+ * speculate on or to prefer, so only pooling and compression show there. Pass
+ * <code>-Dbench.cassandra.host=host1,host2,host3</code> and <code>-Dbench.cassandra.localDc=dc</code> to run it
+ * against a real cluster, where the keyspace <code>folo_bench</code> is created. Speculation and latency awareness
+ * only pay off when a replica is slow, so slow down one node for the run, e.g. with
+ * <code>tc qdisc add dev eth0 root netem delay 100ms 50ms</code> on that node. Run {@link #main(String[])} from the
+ * test classpath.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.SampleTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 5 )
+@Measurement( iterations = 5, time = 10 )
+@Threads( DriverProfileBenchmark.THREADS )
+@Fork( 1 )
+public class DriverProfileBenchmark
+{
+    static final int THREADS = 8;
+
+    private static final String KEYSPACE = "folo_bench";
+
+    private static final int RECORDS = 4;
+
+    private static final int ENTRIES_PER_RECORD = 20000;
+
+    @Param( { "default", "tuned" } )
+    public String profile;
+
+    private CassandraContainer<?> cassandraContainer;
+
+    private CassandraClient client;
+
+    private CassandraTrackingQuery trackingQuery;
+
+    @Setup
+    public void setup()
+    {
+        CassandraConfiguration config = new CassandraConfiguration();
+        config.setEnabled( true );
+        String host = System.getProperty( "bench.cassandra.host" );
+        if ( host == null )
+        {
+            cassandraContainer = new CassandraContainer<>( CASSANDRA_CONTAINER_IMAGE );
+            cassandraContainer.start();
+            config.setCassandraHost( cassandraContainer.getHost() );
+            config.setCassandraPort( cassandraContainer.getMappedPort( CassandraContainer.CQL_PORT ) );
+            config.setKeyspaceReplicas( 1 );
+        }
+        else
+        {
+            config.setCassandraHost( host );
+            config.setCassandraPort( Integer.getInteger( "bench.cassandra.port", 9042 ) );
+            config.setKeyspaceReplicas( 3 );
+            config.setLocalDc( System.getProperty( "bench.cassandra.localDc", "" ) );
+        }
+        config.setCassandraUser( System.getProperty( "bench.cassandra.user", "cassandra" ) );
+        config.setCassandraPass( System.getProperty( "bench.cassandra.pass", "cassandra" ) );
+        config.setKeyspace( KEYSPACE );
+        config.setConnectTimeoutMillis( 60000 );
+        config.setReadTimeoutMillis( 60000 );
+        if ( "tuned".equals( profile ) )
+        {
+            config.setPoolConnectionsPerHost( 2 );
+            config.setPoolMaxRequestsPerConnection( 2048 );
+            config.setCompression( ProtocolOptions.Compression.LZ4 );
+            config.setSpeculativeDelayMillis( 50 );
+            config.setSpeculativeMaxExecutions( 1 );
+            config.setLatencyAwareEnabled( true );
+            config.setLatencyAwareExclusionThreshold( 2.0 );
+        }
+        client = new CassandraClient( config );
+        trackingQuery = new CassandraTrackingQuery( client, config );
+
+        for ( int r = 0; r < RECORDS; r++ )
+        {
+            if ( !trackingQuery.hasRecord( key( r ) ) )
+            {
+                List<TrackedContentEntry> entries = new ArrayList<>( ENTRIES_PER_RECORD );
+                for ( int i = 0; i < ENTRIES_PER_RECORD; i++ )
+                {
+                    entries.add( entry( r, i ) );
+                }
+                trackingQuery.recordArtifacts( entries );
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        client.close();
+        if ( cassandraContainer != null )
+        {
+            cassandraContainer.stop();
+        }
+    }
+
+    @Benchmark
+    public TrackedContent getLargeRecord()
+    {
+        // records in progress are never cached, every call reads the whole partition
+        return trackingQuery.get( key( ThreadLocalRandom.current().nextInt( RECORDS ) ) );
+    }
+
+    private static TrackingKey key( final int record )
+    {
+        return new TrackingKey( "large-" + record );
+    }
+
+    private static TrackedContentEntry entry( final int record, final int index )
+    {
+        String path = "/org/commonjava/indy/indy-api/" + index + "/indy-api-" + index + ".pom";
+        return downloadEntry( key( record ), path, index );
+    }
+
+    /**
+     * Runs both profiles, prints their p0.99 latency side by side with the cluster they ran against, and keeps the full
+     * JMH results in <code>target/driver-profile-benchmark.json</code>.
+     */
+    public static void main( String[] args ) throws Exception
+    {
+        Options options = new OptionsBuilder().include( DriverProfileBenchmark.class.getSimpleName() )
+                                              .resultFormat( ResultFormatType.JSON )
+                                              .result( "target/driver-profile-benchmark.json" )
+                                              .build();
+        Collection<RunResult> results = new Runner( options ).run();
+        String host = System.getProperty( "bench.cassandra.host" );
+        System.out.printf( "cassandra: %s, threads: %d, records: %d x %d entries%n",
+                           host == null ? CASSANDRA_CONTAINER_IMAGE + " (single node)" : host, THREADS, RECORDS,
+                           ENTRIES_PER_RECORD );
+        for ( RunResult result : results )
+        {
+            System.out.printf( "%-8s p0.99: %.3f ms%n", result.getParams().getParam( "profile" ),
+                               result.getPrimaryResult().getStatistics().getPercentile( 99.0 ) );
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.bench;
+
+import org.commonjava.indy.service.tracking.model.AccessChannel;
+import org.commonjava.indy.service.tracking.model.StoreEffect;
+import org.commonjava.indy.service.tracking.model.StoreKey;
+import org.commonjava.indy.service.tracking.model.StoreType;
+import org.commonjava.indy.service.tracking.model.TrackedContentEntry;
+import org.commonjava.indy.service.tracking.model.TrackingKey;
+import org.commonjava.indy.service.tracking.util.UrlUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Compares the FileEvent-to-entry decode path before and after the StoreKey intern cache, the split-free parser and
+ * the validated-base url join. Run {@link #main(String[])} from the test classpath; the gc.alloc.rate.norm column of
+ * the GC profiler is the allocation per event.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class EventDecodeBenchmark
+{
+    private final TrackingKey trackingKey = new TrackingKey( "build-1234" );
+
+    private final String storeKey = "maven:remote:central";
+
+    private final String sourceLocation = "https://repo.maven.apache.org/maven2";
+
+    private final String sourcePath = "/org/commonjava/indy/indy-api/3.0/indy-api-3.0.pom";
+
+    private final String accessChannel = "NATIVE";
+
+    @Benchmark
+    public TrackedContentEntry legacyDecode() throws Exception
+    {
+        return new TrackedContentEntry( trackingKey, legacyFromString( storeKey ),
+                                        AccessChannel.valueOf( accessChannel ),
+                                        legacyBuildUrl( sourceLocation, sourcePath ), sourcePath,
+                                        StoreEffect.DOWNLOAD, 1024L, "md5", "sha1", "sha256" );
+    }
+
+    @Benchmark
+    public TrackedContentEntry decode() throws Exception
+    {
+        return new TrackedContentEntry( trackingKey, StoreKey.fromString( storeKey ),
+                                        AccessChannel.valueOf( accessChannel ),
+                                        UrlUtils.buildUrl( sourceLocation, sourcePath ), sourcePath,
+                                        StoreEffect.DOWNLOAD, 1024L, "md5", "sha1", "sha256" );
+    }
+
+    /**
+     * StoreKey.fromString before the intern cache, without the debug logging.
+     */
+    private static StoreKey legacyFromString( final String id )
+    {
+        String[] parts = id.split( ":" );
+        if ( parts.length < 2 )
+        {
+            return new StoreKey( "maven", StoreType.remote, id );
+        }
+        else if ( parts.length < 3 || isBlank( parts[0] ) )
+        {
+            return new StoreKey( "maven", StoreType.get( parts[0] ), parts[1] );
+        }
+        return new StoreKey( parts[0], StoreType.get( parts[1] ), parts[2] );
+    }
+
+    /**
+     * UrlUtils.buildUrl for a base and a single path, before the validated-base join.
+     */
+    private static String legacyBuildUrl( final String baseUrl, final String path ) throws Exception
+    {
+        StringBuilder urlBuilder = new StringBuilder( baseUrl );
+        String part = path.trim();
+        if ( part.startsWith( "/" ) )
+        {
+            part = part.substring( 1 );
+        }
+        if ( urlBuilder.charAt( urlBuilder.length() - 1 ) != '/' )
+        {
+            urlBuilder.append( "/" );
+        }
+        urlBuilder.append( part );
+        return new URL( urlBuilder.toString() ).toExternalForm();
+    }
+
+    public static void main( String[] args ) throws Exception
+    {
+        new Runner( new OptionsBuilder().include( EventDecodeBenchmark.class.getSimpleName() )
+                                        .addProfiler( GCProfiler.class )
+                                        .build() ).run();
+    }
+}
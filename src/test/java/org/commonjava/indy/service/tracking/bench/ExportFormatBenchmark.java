@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.bench;
+
+import org.commonjava.indy.service.tracking.model.AccessChannel;
+import org.commonjava.indy.service.tracking.model.StoreEffect;
+import org.commonjava.indy.service.tracking.model.StoreKey;
+import org.commonjava.indy.service.tracking.model.StoreType;
+import org.commonjava.indy.service.tracking.model.TrackedContent;
+import org.commonjava.indy.service.tracking.model.TrackedContentEntry;
+import org.commonjava.indy.service.tracking.model.TrackingKey;
+import org.commonjava.indy.service.tracking.util.BinaryRecordCodec;
+import org.commonjava.indy.service.tracking.util.TrackingUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the Java-serialized record format carried in the export zip with {@link BinaryRecordCodec}, encoding and
+ * decoding a record of {@link #ENTRIES} downloads spread over a handful of stores. {@link #main(String[])} prints the
+ * encoded size of each format before running.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ExportFormatBenchmark
+{
+    static final int ENTRIES = 2000;
+
+    private TrackedContent record;
+
+    private byte[] serialized;
+
+    private byte[] binary;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        record = record();
+        serialized = TrackingUtils.toInputStream( record ).readAllBytes();
+        binary = BinaryRecordCodec.encode( record );
+    }
+
+    @Benchmark
+    public byte[] serializedEncode() throws Exception
+    {
+        return TrackingUtils.toInputStream( record ).readAllBytes();
+    }
+
+    @Benchmark
+    public TrackedContent serializedDecode() throws Exception
+    {
+        return TrackingUtils.toTrackedContent( serialized );
+    }
+
+    @Benchmark
+    public byte[] binaryEncode()
+    {
+        return BinaryRecordCodec.encode( record );
+    }
+
+    @Benchmark
+    public TrackedContent binaryDecode() throws Exception
+    {
+        return BinaryRecordCodec.decode( binary );
+    }
+
+    static TrackedContent record()
+    {
+        TrackingKey key = new TrackingKey( "build-1234" );
+        String[] stores = { "central", "jboss-public", "redhat-ga", "npmjs", "builds-untested" };
+        Set<TrackedContentEntry> downloads = new HashSet<>();
+        for ( int i = 0; i < ENTRIES; i++ )
+        {
+            String store = stores[i % stores.length];
+            String path = String.format( "/org/commonjava/group%d/artifact%d/1.%d/artifact%d-1.%d.jar", i % 40, i,
+                                         i % 7, i, i % 7 );
+            TrackedContentEntry entry = new TrackedContentEntry( key, new StoreKey( "maven", StoreType.remote, store ),
+                                                                 AccessChannel.NATIVE,
+                                                                 "https://repo.example.com/" + store + path, path,
+                                                                 StoreEffect.DOWNLOAD, 4096L + i, hex( i, 32 ),
+                                                                 hex( i, 40 ), hex( i, 64 ) );
+            entry.setIndex( i );
+            downloads.add( entry );
+        }
+        return new TrackedContent( key, new HashSet<>(), downloads );
+    }
+
+    private static String hex( final int seed, final int length )
+    {
+        StringBuilder sb = new StringBuilder( length );
+        long value = seed * 0x9E3779B97F4A7C15L;
+        while ( sb.length() < length )
+        {
+            value = value * 6364136223846793005L + 1442695040888963407L;
+            sb.append( Long.toHexString( value >>> 4 | 1L << 59 ).substring( 1 ) );
+        }
+        return sb.substring( 0, length );
+    }
+
+    public static void main( String[] args ) throws Exception
+    {
+        TrackedContent record = record();
+        System.out.printf( "serialized: %d bytes, binary: %d bytes%n",
+                           TrackingUtils.toInputStream( record ).readAllBytes().length,
+                           BinaryRecordCodec.encode( record ).length );
+        new Runner( new OptionsBuilder().include( ExportFormatBenchmark.class.getSimpleName() )
+                                        .addProfiler( GCProfiler.class )
+                                        .build() ).run();
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.bench;
+
+import io.quarkus.kafka.client.serialization.ObjectMapperSerializer;
+import org.commonjava.event.common.EventMetadata;
+import org.commonjava.event.file.FileEvent;
+import org.commonjava.event.file.FileEventDeserializer;
+import org.commonjava.event.file.FileEventType;
+import org.commonjava.event.file.TransferOperation;
+import org.commonjava.indy.service.tracking.Constants;
+import org.commonjava.indy.service.tracking.handler.FileEventStreamingDeserializer;
+import org.commonjava.indy.service.tracking.model.AccessChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the event model's FileEventDeserializer with {@link FileEventStreamingDeserializer} on a mix of payloads
+ * like the ones a build produces: tracked downloads and uploads, group metadata, downloads without a session and
+ * self-tracking requests. Each operation reads the whole mix once.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class FileEventDeserializerBenchmark
+{
+    private static final String TOPIC = "file-event";
+
+    private final List<byte[]> payloads = new ArrayList<>();
+
+    private FileEventDeserializer legacy;
+
+    private FileEventStreamingDeserializer streaming;
+
+    @Setup
+    public void setup()
+    {
+        legacy = new FileEventDeserializer();
+        streaming = new FileEventStreamingDeserializer( false );
+
+        try (ObjectMapperSerializer<FileEvent> serializer = new ObjectMapperSerializer<>())
+        {
+            for ( int i = 0; i < 4; i++ )
+            {
+                payloads.add( serializer.serialize( TOPIC, event( FileEventType.ACCESS, "build-" + i,
+                                                                  "maven:remote:central", null ) ) );
+            }
+            FileEvent upload = event( FileEventType.STORAGE, "build-1", "maven:hosted:build-1", null );
+            upload.setOperation( TransferOperation.UPLOAD );
+            payloads.add( serializer.serialize( TOPIC, upload ) );
+            payloads.add( serializer.serialize( TOPIC, event( FileEventType.ACCESS, "build-1", "maven:group:public",
+                                                              null ) ) );
+            payloads.add( serializer.serialize( TOPIC, event( FileEventType.ACCESS, null, "maven:remote:central",
+                                                              null ) ) );
+            payloads.add( serializer.serialize( TOPIC, event( FileEventType.ACCESS, "build-1", "maven:remote:central",
+                                                              "/api/folo/track/build-1/maven/remote/central/foo" ) ) );
+        }
+    }
+
+    @Benchmark
+    public void legacy( Blackhole blackhole )
+    {
+        for ( byte[] payload : payloads )
+        {
+            blackhole.consume( legacy.deserialize( TOPIC, payload ) );
+        }
+    }
+
+    @Benchmark
+    public void streaming( Blackhole blackhole )
+    {
+        for ( byte[] payload : payloads )
+        {
+            blackhole.consume( streaming.deserialize( TOPIC, payload ) );
+        }
+    }
+
+    private static FileEvent event( FileEventType type, String sessionId, String storeKey, String originPath )
+    {
+        FileEvent event = new FileEvent( type );
+        EventMetadata metadata = new EventMetadata();
+        metadata.set( Constants.ACCESS_CHANNEL, AccessChannel.NATIVE.toString() );
+        metadata.set( "storage-path", "/org/commonjava/indy/indy-api/3.0/indy-api-3.0.pom" );
+        metadata.set( "content-management-service", "indy" );
+        if ( originPath != null )
+        {
+            metadata.set( Constants.ORIGIN_PATH, originPath );
+        }
+        event.setEventMetadata( metadata );
+        event.setSessionId( sessionId );
+        event.setStoreKey( storeKey );
+        event.setTargetPath( "/org/commonjava/indy/indy-api/3.0/indy-api-3.0.pom" );
+        event.setSourceLocation( "https://repo.maven.apache.org/maven2" );
+        event.setSourcePath( "/org/commonjava/indy/indy-api/3.0/indy-api-3.0.pom" );
+        event.setSize( 24576L );
+        event.setMd5( "0cc175b9c0f1b6a831c399e269772661" );
+        event.setSha1( "86f7e437faa5a7fce15d1ddcb9eaeaea377667b8" );
+        event.setChecksum( "ca978112ca1bbdcafac231b39a23dc4da786eff8147c4e72b9807785afee48bb" );
+        return event;
+    }
+
+    public static void main( String[] args ) throws Exception
+    {
+        new Runner( new OptionsBuilder().include( FileEventDeserializerBenchmark.class.getSimpleName() )
+                                        .addProfiler( GCProfiler.class )
+                                        .build() ).run();
+    }
+}
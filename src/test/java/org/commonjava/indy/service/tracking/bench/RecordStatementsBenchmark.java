@@ -0,0 +1,245 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.bench;
+
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import org.commonjava.indy.service.tracking.data.cassandra.CassandraClient;
+import org.commonjava.indy.service.tracking.data.cassandra.CassandraConfiguration;
+import org.commonjava.indy.service.tracking.data.cassandra.CassandraTrackingQuery;
+import org.commonjava.indy.service.tracking.data.cassandra.ConsistencyPolicy;
+import org.commonjava.indy.service.tracking.data.cassandra.DtxTrackingRecord;
+import org.commonjava.indy.service.tracking.data.cassandra.RecordStatements;
+import org.commonjava.indy.service.tracking.model.TrackedContentEntry;
+import org.commonjava.indy.service.tracking.model.TrackingKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.testcontainers.containers.CassandraContainer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.commonjava.indy.service.tracking.TrackingFixtures.downloadEntry;
+import static org.commonjava.indy.service.tracking.profile.CassandraFunctionProfile.CASSANDRA_CONTAINER_IMAGE;
+
+/**
+ * Measures the client-side work of the hand-prepared {@link RecordStatements} against the code they replaced:
+ * binding the upsert of one accessed entry positionally and through the untyped varargs bind of the old upsert, and
+ * decoding the rows of a record by column index and by column name. The network round trip is left out. It needs
+ * Docker for the Cassandra container the statements are prepared on. Run {@link #main(String[])} from the test
+ * classpath.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class RecordStatementsBenchmark
+{
+    private static final String KEYSPACE = "folo";
+
+    private static final int ROWS = 1000;
+
+    private CassandraContainer<?> cassandraContainer;
+
+    private CassandraClient client;
+
+    private RecordStatements statements;
+
+    private PreparedStatement legacyUpsert;
+
+    private DtxTrackingRecord record;
+
+    private List<Row> rows;
+
+    @Setup
+    public void setup()
+    {
+        cassandraContainer = new CassandraContainer<>( CASSANDRA_CONTAINER_IMAGE );
+        cassandraContainer.start();
+
+        CassandraConfiguration config = new CassandraConfiguration();
+        config.setEnabled( true );
+        config.setCassandraHost( cassandraContainer.getHost() );
+        config.setCassandraPort( cassandraContainer.getMappedPort( CassandraContainer.CQL_PORT ) );
+        config.setCassandraUser( "cassandra" );
+        config.setCassandraPass( "cassandra" );
+        config.setKeyspace( KEYSPACE );
+        config.setKeyspaceReplicas( 1 );
+        config.setConnectTimeoutMillis( 60000 );
+        config.setReadTimeoutMillis( 60000 );
+        client = new CassandraClient( config );
+        CassandraTrackingQuery trackingQuery = new CassandraTrackingQuery( client, config );
+
+        List<TrackedContentEntry> entries = new ArrayList<>( ROWS );
+        for ( int i = 0; i < ROWS; i++ )
+        {
+            entries.add( entry( i ) );
+        }
+        trackingQuery.recordArtifacts( entries );
+
+        Session session = client.getSession( KEYSPACE );
+        statements = new RecordStatements( session, KEYSPACE, 0,
+                                           new ConsistencyPolicy( new CassandraConfiguration() ) );
+        legacyUpsert = session.prepare( "UPDATE " + statements.getTable()
+                                                        + " SET sealed=?, access_channel=?, origin_url=?, local_url=?,"
+                                                        + " md5=?, sha256=?, sha1=?, size=?, started=?,"
+                                                        + " timestamps = timestamps + ?"
+                                                        + " WHERE tracking_key=? AND store_key=? AND path=?"
+                                                        + " AND store_effect=?;" );
+        record = new DtxTrackingRecord( entry( 0 ) );
+        rows = session.execute( RecordStatements.select( statements.getTable() ) + " WHERE tracking_key='build-1234';" )
+                      .all();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        client.close();
+        cassandraContainer.stop();
+    }
+
+    @Benchmark
+    public Statement preparedWrite()
+    {
+        return statements.insert( record );
+    }
+
+    @Benchmark
+    public Statement preparedUpsert()
+    {
+        return statements.upsert( record );
+    }
+
+    /**
+     * CassandraTrackingQuery.recordArtifact before the positional binds.
+     */
+    @Benchmark
+    public Statement legacyUpsert()
+    {
+        return legacyUpsert.bind( record.getState(), record.getAccessChannel(), record.getOriginUrl(),
+                                  record.getLocalUrl(), record.getMd5(), record.getSha256(), record.getSha1(),
+                                  record.getSize(), record.getStarted(), record.getTimestamps(),
+                                  record.getTrackingKey(), record.getStoreKey(), record.getPath(),
+                                  record.getStoreEffect() );
+    }
+
+    @Benchmark
+    @OperationsPerInvocation( ROWS )
+    public void decodeByName( final Blackhole blackhole )
+    {
+        for ( Row row : rows )
+        {
+            blackhole.consume( legacyToRecord( row ) );
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation( ROWS )
+    public void decodeByIndex( final Blackhole blackhole )
+    {
+        for ( Row row : rows )
+        {
+            blackhole.consume( RecordStatements.toRecord( row ) );
+        }
+    }
+
+    /**
+     * CassandraTrackingQuery.toDtxTrackingRecord before the decode by column index.
+     */
+    private static DtxTrackingRecord legacyToRecord( final Row row )
+    {
+        DtxTrackingRecord dtxTrackingRecord = new DtxTrackingRecord();
+        dtxTrackingRecord.setTrackingKey( row.getString( "tracking_key" ) );
+        dtxTrackingRecord.setState( row.getBool( "sealed" ) );
+        dtxTrackingRecord.setOriginUrl( row.getString( "origin_url" ) );
+        dtxTrackingRecord.setTimestamps( row.getSet( "timestamps", Long.class ) );
+        dtxTrackingRecord.setPath( row.getString( "path" ) );
+        dtxTrackingRecord.setStoreEffect( row.getString( "store_effect" ) );
+        dtxTrackingRecord.setSha256( row.getString( "sha256" ) );
+        dtxTrackingRecord.setSha1( row.getString( "sha1" ) );
+        dtxTrackingRecord.setMd5( row.getString( "md5" ) );
+        dtxTrackingRecord.setSize( row.getLong( "size" ) );
+        dtxTrackingRecord.setStoreKey( row.getString( "store_key" ) );
+        dtxTrackingRecord.setAccessChannel( row.getString( "access_channel" ) );
+        return dtxTrackingRecord;
+    }
+
+    private static TrackedContentEntry entry( final int index )
+    {
+        String path = "/org/commonjava/indy/indy-api/" + index + "/indy-api-" + index + ".pom";
+        return downloadEntry( new TrackingKey( "build-1234" ), path, index );
+    }
+
+    /**
+     * Prints the time and allocation per write and per decoded row of both sides, and keeps the full JMH results in
+     * <code>target/record-statements-benchmark.json</code>.
+     */
+    public static void main( String[] args ) throws Exception
+    {
+        Options options = new OptionsBuilder().include( RecordStatementsBenchmark.class.getSimpleName() )
+                                              .addProfiler( GCProfiler.class )
+                                              .resultFormat( ResultFormatType.JSON )
+                                              .result( "target/record-statements-benchmark.json" )
+                                              .build();
+        Map<String, RunResult> results = new HashMap<>();
+        for ( RunResult result : new Runner( options ).run() )
+        {
+            String benchmark = result.getParams().getBenchmark();
+            results.put( benchmark.substring( benchmark.lastIndexOf( '.' ) + 1 ), result );
+        }
+        System.out.printf( "cassandra: %s, rows: %d%n", CASSANDRA_CONTAINER_IMAGE, ROWS );
+        compare( "write", results.get( "legacyUpsert" ), results.get( "preparedUpsert" ) );
+        compare( "row", results.get( "decodeByName" ), results.get( "decodeByIndex" ) );
+    }
+
+    private static void compare( final String unit, final RunResult before, final RunResult after )
+    {
+        double beforeTime = before.getPrimaryResult().getScore();
+        double afterTime = after.getPrimaryResult().getScore();
+        System.out.printf( "per %s: %.1f ns -> %.1f ns (%.0f%% less), %.0f B -> %.0f B allocated%n", unit, beforeTime,
+                           afterTime, 100 * ( 1 - afterTime / beforeTime ), allocated( before ),
+                           allocated( after ) );
+    }
+
+    private static double allocated( final RunResult result )
+    {
+        return result.getSecondaryResults().get( "gc.alloc.rate.norm" ).getScore();
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.change;
+
+import org.commonjava.indy.service.tracking.config.IndyTrackingConfiguration;
+import org.commonjava.indy.service.tracking.data.cassandra.CassandraTrackingQuery;
+import org.commonjava.indy.service.tracking.data.spool.WriteAheadSpool;
+import org.commonjava.indy.service.tracking.model.TrackedContentEntry;
+import org.commonjava.indy.service.tracking.model.TrackingKey;
+import org.eclipse.microprofile.reactive.messaging.Message;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.commonjava.indy.service.tracking.TrackingFixtures.downloadEntry;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DownloadCoalescerTest
+{
+    @Test
+    @SuppressWarnings( "unchecked" )
+    public void mergesRepeatedDownloadsUntilFlush()
+    {
+        IndyTrackingConfiguration config = mock( IndyTrackingConfiguration.class );
+        when( config.ingestCoalesceEnabled() ).thenReturn( true );
+        when( config.ingestCoalesceWindowMillis() ).thenReturn( 60000L );
+        when( config.ingestCoalesceMaxEntries() ).thenReturn( 100 );
+        when( config.ingestCoalesceMaxHeapRatio() ).thenReturn( 1.0 );
+        CassandraTrackingQuery recordManager = mock( CassandraTrackingQuery.class );
+        DownloadCoalescer coalescer = new DownloadCoalescer( config, recordManager, mock( WriteAheadSpool.class ) );
+
+        AtomicInteger acked = new AtomicInteger();
+        TrackingKey trackingKey = new TrackingKey( "build-1" );
+        for ( long i = 0; i < 3; i++ )
+        {
+            TrackedContentEntry entry = downloadEntry( trackingKey, "/org/foo/bar.pom", 0 );
+            entry.getTimestamps().clear();
+            entry.getTimestamps().add( i );
+            coalescer.add( entry, Message.of( entry, () -> {
+                acked.incrementAndGet();
+                return CompletableFuture.completedFuture( null );
+            } ) );
+        }
+
+        verify( recordManager, never() ).recordArtifacts( any() );
+        assertThat( acked.get(), equalTo( 0 ) );
+
+        coalescer.flush( trackingKey );
+
+        ArgumentCaptor<Collection<TrackedContentEntry>> written = ArgumentCaptor.forClass( Collection.class );
+        verify( recordManager ).recordArtifacts( written.capture() );
+        assertThat( written.getValue().size(), equalTo( 1 ) );
+        assertThat( new ArrayList<>( written.getValue() ).get( 0 ).getTimestamps().size(), equalTo( 3 ) );
+        assertThat( acked.get(), equalTo( 3 ) );
+        coalescer.shutdown();
+    }
+}
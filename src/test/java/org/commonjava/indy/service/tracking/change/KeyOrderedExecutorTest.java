@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.change;
+
+import io.opentelemetry.api.OpenTelemetry;
+import org.commonjava.indy.service.tracking.config.IndyTrackingConfiguration;
+import org.commonjava.indy.service.tracking.data.metrics.MetricsManager;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class KeyOrderedExecutorTest
+{
+    private static final int KEYS = 8;
+
+    private static final int TASKS_PER_KEY = 100;
+
+    @Test
+    public void keepsOrderPerKey() throws Exception
+    {
+        IndyTrackingConfiguration config = mock( IndyTrackingConfiguration.class );
+        when( config.ingestParallelLanes() ).thenReturn( 4 );
+        when( config.ingestParallelQueueDepth() ).thenReturn( 16 );
+        KeyOrderedExecutor executor = new KeyOrderedExecutor( config, new MetricsManager( OpenTelemetry.noop() ) );
+
+        Map<String, List<Integer>> seen = new HashMap<>();
+        for ( int k = 0; k < KEYS; k++ )
+        {
+            seen.put( "build-" + k, Collections.synchronizedList( new ArrayList<>() ) );
+        }
+        CountDownLatch done = new CountDownLatch( KEYS * TASKS_PER_KEY );
+        for ( int i = 0; i < TASKS_PER_KEY; i++ )
+        {
+            for ( int k = 0; k < KEYS; k++ )
+            {
+                String key = "build-" + k;
+                int index = i;
+                executor.execute( key, () -> {
+                    seen.get( key ).add( index );
+                    done.countDown();
+                } );
+            }
+        }
+
+        assertThat( done.await( 30, SECONDS ), equalTo( true ) );
+        for ( List<Integer> indexes : seen.values() )
+        {
+            assertThat( indexes.size(), equalTo( TASKS_PER_KEY ) );
+            for ( int i = 0; i < TASKS_PER_KEY; i++ )
+            {
+                assertThat( indexes.get( i ), equalTo( i ) );
+            }
+        }
+        executor.shutdown();
+    }
+}
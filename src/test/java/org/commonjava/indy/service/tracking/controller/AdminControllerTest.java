@@ -33,12 +33,10 @@ public class AdminControllerTest
         CassandraTrackingQuery cassandraTrackingQuery0 = null;
         AdminController adminController1 = new AdminController( cassandraTrackingQuery0 );
         assertEquals( "folo-sealed.zip", getFieldValue( adminController1, "FOLO_SEALED_ZIP" ) );
-        assertEquals( "folo", getFieldValue( adminController1, "FOLO_DIR" ) );
         byte[] byteArray2 = new byte[] {};
         java.io.ByteArrayInputStream byteArrayInputStream3 = new java.io.ByteArrayInputStream( byteArray2 );
-        adminController1.importRecordZip( byteArrayInputStream3 );
+        adminController1.importRecordZip( byteArrayInputStream3, false );
         assertEquals( "folo-sealed.zip", getFieldValue( adminController1, "FOLO_SEALED_ZIP" ) );
-        assertEquals( "folo", getFieldValue( adminController1, "FOLO_DIR" ) );
 
     }
 
@@ -48,7 +46,6 @@ public class AdminControllerTest
         CassandraTrackingQuery cassandraTrackingQuery0 = null;
         AdminController adminController1 = new AdminController( cassandraTrackingQuery0 );
         assertEquals( "folo-sealed.zip", getFieldValue( adminController1, "FOLO_SEALED_ZIP" ) );
-        assertEquals( "folo", getFieldValue( adminController1, "FOLO_DIR" ) );
 
     }
 
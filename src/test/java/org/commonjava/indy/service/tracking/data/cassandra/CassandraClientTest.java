@@ -0,0 +1,44 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.data.cassandra;
+
+import com.datastax.driver.core.ProtocolOptions;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CassandraClientTest
+{
+    @Test
+    public void unconfiguredCompressionIsNone()
+    {
+        assertThat( CassandraClient.getCompression( new CassandraConfiguration() ),
+                    equalTo( ProtocolOptions.Compression.NONE ) );
+    }
+
+    @Test
+    public void snappyIsRejected()
+    {
+        CassandraConfiguration config = new CassandraConfiguration();
+        config.setCompression( ProtocolOptions.Compression.LZ4 );
+        assertThat( CassandraClient.getCompression( config ), equalTo( ProtocolOptions.Compression.LZ4 ) );
+
+        config.setCompression( ProtocolOptions.Compression.SNAPPY );
+        assertThrows( IllegalArgumentException.class, () -> CassandraClient.getCompression( config ) );
+    }
+}
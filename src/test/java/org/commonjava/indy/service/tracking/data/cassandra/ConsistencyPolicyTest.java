@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.data.cassandra;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import org.junit.jupiter.api.Test;
+
+import static org.commonjava.indy.service.tracking.data.cassandra.ConsistencyPolicy.Operation.INGEST_WRITE;
+import static org.commonjava.indy.service.tracking.data.cassandra.ConsistencyPolicy.Operation.SEAL;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ConsistencyPolicyTest
+{
+    @Test
+    public void unconfiguredLevelsAreQuorum()
+    {
+        ConsistencyPolicy policy = new ConsistencyPolicy( new CassandraConfiguration() );
+        for ( ConsistencyPolicy.Operation operation : ConsistencyPolicy.Operation.values() )
+        {
+            assertThat( policy.get( operation ), equalTo( ConsistencyLevel.QUORUM ) );
+        }
+    }
+
+    @Test
+    public void sealedReadsUseTheirOwnLevel()
+    {
+        ConsistencyPolicy policy = new ConsistencyPolicy( null, null, ConsistencyLevel.ONE, null, false );
+        assertThat( policy.read( true ), equalTo( ConsistencyLevel.ONE ) );
+        assertThat( policy.read( false ), equalTo( ConsistencyLevel.QUORUM ) );
+    }
+
+    @Test
+    public void localDcMapsToLocalVariants()
+    {
+        ConsistencyPolicy policy =
+                        new ConsistencyPolicy( ConsistencyLevel.ALL, null, ConsistencyLevel.ONE, null, true );
+        assertThat( policy.get( INGEST_WRITE ), equalTo( ConsistencyLevel.ALL ) );
+        assertThat( policy.read( false ), equalTo( ConsistencyLevel.LOCAL_QUORUM ) );
+        assertThat( policy.read( true ), equalTo( ConsistencyLevel.LOCAL_ONE ) );
+        assertThat( policy.get( SEAL ), equalTo( ConsistencyLevel.LOCAL_QUORUM ) );
+    }
+
+    @Test
+    public void anyIsRejectedForReads()
+    {
+        assertThrows( IllegalArgumentException.class,
+                      () -> new ConsistencyPolicy( null, null, ConsistencyLevel.ANY, null, false ) );
+    }
+}
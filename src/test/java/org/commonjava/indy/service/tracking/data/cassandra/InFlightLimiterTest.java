@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.data.cassandra;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class InFlightLimiterTest
+{
+    @Test
+    public void queuedAcquireStartsOnRelease()
+    {
+        InFlightLimiter limiter = new InFlightLimiter( 1 );
+        CompletableFuture<Void> first = limiter.acquire().toCompletableFuture();
+        CompletableFuture<Void> second = limiter.acquire().toCompletableFuture();
+
+        assertThat( first.isDone(), equalTo( true ) );
+        assertThat( second.isDone(), equalTo( false ) );
+
+        limiter.release();
+        assertThat( second.isDone(), equalTo( true ) );
+        assertThat( limiter.getInFlight(), equalTo( 1 ) );
+
+        limiter.release();
+        assertThat( limiter.getInFlight(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void capacityWaiterDoesNotTakePermit()
+    {
+        InFlightLimiter limiter = new InFlightLimiter( 1 );
+        limiter.acquire();
+        CompletableFuture<Void> available = limiter.whenAvailable().toCompletableFuture();
+        assertThat( available.isDone(), equalTo( false ) );
+
+        limiter.release();
+        assertThat( available.isDone(), equalTo( true ) );
+        assertThat( limiter.getInFlight(), equalTo( 0 ) );
+        assertThat( limiter.acquire().toCompletableFuture().isDone(), equalTo( true ) );
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.data.cassandra;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SchemaUtilsTest
+{
+    @Test
+    public void createsNetworkTopologyKeyspace()
+    {
+        Map<String, Integer> replicas = SchemaUtils.parseReplicasPerDc( " us-east:3, eu-west:2 " );
+        assertThat( SchemaUtils.getSchemaCreateKeyspace( "folo", replicas ), equalTo(
+                        "CREATE KEYSPACE IF NOT EXISTS folo WITH REPLICATION = {'class':'NetworkTopologyStrategy',"
+                                        + " 'us-east':3, 'eu-west':2};" ) );
+    }
+
+    @Test
+    public void noReplicasPerDcConfigured()
+    {
+        assertThat( SchemaUtils.parseReplicasPerDc( "" ).isEmpty(), equalTo( true ) );
+        assertThat( SchemaUtils.parseReplicasPerDc( null ).isEmpty(), equalTo( true ) );
+    }
+
+    @Test
+    public void rejectsInvalidReplicasPerDc()
+    {
+        assertThrows( IllegalArgumentException.class, () -> SchemaUtils.parseReplicasPerDc( "dc1" ) );
+        assertThrows( IllegalArgumentException.class, () -> SchemaUtils.parseReplicasPerDc( "dc1:0" ) );
+        assertThrows( IllegalArgumentException.class, () -> SchemaUtils.parseReplicasPerDc( "dc'1:3" ) );
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.data.cassandra;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SealedKeyGateTest
+{
+    @Test
+    public void unknownKeyIsAmbiguous()
+    {
+        SealedKeyGate gate = new SealedKeyGate( 10, 30000 );
+        assertThat( gate.isSealed( "build-1" ), nullValue() );
+    }
+
+    @Test
+    public void sealedKeyStaysSealedUntilInvalidated()
+    {
+        SealedKeyGate gate = new SealedKeyGate( 10, 30000 );
+        gate.markInProgress( "build-1" );
+        assertThat( gate.isSealed( "build-1" ), equalTo( Boolean.FALSE ) );
+
+        gate.markSealed( "build-1" );
+        assertThat( gate.isSealed( "build-1" ), equalTo( Boolean.TRUE ) );
+
+        gate.invalidate( "build-1" );
+        assertThat( gate.isSealed( "build-1" ), nullValue() );
+    }
+
+    @Test
+    public void inProgressAnswerExpires() throws Exception
+    {
+        SealedKeyGate gate = new SealedKeyGate( 10, 1 );
+        gate.markInProgress( "build-1" );
+        Thread.sleep( 5 );
+        assertThat( gate.isSealed( "build-1" ), nullValue() );
+    }
+
+    @Test
+    public void sealedAnswerExpires() throws Exception
+    {
+        SealedKeyGate gate = new SealedKeyGate( 10, 30000, 1 );
+        gate.markSealed( "build-1" );
+        Thread.sleep( 5 );
+        assertThat( gate.isSealed( "build-1" ), nullValue() );
+        assertThat( gate.sealedSize(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedKeys()
+    {
+        SealedKeyGate gate = new SealedKeyGate( 2, 30000 );
+        gate.markSealed( "build-1" );
+        gate.markSealed( "build-2" );
+        gate.isSealed( "build-1" );
+        gate.markSealed( "build-3" );
+
+        assertThat( gate.isSealedFull(), equalTo( true ) );
+        assertThat( gate.isSealed( "build-1" ), equalTo( Boolean.TRUE ) );
+        assertThat( gate.isSealed( "build-2" ), nullValue() );
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.data.cassandra;
+
+import org.commonjava.indy.service.tracking.model.AccessChannel;
+import org.commonjava.indy.service.tracking.model.StoreEffect;
+import org.commonjava.indy.service.tracking.model.StoreKey;
+import org.commonjava.indy.service.tracking.model.StoreType;
+import org.commonjava.indy.service.tracking.model.TrackedContent;
+import org.commonjava.indy.service.tracking.model.TrackedContentEntry;
+import org.commonjava.indy.service.tracking.model.TrackingKey;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.commonjava.indy.service.tracking.model.pkg.PackageTypeConstants.PKG_TYPE_MAVEN;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SealedRecordCacheTest
+{
+    @Test
+    public void hitAfterPutAndMissAfterInvalidate()
+    {
+        SealedRecordCache cache = new SealedRecordCache( 1024 * 1024, 10 );
+        assertThat( cache.get( "build-1" ), nullValue() );
+        cache.put( record( "build-1", 3 ) );
+        assertThat( cache.get( "build-1" ), notNullValue() );
+
+        cache.invalidate( "build-1" );
+        assertThat( cache.get( "build-1" ), nullValue() );
+        assertThat( cache.getBytes(), equalTo( 0L ) );
+        assertThat( cache.getHits(), equalTo( 1L ) );
+        assertThat( cache.getMisses(), equalTo( 2L ) );
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedByCount()
+    {
+        SealedRecordCache cache = new SealedRecordCache( 1024 * 1024, 2 );
+        cache.put( record( "build-1", 1 ) );
+        cache.put( record( "build-2", 1 ) );
+        cache.get( "build-1" );
+        cache.put( record( "build-3", 1 ) );
+
+        assertThat( cache.get( "build-2" ), nullValue() );
+        assertThat( cache.get( "build-1" ), notNullValue() );
+        assertThat( cache.get( "build-3" ), notNullValue() );
+        assertThat( cache.getEvictions(), equalTo( 1L ) );
+    }
+
+    @Test
+    public void evictsBySize()
+    {
+        long size = SealedRecordCache.estimateBytes( record( "build-1", 10 ) );
+        SealedRecordCache cache = new SealedRecordCache( size * 2 + size / 2, 100 );
+        cache.put( record( "build-1", 10 ) );
+        cache.put( record( "build-2", 10 ) );
+        cache.put( record( "build-3", 10 ) );
+
+        assertThat( cache.size(), equalTo( 2 ) );
+        assertThat( cache.get( "build-1" ), nullValue() );
+        assertThat( cache.getBytes(), equalTo( size * 2 ) );
+    }
+
+    @Test
+    public void skipsRecordBiggerThanCache()
+    {
+        SealedRecordCache cache = new SealedRecordCache( 1024, 100 );
+        cache.put( record( "build-1", 100 ) );
+        assertThat( cache.size(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void expiresAfterTtl() throws Exception
+    {
+        SealedRecordCache cache = new SealedRecordCache( 1024 * 1024, 10, 1 );
+        cache.put( record( "build-1", 1 ) );
+        Thread.sleep( 5 );
+        assertThat( cache.get( "build-1" ), nullValue() );
+        assertThat( cache.getBytes(), equalTo( 0L ) );
+    }
+
+    @Test
+    public void dropsPutReadBeforeInvalidation()
+    {
+        SealedRecordCache cache = new SealedRecordCache( 1024 * 1024, 10 );
+        long readVersion = cache.version();
+        cache.invalidate( "build-1" );
+        cache.put( record( "build-1", 1 ), readVersion );
+        assertThat( cache.get( "build-1" ), nullValue() );
+    }
+
+    @Test
+    public void returnsCopies()
+    {
+        SealedRecordCache cache = new SealedRecordCache( 1024 * 1024, 10 );
+        cache.put( record( "build-1", 2 ) );
+        TrackedContent first = cache.get( "build-1" );
+        first.getDownloads().clear();
+        assertThat( cache.get( "build-1" ).getDownloads().size(), equalTo( 2 ) );
+    }
+
+    private static TrackedContent record( String id, int entries )
+    {
+        TrackingKey key = new TrackingKey( id );
+        StoreKey storeKey = new StoreKey( PKG_TYPE_MAVEN, StoreType.remote, "central" );
+        Set<TrackedContentEntry> downloads = new HashSet<>();
+        for ( int i = 0; i < entries; i++ )
+        {
+            downloads.add( new TrackedContentEntry( key, storeKey, AccessChannel.NATIVE, "http://repo/a/" + i,
+                                                    "/a/" + i, StoreEffect.DOWNLOAD, 10L, "md5", "sha1",
+                                                    "sha256" ) );
+        }
+        return new TrackedContent( key, new HashSet<>(), downloads );
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.data.cassandra;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TokenRangeScannerTest
+{
+    @Test
+    public void splitRingCoversWholeRing()
+    {
+        List<TokenRangeScanner.Range> ranges = TokenRangeScanner.splitRing( 256 );
+        assertThat( ranges.size(), equalTo( 256 ) );
+        assertThat( ranges.get( 0 ).getStart(), equalTo( Long.MIN_VALUE ) );
+        assertThat( ranges.get( 255 ).getEnd(), equalTo( Long.MAX_VALUE ) );
+        for ( int i = 1; i < ranges.size(); i++ )
+        {
+            assertThat( ranges.get( i ).getStart(), equalTo( ranges.get( i - 1 ).getEnd() ) );
+            assertTrue( ranges.get( i ).getStart() < ranges.get( i ).getEnd() );
+        }
+    }
+
+    @Test
+    public void singleRangeIsWholeRing()
+    {
+        List<TokenRangeScanner.Range> ranges = TokenRangeScanner.splitRing( 1 );
+        assertThat( ranges, equalTo( List.of( new TokenRangeScanner.Range( Long.MIN_VALUE, Long.MAX_VALUE ) ) ) );
+    }
+
+    @Test
+    public void minimumTokenEndsRing()
+    {
+        assertThat( TokenRangeScanner.range( 100L, Long.MIN_VALUE ).getEnd(), equalTo( Long.MAX_VALUE ) );
+        assertThat( TokenRangeScanner.range( Long.MIN_VALUE, 100L ).getStart(), equalTo( Long.MIN_VALUE ) );
+    }
+}
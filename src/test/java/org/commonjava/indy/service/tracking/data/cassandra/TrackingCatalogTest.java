@@ -0,0 +1,57 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.data.cassandra;
+
+import org.commonjava.indy.service.tracking.Constants.TRACKING_TYPE;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TrackingCatalogTest
+{
+    @Test
+    public void cursorRoundTrip()
+    {
+        String cursor = new TrackingCatalog.Cursor( TRACKING_TYPE.SEALED, 19650, "build:1" ).toString();
+        assertThat( cursor, equalTo( "SEALED:19650:build:1" ) );
+        assertThat( TrackingCatalog.Cursor.parse( cursor ).toString(), equalTo( cursor ) );
+    }
+
+    @Test
+    public void emptyCursorIsFirstPage()
+    {
+        assertThat( TrackingCatalog.Cursor.parse( null ), nullValue() );
+        assertThat( TrackingCatalog.Cursor.parse( "" ), nullValue() );
+    }
+
+    @Test
+    public void invalidCursorIsRejected()
+    {
+        assertThrows( IllegalArgumentException.class, () -> TrackingCatalog.Cursor.parse( "SEALED:1" ) );
+        assertThrows( IllegalArgumentException.class, () -> TrackingCatalog.Cursor.parse( "OPEN:1:build-1" ) );
+        assertThrows( IllegalArgumentException.class, () -> TrackingCatalog.Cursor.parse( "SEALED:day:build-1" ) );
+    }
+
+    @Test
+    public void dayOfTimestamp()
+    {
+        assertThat( TrackingCatalog.toDay( 0L ), equalTo( 0 ) );
+        assertThat( TrackingCatalog.toDay( 86400000L * 19650 + 1 ), equalTo( 19650 ) );
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.data.cassandra;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class WrittenRowsTest
+{
+    @Test
+    public void unknownRowIsWrittenInFull()
+    {
+        WrittenRows rows = new WrittenRows( 10, 30000 );
+        assertThat( rows.lastWritten( record( "build-1", "/a.jar", "md5" ) ), nullValue() );
+    }
+
+    @Test
+    public void comparesColumnsOfLastWrite()
+    {
+        WrittenRows rows = new WrittenRows( 10, 30000 );
+        rows.markWritten( record( "build-1", "/a.jar", "md5" ) );
+
+        WrittenRows.Columns columns = rows.lastWritten( record( "build-1", "/a.jar", "other" ) );
+        assertThat( columns, notNullValue() );
+        assertThat( columns.isSameMd5( record( "build-1", "/a.jar", "other" ) ), equalTo( false ) );
+        assertThat( columns.isSameSha1( record( "build-1", "/a.jar", "other" ) ), equalTo( true ) );
+        assertThat( columns.isSameSize( record( "build-1", "/a.jar", "other" ) ), equalTo( true ) );
+    }
+
+    @Test
+    public void rowExpires() throws Exception
+    {
+        WrittenRows rows = new WrittenRows( 10, 1 );
+        rows.markWritten( record( "build-1", "/a.jar", "md5" ) );
+        Thread.sleep( 5 );
+        assertThat( rows.lastWritten( record( "build-1", "/a.jar", "md5" ) ), nullValue() );
+    }
+
+    @Test
+    public void invalidatesAllRowsOfTrackingRecord()
+    {
+        WrittenRows rows = new WrittenRows( 10, 30000 );
+        rows.markWritten( record( "build-1", "/a.jar", "md5" ) );
+        rows.markWritten( record( "build-1", "/b.jar", "md5" ) );
+        rows.markWritten( record( "build-2", "/a.jar", "md5" ) );
+
+        rows.invalidate( "build-1" );
+        assertThat( rows.size(), equalTo( 1 ) );
+        assertThat( rows.lastWritten( record( "build-2", "/a.jar", "md5" ) ), notNullValue() );
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedRows()
+    {
+        WrittenRows rows = new WrittenRows( 2, 30000 );
+        rows.markWritten( record( "build-1", "/a.jar", "md5" ) );
+        rows.markWritten( record( "build-1", "/b.jar", "md5" ) );
+        rows.lastWritten( record( "build-1", "/a.jar", "md5" ) );
+        rows.markWritten( record( "build-1", "/c.jar", "md5" ) );
+
+        assertThat( rows.lastWritten( record( "build-1", "/a.jar", "md5" ) ), notNullValue() );
+        assertThat( rows.lastWritten( record( "build-1", "/b.jar", "md5" ) ), nullValue() );
+    }
+
+    private static DtxTrackingRecord record( String trackingKey, String path, String md5 )
+    {
+        return new DtxTrackingRecord( trackingKey, false, "maven:remote:central", "NATIVE", path, "", "", "DOWNLOAD",
+                                      md5, "sha256", "sha1", 1024L, 1L, new HashSet<>() );
+    }
+}
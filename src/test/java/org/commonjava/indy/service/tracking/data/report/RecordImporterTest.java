@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.data.report;
+
+import org.commonjava.indy.service.tracking.data.cassandra.CassandraTrackingQuery;
+import org.commonjava.indy.service.tracking.model.TrackedContent;
+import org.commonjava.indy.service.tracking.model.TrackedContentEntry;
+import org.commonjava.indy.service.tracking.model.TrackingKey;
+import org.commonjava.indy.service.tracking.model.dto.ImportResultDTO;
+import org.commonjava.indy.service.tracking.util.BinaryRecordCodec;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.commonjava.indy.service.tracking.TrackingFixtures.downloadEntry;
+import static org.commonjava.indy.service.tracking.util.TrackingUtils.zipTrackedContent;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RecordImporterTest
+{
+    @Test
+    public void importsAllRecordsAndSkipsIdentical() throws IOException
+    {
+        CassandraTrackingQuery recordManager = mock( CassandraTrackingQuery.class );
+        when( recordManager.whenWriteCapacityAvailable() ).thenReturn( CompletableFuture.completedFuture( null ) );
+        when( recordManager.addSealedRecordAsync( any() ) ).thenReturn( CompletableFuture.completedFuture( null ) );
+        when( recordManager.isSameSealedRecord( argThat( r -> r.getKey().getId().equals( "build-1" ) ) ) ).thenReturn(
+                        true );
+
+        Set<String> imported = ConcurrentHashMap.newKeySet();
+        RecordImporter importer = new RecordImporter( recordManager, 2, 1, true,
+                                                      record -> imported.add( record.getKey().getId() ) );
+        ImportResultDTO result = importer.importRecords( zip( 10 ) );
+
+        assertThat( result.getRead(), equalTo( 10 ) );
+        assertThat( result.getImported(), equalTo( 9 ) );
+        assertThat( result.getSkipped(), equalTo( 1 ) );
+        assertThat( imported.size(), equalTo( 9 ) );
+        verify( recordManager, never() ).addSealedRecordAsync(
+                        argThat( r -> r.getKey().getId().equals( "build-1" ) ) );
+    }
+
+    @Test
+    public void importsBinaryStream() throws IOException
+    {
+        CassandraTrackingQuery recordManager = mock( CassandraTrackingQuery.class );
+        when( recordManager.whenWriteCapacityAvailable() ).thenReturn( CompletableFuture.completedFuture( null ) );
+        when( recordManager.addSealedRecordAsync( any() ) ).thenReturn( CompletableFuture.completedFuture( null ) );
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryRecordCodec.write( out, records( 10 ).iterator() );
+        RecordImporter importer = new RecordImporter( recordManager, 2, 1, false, record -> {
+        } );
+        ImportResultDTO result = importer.importRecords( new ByteArrayInputStream( out.toByteArray() ) );
+
+        assertThat( result.getRead(), equalTo( 10 ) );
+        assertThat( result.getImported(), equalTo( 10 ) );
+        verify( recordManager ).addSealedRecordAsync( argThat( r -> r.getKey().getId().equals( "build-9" )
+                        && r.getDownloads().size() == 1 ) );
+    }
+
+    @Test
+    public void writeFailureFailsImport() throws IOException
+    {
+        CassandraTrackingQuery recordManager = mock( CassandraTrackingQuery.class );
+        when( recordManager.whenWriteCapacityAvailable() ).thenReturn( CompletableFuture.completedFuture( null ) );
+        CompletableFuture<Void> failed = new CompletableFuture<>();
+        failed.completeExceptionally( new IllegalStateException( "write timeout" ) );
+        when( recordManager.addSealedRecordAsync( any() ) ).thenReturn( failed );
+
+        RecordImporter importer = new RecordImporter( recordManager, 2, 1, false, record -> {
+        } );
+        assertThrows( IOException.class, () -> importer.importRecords( zip( 10 ) ) );
+    }
+
+    @Test
+    public void emptyStreamImportsNothing() throws IOException
+    {
+        RecordImporter importer = new RecordImporter( mock( CassandraTrackingQuery.class ), 2, 1, false, record -> {
+        } );
+        ImportResultDTO result = importer.importRecords( new ByteArrayInputStream( new byte[0] ) );
+        assertThat( result.getRead(), equalTo( 0 ) );
+        assertThat( result.getImported(), equalTo( 0 ) );
+    }
+
+    private static ByteArrayInputStream zip( int records ) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        zipTrackedContent( out, records( records ).iterator() );
+        return new ByteArrayInputStream( out.toByteArray() );
+    }
+
+    private static List<TrackedContent> records( int records )
+    {
+        List<TrackedContent> sealed = new ArrayList<>();
+        for ( int i = 0; i < records; i++ )
+        {
+            TrackingKey key = new TrackingKey( "build-" + i );
+            TrackedContentEntry entry = downloadEntry( key, "/org/foo/bar.pom", 0 );
+            sealed.add( new TrackedContent( key, new HashSet<>(), new HashSet<>( Collections.singleton( entry ) ) ) );
+        }
+        return sealed;
+    }
+}
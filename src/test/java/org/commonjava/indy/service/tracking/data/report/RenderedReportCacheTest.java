@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.data.report;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.commonjava.indy.service.tracking.config.IndyTrackingConfiguration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RenderedReportCacheTest
+{
+    @TempDir
+    File baseDir;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void rendersGzipReport() throws Exception
+    {
+        RenderedReportCache cache = new RenderedReportCache( config( 1024 * 1024 ), mapper );
+        File report = cache.put( "build-1", Collections.singletonMap( "key", "build-1" ), cache.version() );
+
+        assertThat( report, notNullValue() );
+        assertThat( read( cache, "build-1" ), equalTo( "build-1" ) );
+    }
+
+    @Test
+    public void invalidateDeletesReport() throws Exception
+    {
+        RenderedReportCache cache = new RenderedReportCache( config( 1024 * 1024 ), mapper );
+        File report = cache.put( "build-1", Collections.singletonMap( "key", "build-1" ), cache.version() );
+        cache.invalidate( "build-1" );
+
+        assertThat( read( cache, "build-1" ), nullValue() );
+        assertThat( report.exists(), equalTo( false ) );
+        assertThat( cache.getBytes(), equalTo( 0L ) );
+    }
+
+    @Test
+    public void openReportSurvivesInvalidation() throws Exception
+    {
+        RenderedReportCache cache = new RenderedReportCache( config( 1024 * 1024 ), mapper );
+        cache.put( "build-1", Collections.singletonMap( "key", "build-1" ), cache.version() );
+
+        try (InputStream in = cache.open( "build-1" ))
+        {
+            cache.invalidate( "build-1" );
+            Map<?, ?> read = mapper.readValue( new GZIPInputStream( in ), Map.class );
+            assertThat( read.get( "key" ), equalTo( "build-1" ) );
+        }
+    }
+
+    @Test
+    public void dropsReportReadBeforeInvalidation() throws Exception
+    {
+        RenderedReportCache cache = new RenderedReportCache( config( 1024 * 1024 ), mapper );
+        long version = cache.version();
+        cache.invalidate( "build-1" );
+
+        assertThat( cache.put( "build-1", Collections.singletonMap( "key", "build-1" ), version ), nullValue() );
+        assertThat( read( cache, "build-1" ), nullValue() );
+    }
+
+    @Test
+    public void expiresAfterTtl() throws Exception
+    {
+        RenderedReportCache cache = new RenderedReportCache( config( 1024 * 1024, 50L ), mapper );
+        File report = cache.put( "build-1", Collections.singletonMap( "key", "build-1" ), cache.version() );
+        assertThat( read( cache, "build-1" ), equalTo( "build-1" ) );
+
+        Thread.sleep( 100 );
+
+        assertThat( read( cache, "build-1" ), nullValue() );
+        assertThat( report.exists(), equalTo( false ) );
+        assertThat( cache.getBytes(), equalTo( 0L ) );
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws Exception
+    {
+        RenderedReportCache probe = new RenderedReportCache( config( 1024 * 1024 ), mapper );
+        File first = probe.put( "build-1", Collections.singletonMap( "key", "build-1" ), probe.version() );
+        long size = first.length();
+
+        RenderedReportCache cache = new RenderedReportCache( config( size * 2 + size / 2 ), mapper );
+        cache.put( "build-1", Collections.singletonMap( "key", "build-1" ), cache.version() );
+        cache.put( "build-2", Collections.singletonMap( "key", "build-2" ), cache.version() );
+        read( cache, "build-1" );
+        cache.put( "build-3", Collections.singletonMap( "key", "build-3" ), cache.version() );
+
+        assertThat( read( cache, "build-2" ), nullValue() );
+        assertThat( read( cache, "build-1" ), notNullValue() );
+        assertThat( read( cache, "build-3" ), notNullValue() );
+    }
+
+    private Object read( final RenderedReportCache cache, final String trackingId ) throws IOException
+    {
+        try (InputStream in = cache.open( trackingId ))
+        {
+            if ( in == null )
+            {
+                return null;
+            }
+            return mapper.readValue( new GZIPInputStream( in ), Map.class ).get( "key" );
+        }
+    }
+
+    private IndyTrackingConfiguration config( long maxBytes )
+    {
+        return config( maxBytes, null );
+    }
+
+    private IndyTrackingConfiguration config( long maxBytes, Long ttlMillis )
+    {
+        IndyTrackingConfiguration config = mock( IndyTrackingConfiguration.class );
+        when( config.reportCacheEnabled() ).thenReturn( true );
+        when( config.reportCacheMaxBytes() ).thenReturn( maxBytes );
+        when( config.reportCacheTtlMillis() ).thenReturn( ttlMillis );
+        when( config.baseDir() ).thenReturn( baseDir );
+        return config;
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.data.spool;
+
+import io.opentelemetry.api.OpenTelemetry;
+import org.commonjava.indy.service.tracking.config.IndyTrackingConfiguration;
+import org.commonjava.indy.service.tracking.data.cassandra.CassandraTrackingQuery;
+import org.commonjava.indy.service.tracking.data.metrics.MetricsManager;
+import org.commonjava.indy.service.tracking.model.TrackedContentEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.commonjava.indy.service.tracking.TrackingFixtures.downloadEntry;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class WriteAheadSpoolTest
+{
+    @TempDir
+    File baseDir;
+
+    @Test
+    public void replaysAfterRestart() throws Exception
+    {
+        IndyTrackingConfiguration config = mock( IndyTrackingConfiguration.class );
+        when( config.spoolEnabled() ).thenReturn( true );
+        when( config.baseDir() ).thenReturn( baseDir );
+        when( config.spoolSegmentBytes() ).thenReturn( 4096 );
+        when( config.spoolReplayBatchSize() ).thenReturn( 10 );
+        when( config.spoolReplayMaxBackoffMillis() ).thenReturn( 200L );
+        MetricsManager metricsManager = new MetricsManager( OpenTelemetry.noop() );
+
+        CassandraTrackingQuery unavailable = mock( CassandraTrackingQuery.class );
+        doThrow( new IllegalStateException( "Cassandra is down" ) ).when( unavailable ).replayArtifacts( any(), any() );
+        WriteAheadSpool spool = new WriteAheadSpool( config, unavailable, metricsManager );
+
+        List<TrackedContentEntry> entries = new ArrayList<>();
+        for ( int i = 0; i < 30; i++ )
+        {
+            entries.add( downloadEntry( "build-1", i ) );
+        }
+        // small segments, so the entries span several segment files
+        spool.append( entries );
+        assertThat( spool.getDepth(), equalTo( 30L ) );
+        assertThat( spool.isBacklogged(), equalTo( true ) );
+        spool.shutdown();
+
+        CassandraTrackingQuery available = mock( CassandraTrackingQuery.class );
+        when( available.replayArtifacts( any(), any() ) ).thenAnswer( i -> i.getArgument( 0, List.class ).size() );
+        WriteAheadSpool reopened = new WriteAheadSpool( config, available, metricsManager );
+        assertThat( reopened.getDepth(), equalTo( 30L ) );
+
+        verify( available, timeout( 10000 ).atLeast( 3 ) ).replayArtifacts( any(), any() );
+        long deadline = System.currentTimeMillis() + 10000;
+        while ( reopened.getDepth() > 0 && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 50 );
+        }
+        assertThat( reopened.getDepth(), equalTo( 0L ) );
+        assertThat( reopened.getReplayed(), equalTo( 30L ) );
+        reopened.shutdown();
+    }
+}
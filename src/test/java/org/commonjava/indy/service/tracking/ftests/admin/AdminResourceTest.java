@@ -24,6 +24,7 @@ import org.commonjava.indy.service.tracking.client.content.BatchDeleteRequest;
 import org.commonjava.indy.service.tracking.data.cassandra.CassandraConfiguration;
 import org.commonjava.indy.service.tracking.exception.ContentException;
 import org.commonjava.indy.service.tracking.exception.IndyWorkflowException;
+import org.commonjava.indy.service.tracking.jaxrs.AdminResource;
 import org.commonjava.indy.service.tracking.model.AccessChannel;
 import org.commonjava.indy.service.tracking.model.StoreEffect;
 import org.commonjava.indy.service.tracking.model.StoreKey;
@@ -50,6 +51,7 @@ import java.util.Set;
 import static io.restassured.RestAssured.given;
 import static org.commonjava.indy.service.tracking.profile.CassandraFunctionProfile.CASSANDRA_CONTAINER_IMAGE;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
 import static org.mockito.Mockito.when;
 
 @QuarkusTest
@@ -244,6 +246,16 @@ public class AdminResourceTest
         given().when().get( BASE_URL + "report/export" ).then().statusCode( 200 );
     }
 
+    @Test
+    public void testIncrementalExportSuccess()
+    {
+        given().when()
+               .get( BASE_URL + "report/export?since=0" )
+               .then()
+               .statusCode( 200 )
+               .header( AdminResource.EXPORT_WATERMARK_HEADER, notNullValue() );
+    }
+
     @Test
     public void testImportReportSuccess()
     {
@@ -0,0 +1,233 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.ftests.data.cassandra;
+
+import org.commonjava.indy.service.tracking.data.cassandra.CassandraClient;
+import org.commonjava.indy.service.tracking.data.cassandra.CassandraConfiguration;
+import org.commonjava.indy.service.tracking.data.cassandra.CassandraTrackingQuery;
+import org.commonjava.indy.service.tracking.model.TrackedContent;
+import org.commonjava.indy.service.tracking.model.TrackedContentEntry;
+import org.commonjava.indy.service.tracking.model.TrackingKey;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testcontainers.containers.CassandraContainer;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.commonjava.indy.service.tracking.TrackingFixtures.downloadEntry;
+import static org.commonjava.indy.service.tracking.data.cassandra.CassandraFoloUtil.TABLE_FOLO_HEADER;
+import static org.commonjava.indy.service.tracking.profile.CassandraFunctionProfile.CASSANDRA_CONTAINER_IMAGE;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Compares the single-event write path with the batched one on the same data set.
+ */
+@Testcontainers( disabledWithoutDocker = true )
+public class CassandraBatchWriteTest
+{
+    private static final int KEYS = 5;
+
+    private static final int ENTRIES_PER_KEY = 200;
+
+    private static final Logger logger = LoggerFactory.getLogger( CassandraBatchWriteTest.class );
+
+    private static volatile CassandraContainer<?> cassandraContainer;
+
+    private static CassandraClient client;
+
+    private static CassandraTrackingQuery trackingQuery;
+
+    @BeforeAll
+    public static void init()
+    {
+        cassandraContainer = new CassandraContainer( CASSANDRA_CONTAINER_IMAGE );
+        cassandraContainer.start();
+
+        CassandraConfiguration config = new CassandraConfiguration();
+        config.setEnabled( true );
+        config.setCassandraHost( cassandraContainer.getHost() );
+        config.setCassandraPort( cassandraContainer.getMappedPort( CassandraContainer.CQL_PORT ) );
+        config.setCassandraUser( "cassandra" );
+        config.setCassandraPass( "cassandra" );
+        config.setKeyspace( "folo" );
+        config.setKeyspaceReplicas( 1 );
+        config.setConnectTimeoutMillis( 60000 );
+        config.setReadTimeoutMillis( 60000 );
+        config.setPartialUpdatesMaxRows( 1000 );
+        config.setPartialUpdatesTtlMillis( 30000 );
+
+        client = new CassandraClient( config );
+        trackingQuery = new CassandraTrackingQuery( client, config );
+    }
+
+    @AfterAll
+    public static void stop()
+    {
+        client.close();
+        cassandraContainer.stop();
+    }
+
+    @Test
+    public void batchWriteThroughput() throws Exception
+    {
+        List<TrackedContentEntry> single = createEntries( "single" );
+        long start = System.nanoTime();
+        for ( TrackedContentEntry entry : single )
+        {
+            trackingQuery.recordArtifact( entry );
+        }
+        long singleNanos = System.nanoTime() - start;
+
+        List<TrackedContentEntry> batched = createEntries( "batched" );
+        start = System.nanoTime();
+        int written = trackingQuery.recordArtifacts( batched );
+        long batchNanos = System.nanoTime() - start;
+
+        logger.info( "Single-event path: {} entries/s, batch path: {} entries/s", rate( single.size(), singleNanos ),
+                     rate( batched.size(), batchNanos ) );
+
+        assertThat( written, equalTo( batched.size() ) );
+        for ( int k = 0; k < KEYS; k++ )
+        {
+            TrackedContent singleContent = trackingQuery.get( new TrackingKey( "single-" + k ) );
+            TrackedContent batchedContent = trackingQuery.get( new TrackingKey( "batched-" + k ) );
+            assertThat( batchedContent.getDownloads().size(), equalTo( singleContent.getDownloads().size() ) );
+            assertThat( batchedContent.getDownloads().size(), equalTo( ENTRIES_PER_KEY ) );
+        }
+    }
+
+    @Test
+    public void batchMergesDuplicateRows()
+    {
+        TrackedContentEntry first = downloadEntry( "dup", 0 );
+        first.getTimestamps().clear();
+        first.getTimestamps().add( 1L );
+        TrackedContentEntry second = downloadEntry( "dup", 0 );
+        second.getTimestamps().clear();
+        second.getTimestamps().add( 2L );
+
+        List<TrackedContentEntry> entries = new ArrayList<>();
+        entries.add( first );
+        entries.add( second );
+        assertThat( trackingQuery.recordArtifacts( entries ), equalTo( 1 ) );
+
+        TrackedContent content = trackingQuery.get( new TrackingKey( "dup" ) );
+        assertThat( content.getDownloads().size(), equalTo( 1 ) );
+        assertThat( content.getDownloads().iterator().next().getTimestamps().size(), equalTo( 2 ) );
+    }
+
+    @Test
+    public void repeatedAccessAppendsTimestampsAndUpdatesChangedColumns() throws Exception
+    {
+        TrackedContentEntry first = downloadEntry( "repeat", 0 );
+        first.getTimestamps().clear();
+        first.getTimestamps().add( 1L );
+        trackingQuery.recordArtifact( first );
+
+        TrackedContentEntry second = downloadEntry( "repeat", 0 );
+        second.getTimestamps().clear();
+        second.getTimestamps().add( 2L );
+        second.setMd5( "md5-changed" );
+        trackingQuery.recordArtifact( second );
+
+        TrackedContent content = trackingQuery.get( new TrackingKey( "repeat" ) );
+        assertThat( content.getDownloads().size(), equalTo( 1 ) );
+        TrackedContentEntry stored = content.getDownloads().iterator().next();
+        assertThat( stored.getTimestamps().size(), equalTo( 2 ) );
+        assertThat( stored.getMd5(), equalTo( "md5-changed" ) );
+        assertThat( stored.getSha1(), equalTo( "sha1-0" ) );
+        assertThat( stored.getOriginUrl(), equalTo( first.getOriginUrl() ) );
+    }
+
+    @Test
+    public void reimportWithCorrectedChecksumIsNotSame()
+    {
+        TrackingKey key = new TrackingKey( "reimport" );
+        Set<TrackedContentEntry> downloads = new HashSet<>( Collections.singleton( downloadEntry( "reimport", 0 ) ) );
+        trackingQuery.addSealedRecord( new TrackedContent( key, new HashSet<>(), downloads ) );
+        TrackedContent stored = trackingQuery.get( key );
+        assertThat( trackingQuery.isSameSealedRecord( stored ), equalTo( true ) );
+
+        TrackedContentEntry corrected = downloadEntry( "reimport", 0 );
+        corrected.setMd5( "md5-corrected" );
+        corrected.setTimestamps( stored.getDownloads().iterator().next().getTimestamps() );
+        TrackedContent reimport = new TrackedContent( key, new HashSet<>(),
+                                                      new HashSet<>( Collections.singleton( corrected ) ) );
+        assertThat( trackingQuery.isSameSealedRecord( reimport ), equalTo( false ) );
+    }
+
+    @Test
+    public void unknownRecordIsNotSameAndGetsNoHeader()
+    {
+        TrackingKey key = new TrackingKey( "never-imported" );
+        Set<TrackedContentEntry> downloads =
+                        new HashSet<>( Collections.singleton( downloadEntry( "never-imported", 0 ) ) );
+        assertThat( trackingQuery.isSameSealedRecord( new TrackedContent( key, new HashSet<>(), downloads ) ),
+                    equalTo( false ) );
+        assertThat( client.getSession( "folo" )
+                          .execute( "SELECT * FROM folo." + TABLE_FOLO_HEADER + " WHERE tracking_key=?;",
+                                    key.getId() )
+                          .one(), nullValue() );
+    }
+
+    @Test
+    public void replayKeepsEntriesSpooledBeforeSeal() throws Exception
+    {
+        TrackingKey key = new TrackingKey( "spooled" );
+        trackingQuery.recordArtifacts( Collections.singletonList( downloadEntry( "spooled", 0 ) ) );
+        long beforeSeal = System.currentTimeMillis();
+        Thread.sleep( 5 );
+        assertThat( trackingQuery.sealRecord( key ), equalTo( true ) );
+        long afterSeal = System.currentTimeMillis() + 1000;
+
+        int written = trackingQuery.replayArtifacts(
+                        Arrays.asList( downloadEntry( "spooled", 1 ), downloadEntry( "spooled", 2 ) ),
+                        Arrays.asList( beforeSeal, afterSeal ) );
+
+        assertThat( written, equalTo( 1 ) );
+        assertThat( trackingQuery.isSealedRecord( key ), equalTo( true ) );
+        assertThat( trackingQuery.get( key ).getDownloads().size(), equalTo( 2 ) );
+    }
+
+    private static long rate( int count, long nanos )
+    {
+        return Math.round( count / ( nanos / 1000000000.0 ) );
+    }
+
+    private static List<TrackedContentEntry> createEntries( String prefix )
+    {
+        List<TrackedContentEntry> entries = new ArrayList<>();
+        for ( int i = 0; i < ENTRIES_PER_KEY; i++ )
+        {
+            for ( int k = 0; k < KEYS; k++ )
+            {
+                entries.add( downloadEntry( prefix + "-" + k, i ) );
+            }
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.ftests.data.cassandra;
+
+import org.commonjava.indy.service.tracking.data.cassandra.CassandraClient;
+import org.commonjava.indy.service.tracking.data.cassandra.CassandraConfiguration;
+import org.commonjava.indy.service.tracking.data.cassandra.CassandraTrackingQuery;
+import org.commonjava.indy.service.tracking.model.TrackedContent;
+import org.commonjava.indy.service.tracking.model.TrackedContentEntry;
+import org.commonjava.indy.service.tracking.model.TrackingKey;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.CassandraContainer;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.commonjava.indy.service.tracking.TrackingFixtures.downloadEntry;
+import static org.commonjava.indy.service.tracking.profile.CassandraFunctionProfile.CASSANDRA_CONTAINER_IMAGE;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+/**
+ * Reads and writes tracking records spread over several partitions per tracking key.
+ */
+@Testcontainers( disabledWithoutDocker = true )
+public class CassandraBucketedRecordTest
+{
+    private static final int BUCKETS = 8;
+
+    private static final int ENTRIES = 500;
+
+    private static volatile CassandraContainer<?> cassandraContainer;
+
+    private static CassandraClient client;
+
+    private static CassandraConfiguration config;
+
+    private static CassandraTrackingQuery trackingQuery;
+
+    @BeforeAll
+    public static void init()
+    {
+        cassandraContainer = new CassandraContainer( CASSANDRA_CONTAINER_IMAGE );
+        cassandraContainer.start();
+
+        config = new CassandraConfiguration();
+        config.setEnabled( true );
+        config.setCassandraHost( cassandraContainer.getHost() );
+        config.setCassandraPort( cassandraContainer.getMappedPort( CassandraContainer.CQL_PORT ) );
+        config.setCassandraUser( "cassandra" );
+        config.setCassandraPass( "cassandra" );
+        config.setKeyspace( "folo" );
+        config.setKeyspaceReplicas( 1 );
+        config.setConnectTimeoutMillis( 60000 );
+        config.setReadTimeoutMillis( 60000 );
+        config.setRecordBuckets( BUCKETS );
+
+        client = new CassandraClient( config );
+        trackingQuery = new CassandraTrackingQuery( client, config );
+    }
+
+    @AfterAll
+    public static void stop()
+    {
+        client.close();
+        cassandraContainer.stop();
+    }
+
+    @Test
+    public void recordSpansBucketsAndReadsBackWhole()
+    {
+        TrackingKey key = new TrackingKey( "large" );
+        assertThat( trackingQuery.recordArtifacts( createEntries( "large" ) ), equalTo( ENTRIES ) );
+        assertThat( trackingQuery.hasRecord( key ), equalTo( true ) );
+
+        TrackedContent content = trackingQuery.get( key );
+        assertThat( content.getDownloads().size(), equalTo( ENTRIES ) );
+
+        int count = 0;
+        String previous = "";
+        Iterator<TrackedContentEntry> entries = trackingQuery.iterate( key );
+        while ( entries.hasNext() )
+        {
+            String path = entries.next().getPath();
+            assertThat( previous.compareTo( path ), lessThanOrEqualTo( 0 ) );
+            previous = path;
+            count++;
+        }
+        assertThat( count, equalTo( ENTRIES ) );
+
+        assertThat( trackingQuery.sealRecord( key ), equalTo( true ) );
+        assertThat( trackingQuery.isSealedRecord( key ), equalTo( true ) );
+        assertThat( trackingQuery.getSealedTrackingKey().contains( key ), equalTo( true ) );
+    }
+
+    @Test
+    public void deleteRemovesEveryBucket()
+    {
+        TrackingKey key = new TrackingKey( "deleted" );
+        trackingQuery.recordArtifacts( createEntries( "deleted" ) );
+        trackingQuery.delete( key );
+
+        assertThat( trackingQuery.hasRecord( key ), equalTo( false ) );
+        assertThat( trackingQuery.get( key ), nullValue() );
+    }
+
+    @Test
+    public void importedRecordSpansBucketsAndReadsBackWhole() throws Exception
+    {
+        TrackingKey key = new TrackingKey( "imported" );
+        TrackedContent record = new TrackedContent( key, new HashSet<>(),
+                                                    new HashSet<>( createEntries( "imported" ) ) );
+        trackingQuery.addSealedRecordAsync( record ).toCompletableFuture().get();
+
+        assertThat( trackingQuery.isSealedRecord( key ), equalTo( true ) );
+        assertThat( trackingQuery.get( key ).getDownloads().size(), equalTo( ENTRIES ) );
+    }
+
+    @Test
+    public void idReusedAfterDeleteOnAnotherInstanceIsWritable()
+    {
+        TrackingKey key = new TrackingKey( "reused" );
+        trackingQuery.recordArtifacts( createEntries( "reused" ) );
+        assertThat( trackingQuery.sealRecord( key ), equalTo( true ) );
+
+        CassandraTrackingQuery otherInstance = new CassandraTrackingQuery( client, config );
+        otherInstance.delete( key );
+
+        assertThat( trackingQuery.recordArtifacts( createEntries( "reused" ) ), equalTo( ENTRIES ) );
+        assertThat( trackingQuery.isSealedRecord( key ), equalTo( false ) );
+    }
+
+    private static List<TrackedContentEntry> createEntries( String trackingId )
+    {
+        List<TrackedContentEntry> entries = new ArrayList<>();
+        for ( int i = 0; i < ENTRIES; i++ )
+        {
+            entries.add( downloadEntry( new TrackingKey( trackingId ), String.format( "/org/foo/bar/%04d/bar.jar", i ),
+                                        i ) );
+        }
+        return entries;
+    }
+}
@@ -36,6 +36,9 @@ import java.util.HashSet;
 import java.util.Set;
 
 import static org.commonjava.indy.service.tracking.profile.CassandraFunctionProfile.CASSANDRA_CONTAINER_IMAGE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.when;
 
 @QuarkusTest
@@ -79,10 +82,20 @@ public class CassandraTrackingRecordTest
         trackingQuery.get( new TrackingKey( "test" ) );
         trackingQuery.getSealedTrackingKey();
         trackingQuery.getLegacyTrackingKeys();
-        trackingQuery.getSealed();
+        trackingQuery.iterateSealedTrackingKeys( 100 ).forEachRemaining( trackingQuery::get );
 
     }
 
+    @Test
+    public void testSealRecord()
+    {
+        createTestStore();
+        assertTrue( trackingQuery.sealRecord( new TrackingKey( "test" ) ) );
+        assertTrue( trackingQuery.sealRecord( new TrackingKey( "test" ) ) );
+        assertFalse( trackingQuery.sealRecord( new TrackingKey( "no-such-record" ) ) );
+        assertEquals( 1, trackingQuery.seal( new TrackingKey( "test" ) ).getUploads().size() );
+    }
+
     private DtxTrackingRecord createTestStore()
     {
         DtxTrackingRecord trackingRecord = new DtxTrackingRecord();
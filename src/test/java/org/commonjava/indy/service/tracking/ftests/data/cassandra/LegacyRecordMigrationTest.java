@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.ftests.data.cassandra;
+
+import com.datastax.driver.core.Session;
+import com.google.common.collect.Lists;
+import org.commonjava.indy.service.tracking.data.cassandra.CassandraClient;
+import org.commonjava.indy.service.tracking.data.cassandra.CassandraConfiguration;
+import org.commonjava.indy.service.tracking.data.cassandra.CassandraTrackingQuery;
+import org.commonjava.indy.service.tracking.data.cassandra.DtxTrackingRecord;
+import org.commonjava.indy.service.tracking.model.StoreKey;
+import org.commonjava.indy.service.tracking.model.StoreType;
+import org.commonjava.indy.service.tracking.model.TrackedContent;
+import org.commonjava.indy.service.tracking.model.TrackingKey;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.CassandraContainer;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.Collections;
+
+import static org.commonjava.indy.service.tracking.data.cassandra.CassandraFoloUtil.TABLE_FOLO_LEGACY;
+import static org.commonjava.indy.service.tracking.model.pkg.PackageTypeConstants.PKG_TYPE_MAVEN;
+import static org.commonjava.indy.service.tracking.profile.CassandraFunctionProfile.CASSANDRA_CONTAINER_IMAGE;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Copies of legacy records into the records table, resumed after an interrupted copy.
+ */
+@Testcontainers( disabledWithoutDocker = true )
+public class LegacyRecordMigrationTest
+{
+    private static final String KEYSPACE = "folo";
+
+    private static final int ENTRIES = 10;
+
+    private static volatile CassandraContainer<?> cassandraContainer;
+
+    private static CassandraClient client;
+
+    private static CassandraTrackingQuery trackingQuery;
+
+    private static Session session;
+
+    @BeforeAll
+    public static void init()
+    {
+        cassandraContainer = new CassandraContainer( CASSANDRA_CONTAINER_IMAGE );
+        cassandraContainer.start();
+
+        CassandraConfiguration config = new CassandraConfiguration();
+        config.setEnabled( true );
+        config.setCassandraHost( cassandraContainer.getHost() );
+        config.setCassandraPort( cassandraContainer.getMappedPort( CassandraContainer.CQL_PORT ) );
+        config.setCassandraUser( "cassandra" );
+        config.setCassandraPass( "cassandra" );
+        config.setKeyspace( KEYSPACE );
+        config.setKeyspaceReplicas( 1 );
+        config.setConnectTimeoutMillis( 60000 );
+        config.setReadTimeoutMillis( 60000 );
+
+        client = new CassandraClient( config );
+        trackingQuery = new CassandraTrackingQuery( client, config );
+        session = client.getSession( KEYSPACE );
+    }
+
+    @AfterAll
+    public static void stop()
+    {
+        client.close();
+        cassandraContainer.stop();
+    }
+
+    @Test
+    public void resumesPartialCopyOfSealedRecord()
+    {
+        long since = System.currentTimeMillis();
+        writeLegacy( "partial", true );
+        // a copy interrupted after the first row, before the header
+        trackingQuery.createDtxTrackingRecord( legacyRow( "partial", 0, true ) );
+
+        TrackingKey key = new TrackingKey( "partial" );
+        assertThat( trackingQuery.migrateLegacyRecord( key ), equalTo( true ) );
+        TrackedContent copied = trackingQuery.get( key );
+        assertThat( copied.getDownloads().size(), equalTo( ENTRIES ) );
+        assertThat( trackingQuery.isSealedRecord( key ), equalTo( true ) );
+        assertThat( trackingQuery.migrateLegacyRecord( key ), equalTo( false ) );
+
+        // legacy history is not newly sealed for incremental exports
+        assertThat( Lists.newArrayList(
+                                    trackingQuery.iterateSealedTrackingKeys( since, System.currentTimeMillis(), 100 ) )
+                         .contains( key ), equalTo( false ) );
+    }
+
+    @Test
+    public void keepsRecordInProgress()
+    {
+        writeLegacy( "in-progress", false );
+
+        TrackingKey key = new TrackingKey( "in-progress" );
+        assertThat( trackingQuery.migrateLegacyRecord( key ), equalTo( true ) );
+        assertThat( trackingQuery.isSealedRecord( key ), equalTo( false ) );
+        assertThat( trackingQuery.get( key ).getDownloads().size(), equalTo( ENTRIES ) );
+        // copied again on resume, merging into the rows already there
+        assertThat( trackingQuery.migrateLegacyRecord( key ), equalTo( true ) );
+        assertThat( trackingQuery.get( key ).getDownloads().size(), equalTo( ENTRIES ) );
+    }
+
+    private static void writeLegacy( String trackingId, boolean sealed )
+    {
+        for ( int i = 0; i < ENTRIES; i++ )
+        {
+            DtxTrackingRecord row = legacyRow( trackingId, i, sealed );
+            session.execute( "INSERT INTO " + KEYSPACE + "." + TABLE_FOLO_LEGACY
+                                             + " (tracking_key, sealed, store_key, access_channel, path, origin_url,"
+                                             + " store_effect, md5, sha256, sha1, size, started, timestamps)"
+                                             + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?);", row.getTrackingKey(),
+                             row.getState(), row.getStoreKey(), row.getAccessChannel(), row.getPath(),
+                             row.getOriginUrl(), row.getStoreEffect(), row.getMd5(), row.getSha256(), row.getSha1(),
+                             row.getSize(), row.getStarted(), row.getTimestamps() );
+        }
+    }
+
+    private static DtxTrackingRecord legacyRow( String trackingId, int index, boolean sealed )
+    {
+        DtxTrackingRecord row = new DtxTrackingRecord();
+        row.setTrackingKey( trackingId );
+        row.setState( sealed );
+        row.setStoreKey( new StoreKey( PKG_TYPE_MAVEN, StoreType.remote, "central" ).toString() );
+        row.setAccessChannel( "NATIVE" );
+        row.setPath( "/org/foo/" + index + "/foo.jar" );
+        row.setOriginUrl( "https://repo.maven.apache.org/maven2/org/foo/" + index + "/foo.jar" );
+        row.setStoreEffect( "DOWNLOAD" );
+        row.setMd5( "md5-" + index );
+        row.setSha256( "sha256-" + index );
+        row.setSha1( "sha1-" + index );
+        row.setSize( 1024L );
+        row.setStarted( 1000L );
+        row.setTimestamps( Collections.singleton( 2000L + index ) );
+        return row;
+    }
+}
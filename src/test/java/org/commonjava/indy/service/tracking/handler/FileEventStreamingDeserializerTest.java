@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.handler;
+
+import io.quarkus.kafka.client.serialization.ObjectMapperSerializer;
+import org.commonjava.event.common.EventMetadata;
+import org.commonjava.event.file.FileEvent;
+import org.commonjava.event.file.FileEventType;
+import org.commonjava.event.file.TransferOperation;
+import org.commonjava.indy.service.tracking.Constants;
+import org.commonjava.indy.service.tracking.model.AccessChannel;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class FileEventStreamingDeserializerTest
+{
+    private final FileEventStreamingDeserializer deserializer = new FileEventStreamingDeserializer( false );
+
+    @Test
+    public void readsSerializedAccessEvent()
+    {
+        FileEvent event = accessEvent( "build-1", "maven:remote:central" );
+
+        FileEvent result = deserializer.deserialize( "file-event", serialize( event ) );
+
+        assertThat( result, notNullValue() );
+        assertThat( result.getEventType(), equalTo( FileEventType.ACCESS ) );
+        assertThat( result.getSessionId(), equalTo( "build-1" ) );
+        assertThat( result.getStoreKey(), equalTo( "maven:remote:central" ) );
+        assertThat( result.getTargetPath(), equalTo( "/org/foo/bar/1.0/bar-1.0.pom" ) );
+        assertThat( result.getSourceLocation(), equalTo( "https://repo.maven.apache.org/maven2" ) );
+        assertThat( result.getSourcePath(), equalTo( "/org/foo/bar/1.0/bar-1.0.pom" ) );
+        assertThat( result.getMd5(), equalTo( "md5" ) );
+        assertThat( result.getSha1(), equalTo( "sha1" ) );
+        assertThat( result.getChecksum(), equalTo( "sha256" ) );
+        assertThat( result.getEventMetadata().get( Constants.ACCESS_CHANNEL ),
+                    equalTo( AccessChannel.NATIVE.toString() ) );
+    }
+
+    @Test
+    public void dropsFilteredEvents()
+    {
+        assertThat( deserializer.deserialize( "file-event", serialize( accessEvent( null, "maven:remote:central" ) ) ),
+                    nullValue() );
+        assertThat( deserializer.deserialize( "file-event", serialize( accessEvent( "build-1", "maven:group:public" ) ) ),
+                    nullValue() );
+
+        FileEvent download = accessEvent( "build-1", "maven:remote:central" );
+        download.getEventMetadata().set( Constants.ORIGIN_PATH, "/api/folo/track/build-1/maven/group/public/foo" );
+        assertThat( deserializer.deserialize( "file-event", serialize( download ) ), nullValue() );
+
+        FileEvent storage = new FileEvent( FileEventType.STORAGE );
+        storage.setSessionId( "build-1" );
+        storage.setStoreKey( "maven:hosted:local" );
+        storage.setOperation( TransferOperation.DOWNLOAD );
+        assertThat( deserializer.deserialize( "file-event", serialize( storage ) ), nullValue() );
+    }
+
+    @Test
+    public void readsNestedAndFlatMetadata()
+    {
+        String nested = "{\"eventType\":\"ACCESS\",\"sessionId\":\"build-1\",\"storeKey\":\"maven:remote:central\","
+                        + "\"eventMetadata\":{\"packageType\":\"maven\",\"metadata\":{\"access-channel\":\"NATIVE\"}}}";
+        String flat = "{\"eventMetadata\":{\"access-channel\":\"GENERIC_PROXY\"},\"eventType\":\"ACCESS\","
+                        + "\"sessionId\":\"build-1\",\"storeKey\":\"maven:remote:central\",\"extra\":[1,{\"a\":2}]}";
+
+        FileEvent fromNested = deserializer.deserialize( "file-event", nested.getBytes( StandardCharsets.UTF_8 ) );
+        FileEvent fromFlat = deserializer.deserialize( "file-event", flat.getBytes( StandardCharsets.UTF_8 ) );
+
+        assertThat( fromNested.getEventMetadata().get( Constants.ACCESS_CHANNEL ), equalTo( "NATIVE" ) );
+        assertThat( fromFlat.getEventMetadata().get( Constants.ACCESS_CHANNEL ), equalTo( "GENERIC_PROXY" ) );
+    }
+
+    private static FileEvent accessEvent( String sessionId, String storeKey )
+    {
+        FileEvent event = new FileEvent( FileEventType.ACCESS );
+        EventMetadata metadata = new EventMetadata();
+        metadata.set( Constants.ACCESS_CHANNEL, AccessChannel.NATIVE.toString() );
+        event.setEventMetadata( metadata );
+        event.setSessionId( sessionId );
+        event.setStoreKey( storeKey );
+        event.setTargetPath( "/org/foo/bar/1.0/bar-1.0.pom" );
+        event.setSourceLocation( "https://repo.maven.apache.org/maven2" );
+        event.setSourcePath( "/org/foo/bar/1.0/bar-1.0.pom" );
+        event.setSize( 1024L );
+        event.setMd5( "md5" );
+        event.setSha1( "sha1" );
+        event.setChecksum( "sha256" );
+        return event;
+    }
+
+    static byte[] serialize( FileEvent event )
+    {
+        try (ObjectMapperSerializer<FileEvent> serializer = new ObjectMapperSerializer<>())
+        {
+            return serializer.serialize( "file-event", event );
+        }
+    }
+}
@@ -28,6 +28,7 @@ import org.commonjava.indy.service.tracking.exception.IndyWorkflowException;
 import org.commonjava.indy.service.tracking.model.StoreKey;
 import org.commonjava.indy.service.tracking.model.StoreType;
 import org.commonjava.indy.service.tracking.model.TrackingKey;
+import org.commonjava.indy.service.tracking.model.dto.ImportResultDTO;
 import org.commonjava.indy.service.tracking.model.dto.TrackedContentDTO;
 import org.commonjava.indy.service.tracking.model.dto.TrackedContentEntryDTO;
 import org.commonjava.indy.service.tracking.model.dto.TrackingIdsDTO;
@@ -42,10 +43,15 @@ import java.util.Set;
 
 import static io.restassured.RestAssured.given;
 import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -127,6 +133,36 @@ public class AdminResourceTest
         verify( adminController, times( 1 ) ).getLegacyRecord( anyString(), anyString() );
     }
 
+    @Test
+    void testGetRecordRefusedGzipSkipsSealedReport() throws IndyWorkflowException
+    {
+        TrackedContentDTO trackedContentDTO = new TrackedContentDTO();
+        trackedContentDTO.setKey( new TrackingKey( TRACKING_ID ) );
+        when( adminController.getRecord( anyString(), anyString() ) ).thenReturn( trackedContentDTO );
+
+        given().header( "Accept-Encoding", "gzip;q=0, identity" )
+               .when()
+               .get( BASE_URL + TRACKING_ID + "/record" )
+               .then()
+               .statusCode( 200 )
+               .header( "Vary", "Accept-Encoding" );
+
+        verify( adminController, never() ).getSealedReport( anyString(), anyString() );
+    }
+
+    @Test
+    void testAcceptsGzip()
+    {
+        assertTrue( AdminResource.acceptsGzip( "gzip, deflate" ) );
+        assertTrue( AdminResource.acceptsGzip( "deflate;q=1.0, gzip;q=0.5" ) );
+        assertTrue( AdminResource.acceptsGzip( "*" ) );
+        assertFalse( AdminResource.acceptsGzip( null ) );
+        assertFalse( AdminResource.acceptsGzip( "identity" ) );
+        assertFalse( AdminResource.acceptsGzip( "gzip;q=0" ) );
+        assertFalse( AdminResource.acceptsGzip( "gzip; q=0.0, *;q=1" ) );
+        assertFalse( AdminResource.acceptsGzip( "*;q=0" ) );
+    }
+
     @Test
     void testGetRecordReturnsNotFoundResponse() throws IndyWorkflowException
     {
@@ -222,26 +258,40 @@ public class AdminResourceTest
     }
 
     @Test
-    public void testExportReportSuccess() throws IndyWorkflowException, IOException
+    public void testExportReportSuccess() throws IndyWorkflowException
     {
-        File file = File.createTempFile( "test", ".zip" );
         // Set up mock response from adminController
-        when( adminController.renderReportZip() ).thenReturn( file );
+        when( adminController.exportReportZip( any(), anyLong() ) ).thenReturn( out -> {
+        } );
         given().when().get( BASE_URL + "report/export" ).then().statusCode( 200 ).body( is( "" ) );
     }
 
+    @Test
+    public void testIncrementalExportReturnsWatermark() throws IndyWorkflowException
+    {
+        when( adminController.getExportWatermark() ).thenReturn( 2000L );
+        when( adminController.exportReportBinary( 1000L, 2000L ) ).thenReturn( out -> {
+        } );
+        given().when()
+               .get( BASE_URL + "report/export?format=binary&since=1000" )
+               .then()
+               .statusCode( 200 )
+               .header( AdminResource.EXPORT_WATERMARK_HEADER, "2000" );
+        verify( adminController, times( 1 ) ).exportReportBinary( 1000L, 2000L );
+    }
+
     @Test
     public void testExportReportError() throws IndyWorkflowException
     {
         // Set up mock response from adminController
-        when( adminController.renderReportZip() ).thenThrow( new IndyWorkflowException( "test" ) );
+        when( adminController.exportReportZip( any(), anyLong() ) ).thenThrow( new IndyWorkflowException( "test" ) );
         given().when().get( BASE_URL + "report/export" ).then().statusCode( 500 );
     }
 
     @Test
     public void testImportReportSuccess() throws IndyWorkflowException
     {
-        doNothing().when( adminController ).importRecordZip( any() );
+        when( adminController.importRecordZip( any(), anyBoolean() ) ).thenReturn( new ImportResultDTO() );
         given().when().put( BASE_URL + "report/import" ).then().statusCode( 201 );
     }
 
@@ -249,7 +299,7 @@ public class AdminResourceTest
     public void testImportReportError() throws IndyWorkflowException, IOException
     {
         // Set up mock response from adminController
-        doThrow( new IndyWorkflowException( "test" ) ).when( adminController ).importRecordZip( any() );
+        doThrow( new IndyWorkflowException( "test" ) ).when( adminController ).importRecordZip( any(), anyBoolean() );
         given().when().put( BASE_URL + "report/import" ).then().statusCode( 500 );
     }
 
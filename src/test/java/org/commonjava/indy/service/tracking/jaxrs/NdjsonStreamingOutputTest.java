@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.jaxrs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.opentelemetry.api.OpenTelemetry;
+import org.commonjava.indy.service.tracking.data.metrics.TraceManager;
+import org.commonjava.indy.service.tracking.model.AccessChannel;
+import org.commonjava.indy.service.tracking.model.StoreEffect;
+import org.commonjava.indy.service.tracking.model.StoreKey;
+import org.commonjava.indy.service.tracking.model.StoreType;
+import org.commonjava.indy.service.tracking.model.dto.TrackedContentEntryDTO;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.commonjava.indy.service.tracking.model.pkg.PackageTypeConstants.PKG_TYPE_MAVEN;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NdjsonStreamingOutputTest
+{
+    @Test
+    public void writesOneLinePerElement() throws Exception
+    {
+        ObjectMapper mapper = new ObjectMapper().enable( SerializationFeature.INDENT_OUTPUT );
+        StoreKey storeKey = new StoreKey( PKG_TYPE_MAVEN, StoreType.remote, "central" );
+        TrackedContentEntryDTO upload = new TrackedContentEntryDTO( storeKey, AccessChannel.NATIVE, "/a/1.pom" );
+        upload.setEffect( StoreEffect.UPLOAD );
+        TrackedContentEntryDTO download = new TrackedContentEntryDTO( storeKey, AccessChannel.NATIVE, "/b/2.jar" );
+        download.setEffect( StoreEffect.DOWNLOAD );
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new NdjsonStreamingOutput( mapper, Arrays.asList( upload, download ).iterator(),
+                                   new TraceManager( OpenTelemetry.noop().getTracer( "test" ) ) ).write( out );
+
+        String[] lines = out.toString( StandardCharsets.UTF_8.name() ).split( "\n" );
+        assertEquals( 2, lines.length );
+        assertTrue( lines[0].startsWith( "{" ) && lines[0].contains( "\"/a/1.pom\"" ) && lines[0].contains( "UPLOAD" ) );
+        assertTrue( lines[1].startsWith( "{" ) && lines[1].contains( "\"/b/2.jar\"" ) && lines[1].contains( "DOWNLOAD" ) );
+    }
+}
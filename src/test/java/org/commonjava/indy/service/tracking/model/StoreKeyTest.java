@@ -78,4 +78,14 @@ public class StoreKeyTest
         assertThrows( IllegalArgumentException.class,
                       () -> System.out.println( StoreKey.fromString( "maven:invalid:stuff" ) ) );
     }
+
+    @Test
+    public void parseIsInterned()
+    {
+        StoreKey key = StoreKey.fromString( "maven:hosted:local-deployments" );
+
+        assertThat( StoreKey.fromString( "maven:hosted:local-deployments" ) == key, equalTo( true ) );
+        assertThat( StoreKey.fromString( "maven:hosted:local-deployments:" ), equalTo( key ) );
+        assertThat( StoreKey.fromString( "hosted:local-deployments" ), equalTo( key ) );
+    }
 }
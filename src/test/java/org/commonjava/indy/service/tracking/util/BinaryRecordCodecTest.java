@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 2022-2023 Red Hat, Inc. (https://github.com/Commonjava/indy-tracking-service)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.service.tracking.util;
+
+import org.commonjava.indy.service.tracking.model.AccessChannel;
+import org.commonjava.indy.service.tracking.model.StoreEffect;
+import org.commonjava.indy.service.tracking.model.StoreKey;
+import org.commonjava.indy.service.tracking.model.StoreType;
+import org.commonjava.indy.service.tracking.model.TrackedContent;
+import org.commonjava.indy.service.tracking.model.TrackedContentEntry;
+import org.commonjava.indy.service.tracking.model.TrackingKey;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.commonjava.indy.service.tracking.model.pkg.PackageTypeConstants.PKG_TYPE_MAVEN;
+import static org.commonjava.indy.service.tracking.model.pkg.PackageTypeConstants.PKG_TYPE_NPM;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BinaryRecordCodecTest
+{
+    private final TrackingKey key = new TrackingKey( "build-1" );
+
+    @Test
+    public void roundTripKeepsEveryField() throws IOException
+    {
+        TrackedContentEntry download = entry( new StoreKey( PKG_TYPE_MAVEN, StoreType.remote, "central" ),
+                                              "/org/foo/bar/1.0/bar-1.0.pom",
+                                              "https://repo.maven.apache.org/maven2/org/foo/bar/1.0/bar-1.0.pom",
+                                              StoreEffect.DOWNLOAD );
+        download.getTimestamps().addAll( Arrays.asList( 1000L, 500L ) );
+        TrackedContentEntry sibling = entry( new StoreKey( PKG_TYPE_MAVEN, StoreType.remote, "central" ),
+                                             "/org/foo/bar/1.0/bar-1.0.jar", "http://other.host/some/where",
+                                             StoreEffect.DOWNLOAD );
+        sibling.setMd5( "NOT-HEX" );
+        sibling.setSha1( null );
+        sibling.setSize( null );
+        TrackedContentEntry upload =
+                        entry( new StoreKey( PKG_TYPE_NPM, StoreType.hosted, "builds" ), "/jquery/-/jquery-3.0.tgz",
+                               null, StoreEffect.UPLOAD );
+        upload.setAccessChannel( null );
+        upload.setTimestamps( null );
+
+        TrackedContent record = new TrackedContent( key, set( upload ), set( download, sibling ) );
+        TrackedContent decoded = BinaryRecordCodec.decode( BinaryRecordCodec.encode( record ) );
+
+        assertThat( decoded.getKey(), equalTo( key ) );
+        assertThat( decoded.getUploads(), equalTo( record.getUploads() ) );
+        assertThat( decoded.getDownloads(), equalTo( record.getDownloads() ) );
+        for ( TrackedContentEntry entry : decoded.getDownloads() )
+        {
+            TrackedContentEntry original = entry.getPath().equals( download.getPath() ) ? download : sibling;
+            assertThat( entry.getOriginUrl(), equalTo( original.getOriginUrl() ) );
+            assertThat( entry.getMd5(), equalTo( original.getMd5() ) );
+            assertThat( entry.getSha1(), equalTo( original.getSha1() ) );
+            assertThat( entry.getSha256(), equalTo( original.getSha256() ) );
+            assertThat( entry.getSize(), equalTo( original.getSize() ) );
+            assertThat( entry.getIndex(), equalTo( original.getIndex() ) );
+            assertThat( entry.getTimestamps(), equalTo( original.getTimestamps() ) );
+            assertThat( entry.getTrackingKey(), equalTo( key ) );
+        }
+        TrackedContentEntry decodedUpload = decoded.getUploads().iterator().next();
+        assertThat( decodedUpload.getOriginUrl(), nullValue() );
+        assertThat( decodedUpload.getTimestamps(), nullValue() );
+        assertThat( decodedUpload.getAccessChannel(), nullValue() );
+    }
+
+    @Test
+    public void streamRoundTrip() throws IOException
+    {
+        TrackedContent record = new TrackedContent( key, new HashSet<>(), set(
+                        entry( new StoreKey( PKG_TYPE_MAVEN, StoreType.remote, "central" ), "/a.pom",
+                               "https://repo/a.pom", StoreEffect.DOWNLOAD ) ) );
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThat( BinaryRecordCodec.write( out, Arrays.asList( record, null, record ).iterator() ), equalTo( 2 ) );
+
+        byte[] bytes = out.toByteArray();
+        assertTrue( BinaryRecordCodec.isBinary( bytes ) );
+        ByteArrayInputStream in = new ByteArrayInputStream( bytes );
+        BinaryRecordCodec.readHeader( in );
+        assertThat( BinaryRecordCodec.decode( BinaryRecordCodec.readRecord( in ) ).getDownloads(),
+                    equalTo( record.getDownloads() ) );
+        assertThat( BinaryRecordCodec.decode( BinaryRecordCodec.readRecord( in ) ).getKey(), equalTo( key ) );
+        assertThat( BinaryRecordCodec.readRecord( in ), nullValue() );
+    }
+
+    @Test
+    public void truncatedRecordIsRejected()
+    {
+        TrackedContent record = new TrackedContent( key, new HashSet<>(), set(
+                        entry( new StoreKey( PKG_TYPE_MAVEN, StoreType.remote, "central" ), "/a.pom",
+                               "https://repo/a.pom", StoreEffect.DOWNLOAD ) ) );
+        byte[] bytes = BinaryRecordCodec.encode( record );
+        assertThrows( IOException.class, () -> BinaryRecordCodec.decode( Arrays.copyOf( bytes, bytes.length - 3 ) ) );
+        assertThrows( IOException.class, () -> BinaryRecordCodec.readHeader(
+                        new ByteArrayInputStream( new byte[] { 'P', 'K', 3, 4, 0 } ) ) );
+    }
+
+    @Test
+    public void everyEnumValueHasACode() throws IOException
+    {
+        for ( StoreType type : StoreType.values() )
+        {
+            for ( StoreEffect effect : StoreEffect.values() )
+            {
+                for ( AccessChannel channel : AccessChannel.values() )
+                {
+                    TrackedContentEntry entry =
+                                    entry( new StoreKey( PKG_TYPE_MAVEN, type, "central" ), "/a.pom", null, effect );
+                    entry.setAccessChannel( channel );
+                    TrackedContent record = new TrackedContent( key, new HashSet<>(), set( entry ) );
+                    TrackedContentEntry decoded = BinaryRecordCodec.decode( BinaryRecordCodec.encode( record ) )
+                                                                   .getDownloads()
+                                                                   .iterator()
+                                                                   .next();
+                    assertThat( decoded.getStoreKey().getType(), equalTo( type ) );
+                    assertThat( decoded.getEffect(), equalTo( effect ) );
+                    assertThat( decoded.getAccessChannel(), equalTo( channel ) );
+                }
+            }
+        }
+    }
+
+    private TrackedContentEntry entry( StoreKey storeKey, String path, String originUrl, StoreEffect effect )
+    {
+        return new TrackedContentEntry( key, storeKey, AccessChannel.NATIVE, originUrl, path, effect, 1024L,
+                                        "d41d8cd98f00b204e9800998ecf8427e",
+                                        "da39a3ee5e6b4b0d3255bfef95601890afd80709",
+                                        "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855" );
+    }
+
+    private static Set<TrackedContentEntry> set( TrackedContentEntry... entries )
+    {
+        return new HashSet<>( Arrays.asList( entries ) );
+    }
+}